@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// BenchmarkMain
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * GC プロファイラを有効にしてベンチマークを実行します。スループットに加えて 1 操作あたりのアロケーション量
+ * ({@code gc.alloc.rate.norm}) が出力されるため、ホットパスでのアロケーションの増加を検出できます。結果は
+ * {@code jmh-result.json} にも出力されます。
+ *
+ * コマンドライン引数には JMH の通常のオプション (ベンチマーク名の正規表現など) を指定できます。
+ *
+ * @author Takami Torao
+ */
+public final class BenchmarkMain {
+	private BenchmarkMain(){ }
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		Options options = new OptionsBuilder()
+			.parent(new CommandLineOptions(args))
+			.addProfiler(GCProfiler.class)
+			.resultFormat(ResultFormatType.JSON)
+			.result("jmh-result.json")
+			.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque;
+
+import org.asterisque.msg.Block;
+import org.asterisque.msg.Message;
+import org.asterisque.util.CircuitBreaker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// DepartureGateBenchmark
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * 複数のプロデューサースレッドによる {@link DepartureGate#forward(byte, Message)} と単一の書き込みスレッドに
+ * よる {@link DepartureGate#ship()} を競合させたスループットを計測します。グループ名の数字がプロデューサー
+ * スレッド数です。
+ *
+ * 取り出しが追いつかない場合にキューが無制限に伸びないよう、プロデューサーはキューサイズが {@link #Backlog}
+ * を超えている間は投入を控えます。
+ *
+ * @author Takami Torao
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DepartureGateBenchmark {
+
+	/** プロデューサーが投入を控えるキューサイズ */
+	private static final int Backlog = 64 * 1024;
+
+	private final Message msg = Block.eof((short)1);
+	private DepartureGate gate;
+
+	@Setup
+	public void setup(){
+		gate = new DepartureGate(new CircuitBreaker(Integer.MAX_VALUE - 1, Integer.MAX_VALUE) {
+			@Override
+			protected void overload(boolean overload) { }
+			@Override
+			protected void broken() { }
+		});
+	}
+
+	@Benchmark @Group("p1") @GroupThreads(1)
+	public void forward1() throws DepartureGate.HardLimitReached { forward(Priority.Normal); }
+	@Benchmark @Group("p1") @GroupThreads(1)
+	public Message ship1(){ return gate.ship(); }
+
+	@Benchmark @Group("p4") @GroupThreads(4)
+	public void forward4() throws DepartureGate.HardLimitReached { forward(Priority.Normal); }
+	@Benchmark @Group("p4") @GroupThreads(1)
+	public Message ship4(){ return gate.ship(); }
+
+	@Benchmark @Group("p8") @GroupThreads(8)
+	public void forward8() throws DepartureGate.HardLimitReached { forward(Priority.Normal); }
+	@Benchmark @Group("p8") @GroupThreads(1)
+	public Message ship8(){ return gate.ship(); }
+
+	/** 4 スレッドがそれぞれ異なる優先度で投入する */
+	@Benchmark @Group("p4mixed") @GroupThreads(4)
+	public void forward4mixed(ProducerPriority p) throws DepartureGate.HardLimitReached { forward(p.priority); }
+	@Benchmark @Group("p4mixed") @GroupThreads(1)
+	public Message ship4mixed(){ return gate.ship(); }
+
+	private void forward(byte priority) throws DepartureGate.HardLimitReached {
+		if(gate.size() < Backlog){
+			gate.forward(priority, msg);
+		} else {
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * プロデューサースレッドごとに割り当てる優先度。
+	 */
+	@State(Scope.Thread)
+	public static class ProducerPriority {
+		private static final AtomicInteger seq = new AtomicInteger();
+		public byte priority;
+		@Setup
+		public void setup(){
+			priority = (byte)(Priority.Normal + seq.getAndIncrement() % 4);
+		}
+	}
+}
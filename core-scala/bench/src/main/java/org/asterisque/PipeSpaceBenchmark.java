@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque;
+
+import org.asterisque.cluster.Repository;
+import org.asterisque.msg.Open;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// PipeSpaceBenchmark
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * {@link PipeSpace} でのパイプの生成と破棄の繰り返し (churn) と、受信メッセージごとに行われるパイプの参照の
+ * スループットを計測します。セッションは Wire を持たない未接続の状態で使用します。
+ *
+ * @author Takami Torao
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipeSpaceBenchmark {
+
+	private ExecutorService executor;
+	private Session session;
+	private PipeSpace pipes;
+
+	/** ピアからの Open で使用するパイプ ID */
+	private final AtomicInteger peerPipeId = new AtomicInteger();
+
+	/** 一括生成に使用する呼び出し */
+	private final List<Call> batch = Collections.nCopies(64, new Call((short)100, new Object[0]));
+
+	/** 参照の計測に使用するアクティブなパイプの ID */
+	private short activePipeId;
+
+	@Setup
+	public void setup(){
+		executor = Executors.newSingleThreadExecutor();
+		Node node = new Node(UUID.randomUUID(), "bench", executor, new Service(){ }, Repository.OnMemory);
+		session = new Session(node, false, new Service(){ }, new Options(), Optional::empty, (s, id) -> { });
+		pipes = new PipeSpace(session);
+		activePipeId = pipes.create(Priority.Normal, (short)100).id;
+	}
+
+	@TearDown
+	public void tearDown(){
+		pipes.close(false);
+		executor.shutdown();
+	}
+
+	/** ローカルからの呼び出しによるパイプの生成と破棄 */
+	@Benchmark
+	public Pipe createAndDestroy(){
+		Pipe pipe = pipes.create(Priority.Normal, (short)100);
+		pipes.destroy(pipe.id, false);
+		return pipe;
+	}
+
+	/** 4 スレッドが並行してパイプの生成と破棄を行う */
+	@Benchmark @Threads(4)
+	public Pipe createAndDestroyContended(){
+		return createAndDestroy();
+	}
+
+	/** 受信メッセージの配信先パイプの参照 */
+	@Benchmark
+	public Pipe get(){
+		return pipes.get(activePipeId);
+	}
+
+	/** ピアから受信した Open によるパイプの生成と破棄 */
+	@Benchmark
+	public Optional<Pipe> createFromOpenAndDestroy(){
+		short id = (short)((peerPipeId.getAndIncrement() & 0x7FFF) | Pipe.UniqueMask);
+		Optional<Pipe> pipe = pipes.create(new Open(id, Priority.Normal, (short)100, new Object[0]));
+		pipes.destroy(id, false);
+		return pipe;
+	}
+
+	/** 64 呼び出し分のパイプの一括生成と破棄 (1 操作あたり 64 パイプ) */
+	@Benchmark
+	public List<Pipe> createAllAndDestroy(){
+		List<Pipe> created = pipes.create(batch);
+		for(Pipe pipe: created){
+			pipes.destroy(pipe.id, false);
+		}
+		return created;
+	}
+
+	/** 比較対象: 64 呼び出し分のパイプの個別の生成と破棄 */
+	@Benchmark
+	public Pipe createEachAndDestroy(){
+		Pipe pipe = null;
+		for(int i = 0; i < batch.size(); i ++){
+			pipe = pipes.create(Priority.Normal, (short)100);
+			pipes.destroy(pipe.id, false);
+		}
+		return pipe;
+	}
+}
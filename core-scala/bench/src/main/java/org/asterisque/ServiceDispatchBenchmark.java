@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque;
+
+import org.asterisque.codec.TypeConversion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// ServiceDispatchBenchmark
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * 受信した Open のパラメータで @Export メソッドを呼び出すサービス側のディスパッチ処理を計測します。
+ * {@code reflective} は呼び出しごとにパラメータ型を参照して {@link Method#invoke(Object, Object...)} で
+ * 呼び出す従来の処理、{@code compiled} は {@link Service} に定義された MethodHandle による処理です。
+ *
+ * @author Takami Torao
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceDispatchBenchmark {
+
+	public interface Echo {
+		@Export(10)
+		CompletableFuture<String> echo(String text, int count, long timestamp);
+	}
+
+	public static class EchoService extends Service implements Echo {
+		private final CompletableFuture<String> result = CompletableFuture.completedFuture("");
+		@Override
+		public CompletableFuture<String> echo(String text, int count, long timestamp) {
+			return result;
+		}
+	}
+
+	/** Open メッセージで受信するパラメータ (long パラメータには Integer が渡される) */
+	private final Object[] args = { "hello, world", 100, 200 };
+
+	private EchoService service;
+	private Service.Function function;
+	private Method method;
+
+	@Setup
+	public void setup() throws NoSuchMethodException {
+		service = new EchoService();
+		function = service.function((short)10);
+		method = Echo.class.getMethod("echo", String.class, int.class, long.class);
+	}
+
+	@Benchmark
+	public CompletableFuture<Object> compiled(){
+		return function.apply(args);
+	}
+
+	@Benchmark
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<Object> reflective() throws Exception {
+		Class<?>[] types = method.getParameterTypes();
+		Object[] params = new Object[types.length];
+		for(int i = 0; i < params.length; i++) {
+			params[i] = TypeConversion.toMethodCall(args[i], types[i]);
+		}
+		return (CompletableFuture<Object>) method.invoke(service, params);
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque;
+
+import org.asterisque.cluster.Repository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// StubBenchmark
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * {@link Session#bind(Class)} で取得したリモートインターフェースの呼び出しから
+ * {@link Session#open(byte, short, Object[])} に至るまでのクライアント側の処理を計測します。{@code stub}
+ * は生成されたスタブクラス、{@code proxy} はスタブを生成できない (public でない) インターフェースに対する
+ * 動的プロキシです。パイプの生成を除外するため open はオーバーライドしています。
+ *
+ * @author Takami Torao
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StubBenchmark {
+
+	public interface Echo {
+		@Export(10)
+		CompletableFuture<String> echo(String text, int count);
+	}
+
+	interface HiddenEcho {
+		@Export(10)
+		CompletableFuture<String> echo(String text, int count);
+	}
+
+	private ExecutorService executor;
+	private Echo stub;
+	private HiddenEcho proxy;
+
+	@Setup
+	public void setup(){
+		executor = Executors.newSingleThreadExecutor();
+		Node node = new Node(UUID.randomUUID(), "bench", executor, new Service(){ }, Repository.OnMemory);
+		CompletableFuture<Object> result = CompletableFuture.completedFuture("");
+		Session session = new Session(node, false, new Service(){ }, new Options(), Optional::empty, (s, id) -> { }){
+			@Override
+			public CompletableFuture<Object> open(byte priority, short function, Object[] params) {
+				return result;
+			}
+		};
+		stub = session.bind(Echo.class);
+		proxy = session.bind(HiddenEcho.class);
+	}
+
+	@TearDown
+	public void tearDown(){
+		executor.shutdown();
+	}
+
+	@Benchmark
+	public CompletableFuture<String> stub(){
+		return stub.echo("hello", 100);
+	}
+
+	@Benchmark
+	public CompletableFuture<String> proxy(){
+		return proxy.echo("hello", 100);
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.cluster;
+
+import org.asterisque.Asterisque;
+import org.asterisque.util.TimingWheel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// FileRepositoryBenchmark
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * {@link FileRepository} と {@link MemoryRepository} でセッション状態程度の大きさのデータを保存して復元する
+ * 時間を計測します。{@link FileRepository} は呼び出しごとの fsync を行わない設定とグループコミットの設定で
+ * 計測します。
+ *
+ * @author Takami Torao
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileRepositoryBenchmark {
+
+	/** 保存するデータのサイズ (バイト) */
+	@Param({"256", "4096"})
+	public int size;
+
+	private TimingWheel timer;
+	private Path dir;
+	private FileRepository file;
+	private Path groupDir;
+	private FileRepository group;
+	private Repository memory;
+	private byte[] data;
+
+	@Setup
+	public void setup() throws IOException {
+		timer = new TimingWheel(Asterisque.newThreadFactory("bench.timer"), 10, TimeUnit.MILLISECONDS, 512);
+		dir = Files.createTempDirectory("asterisque-bench");
+		file = new FileRepository(dir, timer);
+		groupDir = Files.createTempDirectory("asterisque-bench");
+		group = new FileRepository(groupDir, timer, FileRepository.DefaultSegmentSize, FileRepository.DefaultCommitInterval, true);
+		memory = new MemoryRepository(timer);
+		data = new byte[size];
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		file.close();
+		group.close();
+		timer.close();
+		for(Path d : new Path[]{ dir, groupDir }){
+			try(java.util.stream.Stream<Path> files = Files.list(d)){
+				files.forEach(p -> p.toFile().delete());
+			}
+			Files.delete(d);
+		}
+	}
+
+	/** fsync を行わない保存 */
+	@Benchmark
+	public void fileStore(){
+		file.store(Optional.empty(), UUID.randomUUID(), data, 1000);
+	}
+
+	/** fsync を行わない保存と復元 */
+	@Benchmark
+	public Optional<byte[]> fileStoreAndLoad(){
+		UUID id = UUID.randomUUID();
+		file.store(Optional.empty(), id, data, 60 * 1000);
+		return file.loadAndDelete(Optional.empty(), id);
+	}
+
+	/** 8 スレッドからのグループコミットによる保存 */
+	@Benchmark
+	@Threads(8)
+	public void groupCommitStore(){
+		group.store(Optional.empty(), UUID.randomUUID(), data, 1000);
+	}
+
+	/** 比較対象: オンメモリの保存と復元 */
+	@Benchmark
+	public Optional<byte[]> memoryStoreAndLoad(){
+		UUID id = UUID.randomUUID();
+		memory.store(Optional.empty(), id, data, 60 * 1000);
+		return memory.loadAndDelete(Optional.empty(), id);
+	}
+}
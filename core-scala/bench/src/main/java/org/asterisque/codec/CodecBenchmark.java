@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.codec;
+
+import org.asterisque.msg.Abort;
+import org.asterisque.msg.Block;
+import org.asterisque.msg.Close;
+import org.asterisque.msg.Control;
+import org.asterisque.msg.Message;
+import org.asterisque.msg.Open;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// CodecBenchmark
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * 各コーデックによるメッセージ種別ごとのエンコード/デコードのスループットを計測します。
+ *
+ * @author Takami Torao
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+	@Param({"simple", "msgpack", "java"})
+	public String codec;
+
+	@Param({"open", "close", "abort", "block", "control"})
+	public String message;
+
+	private Codec c;
+	private Message msg;
+	private ByteBuffer encoded;
+
+	@Setup
+	public void setup() throws CodecException {
+		c = codec(codec);
+		msg = message(message);
+		encoded = c.encode(msg);
+	}
+
+	@Benchmark
+	public ByteBuffer encode() throws CodecException {
+		return c.encode(msg);
+	}
+
+	@Benchmark
+	public Optional<Message> decode() throws CodecException {
+		return c.decode(encoded.duplicate());
+	}
+
+	static Codec codec(String name){
+		switch(name){
+			case "simple": return SimpleCodec.getInstance();
+			case "msgpack": return MessagePackCodec.getInstance();
+			case "java": return new JavaCodec();
+			default: throw new IllegalArgumentException("unknown codec: " + name);
+		}
+	}
+
+	static Message message(String name){
+		switch(name){
+			case "open":
+				return new Open((short)1, (byte)0, (short)100, new Object[]{
+					"hello, world", 12345, 3.14, UUID.randomUUID(), Arrays.asList(1, 2, 3)
+				});
+			case "close":
+				return new Close((short)1, "result");
+			case "abort":
+				return new Close((short)1, new Abort(Abort.Unexpected, "error"));
+			case "block":
+				byte[] payload = new byte[4 * 1024];
+				Arrays.fill(payload, (byte)'A');
+				return new Block((short)1, payload, 0, payload.length);
+			case "control":
+				return new Control(Control.Close);
+			default: throw new IllegalArgumentException("unknown message: " + name);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.codec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// TypeConversionBenchmark
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * 受信した Open のパラメータをサービスのメソッド引数に変換する {@link TypeConversion#toMethodCall(Object[], Class[])}
+ * のスループットを計測します。
+ * <ul>
+ *   <li>exact: 変換不要な型 (代入可能)</li>
+ *   <li>primitive: ボックス型からプリミティブ型</li>
+ *   <li>widening: 変換定義による数値型の拡張と文字列からの変換</li>
+ *   <li>collection: List から配列への変換</li>
+ * </ul>
+ *
+ * @author Takami Torao
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeConversionBenchmark {
+
+	@Param({"exact", "primitive", "widening", "collection"})
+	public String conversion;
+
+	private Object[] values;
+	private Class<?>[] types;
+
+	@Setup
+	public void setup(){
+		switch(conversion){
+			case "exact":
+				values = new Object[]{ "hello", 100, UUID.randomUUID() };
+				types = new Class<?>[]{ String.class, Integer.class, UUID.class };
+				break;
+			case "primitive":
+				values = new Object[]{ true, 100, 100L, 1.0 };
+				types = new Class<?>[]{ boolean.class, int.class, long.class, double.class };
+				break;
+			case "widening":
+				values = new Object[]{ 100, (short)100, "100", UUID.randomUUID().toString() };
+				types = new Class<?>[]{ long.class, int.class, int.class, UUID.class };
+				break;
+			case "collection":
+				values = new Object[]{ Arrays.asList(1, 2, 3, 4), Arrays.asList("a", "b") };
+				types = new Class<?>[]{ int[].class, Object[].class };
+				break;
+			default:
+				throw new IllegalArgumentException("unknown conversion: " + conversion);
+		}
+	}
+
+	@Benchmark
+	public Object[] toMethodCall(){
+		return TypeConversion.toMethodCall(values, types);
+	}
+}
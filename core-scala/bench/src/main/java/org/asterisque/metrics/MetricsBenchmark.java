@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.metrics;
+
+import org.asterisque.msg.Block;
+import org.asterisque.msg.Message;
+import org.asterisque.util.CircuitBreaker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// MetricsBenchmark
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * メッセージの送受信と呼び出しごとに行われるメトリクスの記録コストを計測します。記録がオブジェクトを生成
+ * しないことは GC プロファイラの alloc.rate.norm で確認できます。
+ *
+ * @author Takami Torao
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+	private NodeMetrics node;
+	private SessionMetrics session;
+	private final Message block = Block.eof((short)1);
+
+	@Setup
+	public void setup(){
+		node = new NodeMetrics(UUID.randomUUID(), "bench");
+		CircuitBreaker breaker = new CircuitBreaker(1, 2) {
+			@Override
+			protected void overload(boolean overload) { }
+			@Override
+			protected void broken() { }
+		};
+		session = new SessionMetrics(() -> 0, breaker, breaker, () -> 0, () -> 0, () -> 0);
+		node.attach(UUID.randomUUID(), session);
+	}
+
+	@TearDown
+	public void tearDown(){
+		node.close();
+	}
+
+	/** 送信メッセージ 1 件分の記録 (メッセージ数とバイト数) */
+	@Benchmark
+	public void message(){
+		session.outbound(block);
+		session.outbound(block, 64);
+	}
+
+	/** 4 スレッドが並行して送信メッセージを記録する */
+	@Benchmark @Threads(4)
+	public void messageContended(){
+		message();
+	}
+
+	/** function ごとの呼び出し時間の記録 */
+	@Benchmark
+	public void latency(){
+		node.latency((short)100).record(12345);
+	}
+
+	/** 4 スレッドが並行して同じ function の呼び出し時間を記録する */
+	@Benchmark @Threads(4)
+	public void latencyContended(){
+		latency();
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.util;
+
+import org.asterisque.Asterisque;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// TimingWheelBenchmark
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * {@link TimingWheel} に {@code timers} 個のタイムアウトが登録されている状態で、タイムアウトの登録と取り消し
+ * を行うコストを計測します。セッションタイムアウトや ping のように期限前に取り消されるタイムアウトが大半を
+ * 占める使い方を想定しています。比較のため取り消し時にキューから削除する設定の
+ * {@link ScheduledThreadPoolExecutor} でも同じ操作を計測します。
+ *
+ * @author Takami Torao
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimingWheelBenchmark {
+
+	/** 計測中に常に登録されているタイムアウトの数 */
+	@Param({"1000", "100000", "500000"})
+	public int timers;
+
+	private TimingWheel wheel;
+	private ScheduledThreadPoolExecutor executor;
+
+	private static final Runnable Task = () -> { };
+
+	@Setup
+	public void setup(){
+		wheel = new TimingWheel(Asterisque.newThreadFactory("bench.timer"), 10, TimeUnit.MILLISECONDS, 512);
+		executor = new ScheduledThreadPoolExecutor(1);
+		executor.setRemoveOnCancelPolicy(true);
+		// 計測中に期限に達しないよう十分に長い遅延で登録
+		for(int i = 0; i < timers; i ++){
+			long delay = TimeUnit.HOURS.toMillis(1) + ThreadLocalRandom.current().nextInt(60 * 1000);
+			wheel.schedule(Task, delay, TimeUnit.MILLISECONDS);
+			executor.schedule(Task, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@TearDown
+	public void tearDown(){
+		wheel.close();
+		executor.shutdownNow();
+	}
+
+	/** タイミングホイールへの登録と取り消し */
+	@Benchmark
+	public boolean wheelScheduleAndCancel(){
+		return wheel.schedule(Task, delay(), TimeUnit.MILLISECONDS).cancel();
+	}
+
+	/** 4 スレッドが並行してタイミングホイールへの登録と取り消しを行う */
+	@Benchmark
+	@Threads(4)
+	public boolean wheelScheduleAndCancelParallel(){
+		return wheel.schedule(Task, delay(), TimeUnit.MILLISECONDS).cancel();
+	}
+
+	/** 比較対象: ScheduledThreadPoolExecutor への登録と取り消し */
+	@Benchmark
+	public boolean executorScheduleAndCancel(){
+		ScheduledFuture<?> future = executor.schedule(Task, delay(), TimeUnit.MILLISECONDS);
+		return future.cancel(false);
+	}
+
+	/** 比較対象: 4 スレッドが並行して ScheduledThreadPoolExecutor への登録と取り消しを行う */
+	@Benchmark
+	@Threads(4)
+	public boolean executorScheduleAndCancelParallel(){
+		ScheduledFuture<?> future = executor.schedule(Task, delay(), TimeUnit.MILLISECONDS);
+		return future.cancel(false);
+	}
+
+	private static long delay(){
+		return 1000 + ThreadLocalRandom.current().nextInt(30 * 1000);
+	}
+}
@@ -1,4 +1,5 @@
 import sbt._
+import pl.project13.scala.sbt.JmhPlugin
 
 object Build extends sbt.Build {
   lazy val root = Project(
@@ -10,4 +11,10 @@ object Build extends sbt.Build {
 		id = "asterisque-ri",
 		base = file("ri")
 	)
+
+	// JMH によるマイクロベンチマーク (aggregate に含めないため通常のテストでは実行されない)
+	lazy val bench = Project(
+		id = "asterisque-bench",
+		base = file("bench")
+	) dependsOn(root) enablePlugins(JmhPlugin)
 }
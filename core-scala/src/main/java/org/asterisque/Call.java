@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// Call
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * {@link Session#openAll(java.util.List)} でまとめて呼び出す function の呼び出し内容です。
+ *
+ * @author Takami Torao
+ */
+public final class Call {
+
+	/**
+	 * 呼び出しに使用するパイプの同一セッション内でのプライオリティ。
+	 */
+	public final byte priority;
+
+	/**
+	 * 呼び出す function の識別子。
+	 */
+	public final short function;
+
+	/**
+	 * function の実行パラメータ。
+	 */
+	public final Object[] params;
+
+	// ==============================================================================================
+	// コンストラクタ
+	// ==============================================================================================
+	/**
+	 * @param priority 呼び出しに使用するパイプのプライオリティ
+	 * @param function function の識別子
+	 * @param params function の実行パラメータ
+	 */
+	public Call(byte priority, short function, Object[] params){
+		Objects.requireNonNull(params);
+		this.priority = priority;
+		this.function = function;
+		this.params = params;
+	}
+
+	/**
+	 * 通常のプライオリティで呼び出す内容を構築します。
+	 *
+	 * @param function function の識別子
+	 * @param params function の実行パラメータ
+	 */
+	public Call(short function, Object[] params){
+		this(Priority.Normal, function, params);
+	}
+
+	@Override
+	public String toString(){
+		return "Call(" + priority + "," + function + "," + Arrays.toString(params) + ")";
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque;
+
+import org.asterisque.metrics.CallPhase;
+import org.asterisque.metrics.NodeMetrics;
+import org.asterisque.msg.Close;
+import org.asterisque.msg.Message;
+import org.asterisque.msg.Open;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// CallTracer
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * セッション上の function 呼び出しの各段階でパイプに時刻を記録し、{@link CallPhase} の区間ごとの所要時間を
+ * ノードのメトリクスに記録するクラスです。{@link Options#KEY_TRACE_CALLS} が有効なセッションでのみ使用します。
+ *
+ * 呼び出し先の Close は送信キューから取り出される前にパイプ空間から削除されるため、Close の送信まで
+ * クローズしたパイプを別のテーブルで保持します。呼び出し元はこの Close を受信するまで同じパイプ ID を再利用
+ * しないため ID が衝突することはありません。
+ *
+ * @author Takami Torao
+ */
+final class CallTracer {
+
+	private final NodeMetrics metrics;
+	private final PipeSpace pipes;
+
+	/** こちら側が発行するパイプ ID のビット */
+	private final short pipeMask;
+
+	/** Close の送信を待機している呼び出し先のパイプ */
+	private final PipeTable replying = new PipeTable();
+
+	/**
+	 * @param metrics 所要時間を記録するノードのメトリクス
+	 * @param pipes セッションのパイプ空間
+	 * @param isServer セッションがサーバ側の場合 true
+	 */
+	public CallTracer(NodeMetrics metrics, PipeSpace pipes, boolean isServer){
+		this.metrics = metrics;
+		this.pipes = pipes;
+		this.pipeMask = isServer? Pipe.UniqueMask: 0;
+	}
+
+	// ==============================================================================================
+	// メッセージの送信
+	// ==============================================================================================
+	/**
+	 * 送信メッセージが送信キューから取り出されたときに呼び出されます。
+	 */
+	public void departed(Message msg){
+		if(msg instanceof Open){
+			Pipe pipe = isLocal(msg.pipeId)? pipes.get(msg.pipeId): null;
+			if(pipe != null){
+				long now = System.nanoTime();
+				pipe.departedAt = now;
+				record(pipe, CallPhase.Departure, now - pipe.createdAt);
+			}
+		} else if(msg instanceof Close){
+			Pipe pipe = isLocal(msg.pipeId)? null: replying.remove(msg.pipeId);
+			if(pipe != null){
+				record(pipe, CallPhase.Reply, System.nanoTime() - pipe.closedAt);
+			}
+		}
+	}
+
+	// ==============================================================================================
+	// function の開始
+	// ==============================================================================================
+	/**
+	 * 呼び出し先で function を開始する直前に呼び出されます。呼び出し先のパイプは Open の受信直後に生成されるため
+	 * パイプの生成時刻を Open の受信時刻とします。
+	 */
+	public void started(Pipe pipe){
+		long now = System.nanoTime();
+		pipe.startedAt = now;
+		record(pipe, CallPhase.Dispatch, now - pipe.createdAt);
+	}
+
+	// ==============================================================================================
+	// function の終了
+	// ==============================================================================================
+	/**
+	 * パイプが結果またはエラーでクローズされ Close を送信する直前に呼び出されます。
+	 */
+	public void finished(Pipe pipe){
+		if(isLocal(pipe.id)){
+			return;
+		}
+		long now = System.nanoTime();
+		pipe.closedAt = now;
+		if(pipe.startedAt != 0){
+			record(pipe, CallPhase.Function, now - pipe.startedAt);
+		}
+		replying.putIfAbsent(pipe.id, pipe);
+	}
+
+	// ==============================================================================================
+	// Close の受信
+	// ==============================================================================================
+	/**
+	 * 呼び出し元で Close を受信したときに呼び出されます。
+	 *
+	 * @return 受信時刻
+	 */
+	public long received(Pipe pipe){
+		long now = System.nanoTime();
+		if(isLocal(pipe.id) && pipe.departedAt != 0){
+			record(pipe, CallPhase.Remote, now - pipe.departedAt);
+		}
+		return now;
+	}
+
+	/**
+	 * 呼び出し元で受信した Close によるパイプのクローズが完了したときに呼び出されます。
+	 *
+	 * @param receivedAt {@link #received(Pipe)} が返した受信時刻
+	 */
+	public void returned(Pipe pipe, long receivedAt){
+		if(isLocal(pipe.id)){
+			record(pipe, CallPhase.Return, System.nanoTime() - receivedAt);
+		}
+	}
+
+	// ==============================================================================================
+	// 追跡の破棄
+	// ==============================================================================================
+	/**
+	 * Close の送信を待機している呼び出し先のパイプを破棄します。セッションのクローズや再開しない Wire の切断に
+	 * よって Close が送信されなくなったときに呼び出されます。
+	 */
+	public void clear(){
+		replying.clear();
+	}
+
+	private void record(Pipe pipe, CallPhase phase, long nanos){
+		metrics.latency(pipe.function, phase).record(nanos);
+	}
+
+	private boolean isLocal(short pipeId){
+		return (pipeId & Pipe.UniqueMask) == pipeMask;
+	}
+}
@@ -5,14 +5,21 @@
 */
 package org.asterisque;
 
+import org.asterisque.msg.Block;
 import org.asterisque.msg.Message;
+import org.asterisque.msg.Open;
+import org.asterisque.util.CircuitBreaker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 
 // ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
 // DepartureGate
@@ -20,43 +27,85 @@ import java.util.concurrent.atomic.AtomicLong;
 /**
  * 非同期の {@link org.asterisque.Wire} へ渡す出力メッセージを最終的に直列化するクラスです。
  *
- * このキューが送信可能なメッセージを持つかどうかで Wire に対して {@code setWritable(false or true)} の操作
- * をおこないます。
+ * 送信キューは使用されている {@link org.asterisque.Priority} ごとのロックフリーなキューで構成されます。
+ * メッセージの投入は任意のスレッドから行われますが、取り出しは Wire の書き込みスレッド (単一) からのみ行われ
+ * ます。同一優先度のキューは FIFO であるため、シーケンス番号なしで同一優先度内の順序が維持されます。
+ *
+ * このキューが空の状態からメッセージを持つ状態に変化した時に Wire に対して {@code setWritable(true)}、空になった
+ * 時に {@code setWritable(false)} の通知を行います。ロックを使用しないため通知の順序は前後する可能性があり、
+ * Wire は {@code setWritable(false)} を目安として扱い {@link org.asterisque.Wire.Plug#produce()} が null を
+ * 返すまで取り出しを行う必要があります。
+ *
+ * 送信キューが高負荷 (サーキットブレーカーが soft limit に達した状態) の間、損失率 {@link Block#loss} を持つ
+ * Block は損失率に従って確率的に破棄されます。破棄判定を生き残った Block は以降の判定を受けないよう損失率を
+ * 0 に再設定してキューに投入されます。
  *
  * @author Takami Torao
  */
 class DepartureGate {
 	private static final Logger logger = LoggerFactory.getLogger(DepartureGate.class);
 
-	public final Session session;
+	/**
+	 * 優先度の段階数。
+	 */
+	private static final int Levels = Priority.Max - Priority.Min + 1;
+
+	/**
+	 * 送信キューの負荷を計上するサーキットブレーカー。
+	 */
+	private final CircuitBreaker breaker;
 
 	/**
-	 * 出力用のメッセージを保持するキュー。
+	 * 優先度ごとの出力用メッセージを保持するキュー。{@code priority - Priority.Min} をインデックスとし、
+	 * 最初にその優先度のメッセージが投入された時に作成される。
 	 */
-	private final BlockingQueue<Entry> queue;
+	private final AtomicReferenceArray<Queue<Message>> levels = new AtomicReferenceArray<>(Levels);
 
 	/**
-	 * 出力されるメッセージのシーケンス番号。
-	 * {@link java.util.PriorityQueue} が同一優先度の順位を維持しないため全てのメッセージ付加し整列させる目的で
-	 * 使用する。有限だが 1sec に 1000 メッセージ enqueue するとしても全てを消費するまで 557 MegaYear が必要で
-	 * あるため、上限に達したら例外を送出する (このキューを使用する Wire がクローズされる) ことで対処する。
+	 * 作成済みのキューを優先度の高い順に並べたもの。優先度の追加時のみ複製して置き換える。
 	 */
-	private final AtomicLong sequence = new AtomicLong(Long.MIN_VALUE);
+	private volatile Queue<?>[] active = new Queue<?>[0];
+
+	/**
+	 * 全ての優先度のキューが保持しているメッセージ数。投入はキューへの追加後、取り出しはキューからの削除後に
+	 * 計上するため、並行して投入と取り出しが行われている間は一時的に実際の数と異なる (負になる) 場合がある。
+	 */
+	private final AtomicInteger size = new AtomicInteger(0);
 
 	/**
 	 * このキューが接続している Wire。キュー状態によって Readable, Writable 状態を変更するために保持している。
 	 */
 	private volatile Optional<Wire> wire = Optional.empty();
 
+	/**
+	 * 高負荷によって破棄した Block の通知先。
+	 */
+	private final Consumer<Block> onDrop;
+
 	// ==============================================================================================
 	// コンストラクタ
 	// ==============================================================================================
 	/**
-	 * @param initSize 初期状態のキューバッファサイズ
+	 * @param initSize 初期状態のキューバッファサイズ (優先度ごとのキューは連結リストのため使用しない)
 	 */
 	public DepartureGate(Session session, int initSize) {
-		this.session = session;
-		this.queue = new PriorityBlockingQueue<>(initSize);
+		this(session.writeBreaker, session::dropped);
+	}
+
+	/**
+	 * @param breaker 送信キューの負荷を計上するサーキットブレーカー
+	 */
+	DepartureGate(CircuitBreaker breaker) {
+		this(breaker, block -> { });
+	}
+
+	/**
+	 * @param breaker 送信キューの負荷を計上するサーキットブレーカー
+	 * @param onDrop 高負荷によって破棄した Block の通知先
+	 */
+	DepartureGate(CircuitBreaker breaker, Consumer<Block> onDrop) {
+		this.breaker = breaker;
+		this.onDrop = onDrop;
 	}
 
 	// ==============================================================================================
@@ -66,139 +115,128 @@ class DepartureGate {
 	 * このキューと連動する Wire を設定します。
 	 */
 	public void wire(Optional<Wire> wire){
-		assert(! session.writeBreaker.isBroken());
+		assert(! breaker.isBroken());
 		this.wire = wire;
 		// wire を初期状態に設定
-		this.wire.ifPresent(w -> w.setWritable(!queue.isEmpty()));
+		wire.ifPresent(w -> w.setWritable(size.get() > 0));
 	}
 
 	// ==============================================================================================
-	// 送信キューの状態更新
+	// キューサイズの参照
 	// ==============================================================================================
 	/**
-	 * 送信キューの状態が変化した時に呼び出されます。
+	 * このキューが保持しているメッセージ数を参照します。並行して投入や取り出しが行われている場合は概算値です。
 	 */
-	private void onWriteQueueChanged(boolean enqueue, int size) {
-		if(enqueue){
-			if(size == 1){
-				wire.ifPresent(w -> w.setWritable(true));
-			}
-			session.writeBreaker.increment();
-		} else {
-			if(size == 0){
-				wire.ifPresent(w -> w.setWritable(false));
-			}
-			session.writeBreaker.decrement();
-		}
+	public int size(){
+		return Math.max(0, size.get());
 	}
 
-	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
-	// MessageQueue
-	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	// ==============================================================================================
+	// メッセージの追加
+	// ==============================================================================================
 	/**
-	 * 非同期 I/O 実装の Wire と Session 間ででメッセージの中継を行うための片方向キューです。
-	 *
-	 * キューは保持するメッセージ数が soft limit に達すると入力側に softLimit(true) 通知を行います。ただし soft
-	 * limit 到達に対して具体的な動作制限が行われるわけではなく、単純にに通知が発生するのみです。入力側は
-	 * softLimit(true) 通知を受け取った場合、次に suspend(false) 通知を受け取るまで新しいメッセージを投入すべき
-	 * ではありません。enqueue() によって保持しているメッセージ数が hard limit を超えると例外が発生します。これは
-	 * キューを使用している Wire がエラーによってクローズすることを意味します。
+	 * このメッセージキューに指定されたメッセージを追加します。メッセージは優先順位 {@code priority} によって
+	 * キュー内で優先順位付けが行われます。同一の優先順位を持つメッセージの順序が逆転することはありません。
 	 *
-	 * 全てのメッセージがキューから読み出されると出力側は empty(true) 通知を受け取ります。この後に新しくメッセージ
-	 * が到着すると empty(false) が通知されます。Selector を使用した非同期 I/O の場合はこの通知を使用して
-	 * SelectionKey.OP_WRITE を制御する事が出来ます。
+	 * このキューが空だった場合は Wire に {@code setWritable(true)} を通知します。サーキットブレーカーの負荷は
+	 * キューへの追加前に加算されるため、取り出し側の減算が先行することはありません。
 	 *
-	 * キューに投入するメッセージの優先順位付けは行われません。
-	 * {@link org.asterisque.msg.Control} はキューの先頭へ優先的に追加されます。
+	 * キューが高負荷の状態で損失率を持つ Block を投入した場合、その Block は損失率に従って破棄されるか、損失率を
+	 * 0 に再設定してキューに追加されます。
 	 *
-	 * @author Takami Torao
-	 */
-
-	/**
-	 * キューへのメッセージ追加や取り出しが行われたときに呼び出されるメソッド。第一引数は enqueue の場合に true、
-	 * dequeue の場合に false。第二引数はキュー変更後のサイズ。
+	 * @param msg キューに投入するメッセージ
+	 * @throws DepartureGate.HardLimitReached キューが hard limit に達した場合
 	 */
+	public void forward(byte priority, Message msg) throws HardLimitReached {
+		if(msg instanceof Block && ((Block)msg).loss > 0 && breaker.isOverloaded()){
+			Block block = (Block)msg;
+			if(block.shouldDrop()){
+				onDrop.accept(block);
+				block.release();
+				return;
+			}
+			msg = block.survive();
+		}
+		breaker.increment();
+		level(priority).offer(msg);
+		if(size.incrementAndGet() == 1){
+			wire.ifPresent(w -> w.setWritable(true));
+		}
+	}
 
-	// ============================================================================================
-	// メッセージの追加
-	// ============================================================================================
 	/**
-	 * このメッセージキューに指定されたメッセージを追加します。メッセージは優先順位 {@code priority} によって
-	 * キュー内で優先順位付けが行われます。同一の優先順位を持つメッセージの順序が逆転することはありません。
-	 *
-	 * このキューが空だった場合は onEmpty(false) コールバックが発生します。
-	 * キューが保持するメッセージ数が soft limit に達した場合は onSoft(true) が発生します。
-	 * この呼び出しで hard limit + 1 に達する場合は空きが出来るまで呼び出し側のスレッドをブロックします。
+	 * 指定された Open メッセージをまとめてこのキューに追加します。メッセージはそれぞれの優先度のキューに指定された
+	 * 順序で追加され、Wire への {@code setWritable(true)} の通知は最大 1 回となります。
 	 *
-	 * @param msg キューに投入するメッセージ
+	 * @param opens キューに投入するメッセージ
 	 * @throws DepartureGate.HardLimitReached キューが hard limit に達した場合
-	 * @throws DepartureGate.MaxSequenceReached シーケンス値が最大に達した場合
-	 */
-	public void forward(byte priority, Message msg) throws HardLimitReached, MaxSequenceReached {
-		// 次のシーケンスを取得
-		long seq = sequence.getAndIncrement();
-		if(seq == Long.MAX_VALUE){
-			sequence.decrementAndGet();
-			throw new MaxSequenceReached();
+	 */
+	public void forward(List<Open> opens) throws HardLimitReached {
+		for(Open open: opens){
+			breaker.increment();
+			level(open.priority).offer(open);
 		}
-		// メッセージをキューに投入
-		Entry entry = new Entry(msg, priority, seq);
-		int size;
-		synchronized(queue){
-			queue.add(entry);
-			size = queue.size();
+		int n = opens.size();
+		int after = size.addAndGet(n);
+		if(after - n < 1 && after >= 1){
+			wire.ifPresent(w -> w.setWritable(true));
 		}
-		onWriteQueueChanged(true, size);
 	}
 
 	// ============================================================================================
 	// メッセージの取り出し
 	// ============================================================================================
 	/**
-	 * このキューの先頭からブロッキングなしでメッセージを取り出します。このキューが有効なメッセージを持たない場合は
-	 * Optional.empty() を返します。
+	 * このキューから最も優先度の高いメッセージをブロッキングなしで取り出します。このメソッドは Wire の書き込み
+	 * スレッドからのみ呼び出される必要があります。
 	 *
-	 * この呼び出しによりキューが空になった場合は onEmpty(true) 通知が発生します。
-	 * またキューが保持するメッセージ数が soft limit - 1 に達した場合は onSoftLimit(false) が発生します。
+	 * この呼び出しによりキューが空になった場合は Wire に {@code setWritable(false)} を通知します。
 	 *
-	 * @return 取り出したメッセージ、またはキューが空の場合は Optional.empty()
+	 * @return 取り出したメッセージ、またはキューが空の場合は null
 	 */
 	public Message ship() {
-		assert(! queue.isEmpty());
-		Entry entry;
-		int size;
-		synchronized(queue){
-			entry = queue.remove();
-			size = queue.size();
+		for(Queue<?> queue: active){
+			Message msg = (Message)queue.poll();
+			if(msg != null){
+				if(size.decrementAndGet() == 0){
+					wire.ifPresent(w -> w.setWritable(false));
+				}
+				breaker.decrement();
+				return msg;
+			}
 		}
-		onWriteQueueChanged(false, size);
-		return entry.msg;
+		return null;
 	}
 
+	// ============================================================================================
+	// 優先度キューの参照
+	// ============================================================================================
 	/**
-	 * キューに投入するエントリ。
+	 * 指定された優先度のキューを参照します。まだ存在しない場合は新しく作成します。
 	 */
-	private static class Entry implements Comparable<Entry> {
-		public final Message msg;
-		public final byte priority;
-		public final long sequence;
-		public Entry(Message msg, byte priority, long sequence){
-			this.msg = msg;
-			this.priority = priority;
-			this.sequence = sequence;
-		}
-		@Override
-		public int compareTo(Entry other) {
-			// priority の大きい方を前に
-			if(this.priority > other.priority) return -1;
-			if(this.priority < other.priority) return 1;
-			// sequence の小さい方を前に
-			if(this.sequence < other.sequence) return -1;
-			if(this.sequence > other.sequence) return 1;
-			return 0;		// this == other 以外で同一順位の存在はありえないので例外にしても良いかもしれない
+	private Queue<Message> level(byte priority){
+		int i = priority - Priority.Min;
+		Queue<Message> queue = levels.get(i);
+		if(queue == null){
+			synchronized(levels){
+				queue = levels.get(i);
+				if(queue == null){
+					queue = new ConcurrentLinkedQueue<>();
+					levels.set(i, queue);
+					Queue<?>[] newActive = new Queue<?>[active.length + 1];
+					int n = 0;
+					for(int j = Levels - 1; j >= 0; j --){
+						if(levels.get(j) != null){
+							newActive[n ++] = levels.get(j);
+						}
+					}
+					assert(n == newActive.length): Arrays.toString(newActive);
+					active = newActive;
+				}
+			}
 		}
+		return queue;
 	}
 
 	public static class HardLimitReached extends Exception { }
-	public static class MaxSequenceReached extends Exception { }
 }
@@ -6,17 +6,24 @@
 package org.asterisque;
 
 import org.asterisque.cluster.Repository;
+import org.asterisque.metrics.NodeMetrics;
+import org.asterisque.util.TimingWheel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.SocketAddress;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 // ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
 // Node
@@ -67,6 +74,33 @@ public class Node {
 	 */
 	public final Repository repository;
 
+	/**
+	 * このノード上のセッションのメトリクスを集約し JMX で公開するレジストリです。
+	 */
+	public final NodeMetrics metrics;
+
+	/**
+	 * このノード上のセッション、パイプ、リポジトリが再接続、ping、セッションタイムアウト、データの有効期限などの
+	 * 遅延処理に共有するタイマーです。大量のタイムアウトを O(1) で登録・取り消しできるよう {@link #TimerTick}
+	 * 精度のタイミングホイールを使用します。
+	 */
+	public final TimingWheel timer;
+
+	/**
+	 * ノードのタイマーの 1 目盛りの時間 (ミリ秒)。
+	 */
+	public static final int TimerTick = 10;
+
+	/**
+	 * ノードのタイマーのバケット数。
+	 */
+	public static final int TimerWheelSize = 512;
+
+	/**
+	 * このノード上で実行中の接続処理の数。
+	 */
+	private final AtomicInteger connecting = new AtomicInteger(0);
+
 	private final AtomicBoolean closing = new AtomicBoolean(false);
 
 	// ==============================================================================================
@@ -80,11 +114,26 @@ public class Node {
 	 * @param repository セッションを待避するリポジトリ
 	 */
 	public Node(UUID id, String name, ExecutorService executor, Service service, Repository repository){
+		this(id, name, executor, service, timer -> repository);
+	}
+
+	/**
+	 * ノードのタイマーを共有するリポジトリを使用するノードを構築します。
+	 * {@code new Node(id, name, executor, service, Repository::onMemory)} のように使用します。
+	 *
+	 * @param name ノード名
+	 * @param executor このノードでの処理を実行するスレッドプール
+	 * @param service ノードで発生したセッションのデフォルトのサービス
+	 * @param repository ノードのタイマーからセッションを待避するリポジトリを生成する関数
+	 */
+	public Node(UUID id, String name, ExecutorService executor, Service service, Function<TimingWheel, Repository> repository){
 		this.id = id;
 		this.name = name;
 		this.executor = executor;
 		this.service = service;
-		this.repository = repository;
+		this.timer = new TimingWheel(Asterisque.newThreadFactory("timer"), TimerTick, TimeUnit.MILLISECONDS, TimerWheelSize);
+		this.repository = repository.apply(timer);
+		this.metrics = new NodeMetrics(id, name);
 	}
 
 	// ==============================================================================================
@@ -113,7 +162,11 @@ public class Node {
 				() -> ref.getAndSet(Optional.empty()),
 				(Session _session, UUID id) -> {
 					sessions.put(id, _session);
-					_session.onClosed.add(s -> sessions.remove(id));
+					metrics.attach(id, _session.metrics);
+					_session.onClosed.add(s -> {
+						sessions.remove(id);
+						metrics.detach(id);
+					});
 					logger.debug(_session.logId() + ": onAccept() callback: " + Debug.toString(address));
 					onAccept.accept(_session);
 				});
@@ -124,17 +177,96 @@ public class Node {
 		logger.trace(Asterisque.logPrefix(false) + ": connect(" + remote + "," + options + ")");
 		Bridge bridge = options.get(Options.KEY_BRIDGE).get();
 		CompletableFuture<Session> future = new CompletableFuture<>();
-		new Session(this, false, service, options,
+		Session session = new Session(this, false, service, options,
 			() -> Optional.of(bridge.newWire(this, remote, options)),
 			(Session _session, UUID id) -> {
 				sessions.put(id, _session);
-				_session.onClosed.add(s -> sessions.remove(id));
+				metrics.attach(id, _session.metrics);
+				_session.onClosed.add(s -> {
+					sessions.remove(id);
+					metrics.detach(id);
+				});
 				future.complete(_session);
 			}
 		);
+		// 状態同期の前に再接続を断念してクローズした場合
+		session.onClosed.add(s -> future.completeExceptionally(new IOException(s.logId() + ": session closed before sync")));
+		if(session.closed()){
+			future.completeExceptionally(new IOException(session.logId() + ": session closed before sync"));
+		}
 		return future;
 	}
 
+	// ==============================================================================================
+	// セッションの参照
+	// ==============================================================================================
+	/**
+	 * 状態同期が完了しているこのノード上のセッションを参照します。
+	 */
+	Optional<Session> session(UUID id){
+		return Optional.ofNullable(sessions.get(id));
+	}
+
+	// ==============================================================================================
+	// 遅延処理の実行
+	// ==============================================================================================
+	/**
+	 * 指定された処理をノードで共有するタイマーで遅延実行します。ノードがシャットダウンしている場合は何も行わず
+	 * empty を返します。
+	 *
+	 * @param task 実行する処理 (短時間で終了しなければならない)
+	 * @param delay 遅延時間
+	 * @param unit 遅延時間の単位
+	 * @return 取り消しに使用するタイムアウト
+	 */
+	Optional<TimingWheel.Timeout> schedule(Runnable task, long delay, TimeUnit unit){
+		if(closing.get()){
+			return Optional.empty();
+		}
+		try {
+			return Optional.of(timer.schedule(task, delay, unit));
+		} catch(RejectedExecutionException ex){
+			return Optional.empty();
+		}
+	}
+
+	// ==============================================================================================
+	// 接続処理の開始
+	// ==============================================================================================
+	/**
+	 * このノード上で実行中の接続処理の数が上限に達していなければ新しい接続処理を開始します。接続処理が完了した
+	 * ときは成功・失敗にかかわらず {@link #endConnect()} を呼び出す必要があります。
+	 *
+	 * @param limit ノード上で同時に実行中とすることのできる接続処理の数
+	 * @return 接続処理を開始できる場合 true
+	 */
+	boolean beginConnect(int limit){
+		while(true){
+			int current = connecting.get();
+			if(current >= limit){
+				return false;
+			}
+			if(connecting.compareAndSet(current, current + 1)){
+				return true;
+			}
+		}
+	}
+
+	// ==============================================================================================
+	// 接続処理の終了
+	// ==============================================================================================
+	/**
+	 * {@link #beginConnect(int)} で開始した接続処理の終了を通知します。
+	 */
+	void endConnect(){
+		connecting.decrementAndGet();
+	}
+
+	/**
+	 * @return このノード上で実行中の接続処理の数
+	 */
+	public int connecting(){ return connecting.get(); }
+
 	// ==============================================================================================
 	// ノードのシャットダウン
 	// ==============================================================================================
@@ -146,10 +278,12 @@ public class Node {
 			logger.debug("shutting-down node \"" + name + "\";" +
 				" all available " + sessions.size() + " sessions, " + servers.size() + " servers will be closed");
 			executor.shutdown();
+			timer.close();
 			servers.forEach(Bridge.Server::close);
 			servers.clear();
 			sessions.values().forEach(Session::close);
 			sessions.clear();
+			metrics.close();
 		}
 	}
 
@@ -125,18 +125,74 @@ public class Options {
 	public static final Key<Codec> KEY_CODEC              = new Key<>("org.asterisque.codec", Codec.class, MessagePackCodec.getInstance());
 	// TODO 他に SocketOption など
 
+	/**
+	 * ブリッジが使用するネットワークトランスポート。{@code "nio"} または {@code "epoll"} を指定します。
+	 * {@code "epoll"} が指定されても実行環境で利用できない場合は {@code "nio"} を使用します。
+	 */
+	public static final StringKey KEY_TRANSPORT = new StringKey("org.asterisque.bridge.transport", "nio");
+
 	//
 	public static final IntKey KEY_READ_SOFT_LIMIT  = new IntKey("org.asterisque.wire.read.softlimit", 1024);
 	public static final IntKey KEY_READ_HARD_LIMIT  = new IntKey("org.asterisque.wire.read.hardlimit", Integer.MAX_VALUE);
 	public static final IntKey KEY_WRITE_SOFT_LIMIT = new IntKey("org.asterisque.wire.write.softlimit", 1024);
 	public static final IntKey KEY_WRITE_HARD_LIMIT = new IntKey("org.asterisque.wire.write.hardlimit", Integer.MAX_VALUE);
+	/** 受信キューの待ち時間がこの値 (ミリ秒) に達した場合もソフトリミットと同様に読み込みを一時停止する (0 で無効) */
+	public static final IntKey KEY_READ_SOJOURN_TARGET = new IntKey("org.asterisque.wire.read.sojourntarget", 0);
+	/** 送信キューの待ち時間がこの値 (ミリ秒) に達した場合もソフトリミットと同様にバックプレッシャーをかける (0 で無効) */
+	public static final IntKey KEY_WRITE_SOJOURN_TARGET = new IntKey("org.asterisque.wire.write.sojourntarget", 0);
+
+	/** Wire が 1 回の書き込み処理でフラッシュ前に送信キューから取り出すメッセージ数の上限 */
+	public static final IntKey KEY_WRITE_BATCH_MESSAGES = new IntKey("org.asterisque.wire.write.batch.messages", 64);
+	/** Wire が 1 回の書き込み処理でフラッシュ前に書き込むバイト数の上限 */
+	public static final IntKey KEY_WRITE_BATCH_BYTES = new IntKey("org.asterisque.wire.write.batch.bytes", 64 * 1024);
+
+	/** 受信した Block のペイロードを複写せずに受信バッファのまま参照するか (参照カウントによる解放が必要) */
+	public static final BooleanKey KEY_RETAIN_PAYLOAD = new BooleanKey("org.asterisque.wire.read.retainpayload", false);
+
+	/** メッセージに長さを付加したフレーム形式での転送を SyncConfig でピアに要求するか */
+	public static final BooleanKey KEY_FRAMING = new BooleanKey("org.asterisque.wire.framing", true);
+	/** フレーム形式で送信待ちの小さなメッセージを 1 つのコンテナフレームにまとめる転送を SyncConfig でピアに要求するか */
+	public static final BooleanKey KEY_CONTAINER = new BooleanKey("org.asterisque.wire.container", true);
+	/** フレーム形式で大きなメッセージを Deflate で圧縮する転送を SyncConfig でピアに要求するか */
+	public static final BooleanKey KEY_COMPRESSION = new BooleanKey("org.asterisque.wire.compression", false);
+	/** メッセージ圧縮の Deflate 圧縮レベル (1: 最速 - 9: 最高圧縮) */
+	public static final IntKey KEY_COMPRESSION_LEVEL = new IntKey("org.asterisque.wire.compression.level", 1);
+	/** 圧縮の対象とする直列化したメッセージの最小バイト数 */
+	public static final IntKey KEY_COMPRESSION_THRESHOLD = new IntKey("org.asterisque.wire.compression.threshold", 256);
+	/** メッセージ圧縮に使用する事前共有の辞書 (ピアと同一の内容でなければならない) */
+	public static final Key<byte[]> KEY_COMPRESSION_DICTIONARY = new Key<>("org.asterisque.wire.compression.dictionary", byte[].class);
+
+	/** Wire の切断後に未確認のメッセージを再送してセッションを再開する機能を SyncConfig でピアに要求するか */
+	public static final BooleanKey KEY_RESUME = new BooleanKey("org.asterisque.session.resume", false);
+	/** セッション再開のために保持する受信確認されていない送信メッセージ数の上限 */
+	public static final IntKey KEY_RESUME_BUFFER = new IntKey("org.asterisque.session.resume.buffer", 4096);
+	/** 受信確認されていないメッセージがある場合に累積 ack を送信するまでの最大待機時間 (ミリ秒) */
+	public static final IntKey KEY_ACK_DELAY = new IntKey("org.asterisque.session.resume.ackdelay", 200);
+
+	/** 無通信時の ping と受信途絶によるセッションタイムアウトの監視を SyncConfig でピアに要求するか */
+	public static final BooleanKey KEY_KEEP_ALIVE = new BooleanKey("org.asterisque.session.keepalive", true);
+
+	/** function 呼び出しの各段階で時刻を記録し区間ごとの所要時間をノードのメトリクスに記録するか */
+	public static final BooleanKey KEY_TRACE_CALLS = new BooleanKey("org.asterisque.session.tracecalls", false);
 
 	// Client Options
 	public static final IntKey KEY_PING_REQUEST = new IntKey("org.asterisque.client.ping", 3);
 	public static final IntKey KEY_SESSION_TIMEOUT_REQUEST = new IntKey("org.asterisque.client.session.timeout", 30 * 60);
+	/** 再接続の待機時間を決定するポリシー。指定されていない場合は以下の値による {@link ReconnectPolicy.Backoff} */
+	public static final Key<ReconnectPolicy> KEY_RECONNECT_POLICY = new Key<>("org.asterisque.client.reconnect.policy", ReconnectPolicy.class);
+	/** 最初の再接続の待機時間の上限 (ミリ秒) */
+	public static final IntKey KEY_RECONNECT_BASE_DELAY = new IntKey("org.asterisque.client.reconnect.delay.base", 100);
+	/** 再接続の待機時間の上限 (ミリ秒) */
+	public static final IntKey KEY_RECONNECT_MAX_DELAY = new IntKey("org.asterisque.client.reconnect.delay.max", 30 * 1000);
+	/** 接続が成功するまでに再接続を試みる最大回数 */
+	public static final IntKey KEY_RECONNECT_MAX_ATTEMPTS = new IntKey("org.asterisque.client.reconnect.attempts", Integer.MAX_VALUE);
+	/** ノード上で同時に実行中とすることのできる接続処理の数 */
+	public static final IntKey KEY_MAX_CONNECTING = new IntKey("org.asterisque.client.connect.concurrency", 64);
 
 	// Server Options
 	public static final IntKey KEY_SERVER_BACKLOG = new IntKey("org.asterisque.server.backlog", 50);
+	/** 複数のサーバソケットで同一ポートを共有するか (epoll トランスポートの場合のみ有効) */
+	public static final BooleanKey KEY_SERVER_REUSE_PORT = new BooleanKey("org.asterisque.server.reuseport", false);
 	public static final IntKey KEY_MAX_PING = new IntKey("org.asterisque.server.ping.max", 60);
 	public static final IntKey KEY_MIN_PING = new IntKey("org.asterisque.server.ping.min", 1);
 	public static final IntKey KEY_MAX_SESSION_TIMEOUT = new IntKey("org.asterisque.server.session.timeout.max", 60 * 60);
@@ -195,6 +251,23 @@ public class Options {
 		}
 	}
 
+	public static final class BooleanKey extends Key<Boolean> {
+		public BooleanKey(String key, boolean def){ super(key, Boolean.class, Optional.of(def)); }
+		public BooleanKey(String key){ super(key, Boolean.class); }
+		@Override
+		public Optional<Boolean> parse(String value){
+			switch(value.trim().toLowerCase()){
+				case "true": case "yes": case "on": case "1":
+					return Optional.of(Boolean.TRUE);
+				case "false": case "no": case "off": case "0":
+					return Optional.of(Boolean.FALSE);
+				default:
+					logger.warn(key + ": fail to parse as boolean: " + Debug.toString(value));
+					return Optional.empty();
+			}
+		}
+	}
+
 	public static final class StringKey extends Key<String> {
 		public StringKey(String key, String def){ super(key, String.class, Optional.of(def)); }
 		public StringKey(String key){ super(key, String.class); }
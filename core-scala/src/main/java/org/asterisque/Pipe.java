@@ -19,6 +19,7 @@ import java.io.OutputStream;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -51,11 +52,30 @@ public final class Pipe {
 	public final byte priority;
 	public final Session session;
 
+	/**
+	 * このパイプを生成した時刻 ({@link System#nanoTime()})。
+	 */
+	final long createdAt = System.nanoTime();
+
+	/**
+	 * 呼び出しのトレースが有効な場合に {@link CallTracer} が記録する各段階の時刻 ({@link System#nanoTime()})。
+	 * 呼び出し元では Open の送信時刻、呼び出し先では function の開始時刻とパイプのクローズ時刻。記録していない
+	 * 場合は 0。
+	 */
+	long departedAt = 0;
+	long startedAt = 0;
+	long closedAt = 0;
+
 	/**
 	 * このパイプがクローズされているかどうかを表すアトミックなフラグ。
 	 */
 	private AtomicBoolean closed = new AtomicBoolean(false);
 
+	/**
+	 * 送受信キューの高負荷によってこのパイプで破棄した Block の数。
+	 */
+	private final AtomicLong droppedBlocks = new AtomicLong(0);
+
 	/**
 	 * このパイプにブロックが到着した時に呼び出すイベントハンドラ。
 	 * アプリケーションはこのハンドラではなく [[src]] を使用する。
@@ -120,12 +140,43 @@ public final class Pipe {
 	// ==============================================================================================
 	/**
 	 * このパイプに指定されたブロックが到着した時に呼び出されます。
+	 *
+	 * 受信キューが高負荷の状態で損失率を持つブロックが到着した場合、そのブロックは損失率に従って破棄されるか、
+	 * 損失率を 0 に再設定して通知されます。
 	 * @param block 受信したブロック
 	 */
 	void dispatchBlock(Block block){
+		if(block.loss > 0 && session.readBreaker.isOverloaded()){
+			if(block.shouldDrop()){
+				dropped(block);
+				block.release();
+				return;
+			}
+			block = block.survive();
+		}
 		onBlock.accept(block);
 	}
 
+	// ==============================================================================================
+	// 破棄したブロック
+	// ==============================================================================================
+	/**
+	 * 送受信キューの高負荷によってこのパイプのブロックを破棄した時に呼び出されます。
+	 */
+	void dropped(Block block){
+		long count = droppedBlocks.incrementAndGet();
+		if(logger.isTraceEnabled()){
+			logger.trace(this + ": block dropped by overload (" + count + "): " + block);
+		}
+	}
+
+	/**
+	 * 送受信キューの高負荷によって損失率に従いこのパイプで破棄した Block の数を参照します。
+	 */
+	public long droppedBlocks(){
+		return droppedBlocks.get();
+	}
+
 	// ==============================================================================================
 	//　クローズ判定
 	// ==============================================================================================
@@ -188,9 +239,12 @@ public final class Pipe {
 	void close(Object result) {
 		if(closed.compareAndSet(false, true)) {
 			onClosing.accept(true);
+			if(session.tracer != null){
+				session.tracer.finished(this);
+			}
 			session.post(priority, new Close(id, result));
 			future.complete(result);
-			session.destroy(id);
+			session.destroy(id, false);
 			logger.trace(this + ": pipe is closed with success: " + Debug.toString(result));
 		} else {
 			logger.debug(this + ": pipe already closed: " + Debug.toString(result));
@@ -210,9 +264,12 @@ public final class Pipe {
 	void close(Throwable ex, String msg) {
 		if(closed.compareAndSet(false, true)) {
 			onClosing.accept(true);
+			if(session.tracer != null){
+				session.tracer.finished(this);
+			}
 			session.post(priority, new Close(id, new Abort(Abort.Unexpected, msg)));
 			future.completeExceptionally(ex);
-			session.destroy(id);
+			session.destroy(id, false);
 			logger.trace(this + ": pipe is closed with failure: " + ex);
 		} else {
 			logger.debug(this + ": pipe already closed: " + ex);
@@ -235,7 +292,7 @@ public final class Pipe {
 				logger.trace(this + ": close(" + close + "): success: " + Debug.toString(close.result));
 				future.complete(close.result);
 			}
-			session.destroy(id);
+			session.destroy(id, close.abort == null);
 			logger.trace(this + ": pipe is closed by peer: " + close);
 		} else {
 			logger.debug(this + ": pipe already closed: " + close);
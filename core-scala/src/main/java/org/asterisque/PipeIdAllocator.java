@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// PipeIdAllocator
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * セッションの片側が発行する 15 ビットのパイプ ID を管理するビットマップです。
+ *
+ * 使用中の ID はビットマップ上の対応するビットで表され、割り当ては直前に割り当てた ID の次の位置から空き
+ * ビットを探索します (解放直後の ID は空間を一巡するまで再利用されないため、遅れて到着したメッセージが新しい
+ * パイプに配信されることを避けられます)。探索は最大でビットマップを一巡するため、空きがない場合も一定時間で
+ * 失敗します。
+ *
+ * @author Takami Torao
+ */
+final class PipeIdAllocator {
+
+	/** 割り当て可能な ID の数 */
+	public static final int Capacity = Pipe.UniqueMask & 0xFFFF;
+
+	/** ビットマップのワード数 */
+	private static final int Words = Capacity / Long.SIZE;
+
+	/** 使用中の ID を表すビットマップ */
+	private final AtomicLongArray bitmap = new AtomicLongArray(Words);
+
+	/** 次に探索を開始する ID */
+	private final AtomicInteger cursor = new AtomicInteger(0);
+
+	/** 使用中の ID 数 */
+	private final AtomicInteger inUse = new AtomicInteger(0);
+
+	/** 使用中の ID 数の最大値 */
+	private final AtomicInteger highWater = new AtomicInteger(0);
+
+	/** 予約済みで割り当てない ID 数 */
+	private final int reserved;
+
+	// ==============================================================================================
+	// コンストラクタ
+	// ==============================================================================================
+	/**
+	 * @param reserveZero ID 0 を割り当て対象から除外する場合 true
+	 */
+	public PipeIdAllocator(boolean reserveZero){
+		if(reserveZero){
+			bitmap.set(0, 1L);
+			cursor.set(1);
+		}
+		this.reserved = reserveZero? 1: 0;
+	}
+
+	// ==============================================================================================
+	// ID の割り当て
+	// ==============================================================================================
+	/**
+	 * 未使用の ID を割り当てます。
+	 *
+	 * @return 割り当てた ID (0 から {@link #Capacity} - 1)、または空きがない場合は -1
+	 */
+	public int allocate(){
+		int start = cursor.get();
+		for(int n = 0; n <= Words; n ++){
+			int w = ((start / Long.SIZE) + n) % Words;
+			// 開始位置のワードは 1 巡目では開始位置以降、一巡した後は全てのビットを対象とする
+			long mask = n == 0? (-1L << (start % Long.SIZE)): -1L;
+			long bits = bitmap.get(w);
+			long free = ~bits & mask;
+			while(free != 0){
+				long bit = Long.lowestOneBit(free);
+				if(bitmap.compareAndSet(w, bits, bits | bit)){
+					int id = w * Long.SIZE + Long.numberOfTrailingZeros(bit);
+					cursor.set((id + 1) % Capacity);
+					int count = inUse.incrementAndGet();
+					int max = highWater.get();
+					while(count > max && ! highWater.compareAndSet(max, count)){
+						max = highWater.get();
+					}
+					return id;
+				}
+				bits = bitmap.get(w);
+				free = ~bits & mask;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 未使用の ID を指定された数だけまとめて割り当てます。同じワード内の空き ID は 1 回の CAS でまとめて確保
+	 * します。指定された数の空きがない場合は何も割り当てません。
+	 *
+	 * @param count 割り当てる ID の数
+	 * @return 割り当てた ID、または空きが不足している場合は null
+	 */
+	public int[] allocate(int count){
+		int[] ids = new int[count];
+		int n = 0;
+		int start = cursor.get();
+		for(int i = 0; i <= Words && n < count; i ++){
+			int w = ((start / Long.SIZE) + i) % Words;
+			long mask = i == 0? (-1L << (start % Long.SIZE)): -1L;
+			long bits = bitmap.get(w);
+			long free = ~bits & mask;
+			while(free != 0){
+				// 必要な数だけ下位の空きビットを選択
+				long take = 0;
+				long rest = free;
+				for(int k = n; k < count && rest != 0; k ++){
+					long bit = Long.lowestOneBit(rest);
+					take |= bit;
+					rest &= ~bit;
+				}
+				if(bitmap.compareAndSet(w, bits, bits | take)){
+					while(take != 0){
+						long bit = Long.lowestOneBit(take);
+						ids[n ++] = w * Long.SIZE + Long.numberOfTrailingZeros(bit);
+						take &= ~bit;
+					}
+					break;
+				}
+				bits = bitmap.get(w);
+				free = ~bits & mask;
+			}
+		}
+		int used = inUse.addAndGet(n);
+		if(n < count){
+			for(int i = 0; i < n; i ++){
+				release(ids[i]);
+			}
+			return null;
+		}
+		if(n > 0){
+			cursor.set((ids[n - 1] + 1) % Capacity);
+		}
+		int max = highWater.get();
+		while(used > max && ! highWater.compareAndSet(max, used)){
+			max = highWater.get();
+		}
+		return ids;
+	}
+
+	// ==============================================================================================
+	// ID の解放
+	// ==============================================================================================
+	/**
+	 * 指定された ID を解放します。
+	 *
+	 * @return 指定された ID が使用中だった場合 true
+	 */
+	public boolean release(int id){
+		int w = id / Long.SIZE;
+		long bit = 1L << (id % Long.SIZE);
+		while(true){
+			long bits = bitmap.get(w);
+			if((bits & bit) == 0){
+				return false;
+			}
+			if(bitmap.compareAndSet(w, bits, bits & ~bit)){
+				inUse.decrementAndGet();
+				return true;
+			}
+		}
+	}
+
+	// ==============================================================================================
+	// 使用状況の参照
+	// ==============================================================================================
+	/**
+	 * 使用中の ID 数を参照します。
+	 */
+	public int inUse(){
+		return inUse.get();
+	}
+
+	/**
+	 * 使用中の ID 数の最大値を参照します。
+	 */
+	public int highWater(){
+		return highWater.get();
+	}
+
+	/**
+	 * 割り当て可能な ID の総数を参照します。
+	 */
+	public int capacity(){
+		return Capacity - reserved;
+	}
+}
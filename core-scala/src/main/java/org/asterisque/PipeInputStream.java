@@ -49,6 +49,11 @@ class PipeInputStream extends InputStream implements Consumer<Block> {
 	 */
 	private Optional<ByteBuffer> processing = Optional.empty();
 
+	/**
+	 * 読み出し中の ByteBuffer を保持している Block。読み出しが終了した時点で解放する。
+	 */
+	private Optional<Block> processingBlock = Optional.empty();
+
 	/**
 	 * ストリーム上で EOF を検知したかのフラグ。
 	 */
@@ -68,7 +73,8 @@ class PipeInputStream extends InputStream implements Consumer<Block> {
 			if(logger.isTraceEnabled()) {
 				logger.trace(signature + ": apply(" + block + ") enqueueing specified block message as stream data");
 			}
-			receiveQueue.add(block);
+			// パイプのメッセージソースによる解放後も参照するため参照カウントを増やす
+			receiveQueue.add(block.retain());
 			breaker.increment();
 			int size = receiveQueue.size();
 			if(size > maxQueueSize && ! block.eof){
@@ -110,6 +116,22 @@ class PipeInputStream extends InputStream implements Consumer<Block> {
 	public void close(){
 		closed = true;
 		logger.trace(signature + ": close()");
+		// 未読のブロックを解放
+		releaseProcessing();
+		Block block;
+		while((block = receiveQueue.poll()) != null){
+			breaker.decrement();
+			block.release();
+		}
+	}
+
+	/**
+	 * 読み出しが終了したブロックを解放します。
+	 */
+	private void releaseProcessing(){
+		processing = Optional.empty();
+		processingBlock.ifPresent(Block::release);
+		processingBlock = Optional.empty();
 	}
 
 	private Optional<ByteBuffer> processingBuffer() throws IOException {
@@ -121,6 +143,7 @@ class PipeInputStream extends InputStream implements Consumer<Block> {
 			// EOF 到着前に何らかの理由でクローズされた (キューのオーバーフローなど)
 			throw new IOException("stream closed");
 		} else try {
+			releaseProcessing();
 			Block block = receiveQueue.take();
 			breaker.decrement();
 			if(block.eof){
@@ -134,6 +157,7 @@ class PipeInputStream extends InputStream implements Consumer<Block> {
 					logger.trace(signature + ": dequeue block message for stream: " + block);
 				}
 				processing = Optional.of(block.toByteBuffer());
+				processingBlock = Optional.of(block);
 				return processing;
 			}
 		} catch(InterruptedException ex){
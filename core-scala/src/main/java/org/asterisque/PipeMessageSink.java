@@ -57,6 +57,22 @@ public final class
 		return this;
 	}
 
+	// ============================================================================================
+	// ブロックの送信
+	// ============================================================================================
+	/**
+	 * 指定されたバイナリデータを損失率付きの非同期メッセージとして送信します。送受信キューが高負荷の場合、この
+	 * メッセージは損失率に従って破棄される可能性があります。
+	 * このメソッドは渡された buffer をそのまま送信バッファとして使用します。従ってメソッド呼び出しが終わった後に
+	 * バッファの内容を変更した場合、実際に送信されるデータは保証されません。
+	 *
+	 * @param loss 消失しても良い確率を表す 0〜127 までの値 ({@link Block#loss})
+	 */
+	public PipeMessageSink sendDirect(byte[] buffer, int offset, int length, byte loss) {
+		pipe.block(new Block(pipe.id, loss, buffer, offset, length));
+		return this;
+	}
+
 	// ============================================================================================
 	// ブロックの送信
 	// ============================================================================================
@@ -24,15 +24,21 @@ final class PipeMessageSource extends Source<Block> implements Consumer<Block> {
 
 	/**
 	 * Block メッセージ受信時に呼び出される処理。このインスタンスに設定されているコンビネータ (関数) に転送する。
+	 * コンビネータの処理が終了した時点でブロックを解放する。コンビネータの終了後もブロックを参照する場合は
+	 * {@link org.asterisque.msg.Block#retain()} する必要がある。
 	 *
 	 * @param block 受信したメッセージ
 	 */
 	public void accept(Block block) {
-		synchronized(this) {
-			sequence(block);
-			if(block.eof) {
-				finish();
+		try {
+			synchronized(this) {
+				sequence(block);
+				if(block.eof) {
+					finish();
+				}
 			}
+		} finally {
+			block.release();
 		}
 	}
 
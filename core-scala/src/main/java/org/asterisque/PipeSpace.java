@@ -11,10 +11,10 @@ import org.asterisque.msg.Open;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 
 // ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
 // PipeSpace
@@ -27,14 +27,15 @@ class PipeSpace {
 	private static final Logger logger = LoggerFactory.getLogger(PipeSpace.class);
 
 	/**
-	 * 新規のパイプ ID を発行するためのシーケンス番号。
+	 * このパイプ空間から新規に発行したパイプ ID の割り当て状況。ID 0 は Control メッセージ用に予約されている
+	 * ためクライアント側では割り当てない。
 	 */
-	private final AtomicInteger sequence = new AtomicInteger(0);
+	private final PipeIdAllocator ids;
 
 	/**
-	 * 現在アクティブな Pipe のマップ。
+	 * 現在アクティブな Pipe のテーブル。
 	 */
-	private final ConcurrentHashMap<Short,Pipe> pipes = new ConcurrentHashMap<>();
+	private final PipeTable pipes = new PipeTable();
 
 	/**
 	 * クローズプロセスに入っているかの判定。
@@ -47,21 +48,20 @@ class PipeSpace {
 	public PipeSpace(Session session){
 		this.session = session;
 		this.pipeMask = session.isServer? Pipe.UniqueMask: 0;
+		this.ids = new PipeIdAllocator(pipeMask == 0);
 	}
 
 	// ==============================================================================================
 	// パイプの参照
 	// ==============================================================================================
 	/**
-	 * このパイプ空間から指定された ID のパイプを参照します。ID に該当するパイプが存在しない場合は empty() を返し
-	 * ます。
+	 * このパイプ空間から指定された ID のパイプを参照します。受信メッセージごとに呼び出されるため Optional を
+	 * 使用せず、ID に該当するパイプが存在しない場合は null を返します。
+	 *
+	 * @return パイプ、または該当するパイプが存在しない場合は null
 	 */
-	public Optional<Pipe> get(short pipeId){
-		Pipe pipe = pipes.get(pipeId);
-		if(pipe == null){
-			return Optional.empty();
-		}
-		return Optional.of(pipe);
+	public Pipe get(short pipeId){
+		return pipes.get(pipeId);
 	}
 
 	// ==============================================================================================
@@ -69,16 +69,19 @@ class PipeSpace {
 	// ==============================================================================================
 	/**
 	 * ピアから受信した Open メッセージに対応するパイプを構築します。要求されたパイプ ID が既に使用されている場合は
-	 * Optional.empty() を返します。
+	 * Optional.empty() を返します。このパイプ空間が発行する側の ID が指定された場合も同様です。
 	 */
 	public Optional<Pipe> create(Open open) {
 		assert(! closing.get());
+		if(isLocal(open.pipeId)){
+			logger.error("pipe-id of local space specified: " + open.pipeId);
+			return Optional.empty();
+		}
 		// 新しいパイプを構築して登録
 		Pipe newPipe = new Pipe(open.pipeId, open.priority, open.functionId, session);
-		Pipe oldPipe = pipes.putIfAbsent(open.pipeId, newPipe);
-		if(oldPipe != null) {
+		if(! pipes.putIfAbsent(open.pipeId, newPipe)) {
 			// 既に使用されているパイプ ID が指定された場合はエラー
-			logger.error("duplicate pipe-id specified: " + open.pipeId + "; " + oldPipe);
+			logger.error("duplicate pipe-id specified: " + open.pipeId + "; " + pipes.get(open.pipeId));
 			return Optional.empty();
 		}
 		return Optional.of(newPipe);
@@ -88,29 +91,113 @@ class PipeSpace {
 	// パイプの新規作成
 	// ==============================================================================================
 	/**
-	 * ピアに対して Open メッセージを送信するためのパイプを生成します。
+	 * ピアに対して Open メッセージを送信するためのパイプを生成します。パイプ ID の空きがない場合は直ちに例外が
+	 * 発生します。
+	 *
+	 * @throws IllegalStateException 使用可能なパイプ ID が存在しない場合
 	 */
 	public Pipe create(byte priority, short function){
-		while(true) {
-			assert(! closing.get());
-			short id = (short) ((sequence.getAndIncrement() & 0x7FFF) | pipeMask);
-			if(id != 0){
-				Pipe pipe = new Pipe(id, priority, function, session);
-				if(pipes.putIfAbsent(id, pipe) == null){
-					return pipe;
+		assert(! closing.get());
+		int index = ids.allocate();
+		if(index < 0){
+			throw new IllegalStateException(String.format(
+				"pipe-id space exhausted: %d of %d pipes in use on session %s", ids.inUse(), ids.capacity(), session.id()));
+		}
+		short id = (short)(index | pipeMask);
+		Pipe pipe = new Pipe(id, priority, function, session);
+		if(! pipes.putIfAbsent(id, pipe)){
+			// ピアからこちら側の ID の Open は受け付けないため発生しない
+			ids.release(index);
+			throw new IllegalStateException("pipe-id " + id + " allocated but already in use: " + pipes.get(id));
+		}
+		return pipe;
+	}
+
+	/**
+	 * ピアに対して Open メッセージをまとめて送信するためのパイプを生成します。パイプ ID はまとめて確保され、
+	 * 指定された呼び出しの数だけ空きがない場合はいずれのパイプも生成せずに例外が発生します。
+	 *
+	 * @param calls パイプを生成する呼び出し
+	 * @return 呼び出しと同じ順序で生成したパイプ
+	 * @throws IllegalStateException 使用可能なパイプ ID が不足している場合
+	 */
+	public List<Pipe> create(List<Call> calls){
+		assert(! closing.get());
+		int[] indices = ids.allocate(calls.size());
+		if(indices == null){
+			throw new IllegalStateException(String.format(
+				"pipe-id space exhausted: %d pipes requested, %d of %d pipes in use on session %s",
+				calls.size(), ids.inUse(), ids.capacity(), session.id()));
+		}
+		List<Pipe> created = new ArrayList<>(calls.size());
+		for(int i = 0; i < indices.length; i ++){
+			Call call = calls.get(i);
+			short id = (short)(indices[i] | pipeMask);
+			Pipe pipe = new Pipe(id, call.priority, call.function, session);
+			if(! pipes.putIfAbsent(id, pipe)){
+				// ピアからこちら側の ID の Open は受け付けないため発生しない
+				created.forEach(p -> pipes.remove(p.id));
+				for(int index : indices){
+					ids.release(index);
 				}
+				throw new IllegalStateException("pipe-id " + id + " allocated but already in use: " + pipes.get(id));
 			}
+			created.add(pipe);
 		}
+		return created;
 	}
 
 	// ==============================================================================================
 	// パイプの破棄
 	// ==============================================================================================
 	/**
-	 * ピアに対して Open メッセージを送信するためのパイプを生成します。
+	 * 指定された ID のパイプをこのパイプ空間から削除します。このパイプ空間が発行した ID であれば再利用のため
+	 * 解放し、呼び出しが完了している場合はパイプの生成からの経過時間を function の呼び出し時間としてノードの
+	 * メトリクスに記録します。
+	 *
+	 * @param completed ピアから結果の Close を受信して呼び出しが完了した場合 true、中断やセッションのクローズ
+	 *                  によって破棄する場合 false
+	 */
+	public void destroy(short pipeId, boolean completed){
+		Pipe pipe = pipes.remove(pipeId);
+		if(pipe != null && isLocal(pipeId)){
+			ids.release(pipeId & ~Pipe.UniqueMask);
+			// こちら側から呼び出し完了した function の呼び出し時間を記録
+			if(completed){
+				session.node.metrics.latency(pipe.function).record(System.nanoTime() - pipe.createdAt);
+			}
+		}
+	}
+
+	// ==============================================================================================
+	// 使用状況の参照
+	// ==============================================================================================
+	/**
+	 * このパイプ空間に存在するパイプ数を参照します。
+	 */
+	public int size(){
+		return pipes.size();
+	}
+
+	/**
+	 * このパイプ空間から発行したパイプ ID のうち現在使用中の数を参照します。
+	 */
+	public int inUse(){
+		return ids.inUse();
+	}
+
+	/**
+	 * このパイプ空間から発行したパイプ ID の同時使用数の最大値を参照します。
+	 */
+	public int highWater(){
+		return ids.highWater();
+	}
+
+	/**
+	 * 指定されたパイプ ID がこのパイプ空間から発行される側のものかを判定します。
 	 */
-	public void destroy(short pipeId){
-		pipes.remove(pipeId);
+	private boolean isLocal(short pipeId){
+		return (pipeId & Pipe.UniqueMask) == pipeMask;
 	}
 
 	// ==============================================================================================
@@ -126,12 +213,12 @@ class PipeSpace {
 		if(closing.compareAndSet(false, true) || ! graceful){
 			if(graceful){
 				// 残っているすべてのパイプに Close メッセージを送信
-				pipes.values().forEach( pipe -> {
+				pipes.forEach( pipe -> {
 					Abort abort = new Abort(Abort.SessionClosing, "session " + session.id() + " closing");
 					pipe.close(new Close(pipe.id, abort));
 				});
 			}
-			pipes.clear();
+			pipes.forEach(pipe -> destroy(pipe.id, false));
 		}
 	}
 
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// PipeTable
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * パイプ ID をインデックスとしてアクティブな {@link Pipe} を保持するテーブルです。
+ *
+ * 16 ビットのパイプ ID 空間を {@link #PageSize} 個ずつのページに分割し、ページは最初にそのページの ID が
+ * 登録された時に確保します。参照はボクシングやハッシュ計算を伴わない 2 回の配列参照で行われます。パイプの
+ * 生成と破棄が行われていないセッションではページの参照配列のみを保持します。確保したページはセッションが
+ * 存在する間は再利用のため解放しません。
+ *
+ * @author Takami Torao
+ */
+final class PipeTable {
+
+	/** 1 ページに含まれるスロット数 */
+	static final int PageSize = 256;
+
+	/** ページ数 */
+	private static final int Pages = (1 << Short.SIZE) / PageSize;
+
+	/** パイプ ID の上位 8 ビットをインデックスとするページ */
+	private final AtomicReferenceArray<AtomicReferenceArray<Pipe>> pages = new AtomicReferenceArray<>(Pages);
+
+	/** 登録されているパイプ数 */
+	private final AtomicInteger size = new AtomicInteger(0);
+
+	// ==============================================================================================
+	// パイプの参照
+	// ==============================================================================================
+	/**
+	 * 指定された ID のパイプを参照します。
+	 *
+	 * @return パイプ、または該当するパイプが存在しない場合は null
+	 */
+	public Pipe get(short pipeId){
+		AtomicReferenceArray<Pipe> page = pages.get(page(pipeId));
+		return page == null? null: page.get(slot(pipeId));
+	}
+
+	// ==============================================================================================
+	// パイプの登録
+	// ==============================================================================================
+	/**
+	 * 指定された ID にパイプが登録されていなければ登録します。
+	 *
+	 * @return 登録した場合 true、既に同じ ID のパイプが存在する場合 false
+	 */
+	public boolean putIfAbsent(short pipeId, Pipe pipe){
+		int p = page(pipeId);
+		AtomicReferenceArray<Pipe> page = pages.get(p);
+		if(page == null){
+			pages.compareAndSet(p, null, new AtomicReferenceArray<>(PageSize));
+			page = pages.get(p);
+		}
+		if(page.compareAndSet(slot(pipeId), null, pipe)){
+			size.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	// ==============================================================================================
+	// パイプの削除
+	// ==============================================================================================
+	/**
+	 * 指定された ID のパイプを削除します。
+	 *
+	 * @return 削除したパイプ、または該当するパイプが存在しない場合は null
+	 */
+	public Pipe remove(short pipeId){
+		AtomicReferenceArray<Pipe> page = pages.get(page(pipeId));
+		if(page == null){
+			return null;
+		}
+		Pipe pipe = page.getAndSet(slot(pipeId), null);
+		if(pipe != null){
+			size.decrementAndGet();
+		}
+		return pipe;
+	}
+
+	// ==============================================================================================
+	// 全パイプの参照
+	// ==============================================================================================
+	/**
+	 * 登録されている全てのパイプに対して指定された処理を実行します。
+	 */
+	public void forEach(Consumer<Pipe> f){
+		for(int p = 0; p < Pages; p ++){
+			AtomicReferenceArray<Pipe> page = pages.get(p);
+			if(page != null){
+				for(int i = 0; i < PageSize; i ++){
+					Pipe pipe = page.get(i);
+					if(pipe != null){
+						f.accept(pipe);
+					}
+				}
+			}
+		}
+	}
+
+	// ==============================================================================================
+	// 全パイプの削除
+	// ==============================================================================================
+	/**
+	 * 登録されている全てのパイプを削除します。
+	 */
+	public void clear(){
+		for(int p = 0; p < Pages; p ++){
+			AtomicReferenceArray<Pipe> page = pages.get(p);
+			if(page != null){
+				for(int i = 0; i < PageSize; i ++){
+					if(page.getAndSet(i, null) != null){
+						size.decrementAndGet();
+					}
+				}
+			}
+		}
+	}
+
+	// ==============================================================================================
+	// パイプ数の参照
+	// ==============================================================================================
+	/**
+	 * このテーブルに登録されているパイプ数を参照します。
+	 */
+	public int size(){
+		return size.get();
+	}
+
+	private static int page(short pipeId){
+		return (pipeId & 0xFFFF) / PageSize;
+	}
+
+	private static int slot(short pipeId){
+		return (pipeId & 0xFFFF) % PageSize;
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// ReconnectPolicy
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * クライアントセッションの Wire が切断された、または接続に失敗したときに次の接続を試みるまでの待機時間を
+ * 決定するポリシーです。{@link Options#KEY_RECONNECT_POLICY} で指定します。
+ *
+ * 待機はノードで共有するタイマーで行われるため、ポリシーの実装は待機時間を計算するだけでブロックしてはいけ
+ * ません。
+ *
+ * @author Takami Torao
+ */
+@FunctionalInterface
+public interface ReconnectPolicy {
+
+	/**
+	 * 再接続を行わないポリシーです。
+	 */
+	public static final ReconnectPolicy None = attempt -> -1;
+
+	// ==============================================================================================
+	// 待機時間の参照
+	// ==============================================================================================
+	/**
+	 * 指定された回数目の接続を試みるまでの待機時間を参照します。
+	 *
+	 * @param attempt 最後に接続が成功してから何回目の再接続か (1 から開始)
+	 * @return 待機時間 (ミリ秒)。再接続を断念する場合は負の値
+	 */
+	public long delay(int attempt);
+
+	// ==============================================================================================
+	// ポリシーの構築
+	// ==============================================================================================
+	/**
+	 * 指定されたオプションの値から再接続ポリシーを参照します。{@link Options#KEY_RECONNECT_POLICY} が指定され
+	 * ていない場合は再接続オプションの値による {@link Backoff} を構築します。
+	 */
+	public static ReconnectPolicy of(Options options){
+		return options.getOrElse(Options.KEY_RECONNECT_POLICY, () -> new Backoff(
+			options.get(Options.KEY_RECONNECT_BASE_DELAY).get(),
+			options.get(Options.KEY_RECONNECT_MAX_DELAY).get(),
+			options.get(Options.KEY_RECONNECT_MAX_ATTEMPTS).get()));
+	}
+
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	// Backoff
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	/**
+	 * 上限付きの指数バックオフに full jitter を適用したポリシーです。{@code attempt} 回目の待機時間は
+	 * {@code [0, min(maxDelay, baseDelay * 2^(attempt-1))]} の一様乱数となります。
+	 *
+	 * サーバの再起動などで多数のクライアントが同時に切断された場合でも再接続の時刻が分散されるため、サーバの
+	 * 接続受付キューに接続要求が集中しません。
+	 */
+	public static final class Backoff implements ReconnectPolicy {
+
+		/** 最初の再接続の待機時間の上限 (ミリ秒) */
+		public final long baseDelay;
+
+		/** 待機時間の上限 (ミリ秒) */
+		public final long maxDelay;
+
+		/** 再接続を試みる最大回数 */
+		public final int maxAttempts;
+
+		/**
+		 * @param baseDelay 最初の再接続の待機時間の上限 (ミリ秒)
+		 * @param maxDelay 待機時間の上限 (ミリ秒)
+		 * @param maxAttempts 再接続を試みる最大回数
+		 */
+		public Backoff(long baseDelay, long maxDelay, int maxAttempts){
+			if(baseDelay < 0 || maxDelay < baseDelay || maxAttempts < 0){
+				throw new IllegalArgumentException(
+					"invalid backoff: base=" + baseDelay + ", max=" + maxDelay + ", attempts=" + maxAttempts);
+			}
+			this.baseDelay = baseDelay;
+			this.maxDelay = maxDelay;
+			this.maxAttempts = maxAttempts;
+		}
+
+		@Override
+		public long delay(int attempt){
+			if(attempt > maxAttempts){
+				return -1;
+			}
+			// 2^(attempt-1) 倍がオーバーフローしないようにシフト量を制限
+			int shift = Math.min(Math.max(attempt - 1, 0), Long.numberOfLeadingZeros(Math.max(baseDelay, 1)) - 1);
+			long ceiling = Math.min(maxDelay, baseDelay << shift);
+			return ThreadLocalRandom.current().nextLong(ceiling + 1);
+		}
+
+		@Override
+		public String toString(){
+			return "Backoff(" + baseDelay + "ms," + maxDelay + "ms," + maxAttempts + ")";
+		}
+	}
+}
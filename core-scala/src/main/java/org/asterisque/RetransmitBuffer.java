@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque;
+
+import org.asterisque.msg.Block;
+import org.asterisque.msg.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// RetransmitBuffer
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * セッション再開のためにピアへ送信したがまだ受信確認 (ack) されていないメッセージを保持する固定長のリング
+ * バッファです。
+ *
+ * メッセージにシーケンス番号は付加せず、セッションが開始してから Wire に送出した Control 以外のメッセージの
+ * 通し番号 (1 から開始) を暗黙のシーケンス番号とします。ピアは受信した Control 以外のメッセージ数を累積 ack
+ * として応答するため、ack された番号以前のメッセージはバッファから削除されます。Wire の再接続後はピアが受信
+ * 済みと応答した番号より後のメッセージだけを再送します。
+ *
+ * ack されていないメッセージが容量を超えた場合は古いメッセージから上書きします。上書きされたメッセージを
+ * ピアが受信していない場合、そのセッションは再開できません。
+ *
+ * @author Takami Torao
+ */
+final class RetransmitBuffer {
+
+	/** 保持するメッセージの最大数 */
+	public final int capacity;
+
+	/** 送信済みメッセージのリング。シーケンス番号 {@code seq} のメッセージは {@code (seq - 1) % capacity} に保持される */
+	private final Message[] ring;
+
+	/** 最後に送信したメッセージのシーケンス番号 (送信したメッセージ数) */
+	private long sent = 0;
+
+	/** ピアが受信を確認したメッセージ数 */
+	private long acked = 0;
+
+	// ==============================================================================================
+	// コンストラクタ
+	// ==============================================================================================
+	/**
+	 * @param capacity 保持するメッセージの最大数
+	 */
+	public RetransmitBuffer(int capacity){
+		if(capacity <= 0){
+			throw new IllegalArgumentException("invalid retransmit buffer capacity: " + capacity);
+		}
+		this.capacity = capacity;
+		this.ring = new Message[capacity];
+	}
+
+	// ==============================================================================================
+	// 送信メッセージの記録
+	// ==============================================================================================
+	/**
+	 * Wire に送出したメッセージを記録します。受信バッファを参照している Block は ack されるまで参照カウントを
+	 * 保持します。
+	 */
+	public synchronized void record(Message msg){
+		int i = index(++ sent);
+		if(ring[i] != null){
+			// ack されないまま容量を超えたため最も古いメッセージを上書き
+			dispose(ring[i]);
+		}
+		if(msg instanceof Block){
+			((Block)msg).retain();
+		}
+		ring[i] = msg;
+	}
+
+	// ==============================================================================================
+	// 受信確認
+	// ==============================================================================================
+	/**
+	 * ピアから受信した累積 ack を反映し、受信が確認されたメッセージをバッファから削除します。既に反映済みの値
+	 * より小さい ack は無視します。
+	 *
+	 * @param count ピアが受信したメッセージ数
+	 * @throws ProtocolViolationException 送信していないメッセージの受信が確認された場合
+	 */
+	public synchronized void ack(long count) throws ProtocolViolationException {
+		if(count > sent){
+			throw new ProtocolViolationException("ack for unsent message: " + count + " > " + sent);
+		}
+		for(long seq = Math.max(acked, floor()) + 1; seq <= count; seq ++){
+			int i = index(seq);
+			dispose(ring[i]);
+			ring[i] = null;
+		}
+		acked = Math.max(acked, count);
+	}
+
+	// ==============================================================================================
+	// 再送メッセージの参照
+	// ==============================================================================================
+	/**
+	 * ピアが受信済みと応答したメッセージ数より後に送信したメッセージを送信順に参照します。参照したメッセージは
+	 * 再送のため引き続きバッファに保持されます (再送時に改めて記録されることはありません)。
+	 *
+	 * @param count ピアが受信したメッセージ数
+	 * @return 再送するメッセージ。必要なメッセージが上書きされている場合は empty
+	 */
+	public synchronized Optional<List<Message>> replay(long count){
+		if(count < floor() || count > sent){
+			return Optional.empty();
+		}
+		List<Message> messages = new ArrayList<>((int)(sent - count));
+		for(long seq = count + 1; seq <= sent; seq ++){
+			messages.add(ring[index(seq)]);
+		}
+		return Optional.of(messages);
+	}
+
+	// ==============================================================================================
+	// バッファのクリア
+	// ==============================================================================================
+	/**
+	 * 保持しているすべてのメッセージを破棄します。
+	 */
+	public synchronized void clear(){
+		for(int i = 0; i < ring.length; i ++){
+			dispose(ring[i]);
+			ring[i] = null;
+		}
+		acked = sent;
+	}
+
+	/**
+	 * @return ack されていないメッセージ数 (容量を上限とする)
+	 */
+	public synchronized int size(){
+		return (int)(sent - Math.max(acked, floor()));
+	}
+
+	/**
+	 * @return 送信したメッセージ数
+	 */
+	public synchronized long sent(){
+		return sent;
+	}
+
+	/**
+	 * バッファに保持されている最も古いメッセージの直前のシーケンス番号。ピアの受信数がこれより小さい場合は再送
+	 * できない。
+	 */
+	private long floor(){
+		return Math.max(0, sent - capacity);
+	}
+
+	private int index(long seq){
+		return (int)((seq - 1) % capacity);
+	}
+
+	private static void dispose(Message msg){
+		if(msg instanceof Block){
+			((Block)msg).release();
+		}
+	}
+}
@@ -10,6 +10,9 @@ import org.asterisque.msg.Open;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
@@ -110,7 +113,8 @@ public abstract class Service {
 	// function の定義
 	// ============================================================================================
 	/**
-	 * サブクラスから function 番号が定義されているメソッドを抽出し同期呼び出し用に定義。
+	 * サブクラスから function 番号が定義されているメソッドを抽出し同期呼び出し用に定義。メソッドはこの時点で
+	 * {@link java.lang.invoke.MethodHandle} に変換され、パラメータごとの型変換処理も決定されます。
 	 */
 	private void declare(Export export, Method m){
 		if(m.getReturnType() != CompletableFuture.class){
@@ -120,26 +124,7 @@ public abstract class Service {
 		short id = export.value();
 		String name = Debug.getSimpleName(m);
 		logger.debug("  function " + id + " to " + name);
-		accept(id, name, args -> {
-			try {
-				Class<?>[] types = m.getParameterTypes();
-				if(args.length != types.length) {
-					throw new IllegalArgumentException("invalid parameter length: " + args.length + " != " + types.length);
-				}
-				Object[] params = new Object[types.length];
-				for(int i = 0; i < params.length; i++) {
-					params[i] = TypeConversion.toMethodCall(args[i], types[i]);
-				}
-				@SuppressWarnings("unchecked")
-				CompletableFuture<Object> result = (CompletableFuture<Object>) m.invoke(Service.this, params);
-				return result;
-			} catch(Throwable ex) {
-				logger.error("cannot invoke service: " + Debug.getSimpleName(m) + ", with parameter " + Debug.toString(args));
-				CompletableFuture<Object> result = new CompletableFuture<Object>();
-				result.completeExceptionally(ex);
-				return result;
-			}
-		});
+		accept(id, name, new Invoker(this, m));
 	}
 
 	// ============================================================================================
@@ -168,10 +153,13 @@ public abstract class Service {
 	 * @param open 受信した Open メッセージ
 	 */
 	void dispatch(Pipe pipe, Open open, String id){
-		Function func = functions.get(pipe.function);
+		Function func = function(pipe.function);
 		if(func != null) {
 			pipe.future.whenComplete(func::disconnect);
 			logger.debug(id + ": calling local method: " + func.name);
+			if(pipe.session.tracer != null){
+				pipe.session.tracer.started(pipe);
+			}
 			func.apply(open.params).whenComplete((result, ex) -> {
 				logger.trace(id + ": whenComplete(" + Debug.toString(result) + "," + ex + ")");
 				if(ex == null) {
@@ -187,6 +175,18 @@ public abstract class Service {
 		}
 	}
 
+	// ============================================================================================
+	// 呼び出し処理の参照
+	// ============================================================================================
+	/**
+	 * 指定されたファンクション番号に対する処理を参照します。
+	 *
+	 * @return 関数定義、または定義されていない場合は null
+	 */
+	Function function(short function){
+		return functions.get(function);
+	}
+
 	// ============================================================================================
 	// 呼び出し処理の設定
 	// ============================================================================================
@@ -242,6 +242,63 @@ public abstract class Service {
 		}
 	}
 
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	// Invoker
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	/**
+	 * @Export 宣言されたメソッドを呼び出す処理です。メソッドは宣言時にサービスインスタンスへ束縛した
+	 * {@link MethodHandle} に変換し、パラメータの型変換処理もパラメータ型ごとに事前に決定するため、呼び出し
+	 * ごとのリフレクションや型の検索は行いません。
+	 */
+	private static final class Invoker implements java.util.function.Function<Object[],CompletableFuture<Object>> {
+		private final String name;
+		private final MethodHandle handle;
+		private final java.util.function.Function<Object,Object>[] converters;
+
+		@SuppressWarnings("unchecked")
+		public Invoker(Service service, Method m){
+			this.name = Debug.getSimpleName(m);
+			Class<?>[] types = m.getParameterTypes();
+			try {
+				// public でないクラスに定義されたメソッドも Method.invoke と同様に呼び出せるようにする
+				m.setAccessible(true);
+			} catch(RuntimeException ex){
+				logger.debug("cannot make accessible: " + name + ": " + ex);
+			}
+			try {
+				this.handle = MethodHandles.lookup().unreflect(m)
+					.bindTo(service)
+					.asSpreader(Object[].class, types.length)
+					.asType(MethodType.methodType(CompletableFuture.class, Object[].class));
+			} catch(IllegalAccessException ex){
+				throw new IllegalArgumentException("cannot access method with @Export annotation: " + name, ex);
+			}
+			this.converters = Stream.of(types).map(TypeConversion::methodCallConverter)
+				.toArray(java.util.function.Function[]::new);
+		}
+
+		@Override
+		public CompletableFuture<Object> apply(Object[] args) {
+			try {
+				if(args.length != converters.length) {
+					throw new IllegalArgumentException("invalid parameter length: " + args.length + " != " + converters.length);
+				}
+				Object[] params = new Object[converters.length];
+				for(int i = 0; i < params.length; i++) {
+					params[i] = converters[i].apply(args[i]);
+				}
+				@SuppressWarnings("unchecked")
+				CompletableFuture<Object> result = (CompletableFuture<Object>) handle.invokeExact(params);
+				return result;
+			} catch(Throwable ex) {
+				logger.error("cannot invoke service: " + name + ", with parameter " + Debug.toString(args));
+				CompletableFuture<Object> result = new CompletableFuture<>();
+				result.completeExceptionally(ex);
+				return result;
+			}
+		}
+	}
+
 	/**
 	 * ByteBuffer に関する拡張
 	 * @param buffer ByteBuffer
@@ -5,26 +5,34 @@
 */
 package org.asterisque;
 
+import org.asterisque.metrics.SessionMetrics;
 import org.asterisque.msg.*;
 import org.asterisque.util.CircuitBreaker;
 import org.asterisque.util.Latch;
+import org.asterisque.util.TimingWheel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.SocketAddress;
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
-import java.util.stream.Stream;
 
 // ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
 // Session
@@ -85,6 +93,57 @@ public class Session {
 	private final PipeSpace pipes;
 	private final Wire.Plug plug;
 
+	/** Wire の切断または接続失敗時に次の接続までの待機時間を決定するポリシー */
+	private final ReconnectPolicy reconnectPolicy;
+	/** ノード上で同時に実行中とすることのできる接続処理の数 */
+	private final int maxConnecting;
+	/** 最後に接続が成功してから失敗した接続の回数 */
+	private final AtomicInteger attempts = new AtomicInteger(0);
+	/** Wire を接続するたびに増加する世代番号 */
+	private final AtomicInteger generation = new AtomicInteger(0);
+
+	/**
+	 * Wire の接続後に送信キューより先に送出する状態同期、累積 ack、再送メッセージ。状態同期が完了するまで送信
+	 * キューのメッセージは送出しない。
+	 */
+	private final Queue<Message> preface = new ConcurrentLinkedQueue<>();
+	/** 状態同期 (または再開) が完了し送信キューのメッセージを送出できる場合 true。preface のロックで更新する */
+	private volatile boolean established = false;
+
+	/** セッション再開のための受信確認されていない送信メッセージ。{@link Options#KEY_RESUME} が無効な場合は null */
+	private final RetransmitBuffer retransmit;
+	/** ピアとセッションの再開を合意している場合 true */
+	private volatile boolean resumable = false;
+	/** Wire の再接続後にピアの累積 ack を受信して再送を開始するまでの間 true */
+	private volatile boolean resuming = false;
+	/** 状態同期したピアのノード ID。再開を要求された時の照合に使用する */
+	private volatile UUID peer = Asterisque.Zero;
+	/** 状態同期した Wire で認証されたピアのプリンシパル。再開を要求された時の照合に使用する */
+	private volatile Optional<Principal> principal = Optional.empty();
+	/** セッションが開始してから受信した Control 以外のメッセージ数 (Wire の読み込みスレッドからのみ更新) */
+	private volatile long received = 0;
+	/** 最後にピアへ送信した累積 ack。preface のロックで更新する */
+	private volatile long ackSent = 0;
+	/** 遅延 ack がタイマーに登録済みの場合 true */
+	private final AtomicBoolean ackScheduled = new AtomicBoolean(false);
+	/** 即座に累積 ack を送信する未確認の受信メッセージ数 */
+	private final int ackInterval;
+	/** 累積 ack を送信するまでの最大待機時間 (ミリ秒) */
+	private final int ackDelay;
+
+	/** 最後にメッセージを Wire に送出した時刻 (ナノ秒) */
+	private volatile long lastSent = System.nanoTime();
+	/** 最後にメッセージを Wire から受信した時刻 (ナノ秒) */
+	private volatile long lastReceived = System.nanoTime();
+	/** ping によって計測した往復時間の指数移動平均 (ナノ秒)。未計測の場合は 0 */
+	private volatile long roundTripTime = 0;
+
+	/**
+	 * 現在の Wire に対して登録している死活監視、または Wire 切断後の再開期限のタイマー。Wire の切断時に取り消さ
+	 * れる。
+	 */
+	private volatile Optional<TimingWheel.Timeout> watchdog = Optional.empty();
+
 	/** 出力キューの高負荷を検知するブレーカー */
 	final CircuitBreaker writeBreaker;
 	final CircuitBreaker readBreaker;
@@ -95,6 +154,17 @@ public class Session {
 	 */
 	final Latch writeBarrier;
 
+	/**
+	 * function 呼び出しの区間ごとの時間を記録するトレーサー。{@link Options#KEY_TRACE_CALLS} が無効な場合は
+	 * メッセージごとの判定を最小にするため null。
+	 */
+	final CallTracer tracer;
+
+	/**
+	 * このセッションで送受信したメッセージの統計と負荷状態。
+	 */
+	public final SessionMetrics metrics;
+
 	/**
 	 * このセッションがクローズされたときに呼び出されるイベントハンドラです。
 	 */
@@ -129,8 +199,16 @@ public class Session {
 		int readHardLimit = options.get(Options.KEY_READ_HARD_LIMIT).get();
 		int writeSoftLimit = options.get(Options.KEY_WRITE_SOFT_LIMIT).get();
 		int writeHardLimit = options.get(Options.KEY_WRITE_HARD_LIMIT).get();
+		long readSojournTarget = TimeUnit.MILLISECONDS.toNanos(options.get(Options.KEY_READ_SOJOURN_TARGET).get());
+		long writeSojournTarget = TimeUnit.MILLISECONDS.toNanos(options.get(Options.KEY_WRITE_SOJOURN_TARGET).get());
+		this.reconnectPolicy = ReconnectPolicy.of(options);
+		this.maxConnecting = options.get(Options.KEY_MAX_CONNECTING).get();
+		int resumeBuffer = options.get(Options.KEY_RESUME_BUFFER).get();
+		this.retransmit = options.get(Options.KEY_RESUME).get()? new RetransmitBuffer(resumeBuffer): null;
+		this.ackInterval = Math.max(1, resumeBuffer / 4);
+		this.ackDelay = options.get(Options.KEY_ACK_DELAY).get();
 
-		this.writeBreaker = new CircuitBreaker(writeSoftLimit, writeHardLimit) {
+		this.writeBreaker = new CircuitBreaker(writeSoftLimit, writeHardLimit, writeSojournTarget) {
 			@Override
 			protected void overload(boolean overload) {
 				// Wire 出力が過負荷になった場合は同期 Block 送信を一時停止
@@ -145,11 +223,11 @@ public class Session {
 			}
 		};
 
-		this.readBreaker = new CircuitBreaker(readSoftLimit, readHardLimit) {
+		this.readBreaker = new CircuitBreaker(readSoftLimit, readHardLimit, readSojournTarget) {
 			@Override
 			protected void overload(boolean overload) {
 				// 同期 Block 読み込みが過負荷になった場合は Wire からの読み込み一時停止
-				wire.get().setReadable(!overload);
+				wire.ifPresent(w -> w.setReadable(! overload));
 			}
 			@Override
 			protected void broken() {
@@ -163,15 +241,52 @@ public class Session {
 
 		this.pipes = new PipeSpace(this);
 
+		this.tracer = options.get(Options.KEY_TRACE_CALLS).get()? new CallTracer(node.metrics, pipes, isServer): null;
+
+		this.metrics = new SessionMetrics(departure::size, writeBreaker, readBreaker, pipes::size, pipes::highWater,
+			this::getRoundTripTime);
+
 		this.plug = new Wire.Plug(){
 			@Override
-			public Message produce() { return departure.ship(); }
+			public Message produce() {
+				Message msg = preface.poll();
+				if(msg != null){
+					lastSent = System.nanoTime();
+					metrics.outbound(msg);
+					return msg;
+				}
+				if(! established){
+					return null;
+				}
+				msg = departure.ship();
+				if(msg != null){
+					lastSent = System.nanoTime();
+					metrics.outbound(msg);
+					if(resumable && ! (msg instanceof Control)){
+						retransmit.record(msg);
+					}
+					if(tracer != null){
+						tracer.departed(msg);
+					}
+				}
+				return msg;
+			}
 			@Override
 			public void consume(Message msg) {
+				lastReceived = System.nanoTime();
+				metrics.inbound(msg);
+				if(resumable && ! (msg instanceof Control)){
+					received ++;
+					acknowledge();
+				}
 				try {
 					deliver(msg);
 				} catch(ProtocolViolationException ex){
 					logger.error(logId() + ": protocol violation", ex);
+					// パイプへ配信される前に拒否されたブロックを解放
+					if(msg instanceof Block){
+						((Block)msg).release();
+					}
 					close(true);
 				}
 			}
@@ -179,6 +294,14 @@ public class Session {
 			public void onClose(Wire wire) { reconnect(); }
 			@Override
 			public String id(){ return logId(); }
+			@Override
+			public void sent(Message msg, int bytes){ metrics.outbound(msg, bytes); }
+			@Override
+			public void received(Message msg, int bytes){ metrics.inbound(msg, bytes); }
+			@Override
+			public void compressed(int original, int compressed, long nanos){ metrics.compressed(original, compressed, nanos); }
+			@Override
+			public void decompressed(int original, int compressed, long nanos){ metrics.decompressed(original, compressed, nanos); }
 		};
 
 		logger.debug(logId() + ": session created, waiting sync-config");
@@ -245,6 +368,12 @@ public class Session {
 
 			// Wire のクローズ
 			disconnect();
+			if(retransmit != null){
+				retransmit.clear();
+			}
+			if(tracer != null){
+				tracer.clear();
+			}
 
 			// セッションのクローズを通知
 			onClosed.accept(this);
@@ -255,53 +384,164 @@ public class Session {
 	// 接続の実行
 	// ==============================================================================================
 	/**
-	 * このセッションを非同期で接続状態にします。
+	 * このセッションを非同期で接続状態にします。クライアント側ではノード上で実行中の接続処理の数が
+	 * {@link Options#KEY_MAX_CONNECTING} に達している場合、接続の開始を再接続ポリシーの待機時間だけ保留します。
+	 * 保留は再接続の試行回数に数えません。
 	 */
 	private void connect() {
+		if(closing.get()){
+			return;
+		}
+		if(! isServer && ! node.beginConnect(maxConnecting)){
+			logger.debug(logId() + ": too many connections in progress on node, deferring");
+			retry(Math.max(attempts.get(), 1));
+			return;
+		}
 		logger.debug(logId() + ": connecting...");
-		Optional<CompletableFuture<Wire>> opt = wireFactory.get();
+		Optional<CompletableFuture<Wire>> opt;
+		try {
+			opt = wireFactory.get();
+		} catch(RuntimeException ex){
+			endConnect();
+			logger.error(logId() + ": fail to connect: " + ex);
+			retry(attempts.incrementAndGet());
+			return;
+		}
 		if(opt.isPresent()) {
-			opt.get().thenAccept(this::onConnect).exceptionally(ex -> {
-				logger.error(id() + ": fail to connect: " + remote(), ex);
-				return null;
+			opt.get().whenComplete((wire, ex) -> {
+				endConnect();
+				if(ex == null){
+					attempts.set(0);
+					try {
+						onConnect(wire);
+					} catch(RuntimeException e){
+						logger.error(logId() + ": fail to start session: " + remote(), e);
+					}
+				} else {
+					logger.error(logId() + ": fail to connect: " + ex);
+					retry(attempts.incrementAndGet());
+				}
 			});
 		} else {
+			endConnect();
 			logger.debug(logId() + ": reconnection not supported: " + remote());
 		}
 	}
 
+	private void endConnect(){
+		if(! isServer){
+			node.endConnect();
+		}
+	}
+
 	private void onConnect(Wire wire){
-		this.wire = Optional.of(wire);
-		this.departure.wire(Optional.of(wire));
-		wire.setPlug(Optional.of(this.plug));
+		attach(wire);
 
 		wire.setReadable(true);
 
 		// クライアントであればヘッダの送信
 		if(! isServer){
-			// ※サーバ側からセッションIDが割り当てられていない場合は Zero が送信される
+			// ※サーバ側からセッションIDが割り当てられていない場合は Zero が送信される。再開を合意しているセッション
+			// では現在のセッション ID と受信済みのメッセージ数を送信する
+			boolean resume = resumable && ! _id.equals(Asterisque.Zero);
 			int ping = options.get(Options.KEY_PING_REQUEST).get();
 			int timeout = options.get(Options.KEY_SESSION_TIMEOUT_REQUEST).get();
-			SyncConfig header = new SyncConfig(node.id, Asterisque.Zero, System.currentTimeMillis(), ping, timeout);
-			post(Priority.Normal, header.toControl());
+			SyncConfig header = new SyncConfig(
+				node.id, resume? _id: Asterisque.Zero, System.currentTimeMillis(), ping, timeout, localCapabilities());
+			synchronized(preface){
+				resuming = resume;
+				control(header.toControl());
+				if(resume){
+					control(Control.ack(received));
+				}
+			}
 		}
 	}
 
+	private void attach(Wire wire){
+		generation.incrementAndGet();
+		this.wire = Optional.of(wire);
+		this.departure.wire(Optional.of(wire));
+		wire.setPlug(Optional.of(this.plug));
+	}
+
+	// ==============================================================================================
+	// 再接続の実行
+	// ==============================================================================================
+	/**
+	 * 現在の Wire を切断し、再接続ポリシーに従って新しい Wire の接続を試みます。サーバ側のセッションはクライアン
+	 * トからの再接続を待つため接続を行いません。
+	 */
 	private void reconnect() {
-		// TODO 再接続のストラテジーを実装する (exponential backoff など)
+		int timeout = getTimeout();
 		disconnect();
-		connect();
+		if(closing.get()){
+			return;
+		}
+		if(isServer){
+			if(resumable){
+				expire(timeout);
+			}
+			return;
+		}
+		retry(attempts.incrementAndGet());
+	}
+
+	/**
+	 * 再接続ポリシーが示す待機時間の後にノードのタイマーで接続を実行します。ポリシーが再接続を断念した場合は
+	 * セッションをクローズします。
+	 *
+	 * @param attempt 最後に接続が成功してから何回目の再接続か
+	 */
+	private void retry(int attempt){
+		long delay = reconnectPolicy.delay(attempt);
+		if(delay < 0){
+			logger.error(logId() + ": give up reconnecting after " + (attempt - 1) + " attempts: " + reconnectPolicy);
+			close(true);
+		} else {
+			logger.debug(logId() + ": reconnecting in " + delay + "ms (attempt " + attempt + ")");
+			node.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+		}
 	}
 
 	private void disconnect(){
+		watchdog.ifPresent(TimingWheel.Timeout::cancel);
 		header = Optional.empty();
+		synchronized(preface){
+			established = false;
+			resuming = false;
+			preface.clear();
+		}
 		wire.ifPresent(w -> {
 			wire = Optional.empty();
 			w.setPlug(Optional.empty());
 			w.close();
 		});
-		// TODO DepartureGate のクリア
-		// TODO PipeSpace 内の全ての Pipe を失敗で終了
+		// 再開を合意しているセッションでは送信キューとパイプを維持して再接続を待つ
+		if(tracer != null && ! resumable){
+			tracer.clear();
+		}
+		// TODO 再開しないセッションでの DepartureGate のクリア
+		// TODO 再開しないセッションでの PipeSpace 内の全ての Pipe を失敗で終了
+	}
+
+	// ==============================================================================================
+	// セッション再開の期限
+	// ==============================================================================================
+	/**
+	 * Wire が切断されたサーバ側のセッションを、セッションタイムアウトまでにクライアントが再開しなければクローズ
+	 * します。
+	 *
+	 * @param timeout セッションタイムアウト (秒)
+	 */
+	private void expire(int timeout){
+		int current = generation.get();
+		watchdog = node.schedule(() -> {
+			if(generation.get() == current && ! wire.isPresent()){
+				logger.warn(logId() + ": session was not resumed in " + timeout + " sec, closing");
+				close(false);
+			}
+		}, timeout, TimeUnit.SECONDS);
 	}
 
 	// ==============================================================================================
@@ -314,11 +554,19 @@ public class Session {
 	 * @param function function の識別子
 	 * @param params function の実行パラメータ
 	 * @param onTransferComplete 呼び出し先とのパイプが生成されたときに実行される処理
-	 * @return パイプに対する Future
+	 * @return パイプに対する Future。パイプ ID に空きがない場合は例外で終了している
 	 */
 	public CompletableFuture<Object> open(byte priority, short function, Object[] params,
 																				Function<Pipe,CompletableFuture<Object>> onTransferComplete) {
-		Pipe pipe = pipes.create(priority, function);
+		Pipe pipe;
+		try {
+			pipe = pipes.create(priority, function);
+		} catch(IllegalStateException ex){
+			logger.warn(logId() + ": " + ex.getMessage());
+			CompletableFuture<Object> future = new CompletableFuture<>();
+			future.completeExceptionally(ex);
+			return future;
+		}
 		pipe.open(params);
 		return Pipe.using(pipe, () -> onTransferComplete.apply(pipe) );
 	}
@@ -327,6 +575,42 @@ public class Session {
 		return open(priority, function, params, pipe -> pipe.future);
 	}
 
+	// ==============================================================================================
+	// パイプの一括オープン
+	// ==============================================================================================
+	/**
+	 * このセッション上のピアに対して指定された呼び出しをまとめて行います。パイプ ID はまとめて確保され、Open
+	 * メッセージは一つの単位として送信キューに投入されるため、Wire は続けてそれらを書き出します。多数の小さな
+	 * function を連続して呼び出す場合に {@link #open(byte, short, Object[])} を繰り返すより呼び出しあたりの
+	 * コストが小さくなります。
+	 *
+	 * @param calls 呼び出し内容
+	 * @return 呼び出しと同じ順序の結果の Future。パイプ ID の空きが不足している場合はすべて例外で終了している
+	 */
+	public List<CompletableFuture<Object>> openAll(List<Call> calls) {
+		List<CompletableFuture<Object>> futures = new ArrayList<>(calls.size());
+		List<Pipe> created;
+		try {
+			created = pipes.create(calls);
+		} catch(IllegalStateException ex){
+			logger.warn(logId() + ": " + ex.getMessage());
+			for(int i = 0; i < calls.size(); i ++){
+				CompletableFuture<Object> future = new CompletableFuture<>();
+				future.completeExceptionally(ex);
+				futures.add(future);
+			}
+			return futures;
+		}
+		List<Open> opens = new ArrayList<>(created.size());
+		for(int i = 0; i < created.size(); i ++){
+			Pipe pipe = created.get(i);
+			opens.add(new Open(pipe.id, pipe.priority, pipe.function, calls.get(i).params));
+			futures.add(pipe.future);
+		}
+		post(opens);
+		return futures;
+	}
+
 	// ==============================================================================================
 	// メッセージの配信
 	// ==============================================================================================
@@ -349,6 +633,15 @@ public class Session {
 				case Control.Close:
 					close(false);
 					break;
+				case Control.Ack:
+					acknowledged(ctrl.ackCount());
+					break;
+				case Control.Ping:
+					control(ctrl.pong());
+					break;
+				case Control.Pong:
+					measured(System.nanoTime() - ctrl.pingTimestamp());
+					break;
 				default:
 					logger.error(id() + ": unsupported control code: 0x" + Integer.toHexString(ctrl.code & 0xFF));
 					throw new ProtocolViolationException("unsupported control");
@@ -357,15 +650,15 @@ public class Session {
 		}
 
 		// メッセージの配信先パイプを参照
-		Optional<Pipe> _pipe;
+		Pipe pipe;
 		if(msg instanceof Open){
-			_pipe = pipes.create((Open) msg);
+			pipe = pipes.create((Open) msg).orElse(null);
 		} else {
-			_pipe = pipes.get(msg.pipeId);
+			pipe = pipes.get(msg.pipeId);
 		}
 
 		// パイプが定義されていない場合
-		if(! _pipe.isPresent()) {
+		if(pipe == null) {
 			if(msg instanceof Close) {
 				logger.debug(logId() + ": both of sessions unknown pipe #" + msg.pipeId);
 			} else if(msg instanceof Open){
@@ -373,11 +666,11 @@ public class Session {
 			} else if(msg instanceof Block){
 				logger.debug(logId() + ": unknown pipe-id: " + msg);
 				post(Priority.Normal, Close.unexpectedError(msg.pipeId, "unknown pipe-id specified: " + msg.pipeId));
+				((Block)msg).release();
 			}
 			return;
 		}
 
-		Pipe pipe = _pipe.get();
 		try {
 			if(msg instanceof Open) {
 				// サービスを起動しメッセージポンプの開始
@@ -388,7 +681,13 @@ public class Session {
 				// 一度パイプを経由して deliver(Pipe,Message) を実行する
 				pipe.dispatchBlock((Block) msg);
 			} else if(msg instanceof Close){
-				pipe.close((Close)msg);
+				if(tracer == null){
+					pipe.close((Close)msg);
+				} else {
+					long received = tracer.received(pipe);
+					pipe.close((Close)msg);
+					tracer.returned(pipe, received);
+				}
 			} else {
 				throw new IllegalStateException("unexpected message: " + msg);
 			}
@@ -432,6 +731,50 @@ public class Session {
 		}).orElse(0);
 	}
 
+	/**
+	 * @return ピアとの間で合意したオプション機能 ({@link SyncConfig#capabilities})。接続していない場合は 0。
+	 */
+	public int getCapabilities(){
+		return header.map( h -> isServer? (h.capabilities & localCapabilities()): h.capabilities).orElse(0);
+	}
+
+	/**
+	 * @return このセッションからピアに対してオープンし現在使用中のパイプ数
+	 */
+	public int getPipesInUse(){
+		return pipes.inUse();
+	}
+
+	/**
+	 * @return このセッションからピアに対してオープンしたパイプの同時使用数の最大値
+	 */
+	public int getPipesHighWater(){
+		return pipes.highWater();
+	}
+
+	/**
+	 * このセッションのオプション設定で利用可能なオプション機能を参照します。
+	 */
+	private int localCapabilities(){
+		int capabilities = 0;
+		if(options.get(Options.KEY_FRAMING).get()){
+			capabilities |= SyncConfig.Framing;
+			if(options.get(Options.KEY_CONTAINER).get()){
+				capabilities |= SyncConfig.Container;
+			}
+			if(options.get(Options.KEY_COMPRESSION).get()){
+				capabilities |= SyncConfig.Compression;
+			}
+		}
+		if(retransmit != null){
+			capabilities |= SyncConfig.Resume;
+		}
+		if(options.get(Options.KEY_KEEP_ALIVE).get()){
+			capabilities |= SyncConfig.KeepAlive;
+		}
+		return capabilities;
+	}
+
 	// ==============================================================================================
 	// セッション同期の実行
 	// ==============================================================================================
@@ -443,6 +786,7 @@ public class Session {
 			throw new ProtocolViolationException("multiple sync message");
 		}
 		this.header = Optional.of(header);
+		Optional<Principal> principal = peerPrincipal();
 		if(isServer){
 			// サーバ側の場合は応答を返す
 			if(header.sessionId.equals(Asterisque.Zero)){
@@ -450,25 +794,38 @@ public class Session {
 				this._id = node.repository.nextUUID();
 				logger.trace(logId() + ": new session-id is issued: " + this._id);
 				SyncConfig ack = new SyncConfig(
-					Asterisque.Protocol.Version_0_1, node.id, _id, System.currentTimeMillis(), getPingInterval(), getTimeout());
-				post(Priority.Normal, ack.toControl());
+					Asterisque.Protocol.Version_0_1, node.id, _id, System.currentTimeMillis(), getPingInterval(), getTimeout(), getCapabilities());
+				control(ack.toControl());
 			} else {
-				Optional<Principal> principal = Optional.empty();
-				try {
-					principal = Optional.of(wire.get().getSSLSession().get().getPeerPrincipal());
-				} catch(SSLPeerUnverifiedException ex){
-					// TODO クライアント認証が無効な場合? 動作確認
-					logger.debug(logId() + ": client authentication ignored: " + ex);
+				// 再開を合意しているアクティブなセッションであれば新しい Wire を引き継ぐ。セッション ID を知る第三者
+				// による乗っ取りを防ぐため、新しい Wire で認証されたプリンシパルが状態同期時と一致する場合に限る
+				Optional<Session> live = node.session(header.sessionId).filter(s ->
+					s.resumable && ! s.closing() && s.peer.equals(header.nodeId) && header.supports(SyncConfig.Resume));
+				if(live.isPresent() && ! live.get().principal.equals(principal)){
+					logger.warn(logId() + ": session resumption refused; principal mismatch: " +
+						principal.map(Principal::getName).orElse("(none)") + ": " + header.sessionId);
+					live = Optional.empty();
+				}
+				if(live.isPresent()){
+					Wire w = wire.get();
+					// この Wire のために生成したセッションは使用せずに破棄する
+					this.wire = Optional.empty();
+					this.header = Optional.empty();
+					closing.set(true);
+					closed.set(true);
+					live.get().resume(w, header);
+					return;
 				}
 				// TODO リポジトリからセッション?サービス?を復元する
 				Optional<byte[]> service = node.repository.loadAndDelete(principal, header.sessionId);
 				if(service.isPresent()) {
 					SyncConfig ack = new SyncConfig(
-						Asterisque.Protocol.Version_0_1, node.id, _id, System.currentTimeMillis(), getPingInterval(), getTimeout());
-					post(Priority.Normal, ack.toControl());
+						Asterisque.Protocol.Version_0_1, node.id, _id, System.currentTimeMillis(), getPingInterval(), getTimeout(), getCapabilities());
+					control(ack.toControl());
 				} else {
 					// TODO retry after
-					post(Priority.Normal, new Control(Control.Close));
+					control(new Control(Control.Close));
+					return;
 				}
 			}
 		} else {
@@ -482,9 +839,206 @@ public class Session {
 			} else if(! this._id.equals(header.sessionId)){
 				throw new ProtocolViolationException("unexpected session-id specified from server: " + header.sessionId + " != " + this._id);
 			}
+			if(resuming){
+				if(! header.supports(SyncConfig.Resume)){
+					throw new ProtocolViolationException("session resumption refused by server: " + header.sessionId);
+				}
+				// 再送はサーバからの累積 ack を受信した後に行う
+				logger.debug(logId() + ": sync-configuration success, resuming session");
+				return;
+			}
 		}
+		this.peer = header.nodeId;
+		this.principal = principal;
+		this.resumable = (getCapabilities() & SyncConfig.Resume) != 0;
+		establish();
 		logger.info(logId() + ": sync-configuration success, beginning session");
-		onSync.accept(this, header.sessionId);
+		onSync.accept(this, _id);
+	}
+
+	/**
+	 * 現在の Wire で認証されたピアのプリンシパルを参照します。SSL を使用していない場合やクライアント認証が
+	 * 行われていない場合は Optional.empty() を返します。
+	 */
+	private Optional<Principal> peerPrincipal(){
+		try {
+			Optional<SSLSession> ssl = wire.flatMap(Wire::getSSLSession);
+			if(ssl.isPresent()){
+				return Optional.of(ssl.get().getPeerPrincipal());
+			}
+		} catch(SSLPeerUnverifiedException ex){
+			// TODO クライアント認証が無効な場合? 動作確認
+			logger.debug(logId() + ": client authentication ignored: " + ex);
+		}
+		return Optional.empty();
+	}
+
+	// ==============================================================================================
+	// セッションの再開
+	// ==============================================================================================
+	/**
+	 * クライアントから再開を要求されたサーバ側のセッションに新しい Wire を接続します。古い Wire が切断を検知して
+	 * いない場合はクローズします。受信済みのメッセージ数を累積 ack で応答し、クライアントからの累積 ack を受信
+	 * した後に未到達のメッセージを再送します。
+	 */
+	private void resume(Wire wire, SyncConfig header){
+		logger.info(logId() + ": resuming session on new wire: " + wire);
+		disconnect();
+		this.header = Optional.of(header);
+		attach(wire);
+		SyncConfig ack = new SyncConfig(
+			Asterisque.Protocol.Version_0_1, node.id, _id, System.currentTimeMillis(), getPingInterval(), getTimeout(), getCapabilities());
+		synchronized(preface){
+			resuming = true;
+			control(ack.toControl());
+			control(Control.ack(received));
+		}
+	}
+
+	// ==============================================================================================
+	// 累積 ack の受信
+	// ==============================================================================================
+	/**
+	 * ピアから受信した累積 ack を再送バッファに反映します。再開処理中の場合はピアに到達していないメッセージを
+	 * 再送し、送信キューからの送出を再開します。再送に必要なメッセージが既にバッファから溢れている場合はセッショ
+	 * ンを再開できないため、実行中のパイプを失敗で終了してクローズします。
+	 */
+	private void acknowledged(long count) throws ProtocolViolationException {
+		if(! resumable){
+			throw new ProtocolViolationException("ack received on session without resumption");
+		}
+		retransmit.ack(count);
+		if(resuming){
+			Optional<List<Message>> gap = retransmit.replay(count);
+			if(! gap.isPresent()){
+				logger.error(logId() + ": unable to resume session; unacknowledged messages overflowed " + retransmit.capacity);
+				// 実行中のパイプを失敗で終了させるため Close を伴うクローズを行う
+				close(true);
+				return;
+			}
+			logger.info(logId() + ": session resumed, retransmitting " + gap.get().size() + " messages");
+			synchronized(preface){
+				resuming = false;
+				gap.get().forEach(preface::offer);
+			}
+			establish();
+		}
+	}
+
+	// ==============================================================================================
+	// 累積 ack の送信
+	// ==============================================================================================
+	/**
+	 * 受信確認していないメッセージ数が ack 間隔に達した場合は累積 ack を送信します。それ以外の場合は遅延 ack を
+	 * タイマーに登録します。
+	 */
+	private void acknowledge(){
+		if(received - ackSent >= ackInterval){
+			sendAck();
+		} else if(ackScheduled.compareAndSet(false, true)){
+			node.schedule(() -> {
+				ackScheduled.set(false);
+				sendAck();
+			}, ackDelay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void sendAck(){
+		synchronized(preface){
+			long count = received;
+			if(established && count > ackSent){
+				ackSent = count;
+				control(Control.ack(count));
+			}
+		}
+	}
+
+	// ==============================================================================================
+	// 送出の開始
+	// ==============================================================================================
+	/**
+	 * 状態同期または再開が完了したため送信キューのメッセージの送出を開始します。
+	 */
+	private void establish(){
+		synchronized(preface){
+			established = true;
+		}
+		wire.ifPresent(w -> w.setWritable(true));
+		long now = System.nanoTime();
+		lastSent = now;
+		lastReceived = now;
+		// ※Ping を解釈しないピアとのセッションでは ping もタイムアウトによる切断も行わない
+		if((getCapabilities() & SyncConfig.KeepAlive) != 0){
+			monitor(generation.get());
+		}
+	}
+
+	// ==============================================================================================
+	// 死活監視
+	// ==============================================================================================
+	/**
+	 * Wire 上のメッセージの途切れを監視します。この処理はノードで共有するタイマーで実行され、次の判定までの時間
+	 * を計算して自身を再登録します。Wire が再接続された場合は古い世代の監視を終了します。
+	 *
+	 * 最後の受信から {@link #getTimeout()} が経過した場合はネットワーク異常として切断と再接続の手順に入ります。
+	 * サーバ側は最後の送信または受信からの経過時間の長い方が {@link #getPingInterval()} に達した場合に ping を
+	 * 送信します。定期的には送信しないため、メッセージが交換されているセッションで ping は発生しません。
+	 * 監視はピアと {@link SyncConfig#KeepAlive} を合意したセッションでのみ行います。
+	 *
+	 * @param current 監視対象の Wire の世代
+	 */
+	private void monitor(int current){
+		if(closing.get() || generation.get() != current || ! established){
+			return;
+		}
+		long ping = TimeUnit.SECONDS.toNanos(getPingInterval());
+		long timeout = TimeUnit.SECONDS.toNanos(getTimeout());
+		long now = System.nanoTime();
+		long silent = now - lastReceived;
+		long idle = now - Math.min(lastSent, lastReceived);
+		if(timeout > 0 && silent >= timeout){
+			logger.warn(logId() + ": no message received in " + TimeUnit.NANOSECONDS.toMillis(silent) + "ms, disconnecting");
+			reconnect();
+			return;
+		}
+		long next = timeout > 0? timeout - silent: Long.MAX_VALUE;
+		if(isServer && ping > 0){
+			if(idle >= ping){
+				control(Control.ping(now));
+				next = Math.min(next, ping);
+			} else {
+				next = Math.min(next, ping - idle);
+			}
+		}
+		if(next != Long.MAX_VALUE){
+			watchdog = node.schedule(() -> monitor(current), next, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * ping の応答によって計測した往復時間を平均に反映します。
+	 */
+	private void measured(long rtt){
+		if(rtt >= 0){
+			long current = roundTripTime;
+			roundTripTime = current == 0? rtt: current + (rtt - current) / 8;
+		}
+	}
+
+	/**
+	 * @return ping によって計測したピアとの往復時間の指数移動平均 (ナノ秒)。ping を送信するサーバ側でのみ計測
+	 *         され、未計測の場合は 0
+	 */
+	public long getRoundTripTime(){
+		return roundTripTime;
+	}
+
+	/**
+	 * 指定された Control メッセージを送信キューより先に送出します。
+	 */
+	private void control(Control msg){
+		preface.offer(msg);
+		wire.ifPresent(w -> w.setWritable(true));
 	}
 
 	// ==============================================================================================
@@ -502,9 +1056,25 @@ public class Session {
 				if(logger.isTraceEnabled()) {
 					logger.trace(logId() + ": post: " + msg);
 				}
-			} catch(DepartureGate.MaxSequenceReached ex) {
-				logger.warn(id() + ": max sequence reached on wire, reconnecting", ex);
+			} catch(DepartureGate.HardLimitReached ex){
+				logger.error(id() + ": write queue reached hard limit by pending messages, reconnecting", ex);
 				reconnect();
+			}
+		}
+	}
+
+	/**
+	 * 指定された Open メッセージをまとめて送信キューに投入します。
+	 */
+	private void post(List<Open> opens) {
+		if(closed() || closing()){
+			logger.error("session " + id() + " closed");
+		} else {
+			try {
+				departure.forward(opens);
+				if(logger.isTraceEnabled()) {
+					logger.trace(logId() + ": post: " + opens.size() + " opens");
+				}
 			} catch(DepartureGate.HardLimitReached ex){
 				logger.error(id() + ": write queue reached hard limit by pending messages, reconnecting", ex);
 				reconnect();
@@ -512,8 +1082,18 @@ public class Session {
 		}
 	}
 
-	void destroy(short pipeId){
-		pipes.destroy(pipeId);
+	void destroy(short pipeId, boolean completed){
+		pipes.destroy(pipeId, completed);
+	}
+
+	/**
+	 * 送信キューの高負荷によって指定された Block を破棄した時に呼び出されます。
+	 */
+	void dropped(Block block){
+		Pipe pipe = pipes.get(block.pipeId);
+		if(pipe != null){
+			pipe.dropped(block);
+		}
 	}
 
 	// ==============================================================================================
@@ -521,8 +1101,15 @@ public class Session {
 	// ==============================================================================================
 	/**
 	 * このセッションの相手側となるインターフェースを参照します。
+	 *
+	 * public なインターフェースに対しては各メソッドから {@link #open(byte, short, Object[])} を直接呼び出す
+	 * スタブクラスを生成して使用します (生成したクラスはインターフェースごとにキャッシュされます)。それ以外の
+	 * インターフェースでは動的プロキシを使用します。
 	 */
 	public <T> T bind(Class<T> clazz){
+		if(StubGenerator.isSupported(clazz)){
+			return StubGenerator.newStub(this, clazz);
+		}
 		return clazz.cast(java.lang.reflect.Proxy.newProxyInstance(
 			Thread.currentThread().getContextClassLoader(),
 			new Class[]{ clazz }, new Skeleton(clazz)
@@ -534,26 +1121,12 @@ public class Session {
 	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
 	/**
 	 * リモート呼び出し先の function を @Export 定義されたメソッドとして扱うための動的プロキシ用ハンドラ。
+	 * スタブクラスを生成できないインターフェースに対して使用します。
 	 */
 	private class Skeleton implements InvocationHandler {
 
 		public Skeleton(Class<?> clazz){
-			// 指定されたインターフェースのすべてのメソッドに @Export アノテーションが付けられていることを確認
-			Optional<String> methods = Stream.of(clazz.getDeclaredMethods())
-				.filter(m -> m.getAnnotation(Export.class) == null)
-				.map(Debug::getSimpleName).reduce((a, b) -> a + "," + b);
-			if(methods.isPresent()){
-				throw new IllegalArgumentException(
-					"@" + Export.class.getSimpleName() + " annotation is not specified on: " + methods.get());
-			}
-			// 指定されたインターフェースの全てのメソッドが CompletableFuture の返値を持つことを確認
-			// TODO Scala の Future も許可したい
-			Stream.of(clazz.getDeclaredMethods())
-				.filter(m -> ! m.getReturnType().equals(CompletableFuture.class))
-				.map(Debug::getSimpleName).reduce((a, b) -> a + "," + b).ifPresent( name -> {
-					throw new IllegalArgumentException(
-						"methods without return-type CompletableFuture<?> exists: " + name);
-				});
+			StubGenerator.validate(clazz);
 		}
 
 		// ============================================================================================
@@ -0,0 +1,474 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// StubGenerator
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @Export 宣言されたインターフェースを実装するクライアント側のスタブクラスを実行時に生成するクラスです。
+ *
+ * 生成されるスタブはインターフェースの各メソッドで {@link Export} の function 番号と優先度を定数として持ち、
+ * 引数を配列に格納して {@link Session#open(byte, short, Object[])} を直接呼び出します。動的プロキシのような
+ * 呼び出しごとのアノテーション参照や {@link java.lang.reflect.InvocationHandler} を経由した呼び出しは
+ * 行いません。
+ *
+ * スタブクラスはインターフェースのクラスローダーを親とするクラスローダーに定義され、インターフェースごとに
+ * キャッシュされます。異なるクラスローダーからロードされた同名のインターフェースは別のクラスとして扱われる
+ * ため、キャッシュはインターフェースとクラスローダーの組ごととなります。
+ *
+ * @author Takami Torao
+ */
+final class StubGenerator {
+	private static final Logger logger = LoggerFactory.getLogger(StubGenerator.class);
+
+	/** 生成したスタブクラスのコンストラクタ */
+	private static final ClassValue<Constructor<?>> Stubs = new ClassValue<Constructor<?>>() {
+		@Override
+		protected Constructor<?> computeValue(Class<?> type) {
+			return generate(type);
+		}
+	};
+
+	/** スタブクラス名の重複を避けるためのシーケンス */
+	private static final AtomicInteger sequence = new AtomicInteger();
+
+	private StubGenerator(){ }
+
+	// ==============================================================================================
+	// スタブの構築
+	// ==============================================================================================
+	/**
+	 * 指定されたセッションを使用するインターフェースのスタブを構築します。
+	 *
+	 * @param session リモート呼び出しを行うセッション
+	 * @param type @Export 宣言されたインターフェース
+	 * @return スタブ
+	 */
+	public static <T> T newStub(Session session, Class<T> type){
+		try {
+			return type.cast(Stubs.get(type).newInstance(session));
+		} catch(InstantiationException | IllegalAccessException | InvocationTargetException ex){
+			throw new IllegalStateException("fail to instantiate stub: " + type.getName(), ex);
+		}
+	}
+
+	// ==============================================================================================
+	// スタブ生成可能判定
+	// ==============================================================================================
+	/**
+	 * 指定されたインターフェースに対してスタブクラスを生成できるかを判定します。public でないインターフェースは
+	 * 別のクラスローダーに定義したクラスから実装することが出来ません。
+	 */
+	public static boolean isSupported(Class<?> type){
+		return type.isInterface() && Modifier.isPublic(type.getModifiers());
+	}
+
+	// ==============================================================================================
+	// インターフェースの検証
+	// ==============================================================================================
+	/**
+	 * 指定されたインターフェースがリモート呼び出しに使用できるかを検証します。
+	 *
+	 * @throws IllegalArgumentException @Export 宣言されていない、または CompletableFuture を返値としない
+	 *                                  メソッドが存在する場合
+	 */
+	public static void validate(Class<?> type){
+		// 指定されたインターフェースのすべてのメソッドに @Export アノテーションが付けられていることを確認
+		Optional<String> methods = Stream.of(type.getDeclaredMethods())
+			.filter(m -> m.getAnnotation(Export.class) == null)
+			.map(Debug::getSimpleName).reduce((a, b) -> a + "," + b);
+		if(methods.isPresent()){
+			throw new IllegalArgumentException(
+				"@" + Export.class.getSimpleName() + " annotation is not specified on: " + methods.get());
+		}
+		// 指定されたインターフェースの全てのメソッドが CompletableFuture の返値を持つことを確認
+		// TODO Scala の Future も許可したい
+		Stream.of(type.getDeclaredMethods())
+			.filter(m -> ! m.getReturnType().equals(CompletableFuture.class))
+			.map(Debug::getSimpleName).reduce((a, b) -> a + "," + b).ifPresent( name -> {
+				throw new IllegalArgumentException(
+					"methods without return-type CompletableFuture<?> exists: " + name);
+			});
+	}
+
+	// ==============================================================================================
+	// スタブクラスの生成
+	// ==============================================================================================
+	/**
+	 * 指定されたインターフェースのスタブクラスを生成しそのコンストラクタを返します。
+	 */
+	private static Constructor<?> generate(Class<?> type){
+		validate(type);
+		List<Method> methods = abstractMethods(type);
+		String name = type.getName() + "$$Stub" + sequence.incrementAndGet();
+		byte[] bytecode;
+		try {
+			bytecode = new ClassWriter(name, type, methods).toByteArray();
+		} catch(IOException ex){
+			throw new IllegalStateException(ex);
+		}
+		Class<?> stub = new StubLoader(type.getClassLoader()).define(name, bytecode);
+		logger.debug("stub class generated: " + name + " (" + methods.size() + " methods, " + bytecode.length + " bytes)");
+		try {
+			return stub.getConstructor(Session.class);
+		} catch(NoSuchMethodException ex){
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * 指定されたインターフェースがスタブで実装しなければならないメソッドを参照します。
+	 */
+	private static List<Method> abstractMethods(Class<?> type){
+		Map<String,Method> methods = new LinkedHashMap<>();
+		for(Method m: type.getMethods()){
+			if(Modifier.isStatic(m.getModifiers()) || m.isDefault()){
+				continue;
+			}
+			Export export = m.getAnnotation(Export.class);
+			if(export == null){
+				throw new IllegalArgumentException(
+					"@" + Export.class.getSimpleName() + " annotation is not specified on: " + Debug.getSimpleName(m));
+			}
+			if(! m.getReturnType().equals(CompletableFuture.class)){
+				throw new IllegalArgumentException(
+					"methods without return-type CompletableFuture<?> exists: " + Debug.getSimpleName(m));
+			}
+			methods.putIfAbsent(m.getName() + descriptor(m), m);
+		}
+		return new ArrayList<>(methods.values());
+	}
+
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	// StubLoader
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	/**
+	 * スタブクラスを定義するクラスローダーです。{@link Session} は常にこのクラスと同じものを参照します。
+	 */
+	private static final class StubLoader extends ClassLoader {
+		public StubLoader(ClassLoader parent){
+			super(parent);
+		}
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if(name.equals(Session.class.getName())){
+				return Session.class;
+			}
+			return super.loadClass(name, resolve);
+		}
+		public Class<?> define(String name, byte[] bytecode){
+			return defineClass(name, bytecode, 0, bytecode.length);
+		}
+	}
+
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	// ClassWriter
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	/**
+	 * スタブクラスのクラスファイルを出力します。生成するメソッドは分岐を持たないため StackMapTable は出力
+	 * しません。
+	 * <pre>
+	 * public final class Foo$$Stub1 implements Foo {
+	 *   private final Session session;
+	 *   public Foo$$Stub1(Session session){ this.session = session; }
+	 *   public CompletableFuture bar(int a, String b){
+	 *     return session.open(PRIORITY, FUNCTION, new Object[]{ Integer.valueOf(a), b });
+	 *   }
+	 * }
+	 * </pre>
+	 */
+	private static final class ClassWriter {
+		private static final String SessionType = internalName(Session.class);
+		private static final String OpenDescriptor = "(BS[Ljava/lang/Object;)Ljava/util/concurrent/CompletableFuture;";
+
+		private final String name;
+		private final Class<?> type;
+		private final List<Method> methods;
+		private final ConstantPool pool = new ConstantPool();
+
+		public ClassWriter(String name, Class<?> type, List<Method> methods){
+			this.name = name.replace('.', '/');
+			this.type = type;
+			this.methods = methods;
+		}
+
+		public byte[] toByteArray() throws IOException {
+			int thisClass = pool.classRef(name);
+			int superClass = pool.classRef("java/lang/Object");
+			int iface = pool.classRef(internalName(type));
+			int sessionName = pool.utf8("session");
+			int sessionDesc = pool.utf8("L" + SessionType + ";");
+			int sessionField = pool.fieldRef(name, "session", "L" + SessionType + ";");
+
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(body);
+			out.writeShort(0x0001 | 0x0010 | 0x0020);			// ACC_PUBLIC | ACC_FINAL | ACC_SUPER
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(1);
+			out.writeShort(iface);
+
+			// private final Session session;
+			out.writeShort(1);
+			out.writeShort(0x0002 | 0x0010);								// ACC_PRIVATE | ACC_FINAL
+			out.writeShort(sessionName);
+			out.writeShort(sessionDesc);
+			out.writeShort(0);
+
+			out.writeShort(1 + methods.size());
+			writeConstructor(out, sessionField);
+			for(Method m: methods){
+				writeMethod(out, m, sessionField);
+			}
+			out.writeShort(0);
+			out.flush();
+
+			ByteArrayOutputStream file = new ByteArrayOutputStream();
+			DataOutputStream cf = new DataOutputStream(file);
+			cf.writeInt(0xCAFEBABE);
+			cf.writeShort(0);
+			cf.writeShort(52);		// Java 8
+			pool.writeTo(cf);
+			body.writeTo(cf);
+			cf.flush();
+			return file.toByteArray();
+		}
+
+		private void writeConstructor(DataOutputStream out, int sessionField) throws IOException {
+			Code code = new Code();
+			code.op(0x2a);																// aload_0
+			code.op(0xb7).u2(pool.methodRef("java/lang/Object", "<init>", "()V"));	// invokespecial
+			code.op(0x2a);																// aload_0
+			code.op(0x2b);																// aload_1
+			code.op(0xb5).u2(sessionField);								// putfield
+			code.op(0xb1);																// return
+			writeMethod(out, "<init>", "(L" + SessionType + ";)V", code, 2, 2);
+		}
+
+		private void writeMethod(DataOutputStream out, Method m, int sessionField) throws IOException {
+			Export export = m.getAnnotation(Export.class);
+			Class<?>[] params = m.getParameterTypes();
+			Code code = new Code();
+			code.op(0x2a);																// aload_0
+			code.op(0xb4).u2(sessionField);								// getfield
+			code.iconst(export.priority());
+			code.iconst(export.value());
+			code.iconst(params.length);
+			code.op(0xbd).u2(pool.classRef("java/lang/Object"));		// anewarray
+			int slot = 1;
+			for(int i = 0; i < params.length; i++){
+				code.op(0x59);															// dup
+				code.iconst(i);
+				slot += load(code, params[i], slot);
+				code.op(0x53);															// aastore
+			}
+			code.op(0xb6).u2(pool.methodRef(SessionType, "open", OpenDescriptor));	// invokevirtual
+			code.op(0xb0);																// areturn
+			// session, priority, function, array, array, index, value (long/double は 2)
+			writeMethod(out, m.getName(), descriptor(m), code, 8, slot);
+		}
+
+		private void writeMethod(DataOutputStream out, String name, String desc, Code code, int maxStack, int maxLocals) throws IOException {
+			byte[] bytes = code.toByteArray();
+			out.writeShort(0x0001);												// ACC_PUBLIC
+			out.writeShort(pool.utf8(name));
+			out.writeShort(pool.utf8(desc));
+			out.writeShort(1);
+			out.writeShort(pool.utf8("Code"));
+			out.writeInt(2 + 2 + 4 + bytes.length + 2 + 2);
+			out.writeShort(maxStack);
+			out.writeShort(maxLocals);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+			out.writeShort(0);		// exception_table_length
+			out.writeShort(0);		// attributes_count
+		}
+
+		/**
+		 * 指定されたスロットの引数をスタックに積みオブジェクト型に変換します。
+		 * @return 引数が使用するスロット数
+		 */
+		private int load(Code code, Class<?> type, int slot){
+			if(! type.isPrimitive()){
+				code.op(0x19).u1(slot);											// aload
+				return 1;
+			}
+			Class<?> boxed;
+			int size = 1;
+			if(type == Long.TYPE){
+				code.op(0x16).u1(slot);											// lload
+				boxed = Long.class;
+				size = 2;
+			} else if(type == Float.TYPE){
+				code.op(0x17).u1(slot);											// fload
+				boxed = Float.class;
+			} else if(type == Double.TYPE){
+				code.op(0x18).u1(slot);											// dload
+				boxed = Double.class;
+				size = 2;
+			} else {
+				code.op(0x15).u1(slot);											// iload
+				boxed = Primitives.get(type);
+			}
+			String owner = internalName(boxed);
+			code.op(0xb8).u2(pool.methodRef(owner, "valueOf", "(" + descriptor(type) + ")L" + owner + ";"));	// invokestatic
+			return size;
+		}
+	}
+
+	/** int 型としてロードするプリミティブ型のボックス型 */
+	private static final Map<Class<?>,Class<?>> Primitives = new HashMap<>();
+	static {
+		Primitives.put(Boolean.TYPE, Boolean.class);
+		Primitives.put(Byte.TYPE, Byte.class);
+		Primitives.put(Character.TYPE, Character.class);
+		Primitives.put(Short.TYPE, Short.class);
+		Primitives.put(Integer.TYPE, Integer.class);
+	}
+
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	// Code
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	/**
+	 * メソッドのバイトコード列です。
+	 */
+	private static final class Code {
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		public Code op(int opcode){ out.write(opcode); return this; }
+		public Code u1(int value){ out.write(value); return this; }
+		public Code u2(int value){ out.write(value >>> 8); out.write(value); return this; }
+		/** 定数値を int としてスタックに積む */
+		public Code iconst(int value){
+			if(value >= -1 && value <= 5){
+				return op(0x03 + value);										// iconst_<n>
+			} else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE){
+				return op(0x10).u1(value);									// bipush
+			} else {
+				return op(0x11).u2(value);									// sipush
+			}
+		}
+		public byte[] toByteArray(){ return out.toByteArray(); }
+	}
+
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	// ConstantPool
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	/**
+	 * クラスファイルのコンスタントプールです。同一の定数は同じインデックスを共有します。
+	 */
+	private static final class ConstantPool {
+		private final Map<String,Integer> index = new HashMap<>();
+		private final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(entries);
+		private int count = 1;
+
+		public int utf8(String value){
+			return entry("U" + value, () -> {
+				out.writeByte(1);
+				out.writeUTF(value);
+			});
+		}
+		public int classRef(String internalName){
+			int name = utf8(internalName);
+			return entry("C" + internalName, () -> {
+				out.writeByte(7);
+				out.writeShort(name);
+			});
+		}
+		public int fieldRef(String owner, String name, String desc){
+			return memberRef(9, owner, name, desc);
+		}
+		public int methodRef(String owner, String name, String desc){
+			return memberRef(10, owner, name, desc);
+		}
+		private int memberRef(int tag, String owner, String name, String desc){
+			int clazz = classRef(owner);
+			int n = utf8(name);
+			int d = utf8(desc);
+			int nameAndType = entry("N" + name + ":" + desc, () -> {
+				out.writeByte(12);
+				out.writeShort(n);
+				out.writeShort(d);
+			});
+			return entry(tag + owner + "." + name + ":" + desc, () -> {
+				out.writeByte(tag);
+				out.writeShort(clazz);
+				out.writeShort(nameAndType);
+			});
+		}
+		private int entry(String key, Writer writer){
+			Integer i = index.get(key);
+			if(i == null){
+				try {
+					writer.write();
+				} catch(IOException ex){
+					throw new IllegalStateException(ex);
+				}
+				i = count ++;
+				index.put(key, i);
+			}
+			return i;
+		}
+		public void writeTo(DataOutputStream cf) throws IOException {
+			out.flush();
+			cf.writeShort(count);
+			entries.writeTo(cf);
+		}
+		private interface Writer {
+			void write() throws IOException;
+		}
+	}
+
+	// ==============================================================================================
+	// 型記述子
+	// ==============================================================================================
+	private static String internalName(Class<?> type){
+		return type.getName().replace('.', '/');
+	}
+
+	private static String descriptor(Method m){
+		StringBuilder buffer = new StringBuilder("(");
+		for(Class<?> p: m.getParameterTypes()){
+			buffer.append(descriptor(p));
+		}
+		return buffer.append(')').append(descriptor(m.getReturnType())).toString();
+	}
+
+	private static String descriptor(Class<?> type){
+		if(type.isArray()) return internalName(type);
+		if(type == Void.TYPE) return "V";
+		if(type == Boolean.TYPE) return "Z";
+		if(type == Byte.TYPE) return "B";
+		if(type == Character.TYPE) return "C";
+		if(type == Short.TYPE) return "S";
+		if(type == Integer.TYPE) return "I";
+		if(type == Long.TYPE) return "J";
+		if(type == Float.TYPE) return "F";
+		if(type == Double.TYPE) return "D";
+		return "L" + internalName(type) + ";";
+	}
+}
@@ -76,6 +76,8 @@ public interface Wire extends AutoCloseable {
 	 *
 	 * サブクラスはデフォルトで writable = false の状態を持つ必要があります。
 	 * スタブが設定されていない状態で writable を true に設定することは出来ません。
+	 * 送信キューはロックを使用せずに状態を通知するため、writable = false の通知は目安として扱い、スタブの
+	 * {@link org.asterisque.Wire.Plug#produce()} が null を返すまでは送信を続ける必要があります。
 	 *
 	 * @param writable スタブに送信可能なメッセージが発生した場合 true
 	 */
@@ -130,8 +132,10 @@ public interface Wire extends AutoCloseable {
 	public interface Plug {
 		/**
 		 * Wire が書き込み可能になった時に次の送信メッセージを参照するための処理。送信可能なメッセージが存在するか
-		 * は {@link #setWritable(boolean)} で制御されるため送信可能なメッセージが存在しない状態で呼び出される事は
-		 * ありません。
+		 * は {@link #setWritable(boolean)} で通知されますが、通知の順序は前後する可能性があるため送信可能なメッセージ
+		 * が存在しない状態で呼び出される事があります。その場合は null を返します。
+		 *
+		 * @return 次の送信メッセージ、または送信可能なメッセージが存在しない場合は null
 		 */
 		public Message produce();
 		/**
@@ -146,6 +150,38 @@ public interface Wire extends AutoCloseable {
 		public void onClose(Wire wire);
 		/** ログ出力で識別するための文字列。 */
 		public String id();
+		/**
+		 * {@link #produce()} で取得したメッセージを直列化して送信したときに呼び出される処理。直列化したバイト数を
+		 * 計測できない Wire では呼び出されません。
+		 *
+		 * @param bytes 直列化したメッセージのバイト数
+		 */
+		public default void sent(Message msg, int bytes){ }
+		/**
+		 * 受信したメッセージを復元したときに {@link #consume(Message)} より前に呼び出される処理。直列化した
+		 * バイト数を計測できない Wire では呼び出されません。
+		 *
+		 * @param bytes 直列化されていたメッセージのバイト数
+		 */
+		public default void received(Message msg, int bytes){ }
+		/**
+		 * 直列化したメッセージの圧縮を試みたときに呼び出される処理。圧縮をサポートしない Wire では呼び出されま
+		 * せん。
+		 *
+		 * @param original 直列化したメッセージのバイト数
+		 * @param compressed 圧縮後のバイト数 (圧縮効果がなく非圧縮で送信した場合は original と同じ)
+		 * @param nanos 圧縮に要した時間 (ナノ秒)
+		 */
+		public default void compressed(int original, int compressed, long nanos){ }
+		/**
+		 * 受信した圧縮メッセージを伸長したときに呼び出される処理。圧縮をサポートしない Wire では呼び出されま
+		 * せん。
+		 *
+		 * @param original 伸長したメッセージのバイト数
+		 * @param compressed 圧縮されていたバイト数
+		 * @param nanos 伸長に要した時間 (ナノ秒)
+		 */
+		public default void decompressed(int original, int compressed, long nanos){ }
 	}
 
 }
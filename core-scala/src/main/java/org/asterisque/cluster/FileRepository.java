@@ -0,0 +1,673 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.cluster;
+
+import org.asterisque.Asterisque;
+import org.asterisque.util.TimingWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.Principal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// FileRepository
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * 追記専用のセグメントログにデータを保存し、プロセスの再起動後もセッションの状態を復元できるリポジトリです。
+ *
+ * ディレクトリ内の固定長のセグメントファイルをメモリマップし、保存 ({@link #store(Optional, UUID, byte[], long)
+ * store}) と削除 ({@link #loadAndDelete(Optional, UUID) loadAndDelete}) をレコードとして末尾に追記します。ID
+ * からレコードの位置を引くインデックスはメモリ上に保持し、データの参照はマップされたセグメントから行います。
+ * 書き込みはページキャッシュへのコピーのみで呼び出しごとの fsync は行わないため、プロセスのクラッシュでは
+ * データは失われません。OS のクラッシュや電源断に備えて {@link #commitInterval} ごとにバックグラウンドで
+ * セグメントをディスクへ同期します。{@link #groupCommit} を指定した場合、保存は自身のレコードを含む同期の
+ * 完了まで待機します。待機中に到着した保存はまとめて 1 回の同期で確定します。
+ *
+ * レコードは次の形式で、長さが 0 の位置をセグメントの書き込み終端とします。起動時はすべてのセグメントを古い
+ * 順に再生してインデックスを復元し、CRC が一致しないレコード (書き込み途中で停止したレコード) 以降を破棄
+ * します。
+ * <pre>
+ * +--------+-------+------+------+---------+------+
+ * | length | crc32 | type | uuid | expires | data |
+ * +--------+-------+------+------+---------+------+
+ *     4       4       1     16       8     length - 25
+ * </pre>
+ *
+ * 有効期限に達したデータはタイマーによってインデックスから削除されます。最も古いセグメントの有効なデータが
+ * {@link #CompactionThreshold} を下回った場合、残っているデータを末尾に書き直してセグメントを削除します。
+ * 古い順に削除するため、削除レコードが打ち消す保存レコードは必ず同じかより古いセグメントに存在し、削除
+ * レコードと共に破棄しても復元時に削除済みのデータが復活することはありません。
+ *
+ * 有効期限は再起動をまたいで判定するため実時間 ({@link System#currentTimeMillis()}) で記録します。
+ *
+ * @author Takami Torao
+ */
+public final class FileRepository implements Repository, AutoCloseable {
+	private static final Logger logger = LoggerFactory.getLogger(FileRepository.class);
+
+	/**
+	 * デフォルトのセグメントファイルのサイズ (バイト)。
+	 */
+	public static final int DefaultSegmentSize = 64 * 1024 * 1024;
+
+	/**
+	 * デフォルトのディスク同期の間隔 (ミリ秒)。
+	 */
+	public static final long DefaultCommitInterval = 1000;
+
+	/**
+	 * 最も古いセグメントを圧縮する有効データの割合。
+	 */
+	public static final double CompactionThreshold = 0.5;
+
+	private static final byte Store = 1;
+	private static final byte Delete = 2;
+
+	/** length + crc32 */
+	private static final int HeaderSize = 8;
+
+	/** type + uuid + expires */
+	private static final int FixedSize = 1 + 16 + 8;
+
+	private static final String Suffix = ".log";
+
+	/**
+	 * セグメントファイルを保存するディレクトリ。
+	 */
+	public final Path dir;
+
+	/**
+	 * セグメントファイルのサイズ (バイト)。
+	 */
+	public final int segmentSize;
+
+	/**
+	 * バックグラウンドでディスクへ同期する間隔 (ミリ秒)。0 以下の場合は同期を OS に任せます。
+	 */
+	public final long commitInterval;
+
+	/**
+	 * 保存がディスクへの同期の完了を待機する場合 true。
+	 */
+	public final boolean groupCommit;
+
+	/** 有効期限の削除に使用するタイマー */
+	private final TimingWheel timer;
+
+	/** ID ごとの有効なデータの位置 */
+	private final Map<UUID, Entry> index = new HashMap<>();
+
+	/** すべてのセグメント (古い順)。末尾が書き込み中のセグメント */
+	private final Deque<Segment> segments = new ArrayDeque<>();
+
+	/** ディスクへ同期済みの論理位置 (上位 32 ビットがセグメント番号、下位 32 ビットがセグメント内の位置) */
+	private long committed = 0;
+
+	/** ディスクへの同期を待機している保存の数 */
+	private volatile int waiters = 0;
+
+	/** ディスクへの同期の待機に使用するモニタ */
+	private final Object commitLock = new Object();
+
+	private final FileChannel lockChannel;
+	private final FileLock lock;
+	private final Thread committer;
+	private volatile boolean closed = false;
+
+	// ==============================================================================================
+	// コンストラクタ
+	// ==============================================================================================
+	/**
+	 * デフォルトの設定でリポジトリを開きます。
+	 *
+	 * @param dir セグメントファイルを保存するディレクトリ
+	 * @param timer 有効期限の削除に使用するタイマー
+	 * @throws IOException ディレクトリを使用できない場合
+	 */
+	public FileRepository(Path dir, TimingWheel timer) throws IOException {
+		this(dir, timer, DefaultSegmentSize, DefaultCommitInterval, false);
+	}
+
+	/**
+	 * 指定されたディレクトリのリポジトリを開きます。既存のセグメントが存在する場合はインデックスを復元します。
+	 *
+	 * @param dir セグメントファイルを保存するディレクトリ
+	 * @param timer 有効期限の削除に使用するタイマー
+	 * @param segmentSize セグメントファイルのサイズ (バイト)
+	 * @param commitInterval バックグラウンドでディスクへ同期する間隔 (ミリ秒)。0 以下の場合は同期を OS に任せる
+	 * @param groupCommit 保存がディスクへの同期の完了を待機する場合 true
+	 * @throws IOException ディレクトリを使用できない場合
+	 */
+	public FileRepository(Path dir, TimingWheel timer, int segmentSize, long commitInterval, boolean groupCommit) throws IOException {
+		if(segmentSize <= HeaderSize + FixedSize){
+			throw new IllegalArgumentException("too small segment size: " + segmentSize);
+		}
+		this.dir = dir;
+		this.timer = timer;
+		this.segmentSize = segmentSize;
+		this.commitInterval = commitInterval;
+		this.groupCommit = groupCommit;
+
+		Files.createDirectories(dir);
+		this.lockChannel = FileChannel.open(dir.resolve("LOCK"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		FileLock lock;
+		try {
+			lock = lockChannel.tryLock();
+		} catch(OverlappingFileLockException ex){
+			lock = null;
+		}
+		if(lock == null){
+			lockChannel.close();
+			throw new IOException(dir + ": repository is in use by another process");
+		}
+		this.lock = lock;
+
+		recover();
+		this.committed = segments.getLast().logicalPosition();
+		this.committer = Asterisque.newThread("repository.commit", this::runCommitter);
+		this.committer.setDaemon(true);
+		this.committer.start();
+	}
+
+	// ==============================================================================================
+	// 新規 UUID の取得
+	// ==============================================================================================
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public UUID nextUUID(){
+		return UUID.randomUUID();
+	}
+
+	// ==============================================================================================
+	// データの保存
+	// ==============================================================================================
+	/**
+	 * {@inheritDoc}
+	 * {@link #groupCommit} が指定されている場合はこのデータを含むディスクへの同期が完了するまで待機します。
+	 *
+	 * @throws UncheckedIOException 新しいセグメントを作成できない場合
+	 */
+	@Override
+	public void store(Optional<Principal> principal, UUID id, byte[] binary, long expires) {
+		long position;
+		synchronized(this){
+			ensureOpen();
+			Entry entry = append(Store, id, System.currentTimeMillis() + expires, binary);
+			entry.timeout = timer.schedule(() -> expire(id, entry), expires, TimeUnit.MILLISECONDS);
+			replace(id, entry);
+			position = segments.getLast().logicalPosition();
+		}
+		if(groupCommit){
+			awaitCommit(position);
+		}
+	}
+
+	// ==============================================================================================
+	// データの復元
+	// ==============================================================================================
+	/**
+	 * {@inheritDoc}
+	 * 削除はレコードとして記録され、再起動後に復元されることはありません。
+	 */
+	@Override
+	public Optional<byte[]> loadAndDelete(Optional<Principal> principal, UUID id) {
+		byte[] data;
+		synchronized(this){
+			ensureOpen();
+			Entry entry = index.get(id);
+			if(entry == null){
+				return Optional.empty();
+			}
+			data = entry.segment.data(entry.offset);
+			append(Delete, id, 0, new byte[0]);
+			replace(id, null);
+			if(entry.expires < System.currentTimeMillis()){
+				// タイマーの精度によって削除が遅れている場合
+				return Optional.empty();
+			}
+		}
+		return Optional.of(data);
+	}
+
+	/**
+	 * @return 有効なデータの数
+	 */
+	public synchronized int size(){
+		return index.size();
+	}
+
+	/**
+	 * @return 使用しているセグメントファイルの数
+	 */
+	public synchronized int segments(){
+		return segments.size();
+	}
+
+	// ==============================================================================================
+	// クローズ
+	// ==============================================================================================
+	/**
+	 * 書き込み済みのデータをディスクへ同期してリポジトリをクローズします。
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized(this){
+			if(closed){
+				return;
+			}
+			closed = true;
+		}
+		committer.interrupt();
+		try {
+			committer.join();
+		} catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+		}
+		commit();
+		synchronized(this){
+			for(Map.Entry<UUID, Entry> e : index.entrySet()){
+				e.getValue().timeout.cancel();
+			}
+			index.clear();
+			for(Segment segment : segments){
+				segment.channel.close();
+			}
+			segments.clear();
+		}
+		lock.release();
+		lockChannel.close();
+	}
+
+	// ==============================================================================================
+	// レコードの追記
+	// ==============================================================================================
+	/**
+	 * 書き込み中のセグメントの末尾にレコードを追記します。容量が不足している場合は新しいセグメントを作成します。
+	 * 長さを最後に書き込むため、書き込み途中のレコードが有効なレコードとして読み込まれることはありません。
+	 */
+	private Entry append(byte type, UUID id, long expires, byte[] data){
+		int size = HeaderSize + FixedSize + data.length;
+		if(size > segmentSize){
+			throw new IllegalArgumentException("too large data for segment: " + data.length + " bytes");
+		}
+		Segment segment = segments.getLast();
+		if(segment.position + size > segment.buffer.capacity()){
+			try {
+				segment = Segment.create(dir, segment.seq + 1, segmentSize);
+			} catch(IOException ex){
+				throw new UncheckedIOException(ex);
+			}
+			segments.addLast(segment);
+		}
+		int offset = segment.position;
+		ByteBuffer buffer = segment.buffer.duplicate();
+		buffer.position(offset + HeaderSize);
+		buffer.put(type);
+		buffer.putLong(id.getMostSignificantBits());
+		buffer.putLong(id.getLeastSignificantBits());
+		buffer.putLong(expires);
+		buffer.put(data);
+		buffer.position(offset + HeaderSize);
+		buffer.limit(offset + size);
+		CRC32 crc = new CRC32();
+		crc.update(buffer);
+		segment.buffer.putInt(offset + 4, (int)crc.getValue());
+		segment.buffer.putInt(offset, size - HeaderSize);
+		segment.position += size;
+		return new Entry(segment, offset, size, expires);
+	}
+
+	/**
+	 * 指定された ID のインデックスを置き換え、以前のデータを無効とします。
+	 */
+	private void replace(UUID id, Entry entry){
+		Entry old = entry == null? index.remove(id): index.put(id, entry);
+		if(old != null){
+			old.segment.live -= old.size;
+			old.timeout.cancel();
+		}
+		if(entry != null){
+			entry.segment.live += entry.size;
+		}
+	}
+
+	/**
+	 * 有効期限に達したデータをインデックスから削除します。タイマーのスレッドから呼び出されます。
+	 */
+	private synchronized void expire(UUID id, Entry entry){
+		if(index.get(id) == entry){
+			index.remove(id);
+			entry.segment.live -= entry.size;
+		}
+	}
+
+	private void ensureOpen(){
+		if(closed){
+			throw new IllegalStateException(dir + ": repository closed");
+		}
+	}
+
+	// ==============================================================================================
+	// ディスクへの同期
+	// ==============================================================================================
+	/**
+	 * 指定された論理位置までのディスクへの同期が完了するまで待機します。
+	 */
+	private void awaitCommit(long position){
+		synchronized(commitLock){
+			waiters ++;
+			commitLock.notifyAll();
+			try {
+				while(committed < position && ! closed){
+					commitLock.wait();
+				}
+			} catch(InterruptedException ex){
+				Thread.currentThread().interrupt();
+			} finally {
+				waiters --;
+			}
+		}
+	}
+
+	/**
+	 * 同期していない書き込みを含むすべてのセグメントをディスクへ同期し、待機している保存に通知します。
+	 */
+	private void commit(){
+		List<Segment> dirty = new ArrayList<>();
+		long position;
+		synchronized(this){
+			for(Segment segment : segments){
+				if(segment.forced < segment.position){
+					dirty.add(segment);
+				}
+			}
+			position = segments.isEmpty()? 0: segments.getLast().logicalPosition();
+		}
+		for(Segment segment : dirty){
+			// 同期前に位置を参照することで同期に含まれる書き込みだけを同期済みとする
+			int forced;
+			synchronized(this){
+				forced = segment.position;
+			}
+			segment.buffer.force();
+			segment.forced = forced;
+		}
+		synchronized(commitLock){
+			committed = Math.max(committed, position);
+			commitLock.notifyAll();
+		}
+	}
+
+	/**
+	 * ディスクへの同期とセグメントの圧縮を行うバックグラウンドスレッドの処理です。グループコミットで待機して
+	 * いる保存がある場合は直ちに同期します。
+	 */
+	private void runCommitter(){
+		long last = System.currentTimeMillis();
+		while(! closed){
+			try {
+				synchronized(commitLock){
+					if(waiters == 0){
+						commitLock.wait(commitInterval > 0? commitInterval: DefaultCommitInterval);
+					}
+				}
+				long now = System.currentTimeMillis();
+				if(waiters > 0 || (commitInterval > 0 && now - last >= commitInterval)){
+					commit();
+					last = now;
+				}
+				compact();
+			} catch(InterruptedException ex){
+				break;
+			} catch(Throwable ex){
+				logger.error(dir + ": unexpected exception in repository maintenance", ex);
+			}
+		}
+	}
+
+	// ==============================================================================================
+	// セグメントの圧縮
+	// ==============================================================================================
+	/**
+	 * 最も古いセグメントの有効なデータが {@link #CompactionThreshold} を下回っていれば、残っているデータを末尾へ
+	 * 書き直してセグメントを削除します。書き直しはデータごとにロックを取得して行うため、保存を長時間停止させる
+	 * ことはありません。
+	 */
+	void compact() throws IOException {
+		Segment oldest;
+		synchronized(this){
+			if(segments.size() < 2 || closed){
+				return;
+			}
+			oldest = segments.getFirst();
+			if(oldest.live > oldest.position * CompactionThreshold){
+				return;
+			}
+		}
+		int count = 0;
+		for(int offset = 0; offset < oldest.position; offset += HeaderSize + oldest.buffer.getInt(offset)){
+			if(oldest.buffer.get(offset + HeaderSize) != Store){
+				continue;
+			}
+			UUID id = oldest.id(offset);
+			synchronized(this){
+				Entry entry = index.get(id);
+				if(closed || entry == null || entry.segment != oldest || entry.offset != offset){
+					continue;
+				}
+				Entry moved = append(Store, id, entry.expires, oldest.data(offset));
+				index.put(id, moved);
+				oldest.live -= entry.size;
+				moved.segment.live += moved.size;
+				// 有効期限の処理が新しい位置のデータを削除するよう参照を置き換える
+				moved.timeout = timer.schedule(() -> expire(id, moved), Math.max(0, entry.expires - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+				entry.timeout.cancel();
+				count ++;
+			}
+		}
+		synchronized(this){
+			if(closed){
+				return;
+			}
+			segments.removeFirst();
+		}
+		oldest.delete();
+		logger.debug(dir + ": segment " + oldest.seq + " compacted; " + count + " records moved");
+	}
+
+	// ==============================================================================================
+	// 復元
+	// ==============================================================================================
+	/**
+	 * 既存のセグメントを古い順に再生してインデックスを復元します。CRC が一致しないレコードを検出した場合は
+	 * そのセグメントのそれ以降の領域を破棄します。
+	 */
+	private synchronized void recover() throws IOException {
+		List<Path> files = new ArrayList<>();
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + Suffix)){
+			stream.forEach(files::add);
+		}
+		files.sort(null);
+		long now = System.currentTimeMillis();
+		int records = 0;
+		for(Path file : files){
+			String name = file.getFileName().toString();
+			Segment segment = Segment.open(file, Long.parseLong(name.substring(0, name.length() - Suffix.length())), segmentSize);
+			segments.addLast(segment);
+			int offset = 0;
+			int capacity = segment.buffer.capacity();
+			while(offset + HeaderSize + FixedSize <= capacity){
+				int length = segment.buffer.getInt(offset);
+				if(length == 0){
+					break;
+				}
+				if(length < FixedSize || offset + HeaderSize + length > capacity || ! segment.verify(offset, length)){
+					logger.warn(file + ": broken record at " + offset + "; discarding the rest of segment");
+					segment.truncate(offset);
+					break;
+				}
+				int size = HeaderSize + length;
+				UUID id = segment.id(offset);
+				if(segment.buffer.get(offset + HeaderSize) == Store){
+					long expires = segment.buffer.getLong(offset + HeaderSize + 1 + 16);
+					Entry entry = new Entry(segment, offset, size, expires);
+					Entry old = index.put(id, entry);
+					if(old != null){
+						old.segment.live -= old.size;
+					}
+					segment.live += size;
+				} else {
+					Entry old = index.remove(id);
+					if(old != null){
+						old.segment.live -= old.size;
+					}
+				}
+				offset += size;
+				records ++;
+			}
+			segment.position = offset;
+			segment.forced = offset;
+		}
+		if(segments.isEmpty()){
+			segments.addLast(Segment.create(dir, 0, segmentSize));
+		}
+		index.entrySet().removeIf(e -> {
+			Entry entry = e.getValue();
+			if(entry.expires < now){
+				entry.segment.live -= entry.size;
+				return true;
+			}
+			UUID id = e.getKey();
+			entry.timeout = timer.schedule(() -> expire(id, entry), entry.expires - now, TimeUnit.MILLISECONDS);
+			return false;
+		});
+		if(records > 0){
+			logger.info(dir + ": " + index.size() + " entries recovered from " + records + " records in " + segments.size() + " segments");
+		}
+	}
+
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	// Entry
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	/**
+	 * 有効なデータのレコードの位置です。
+	 */
+	private static final class Entry {
+		public final Segment segment;
+		public final int offset;
+		public final int size;
+		public final long expires;
+		public TimingWheel.Timeout timeout = null;
+		public Entry(Segment segment, int offset, int size, long expires){
+			this.segment = segment;
+			this.offset = offset;
+			this.size = size;
+			this.expires = expires;
+		}
+	}
+
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	// Segment
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	/**
+	 * メモリマップされたセグメントファイルです。位置と有効データ量はリポジトリのロックで保護されます。
+	 */
+	private static final class Segment {
+		public final long seq;
+		public final Path path;
+		public final FileChannel channel;
+		public final MappedByteBuffer buffer;
+		/** 書き込み済みの終端 */
+		public int position = 0;
+		/** ディスクへ同期済みの終端 */
+		public volatile int forced = 0;
+		/** 有効なデータのレコードの合計サイズ */
+		public long live = 0;
+
+		private Segment(long seq, Path path, int size) throws IOException {
+			this.seq = seq;
+			this.path = path;
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			// セグメントサイズの設定を縮小した場合も既存のファイルは全体をマップする
+			this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+		}
+
+		public static Segment create(Path dir, long seq, int size) throws IOException {
+			return new Segment(seq, dir.resolve(String.format("%020d", seq) + Suffix), size);
+		}
+
+		public static Segment open(Path path, long seq, int size) throws IOException {
+			return new Segment(seq, path, size);
+		}
+
+		/** 全セグメントを通して単調に増加する書き込み位置 */
+		public long logicalPosition(){
+			return (seq << 32) | position;
+		}
+
+		public UUID id(int offset){
+			return new UUID(buffer.getLong(offset + HeaderSize + 1), buffer.getLong(offset + HeaderSize + 1 + 8));
+		}
+
+		public byte[] data(int offset){
+			int length = buffer.getInt(offset);
+			byte[] data = new byte[length - FixedSize];
+			ByteBuffer b = buffer.duplicate();
+			b.position(offset + HeaderSize + FixedSize);
+			b.get(data);
+			return data;
+		}
+
+		public boolean verify(int offset, int length){
+			ByteBuffer b = buffer.duplicate();
+			b.position(offset + HeaderSize);
+			b.limit(offset + HeaderSize + length);
+			CRC32 crc = new CRC32();
+			crc.update(b);
+			return buffer.getInt(offset + 4) == (int)crc.getValue();
+		}
+
+		/** 指定された位置以降をゼロで埋め、残っている古い内容が有効なレコードとして読み込まれることを防ぐ */
+		public void truncate(int offset){
+			for(int i = offset; i < buffer.capacity(); i ++){
+				buffer.put(i, (byte)0);
+			}
+		}
+
+		/** マップはガベージコレクションで解放される */
+		public void delete(){
+			try {
+				channel.close();
+				Files.deleteIfExists(path);
+			} catch(IOException ex){
+				logger.warn(path + ": fail to delete compacted segment", ex);
+			}
+		}
+	}
+}
@@ -5,17 +5,42 @@
 */
 package org.asterisque.cluster;
 
+import org.asterisque.util.TimingWheel;
+
 import java.security.Principal;
-import java.util.*;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 // ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
 // MemoryRepository
 // ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
 /**
+ * データごとの有効期限をタイミングホイールに登録し、期限に達したデータを削除するオンメモリのリポジトリです。
+ *
+ * データは {@link ConcurrentHashMap} で保持するため、異なる ID に対する保存と復元はロックを共有せず並行して
+ * 実行されます。有効期限はデータごとに O(1) で登録・取り消しされ、全件を走査する処理はありません。
+ *
  * @author Takami Torao
  */
 class MemoryRepository implements Repository {
 
+	/**
+	 * 有効期限の削除に使用するタイマー。
+	 */
+	private final TimingWheel timer;
+
+	private final ConcurrentMap<UUID, Value> repository = new ConcurrentHashMap<>();
+
+	/**
+	 * @param timer 有効期限の削除に使用するタイマー
+	 */
+	public MemoryRepository(TimingWheel timer){
+		this.timer = timer;
+	}
+
 	// ==============================================================================================
 	// 新規 UUID の取得
 	// ==============================================================================================
@@ -29,26 +54,24 @@ class MemoryRepository implements Repository {
 	private static final class Value {
 		public final byte[] value;
 		public final long expires;
+		public TimingWheel.Timeout timeout = null;
 		public Value(byte[] value, long expires){
 			this.value = value;
 			this.expires = expires;
 		}
 	}
 
-	private static Timer timer = null;
-
-	private static final Map<UUID, Value> Repository = new HashMap<>();
-
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public void store(Optional<Principal> principal, UUID id, byte[] binary, long expires) {
-		synchronized(Repository){
-			if(Repository.size() == 0){
-				timer(true);
-			}
-			Repository.put(id, new Value(binary, System.currentTimeMillis() + expires));
+		Value value = new Value(binary, System.currentTimeMillis() + expires);
+		// 公開前に有効期限を登録する (期限の処理は同じ ID で上書きされた新しいデータを削除しない)
+		value.timeout = timer.schedule(() -> repository.remove(id, value), expires, TimeUnit.MILLISECONDS);
+		Value old = repository.put(id, value);
+		if(old != null){
+			old.timeout.cancel();
 		}
 	}
 
@@ -57,37 +80,23 @@ class MemoryRepository implements Repository {
 	 */
 	@Override
 	public Optional<byte[]> loadAndDelete(Optional<Principal> principal, UUID id) {
-		synchronized(Repository){
-			Value value = Repository.remove(id);
-			if(Repository.size() == 0){
-				timer(false);
-			}
-			if(value == null || value.expires < System.currentTimeMillis()) {
-				return Optional.empty();
-			} else {
-				return Optional.of(value.value);
-			}
+		Value value = repository.remove(id);
+		if(value == null){
+			return Optional.empty();
 		}
-	}
-
-	private static void timer(boolean on){
-		if(on){
-			timer = new Timer("MemoryRepository", true);
-			timer.scheduleAtFixedRate(new TimerTask() {
-				@Override
-				public void run() {
-					synchronized(Repository){
-						long now = System.currentTimeMillis();
-						Repository.entrySet().stream()
-							.filter(e -> e.getValue().expires < now)
-							.map(Map.Entry::getKey)
-							.forEach(Repository::remove);
-					}
-				}
-			}, 1000, 1000);
+		value.timeout.cancel();
+		// タイマーの精度によって削除が遅れている場合
+		if(value.expires < System.currentTimeMillis()) {
+			return Optional.empty();
 		} else {
-			timer.cancel();
-			timer = null;
+			return Optional.of(value.value);
 		}
 	}
+
+	/**
+	 * @return 保持しているデータの数
+	 */
+	int size(){
+		return repository.size();
+	}
 }
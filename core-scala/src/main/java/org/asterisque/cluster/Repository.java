@@ -5,9 +5,13 @@
 */
 package org.asterisque.cluster;
 
+import org.asterisque.Asterisque;
+import org.asterisque.util.TimingWheel;
+
 import java.security.Principal;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 // ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
 // Repository
@@ -23,9 +27,25 @@ public interface Repository {
 	// オンメモリリポジトリ
 	// ==============================================================================================
 	/**
-	 * オンメモリでデータを保持するリポジトリのインスタンスです。
+	 * オンメモリでデータを保持するリポジトリのインスタンスです。このインスタンスは複数のノードで共有される
+	 * ため、データの有効期限はこのインスタンス専用のタイマーで管理します (タイマーのスレッドは最初のデータを
+	 * 保存した時点で開始します)。
+	 */
+	public static final Repository OnMemory = new MemoryRepository(
+		new TimingWheel(Asterisque.newThreadFactory("repository"), 100, TimeUnit.MILLISECONDS, 512));
+
+	// ==============================================================================================
+	// オンメモリリポジトリの構築
+	// ==============================================================================================
+	/**
+	 * 指定されたタイマーでデータの有効期限を管理するオンメモリのリポジトリを構築します。ノードのタイマーを共有
+	 * する場合は {@code new Node(id, name, executor, service, Repository::onMemory)} のように使用します。
+	 *
+	 * @param timer データの有効期限の削除に使用するタイマー
 	 */
-	public static final Repository OnMemory = new MemoryRepository();
+	public static Repository onMemory(TimingWheel timer){
+		return new MemoryRepository(timer);
+	}
 
 	// ==============================================================================================
 	// 新規 UUID の取得
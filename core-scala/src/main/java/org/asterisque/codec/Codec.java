@@ -11,6 +11,7 @@ import org.asterisque.msg.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.*;
 
@@ -51,7 +52,33 @@ public interface Codec {
 			L.logger.trace("encode(" + msg + ")");
 		}
 		assert(msg != null);
-		Marshal m = newMarshal();
+		// 直列化結果をメッセージ長のバッファへ複写し、直列化処理の作業領域は次のメッセージのために返却する
+		BufferMarshal m = newMarshal();
+		try {
+			encode(msg, m);
+			ByteBuffer b = m.toByteBuffer();
+			assert(b.remaining() > 0);
+			if(b.remaining() > MaxMessageSize){
+				throw new CodecException(String.format("message binary too large: %d > %d: %s", b.remaining(), MaxMessageSize, msg));
+			}
+			ByteBuffer copy = ByteBuffer.allocate(b.remaining());
+			copy.put(b);
+			copy.flip();
+			return copy;
+		} finally {
+			m.release();
+		}
+	}
+
+	// ==============================================================================================
+	// メッセージのシリアライズ
+	// ==============================================================================================
+	/**
+	 * 指定されたメッセージを指定された直列化処理に書き込みます。このメソッドはメッセージ全体の長さを検査しない
+	 * ため、呼び出し側で {@link #MaxMessageSize} を検査する必要があります。
+	 * @throws org.asterisque.codec.CodecException シリアライズに失敗した場合
+	 */
+	public default void encode(Message msg, Marshal m) throws CodecException{
 		if(msg instanceof Open) {
 			Open open = (Open)msg;
 			m.writeTag(Msg.Open);
@@ -82,7 +109,13 @@ public interface Codec {
 				if(block.length > Block.MaxPayloadSize){
 					throw new CodecException(String.format("block length too large: %d / %d", block.length, Block.MaxPayloadSize));
 				}
-				m.writeBinary(block.payload, block.offset, block.length);
+				if(block.hasArray()){
+					m.writeBinary(block.payload, block.offset, block.length);
+				} else {
+					byte[] payload = new byte[block.length];
+					block.toByteBuffer().get(payload);
+					m.writeBinary(payload, 0, payload.length);
+				}
 			}
 		} else if(msg instanceof Control) {
 			Control control = (Control) msg;
@@ -92,12 +125,6 @@ public interface Codec {
 		} else {
 			throw new IllegalStateException(String.format("unexpected message type: %s", msg.getClass().getName()));
 		}
-		ByteBuffer b = m.toByteBuffer();
-		assert(b.remaining() > 0);
-		if(b.remaining() > MaxMessageSize){
-			throw new CodecException(String.format("message binary too large: %d > %d: %s", b.remaining(), MaxMessageSize, msg));
-		}
-		return b;
 	}
 
 	// ==============================================================================================
@@ -120,6 +147,23 @@ public interface Codec {
 	 * @return デコードしたメッセージ
 	 */
 	public default Optional<Message> decode(ByteBuffer buffer){
+		return decode(buffer, Optional.empty());
+	}
+
+	// ==============================================================================================
+	// メッセージのデシリアライズ
+	// ==============================================================================================
+	/**
+	 * 指定されたメッセージをデコードします。{@code retainer} が指定され、かつ {@link Unmarshal#readBinaryView()}
+	 * をサポートしている場合、Block のペイロードは複写されずに {@code retainer} によって入力バッファを参照する
+	 * Block として構築されます。
+	 *
+	 * @param buffer デコードするメッセージ
+	 * @param retainer Block のペイロードを入力バッファ上で保持する処理
+	 * @return デコードしたメッセージ
+	 * @see #decode(java.nio.ByteBuffer)
+	 */
+	public default Optional<Message> decode(ByteBuffer buffer, Optional<PayloadRetainer> retainer){
 		if(L.logger.isTraceEnabled()){
 			L.logger.trace("decode(" + buffer + ")");
 		}
@@ -151,6 +195,12 @@ public interface Codec {
 					boolean eof = status == (byte)(1 << 7);
 					byte loss = (byte)(eof? 0: status & 0x7F);
 					if(! eof){
+						if(retainer.isPresent()){
+							Optional<ByteBuffer> view = u.readBinaryView();
+							if(view.isPresent()){
+								return Optional.of(retainer.get().retain(pipeId3, loss, view.get()));
+							}
+						}
 						byte[] payload = u.readBinary();
 						return Optional.of(new Block(pipeId3, loss, payload, 0, payload.length));
 					} else {
@@ -175,7 +225,19 @@ public interface Codec {
 	/**
 	 * 直列化処理を参照します。
 	 */
-	public Marshal newMarshal();
+	public BufferMarshal newMarshal();
+
+	// ==============================================================================================
+	// 直列化処理の取得
+	// ==============================================================================================
+	/**
+	 * 指定された出力ストリームへ直接書き込む直列化処理を参照します。中間バッファを介さずに下層の送信バッファへ
+	 * シリアライズする目的で使用します。{@link #encode(Message, Marshal)} 以外の方法でメッセージをエンコー
+	 * ドするなど、ストリームへの直接出力をサポートしないサブクラスは Optional.empty() を返します。
+	 */
+	public default Optional<Marshal> newMarshal(OutputStream out){
+		return Optional.empty();
+	}
 
 	// ==============================================================================================
 	// 非直列化処理の取得
@@ -212,7 +274,6 @@ public interface Codec {
 	}
 
 	public interface Marshal {
-		public ByteBuffer toByteBuffer();
 		public default void writeTag(byte tag){ writeInt8(tag); }
 		public default void writeTrue(){ writeTag(Tag.True); }
 		public default void writeFalse(){ writeTag(Tag.False); }
@@ -328,6 +389,43 @@ public interface Codec {
 		}
 	}
 
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	// BufferMarshal
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	/**
+	 * 直列化した結果をバッファに保持する直列化処理です。{@link #toByteBuffer()} が返すバッファは直列化処理の
+	 * 作業領域を参照しているため、参照を終えた時点で {@link #release()} によって作業領域を返却します。
+	 */
+	public interface BufferMarshal extends Marshal {
+		/**
+		 * 直列化した結果を参照します。返値は {@link #release()} を呼び出すまで有効です。
+		 */
+		public ByteBuffer toByteBuffer();
+		/**
+		 * 作業領域を再利用のために返却します。返却後にこの直列化処理を使用することはできません。
+		 */
+		public void release();
+	}
+
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	// PayloadRetainer
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	/**
+	 * デコード時に Block のペイロードを入力バッファ上で保持し、受信バッファを参照する Block を構築する処理です。
+	 * 入力バッファを提供する下層の通信実装が実装します。
+	 *
+	 * @see #decode(java.nio.ByteBuffer, java.util.Optional)
+	 */
+	public interface PayloadRetainer {
+		/**
+		 * @param pipeId パイプ ID
+		 * @param loss 損失率
+		 * @param view 入力バッファ上のペイロードの範囲
+		 * @return 受信バッファを参照する Block
+		 */
+		public Block retain(short pipeId, byte loss, ByteBuffer view);
+	}
+
 	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
 	// Unmarshal
 	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
@@ -375,6 +473,14 @@ public interface Codec {
 		public float readFloat32() throws Unsatisfied;
 		public double readFloat64() throws Unsatisfied;
 		public byte[] readBinary() throws Unsatisfied;
+		/**
+		 * バイナリを複写せずに入力バッファ上の範囲として読み込みます。返値は入力バッファと内容を共有し、position
+		 * と limit は入力バッファ上のバイナリの位置を示します。この読み込みをサポートしない場合は何も読み込まずに
+		 * Optional.empty() を返します。
+		 */
+		public default Optional<ByteBuffer> readBinaryView() throws Unsatisfied {
+			return Optional.empty();
+		}
 		public default String readString() throws Unsatisfied {
 			return new String(readBinary(), Asterisque.UTF8);
 		}
@@ -101,7 +101,7 @@ public class JavaCodec implements Codec {
 	/**
 	 * 直列化処理を参照します。
 	 */
-	public Marshal newMarshal(){
+	public BufferMarshal newMarshal(){
 		return new SimpleCodec.SimpleMarshal();
 	}
 
@@ -7,13 +7,16 @@ package org.asterisque.codec;
 
 import org.msgpack.MessagePack;
 import org.msgpack.packer.BufferPacker;
+import org.msgpack.packer.Packer;
 import org.msgpack.unpacker.BufferUnpacker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.Optional;
 
 // ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
 // MessagePackCodec
@@ -28,6 +31,11 @@ import java.nio.ByteBuffer;
 public class MessagePackCodec implements Codec {
 	private static final Logger logger = LoggerFactory.getLogger(MessagePackCodec.class);
 
+	/**
+	 * Packer, Unpacker を生成するための MessagePack。生成のコストが高いため全ての直列化処理で共有する。
+	 */
+	private static final MessagePack Pack = new MessagePack();
+
 	// ==============================================================================================
 	// Singleton インスタンス
 	// ==============================================================================================
@@ -60,8 +68,19 @@ public class MessagePackCodec implements Codec {
 	/**
 	 * 直列化処理を参照します。
 	 */
-	public Marshal newMarshal(){
-		return new MsgPackMarshal();
+	public BufferMarshal newMarshal(){
+		return new MsgPackBufferMarshal();
+	}
+
+	// ==============================================================================================
+	// 直列化処理の取得
+	// ==============================================================================================
+	/**
+	 * 指定された出力ストリームへ直接書き込む直列化処理を参照します。
+	 */
+	@Override
+	public Optional<Marshal> newMarshal(OutputStream out){
+		return Optional.of(new MsgPackMarshal(Pack.createPacker(out)));
 	}
 
 	// ==============================================================================================
@@ -75,14 +94,12 @@ public class MessagePackCodec implements Codec {
 	}
 
 	/**
-	 * 各転送可能型に対してビッグエンディアンでシリアライズを行います。
+	 * 各転送可能型に対してビッグエンディアンで Packer へシリアライズを行います。
 	 */
 	private static class MsgPackMarshal implements Marshal {
-		private final MessagePack msgpack = new MessagePack();
-		private final BufferPacker packer = msgpack.createBufferPacker();
-		public MsgPackMarshal(){ }
-		public ByteBuffer toByteBuffer() {
-			return ByteBuffer.wrap(packer.toByteArray());
+		protected final Packer packer;
+		public MsgPackMarshal(Packer packer){
+			this.packer = packer;
 		}
 		public void writeInt8(byte i){
 			try {
@@ -135,13 +152,50 @@ public class MessagePackCodec implements Codec {
 		}
 	}
 
+	/**
+	 * 各転送可能型に対してビッグエンディアンでバッファへシリアライズを行います。
+	 *
+	 * バッファを使用する Packer はスレッドごとに再利用されます。再利用できる Packer がない場合はこれまでに
+	 * 直列化したメッセージサイズの移動平均から見積もったサイズのバッファで生成します。{@link #release()} で
+	 * Packer を再利用のために返却します。
+	 */
+	private static class MsgPackBufferMarshal extends MsgPackMarshal implements BufferMarshal {
+		/** スレッドごとに再利用するバッファ Packer */
+		private static final ThreadLocal<BufferPacker[]> Recycled = ThreadLocal.withInitial(() -> new BufferPacker[1]);
+		/** 直列化したメッセージサイズの見積もり */
+		private static final SizeEstimator Estimator = new SizeEstimator();
+		public MsgPackBufferMarshal(){
+			super(recycledPacker());
+		}
+		public ByteBuffer toByteBuffer() {
+			BufferPacker p = (BufferPacker)packer;
+			byte[] b = p.toByteArray();
+			Estimator.update(b.length);
+			return ByteBuffer.wrap(b);
+		}
+		public void release() {
+			BufferPacker p = (BufferPacker)packer;
+			p.clear();
+			Recycled.get()[0] = p;
+		}
+		private static BufferPacker recycledPacker(){
+			BufferPacker[] slot = Recycled.get();
+			BufferPacker packer = slot[0];
+			if(packer == null){
+				return Pack.createBufferPacker(Estimator.estimate());
+			}
+			slot[0] = null;
+			return packer;
+		}
+	}
+
 	/**
 	 * バイナリから各転送可能型にデシリアライズを行います。
 	 */
 	private static class MasPackUnmarshal implements Unmarshal {
 		private final BufferUnpacker unpacker;
 		public MasPackUnmarshal(ByteBuffer buffer){
-			this.unpacker = new MessagePack().createBufferUnpacker(buffer);
+			this.unpacker = Pack.createBufferUnpacker(buffer);
 		}
 		public byte readInt8() throws Unsatisfied {
 			try {
@@ -5,8 +5,13 @@
 */
 package org.asterisque.codec;
 
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Optional;
 
 // ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
 // SimpleCodec
@@ -51,10 +56,21 @@ public class SimpleCodec implements Codec {
 	/**
 	 * 直列化処理を参照します。
 	 */
-	public Marshal newMarshal(){
+	public BufferMarshal newMarshal(){
 		return new SimpleMarshal();
 	}
 
+	// ==============================================================================================
+	// 直列化処理の取得
+	// ==============================================================================================
+	/**
+	 * 指定された出力ストリームへ直接書き込む直列化処理を参照します。
+	 */
+	@Override
+	public Optional<Marshal> newMarshal(OutputStream out){
+		return Optional.of(new SimpleStreamMarshal(out));
+	}
+
 	// ==============================================================================================
 	// 非直列化処理の取得
 	// ==============================================================================================
@@ -67,16 +83,41 @@ public class SimpleCodec implements Codec {
 
 	/**
 	 * 各転送可能型に対してビッグエンディアンでシリアライズを行います。
+	 *
+	 * 作業用のバッファはスレッドごとに再利用されます。再利用できるバッファがない場合はこれまでに直列化した
+	 * メッセージサイズの移動平均から見積もったサイズで確保します。{@link #toByteBuffer()} は作業用バッファを
+	 * 複写せずにそのまま返し、{@link #release()} で作業用バッファを再利用のために返却します。返却しなかった
+	 * 作業用バッファは呼び出し側に引き渡されたものとして扱います。
 	 */
-	public static class SimpleMarshal implements Marshal {
-		private ByteBuffer buffer = ByteBuffer.allocate(64);
+	public static class SimpleMarshal implements BufferMarshal {
+		/** スレッドごとに再利用する作業用バッファ */
+		private static final ThreadLocal<ByteBuffer[]> Recycled = ThreadLocal.withInitial(() -> new ByteBuffer[1]);
+		/** 直列化したメッセージサイズの見積もり */
+		private static final SizeEstimator Estimator = new SizeEstimator();
+		private ByteBuffer buffer;
 		public SimpleMarshal(){
+			ByteBuffer[] slot = Recycled.get();
+			if(slot[0] != null){
+				buffer = slot[0];
+				slot[0] = null;
+				buffer.clear();
+			} else {
+				buffer = ByteBuffer.allocate(Estimator.estimate());
+			}
 			buffer.order(ByteOrder.BIG_ENDIAN);
 		}
 		public ByteBuffer toByteBuffer() {
 			buffer.flip();
+			Estimator.update(buffer.remaining());
 			return buffer;
 		}
+		public void release() {
+			// 見積もりの上限を超えて拡張したバッファはスレッドに保持しない
+			if(buffer != null && buffer.capacity() <= SizeEstimator.MaxSize){
+				Recycled.get()[0] = buffer;
+			}
+			buffer = null;
+		}
 		public void writeInt8(byte i){
 			ensureCapacity(Byte.BYTES);
 			buffer.put(i);
@@ -111,7 +152,7 @@ public class SimpleCodec implements Codec {
 		}
 		private void ensureCapacity(int size){
 			if(buffer.remaining() < size){
-				int min = buffer.remaining() + size;
+				int min = buffer.position() + size;
 				int newSize = buffer.capacity() * 2;
 				while(newSize < min){
 					newSize *= 2;
@@ -125,6 +166,70 @@ public class SimpleCodec implements Codec {
 		}
 	}
 
+	/**
+	 * 各転送可能型をビッグエンディアンで出力ストリームへ直接シリアライズします。出力先が {@link java.io.DataOutput}
+	 * を実装している場合はそのまま使用します。
+	 */
+	public static class SimpleStreamMarshal implements Marshal {
+		private final DataOutput out;
+		public SimpleStreamMarshal(OutputStream out){
+			this.out = (out instanceof DataOutput)? (DataOutput)out: new DataOutputStream(out);
+		}
+		public void writeInt8(byte i){
+			try {
+				out.writeByte(i);
+			} catch(IOException ex){
+				throw new IllegalStateException(ex);
+			}
+		}
+		public void writeInt16(short i){
+			try {
+				out.writeShort(i);
+			} catch(IOException ex){
+				throw new IllegalStateException(ex);
+			}
+		}
+		public void writeInt32(int i) {
+			try {
+				out.writeInt(i);
+			} catch(IOException ex){
+				throw new IllegalStateException(ex);
+			}
+		}
+		public void writeInt64(long i) {
+			try {
+				out.writeLong(i);
+			} catch(IOException ex){
+				throw new IllegalStateException(ex);
+			}
+		}
+		public void writeFloat32(float i) {
+			try {
+				out.writeFloat(i);
+			} catch(IOException ex){
+				throw new IllegalStateException(ex);
+			}
+		}
+		public void writeFloat64(double i){
+			try {
+				out.writeDouble(i);
+			} catch(IOException ex){
+				throw new IllegalStateException(ex);
+			}
+		}
+		public void writeBinary(byte[] b, int offset, int length){
+			if(length < 0 || length > 0xFFFF){
+				throw new CodecException(String.format("too large binary: %d", length));
+			}
+			try {
+				out.writeShort(length);
+				out.write(b, offset, length);
+			} catch(IOException ex){
+				throw new IllegalStateException(ex);
+			}
+		}
+	}
+
 	/**
 	 * バイナリから各転送可能型にデシリアライズを行います。
 	 */
@@ -179,5 +284,16 @@ public class SimpleCodec implements Codec {
 			buffer.get(b);
 			return b;
 		}
+		@Override
+		public Optional<ByteBuffer> readBinaryView() throws Unsatisfied {
+			int length = readUInt16();
+			if(buffer.remaining() < length){
+				throw new Unsatisfied();
+			}
+			ByteBuffer view = buffer.duplicate();
+			view.limit(buffer.position() + length);
+			buffer.position(buffer.position() + length);
+			return Optional.of(view);
+		}
 	}
 }
\ No newline at end of file
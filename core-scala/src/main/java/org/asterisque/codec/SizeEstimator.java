@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.codec;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// SizeEstimator
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * 直列化したメッセージサイズの移動平均から次に確保するバッファの初期サイズを見積もるクラスです。
+ *
+ * 見積もりは直近のメッセージサイズの指数移動平均 (重み 1/8) に余裕を持たせた 2 の累乗となります。複数の
+ * スレッドから更新された場合に一部の更新が失われる可能性がありますが、見積もりの精度にしか影響しないため
+ * 同期は行いません。
+ *
+ * @author Takami Torao
+ */
+public final class SizeEstimator {
+
+	/**
+	 * 見積もりの最小値。
+	 */
+	public static final int MinSize = 64;
+
+	/**
+	 * 見積もりの最大値。
+	 */
+	public static final int MaxSize = Codec.MaxMessageSize + 1;
+
+	/**
+	 * 移動平均 (8 倍の固定小数で保持)。
+	 */
+	private volatile int average8 = 0;
+
+	// ==============================================================================================
+	// サイズの記録
+	// ==============================================================================================
+	/**
+	 * 直列化したメッセージのサイズを記録します。
+	 * @param size 直列化したメッセージのバイトサイズ
+	 */
+	public void update(int size){
+		int s = Math.max(0, Math.min(size, MaxSize));
+		int avg = average8;
+		average8 = avg - (avg >> 3) + s;
+	}
+
+	// ==============================================================================================
+	// サイズの見積もり
+	// ==============================================================================================
+	/**
+	 * 次に確保するバッファのサイズを参照します。
+	 * @return 移動平均の 1.25 倍以上の 2 の累乗 ({@link #MinSize} 以上 {@link #MaxSize} 以下)
+	 */
+	public int estimate(){
+		int avg = average8 >> 3;
+		int size = avg + (avg >> 2);
+		if(size <= MinSize){
+			return MinSize;
+		}
+		return Math.min(Integer.highestOneBit(size - 1) << 1, MaxSize);
+	}
+}
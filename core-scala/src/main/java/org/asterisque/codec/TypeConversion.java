@@ -348,6 +348,98 @@ public abstract class TypeConversion {
 			value.getClass().getName(), type.getName()));
 	}
 
+	// ==============================================================================================
+	// API 呼び出し型変換
+	// ==============================================================================================
+	/**
+	 * 指定された型のパラメータに対する API 呼び出し用の変換処理を参照します。プリミティブ型の判定とボックス型の
+	 * 参照は呼び出し前に一度だけ行われ、値が既にパラメータ型のインスタンスであれば変換定義を検索せずにそのまま
+	 * 返します。型によって決まる変換定義は直前の値の型に対して解決したものを再利用し、それ以外の値は
+	 * {@link #toMethodCall(Object, Class)} と同様に変換されます。
+	 *
+	 * @param type API のパラメータ型
+	 * @return 転送可能型の値をパラメータ型に変換する処理
+	 */
+	public static Function<Object,Object> methodCallConverter(Class<?> type){
+		if(type.isPrimitive()){
+			// プリミティブ型に対する null は規定のゼロ値へ変換
+			Object zero = PrimitiveDefault.get(type);
+			Function<Object,Object> boxed = methodCallConverter(PrimitiveObjType.get(type));
+			return value -> value == null? zero: boxed.apply(value);
+		}
+		return new MethodCallConverter(type);
+	}
+
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	// MethodCallConverter
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	/**
+	 * 特定のパラメータ型に対する API 呼び出し型変換です。直前に変換した値の型と解決した変換定義を保持します。
+	 */
+	private static final class MethodCallConverter implements Function<Object,Object> {
+		private final Class<?> type;
+		private volatile Resolved resolved = null;
+
+		public MethodCallConverter(Class<?> type){
+			this.type = type;
+		}
+
+		@Override
+		public Object apply(Object value){
+			if(value == null || type.isInstance(value)){
+				return value;
+			}
+			List<TypeConversion> conversions = SystemConversions.get();
+			Resolved r = resolved;
+			if(r == null || r.conversions != conversions || r.from != value.getClass()){
+				r = resolve(conversions, value.getClass());
+				resolved = r;
+			}
+			if(r.conversion != null){
+				try {
+					return r.conversion.apply(value);
+				} catch(RuntimeException ex){
+					// 失敗した場合は警告と後続の変換定義の適用を通常の変換に任せる
+				}
+			}
+			return toMethodCall(value, type);
+		}
+
+		/**
+		 * 指定された型の値に対して {@link #toMethodCall(Object, Class)} が適用する型ごとの変換定義を解決します。
+		 * 値によって変換が決まる定義より後に見つかったものは適用順が保証できないため解決しません。
+		 */
+		@SuppressWarnings("unchecked")
+		private Resolved resolve(List<TypeConversion> conversions, Class<?> from){
+			for(TypeConversion tc: conversions){
+				Optional<Class<?>> c = getCompatibleType(from, tc.unboxByType.keySet());
+				if(c.isPresent()){
+					Function<?,?> f = tc.unboxByType.get(c.get()).get(type);
+					if(f != null){
+						return new Resolved(conversions, from, (Function<Object,Object>)f);
+					}
+				}
+				if(! tc.unboxByValue.isEmpty()){
+					break;
+				}
+			}
+			return new Resolved(conversions, from, null);
+		}
+	}
+
+	/**
+	 * 値の型に対して解決した変換定義。
+	 */
+	private static final class Resolved {
+		public final List<TypeConversion> conversions;
+		public final Class<?> from;
+		public final Function<Object,Object> conversion;
+		public Resolved(List<TypeConversion> conversions, Class<?> from, Function<Object,Object> conversion){
+			this.conversions = conversions;
+			this.from = from;
+			this.conversion = conversion;
+		}
+	}
 	// ==============================================================================================
 	// 転送可能型
 	// ==============================================================================================
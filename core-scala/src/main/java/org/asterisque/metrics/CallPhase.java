@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.metrics;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// CallPhase
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * function 呼び出しの所要時間を記録する区間です。{@link #Total} 以外の区間は呼び出しのトレースが有効な
+ * セッションでのみ記録されます。
+ *
+ * 呼び出し元の {@link #Remote} は送信側と受信側の通信経路に呼び出し先の {@link #Dispatch}、{@link #Function}、
+ * {@link #Reply} を加えた時間です。両ノードの時計を同期させずに比較できるよう、通信経路の時間は呼び出し元の
+ * {@link #Remote} と呼び出し先の区間の差として求めます。
+ *
+ * @author Takami Torao
+ */
+public enum CallPhase {
+
+	/** 呼び出し元: パイプの生成 ({@code Session.open}) からクローズまで */
+	Total,
+
+	/** 呼び出し元: パイプの生成から Open が送信キュー ({@code DepartureGate}) から取り出されるまで */
+	Departure,
+
+	/** 呼び出し元: Open が送信キューから取り出されてから Close を受信するまで */
+	Remote,
+
+	/** 呼び出し元: Close を受信してからパイプのクローズ (結果の通知) が完了するまで */
+	Return,
+
+	/** 呼び出し先: Open を受信してから function を開始するまで */
+	Dispatch,
+
+	/** 呼び出し先: function の開始から結果が確定してパイプをクローズするまで */
+	Function,
+
+	/** 呼び出し先: パイプのクローズから Close が送信キューから取り出されるまで */
+	Reply
+}
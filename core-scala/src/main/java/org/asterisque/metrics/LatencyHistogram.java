@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// LatencyHistogram
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * 処理時間 (ナノ秒) の分布を記録する HDR 形式 (対数-線形) のヒストグラムです。
+ *
+ * 記録値は 2 の累乗ごとの区間をさらに {@link #SubBuckets} 個に線形分割したバケットに分類されるため、
+ * パーセンタイルの相対誤差は値の大きさによらず 1/{@link #SubBuckets} 以下となります ({@link #SubBuckets} * 2
+ * 未満の値は正確に記録されます)。バケットのカウントは {@link AtomicLongArray}、件数と合計はストライプ化された
+ * カウンタ ({@link LongAdder}) で保持し、記録時にロックやオブジェクトの生成は行いません。パーセンタイルは
+ * 該当するバケットの上限値で近似されます。
+ *
+ * @author Takami Torao
+ */
+public final class LatencyHistogram implements LatencyHistogramMXBean {
+
+	/** 仮数部のビット数 */
+	private static final int SubBucketBits = 5;
+
+	/** 2 の累乗ごとの区間を線形分割するバケット数 */
+	public static final int SubBuckets = 1 << SubBucketBits;
+
+	/** 正確に記録される値の上限 (この値未満は値そのものをインデックスとする) */
+	private static final int LinearLimit = SubBuckets * 2;
+
+	/** バケット数 */
+	private static final int Buckets = index(Long.MAX_VALUE) + 1;
+
+	/** 各バケットのカウント */
+	private final AtomicLongArray buckets = new AtomicLongArray(Buckets);
+
+	/** 記録値の件数 */
+	private final LongAdder count = new LongAdder();
+
+	/** 記録値の合計 */
+	private final LongAdder sum = new LongAdder();
+
+	/** 記録値の最大 */
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	// ==============================================================================================
+	// 値の記録
+	// ==============================================================================================
+	/**
+	 * 処理時間を記録します。負の値は 0 として扱います。
+	 *
+	 * @param nanos 処理時間 (ナノ秒)
+	 */
+	public void record(long nanos){
+		long value = Math.max(0, nanos);
+		buckets.incrementAndGet(index(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	// ==============================================================================================
+	// 統計値の参照
+	// ==============================================================================================
+	@Override
+	public long getCount(){
+		return count.sum();
+	}
+
+	@Override
+	public long getMean(){
+		long count = getCount();
+		return count == 0? 0: sum.sum() / count;
+	}
+
+	@Override
+	public long getMax(){
+		return max.get();
+	}
+
+	@Override
+	public long get50thPercentile(){
+		return percentile(0.5);
+	}
+
+	@Override
+	public long get90thPercentile(){
+		return percentile(0.9);
+	}
+
+	@Override
+	public long get99thPercentile(){
+		return percentile(0.99);
+	}
+
+	@Override
+	public long get999thPercentile(){
+		return percentile(0.999);
+	}
+
+	// ==============================================================================================
+	// パーセンタイルの参照
+	// ==============================================================================================
+	/**
+	 * 指定された割合の記録値が収まる値を参照します。値は該当するバケットの上限と記録値の最大のうち小さい方です。
+	 *
+	 * @param ratio 0.0 から 1.0 の割合
+	 * @return パーセンタイル値 (ナノ秒)、または値が記録されていない場合は 0
+	 */
+	public long percentile(double ratio){
+		long[] counts = new long[Buckets];
+		long total = 0;
+		for(int i = 0; i < Buckets; i ++){
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if(total == 0){
+			return 0;
+		}
+		long rank = Math.max(1, (long)Math.ceil(total * Math.min(1.0, Math.max(0.0, ratio))));
+		long max = getMax();
+		for(int i = 0; i < Buckets; i ++){
+			rank -= counts[i];
+			if(rank <= 0){
+				return Math.min(upperBound(i), max);
+			}
+		}
+		return max;
+	}
+
+	// ==============================================================================================
+	// バケットの算出
+	// ==============================================================================================
+	/**
+	 * 指定された値 (0 以上) を記録するバケットのインデックスを算出します。
+	 */
+	static int index(long value){
+		if(value < LinearLimit){
+			return (int)value;
+		}
+		int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SubBucketBits;
+		return shift * SubBuckets + (int)(value >>> shift);
+	}
+
+	/**
+	 * 指定されたインデックスのバケットに記録される値の上限を算出します。
+	 */
+	static long upperBound(int index){
+		if(index < LinearLimit){
+			return index;
+		}
+		int shift = index / SubBuckets - 1;
+		long sub = index % SubBuckets + SubBuckets;
+		long upper = ((sub + 1) << shift) - 1;
+		return upper < 0? Long.MAX_VALUE: upper;
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.metrics;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// LatencyHistogramMXBean
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * {@link LatencyHistogram} を JMX で公開するためのインターフェースです。時間の単位はすべてナノ秒です。
+ *
+ * @author Takami Torao
+ */
+public interface LatencyHistogramMXBean {
+
+	/** 記録された値の数 */
+	public long getCount();
+
+	/** 記録された値の平均 */
+	public long getMean();
+
+	/** 記録された値の最大 */
+	public long getMax();
+
+	/** 50 パーセンタイル */
+	public long get50thPercentile();
+
+	/** 90 パーセンタイル */
+	public long get90thPercentile();
+
+	/** 99 パーセンタイル */
+	public long get99thPercentile();
+
+	/** 99.9 パーセンタイル */
+	public long get999thPercentile();
+}
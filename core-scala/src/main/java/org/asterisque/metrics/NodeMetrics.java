@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongBiFunction;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// NodeMetrics
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * ノード上のセッションのメトリクスを集約し JMX (プラットフォーム MBean サーバ) へ公開するレジストリです。
+ *
+ * 次の MBean を {@link #Domain} ドメインに登録します。
+ * <ul>
+ *   <li>{@code type=Node,name=<ノード名>,id=<ノード ID>}: ノード上の全セッションの集計</li>
+ *   <li>{@code type=Session,node=<ノード ID>,session=<セッション ID>}: 状態同期が完了したセッションごとの値</li>
+ *   <li>{@code type=Function,node=<ノード ID>,function=<function 番号>,phase=<区間>}: function ごとの
+ *   呼び出し時間 ({@link CallPhase} の区間ごと)</li>
+ * </ul>
+ * ノードの送受信カウンタはクローズしたセッションの累計とアクティブなセッションの現在値の合計です。
+ * function と区間ごとのヒストグラムは最初に値が記録されたときに生成します。MBean の登録に失敗した場合は
+ * 警告を出力してメトリクスの記録のみ継続します。
+ *
+ * @author Takami Torao
+ */
+public final class NodeMetrics implements NodeMetricsMXBean {
+	private static final Logger logger = LoggerFactory.getLogger(NodeMetrics.class);
+
+	/** MBean を登録するドメイン */
+	public static final String Domain = "org.asterisque";
+
+	/** function ごとのヒストグラムを保持するページのサイズ */
+	private static final int PageSize = 256;
+
+	private final UUID id;
+	private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+	/** 状態同期が完了しているアクティブなセッション */
+	private final Map<UUID, SessionMetrics> sessions = new ConcurrentHashMap<>();
+
+	/** 登録済みの MBean */
+	private final Set<ObjectName> registered = ConcurrentHashMap.newKeySet();
+
+	/** クローズしたセッションの種類ごとの受信メッセージ数 */
+	private final LongAdder[] messagesIn = SessionMetrics.adders();
+	/** クローズしたセッションの種類ごとの受信バイト数 */
+	private final LongAdder[] bytesIn = SessionMetrics.adders();
+	/** クローズしたセッションの種類ごとの送信メッセージ数 */
+	private final LongAdder[] messagesOut = SessionMetrics.adders();
+	/** クローズしたセッションの種類ごとの送信バイト数 */
+	private final LongAdder[] bytesOut = SessionMetrics.adders();
+
+	/** 区間の一覧 */
+	private static final CallPhase[] Phases = CallPhase.values();
+
+	/** function 番号と区間から算出したインデックスでページ化した呼び出し時間のヒストグラム */
+	private final AtomicReferenceArray<AtomicReferenceArray<LatencyHistogram>> latencies =
+		new AtomicReferenceArray<>((1 << Short.SIZE) * Phases.length / PageSize);
+
+	// ==============================================================================================
+	// コンストラクタ
+	// ==============================================================================================
+	/**
+	 * 指定されたノードのメトリクスを構築し MBean を登録します。
+	 *
+	 * @param id ノード ID
+	 * @param name ノード名
+	 */
+	public NodeMetrics(UUID id, String name){
+		this.id = id;
+		register("type=Node,name=" + ObjectName.quote(name) + ",id=" + id, this);
+	}
+
+	// ==============================================================================================
+	// セッションの登録
+	// ==============================================================================================
+	/**
+	 * 状態同期が完了したセッションのメトリクスを集計対象に加えます。既に登録されているセッション ID の場合は
+	 * 何も行いません。
+	 */
+	public void attach(UUID sessionId, SessionMetrics metrics){
+		if(sessions.putIfAbsent(sessionId, metrics) == null){
+			register(sessionName(sessionId), metrics);
+		}
+	}
+
+	// ==============================================================================================
+	// セッションの削除
+	// ==============================================================================================
+	/**
+	 * クローズしたセッションのメトリクスを累計に加算して集計対象から外します。
+	 */
+	public void detach(UUID sessionId){
+		SessionMetrics metrics = sessions.remove(sessionId);
+		if(metrics != null){
+			for(int i = 0; i < SessionMetrics.TypeNames.length; i ++){
+				messagesIn[i].add(metrics.messagesIn(i));
+				bytesIn[i].add(metrics.bytesIn(i));
+				messagesOut[i].add(metrics.messagesOut(i));
+				bytesOut[i].add(metrics.bytesOut(i));
+			}
+			unregister(sessionName(sessionId));
+		}
+	}
+
+	// ==============================================================================================
+	// 呼び出し時間の参照
+	// ==============================================================================================
+	/**
+	 * 指定された function の呼び出し全体 ({@link CallPhase#Total}) の時間を記録するヒストグラムを参照します。
+	 */
+	public LatencyHistogram latency(short function){
+		return latency(function, CallPhase.Total);
+	}
+
+	/**
+	 * 指定された function と区間の時間を記録するヒストグラムを参照します。
+	 */
+	public LatencyHistogram latency(short function, CallPhase phase){
+		int index = (function & 0xFFFF) * Phases.length + phase.ordinal();
+		int p = index / PageSize;
+		AtomicReferenceArray<LatencyHistogram> page = latencies.get(p);
+		if(page == null){
+			latencies.compareAndSet(p, null, new AtomicReferenceArray<>(PageSize));
+			page = latencies.get(p);
+		}
+		int slot = index % PageSize;
+		LatencyHistogram histogram = page.get(slot);
+		if(histogram == null){
+			if(page.compareAndSet(slot, null, new LatencyHistogram())){
+				register("type=Function,node=" + id + ",function=" + function + ",phase=" + phase, page.get(slot));
+			}
+			histogram = page.get(slot);
+		}
+		return histogram;
+	}
+
+	// ==============================================================================================
+	// MBean の登録解除
+	// ==============================================================================================
+	/**
+	 * このレジストリが登録したすべての MBean の登録を解除します。
+	 */
+	public void close(){
+		registered.forEach(this::unregister);
+	}
+
+	// ==============================================================================================
+	// 集計値の参照
+	// ==============================================================================================
+	@Override
+	public int getSessions(){ return sessions.size(); }
+
+	@Override
+	public Map<String,Long> getMessagesIn(){ return sum(messagesIn, SessionMetrics::messagesIn); }
+	@Override
+	public Map<String,Long> getBytesIn(){ return sum(bytesIn, SessionMetrics::bytesIn); }
+	@Override
+	public Map<String,Long> getMessagesOut(){ return sum(messagesOut, SessionMetrics::messagesOut); }
+	@Override
+	public Map<String,Long> getBytesOut(){ return sum(bytesOut, SessionMetrics::bytesOut); }
+
+	@Override
+	public int getQueueDepth(){ return sum(SessionMetrics::getQueueDepth); }
+	@Override
+	public int getWriteLoad(){ return sum(SessionMetrics::getWriteLoad); }
+	@Override
+	public int getReadLoad(){ return sum(SessionMetrics::getReadLoad); }
+	@Override
+	public int getActivePipes(){ return sum(SessionMetrics::getActivePipes); }
+
+	private Map<String,Long> sum(LongAdder[] closed, ToLongBiFunction<SessionMetrics,Integer> live){
+		LongAdder[] total = SessionMetrics.adders();
+		for(int i = 0; i < total.length; i ++){
+			total[i].add(closed[i].sum());
+			for(SessionMetrics metrics: sessions.values()){
+				total[i].add(live.applyAsLong(metrics, i));
+			}
+		}
+		return SessionMetrics.toMap(total);
+	}
+
+	private int sum(ToIntFunction<SessionMetrics> gauge){
+		return sessions.values().stream().mapToInt(gauge).sum();
+	}
+
+	private String sessionName(UUID sessionId){
+		return "type=Session,node=" + id + ",session=" + sessionId;
+	}
+
+	private void register(String name, Object mbean){
+		try {
+			ObjectName objectName = new ObjectName(Domain + ":" + name);
+			server.registerMBean(mbean, objectName);
+			registered.add(objectName);
+		} catch(JMException ex){
+			logger.warn("fail to register mbean: " + name + ": " + ex);
+		}
+	}
+
+	private void unregister(String name){
+		try {
+			unregister(new ObjectName(Domain + ":" + name));
+		} catch(JMException ex){
+			logger.warn("fail to unregister mbean: " + name + ": " + ex);
+		}
+	}
+
+	private void unregister(ObjectName name){
+		if(registered.remove(name)){
+			try {
+				server.unregisterMBean(name);
+			} catch(JMException ex){
+				logger.warn("fail to unregister mbean: " + name + ": " + ex);
+			}
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.metrics;
+
+import java.util.Map;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// NodeMetricsMXBean
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * {@link NodeMetrics} を JMX で公開するためのインターフェースです。カウンタはノード上でクローズしたセッションの
+ * 累計を含み、ゲージはアクティブなセッションの合計値です。
+ *
+ * @author Takami Torao
+ */
+public interface NodeMetricsMXBean {
+
+	/** 状態同期が完了しているアクティブなセッション数 */
+	public int getSessions();
+
+	/** 種類ごとの受信メッセージ数 */
+	public Map<String,Long> getMessagesIn();
+
+	/** 種類ごとの受信バイト数 */
+	public Map<String,Long> getBytesIn();
+
+	/** 種類ごとの送信メッセージ数 */
+	public Map<String,Long> getMessagesOut();
+
+	/** 種類ごとの送信バイト数 */
+	public Map<String,Long> getBytesOut();
+
+	/** 出力キューに保留されているメッセージ数 */
+	public int getQueueDepth();
+
+	/** 送信側サーキットブレーカーの負荷値 */
+	public int getWriteLoad();
+
+	/** 受信側サーキットブレーカーの負荷値 */
+	public int getReadLoad();
+
+	/** アクティブなパイプ数 */
+	public int getActivePipes();
+}
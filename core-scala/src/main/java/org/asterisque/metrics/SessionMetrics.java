@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.metrics;
+
+import org.asterisque.msg.Block;
+import org.asterisque.msg.Close;
+import org.asterisque.msg.Message;
+import org.asterisque.msg.Open;
+import org.asterisque.util.CircuitBreaker;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// SessionMetrics
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * セッション上で送受信したメッセージの統計とセッションの負荷状態を参照するためのクラスです。
+ *
+ * メッセージ数とバイト数はメッセージの種類ごとにストライプ化されたカウンタ ({@link LongAdder}) で保持する
+ * ため、Wire の I/O スレッドや呼び出しスレッドから同時に記録してもロックやオブジェクトの生成は発生しません。
+ * 出力キューの長さなどのゲージ値は参照されたときにセッションから取得します。
+ *
+ * @author Takami Torao
+ */
+public final class SessionMetrics implements SessionMetricsMXBean {
+
+	/** メッセージの種類を表すインデックス */
+	public static final int TypeOpen = 0;
+	public static final int TypeClose = 1;
+	public static final int TypeBlock = 2;
+	public static final int TypeControl = 3;
+
+	/** メッセージの種類の名前 (JMX 上の表示名) */
+	static final String[] TypeNames = { "Open", "Close", "Block", "Control" };
+
+	/** 種類ごとの受信メッセージ数 */
+	private final LongAdder[] messagesIn = adders();
+	/** 種類ごとの受信バイト数 */
+	private final LongAdder[] bytesIn = adders();
+	/** 種類ごとの送信メッセージ数 */
+	private final LongAdder[] messagesOut = adders();
+	/** 種類ごとの送信バイト数 */
+	private final LongAdder[] bytesOut = adders();
+
+	/** 圧縮を試みたメッセージの直列化したバイト数 */
+	private final LongAdder compressionIn = new LongAdder();
+	/** 圧縮を試みたメッセージの送信バイト数 (圧縮効果がなかったメッセージは非圧縮のバイト数) */
+	private final LongAdder compressionOut = new LongAdder();
+	/** 圧縮効果がなく非圧縮で送信したメッセージ数 */
+	private final LongAdder compressionSkipped = new LongAdder();
+	/** 圧縮に要した時間 (ナノ秒) */
+	private final LongAdder compressionTime = new LongAdder();
+	/** 伸長に要した時間 (ナノ秒) */
+	private final LongAdder decompressionTime = new LongAdder();
+
+	private final IntSupplier queueDepth;
+	private final CircuitBreaker writeBreaker;
+	private final CircuitBreaker readBreaker;
+	private final IntSupplier activePipes;
+	private final IntSupplier pipesHighWater;
+	private final LongSupplier roundTripTime;
+
+	// ==============================================================================================
+	// コンストラクタ
+	// ==============================================================================================
+	/**
+	 * @param queueDepth 出力キューに保留されているメッセージ数
+	 * @param writeBreaker 送信側のサーキットブレーカー
+	 * @param readBreaker 受信側のサーキットブレーカー
+	 * @param activePipes アクティブなパイプ数
+	 * @param pipesHighWater こちら側からオープンしたパイプの同時使用数の最大値
+	 * @param roundTripTime ping によって計測したピアとの往復時間 (ナノ秒)
+	 */
+	public SessionMetrics(IntSupplier queueDepth, CircuitBreaker writeBreaker, CircuitBreaker readBreaker,
+												IntSupplier activePipes, IntSupplier pipesHighWater, LongSupplier roundTripTime){
+		this.queueDepth = queueDepth;
+		this.writeBreaker = writeBreaker;
+		this.readBreaker = readBreaker;
+		this.activePipes = activePipes;
+		this.pipesHighWater = pipesHighWater;
+		this.roundTripTime = roundTripTime;
+	}
+
+	// ==============================================================================================
+	// メッセージの記録
+	// ==============================================================================================
+	/**
+	 * ピアから受信したメッセージを記録します。
+	 */
+	public void inbound(Message msg){
+		messagesIn[typeOf(msg)].increment();
+	}
+
+	/**
+	 * ピアから受信したメッセージの直列化されたバイト数を記録します。
+	 */
+	public void inbound(Message msg, int bytes){
+		bytesIn[typeOf(msg)].add(bytes);
+	}
+
+	/**
+	 * ピアへ送信したメッセージを記録します。
+	 */
+	public void outbound(Message msg){
+		messagesOut[typeOf(msg)].increment();
+	}
+
+	/**
+	 * ピアへ送信したメッセージの直列化されたバイト数を記録します。
+	 */
+	public void outbound(Message msg, int bytes){
+		bytesOut[typeOf(msg)].add(bytes);
+	}
+
+	/**
+	 * 送信するメッセージの圧縮を試みた結果を記録します。
+	 *
+	 * @param original 直列化したメッセージのバイト数
+	 * @param compressed 圧縮後のバイト数 (圧縮効果がなかった場合は original と同じ)
+	 * @param nanos 圧縮に要した時間 (ナノ秒)
+	 */
+	public void compressed(int original, int compressed, long nanos){
+		compressionIn.add(original);
+		compressionOut.add(compressed);
+		compressionTime.add(nanos);
+		if(compressed >= original){
+			compressionSkipped.increment();
+		}
+	}
+
+	/**
+	 * 受信した圧縮メッセージの伸長を記録します。
+	 *
+	 * @param original 伸長したメッセージのバイト数
+	 * @param compressed 圧縮されていたバイト数
+	 * @param nanos 伸長に要した時間 (ナノ秒)
+	 */
+	public void decompressed(int original, int compressed, long nanos){
+		decompressionTime.add(nanos);
+	}
+
+	// ==============================================================================================
+	// カウンタの参照
+	// ==============================================================================================
+	/** @return 指定された種類の受信メッセージ数 */
+	public long messagesIn(int type){ return messagesIn[type].sum(); }
+	/** @return 指定された種類の受信バイト数 */
+	public long bytesIn(int type){ return bytesIn[type].sum(); }
+	/** @return 指定された種類の送信メッセージ数 */
+	public long messagesOut(int type){ return messagesOut[type].sum(); }
+	/** @return 指定された種類の送信バイト数 */
+	public long bytesOut(int type){ return bytesOut[type].sum(); }
+
+	@Override
+	public Map<String,Long> getMessagesIn(){ return toMap(messagesIn); }
+	@Override
+	public Map<String,Long> getBytesIn(){ return toMap(bytesIn); }
+	@Override
+	public Map<String,Long> getMessagesOut(){ return toMap(messagesOut); }
+	@Override
+	public Map<String,Long> getBytesOut(){ return toMap(bytesOut); }
+	@Override
+	public double getCompressionRatio(){
+		long in = compressionIn.sum();
+		return in == 0? 1.0: (double)compressionOut.sum() / in;
+	}
+	@Override
+	public long getCompressionSkipped(){ return compressionSkipped.sum(); }
+	@Override
+	public long getCompressionTime(){ return compressionTime.sum(); }
+	@Override
+	public long getDecompressionTime(){ return decompressionTime.sum(); }
+
+	// ==============================================================================================
+	// ゲージの参照
+	// ==============================================================================================
+	@Override
+	public int getQueueDepth(){ return queueDepth.getAsInt(); }
+	@Override
+	public int getWriteLoad(){ return writeBreaker.load(); }
+	@Override
+	public int getReadLoad(){ return readBreaker.load(); }
+	@Override
+	public double getWriteArrivalRate(){ return writeBreaker.arrivalRate(); }
+	@Override
+	public double getWriteDrainRate(){ return writeBreaker.drainRate(); }
+	@Override
+	public long getWriteSojourn(){ return (long)writeBreaker.sojourn(); }
+	@Override
+	public double getReadArrivalRate(){ return readBreaker.arrivalRate(); }
+	@Override
+	public double getReadDrainRate(){ return readBreaker.drainRate(); }
+	@Override
+	public long getReadSojourn(){ return (long)readBreaker.sojourn(); }
+	@Override
+	public int getActivePipes(){ return activePipes.getAsInt(); }
+	@Override
+	public int getPipesHighWater(){ return pipesHighWater.getAsInt(); }
+	@Override
+	public long getRoundTripTime(){ return roundTripTime.getAsLong(); }
+
+	// ==============================================================================================
+	// メッセージの種類
+	// ==============================================================================================
+	/**
+	 * 指定されたメッセージの種類を表すインデックスを参照します。
+	 */
+	public static int typeOf(Message msg){
+		if(msg instanceof Block){
+			return TypeBlock;
+		} else if(msg instanceof Open){
+			return TypeOpen;
+		} else if(msg instanceof Close){
+			return TypeClose;
+		} else {
+			return TypeControl;
+		}
+	}
+
+	static Map<String,Long> toMap(LongAdder[] adders){
+		Map<String,Long> map = new LinkedHashMap<>();
+		for(int i = 0; i < adders.length; i ++){
+			map.put(TypeNames[i], adders[i].sum());
+		}
+		return map;
+	}
+
+	static LongAdder[] adders(){
+		LongAdder[] adders = new LongAdder[TypeNames.length];
+		for(int i = 0; i < adders.length; i ++){
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+}
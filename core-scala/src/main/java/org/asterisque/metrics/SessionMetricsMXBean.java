@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.metrics;
+
+import java.util.Map;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// SessionMetricsMXBean
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * {@link SessionMetrics} を JMX で公開するためのインターフェースです。メッセージ数とバイト数はメッセージの
+ * 種類 (Open, Close, Block, Control) をキーとしたマップで参照します。
+ *
+ * @author Takami Torao
+ */
+public interface SessionMetricsMXBean {
+
+	/** 種類ごとの受信メッセージ数 */
+	public Map<String,Long> getMessagesIn();
+
+	/** 種類ごとの受信バイト数 */
+	public Map<String,Long> getBytesIn();
+
+	/** 種類ごとの送信メッセージ数 */
+	public Map<String,Long> getMessagesOut();
+
+	/** 種類ごとの送信バイト数 */
+	public Map<String,Long> getBytesOut();
+
+	/** 圧縮を試みたメッセージの送信バイト数と直列化したバイト数の比率。圧縮を行っていない場合は 1.0 */
+	public double getCompressionRatio();
+
+	/** 圧縮効果がなく非圧縮で送信したメッセージ数 */
+	public long getCompressionSkipped();
+
+	/** 送信メッセージの圧縮に要した累積時間 (ナノ秒) */
+	public long getCompressionTime();
+
+	/** 受信メッセージの伸長に要した累積時間 (ナノ秒) */
+	public long getDecompressionTime();
+
+	/** 出力キューに保留されているメッセージ数 */
+	public int getQueueDepth();
+
+	/** 送信側サーキットブレーカーの負荷値 */
+	public int getWriteLoad();
+
+	/** 受信側サーキットブレーカーの負荷値 */
+	public int getReadLoad();
+
+	/** 送信キューへの 1 秒あたりの到着数 (指数移動平均) */
+	public double getWriteArrivalRate();
+
+	/** 送信キューからの 1 秒あたりの排出数 (指数移動平均) */
+	public double getWriteDrainRate();
+
+	/** 送信キューの待ち時間の見積もり (ナノ秒、指数移動平均) */
+	public long getWriteSojourn();
+
+	/** 受信キューへの 1 秒あたりの到着数 (指数移動平均) */
+	public double getReadArrivalRate();
+
+	/** 受信キューからの 1 秒あたりの排出数 (指数移動平均) */
+	public double getReadDrainRate();
+
+	/** 受信キューの待ち時間の見積もり (ナノ秒、指数移動平均) */
+	public long getReadSojourn();
+
+	/** アクティブなパイプ数 */
+	public int getActivePipes();
+
+	/** こちら側からオープンしたパイプの同時使用数の最大値 */
+	public int getPipesHighWater();
+
+	/** ping によって計測したピアとの往復時間 (ナノ秒、指数移動平均)。未計測の場合は 0 */
+	public long getRoundTripTime();
+}
@@ -9,6 +9,8 @@ import org.asterisque.Asterisque;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
 // Block
@@ -16,6 +18,12 @@ import java.nio.charset.Charset;
 /**
  * {@link org.asterisque.Pipe} を経由して双方向で交換可能なメッセージです。
  *
+ * 受信したブロックのペイロードは下層の受信バッファを複写せずに参照している場合があります
+ * ({@link #hasArray()} が false)。このようなブロックは参照カウントを持ち、{@link #release()} によって参照
+ * カウントが 0 になった時点で受信バッファが解放されます。ブロックを受け取ったハンドラの終了後もペイロードを
+ * 参照する場合は {@link #retain()} で参照カウントを増やし、使用後に {@link #release()} する必要があります。
+ * ペイロードは {@link #payload} ではなく {@link #toByteBuffer()} や {@link #getString()} で参照します。
+ *
  * @author Takami Torao
  */
 public final class Block extends Message {
@@ -71,6 +79,24 @@ public final class Block extends Message {
 	 */
 	public final boolean eof;
 
+	// ==============================================================================================
+	// 受信バッファ
+	// ==============================================================================================
+	/**
+	 * 受信バッファを複写せずに参照しているペイロード。{@link #payload} を使用している場合は null です。
+	 */
+	private final transient ByteBuffer buffer;
+
+	/**
+	 * 参照カウントが 0 になった時に受信バッファを解放する処理。
+	 */
+	private final transient Runnable deallocator;
+
+	/**
+	 * 受信バッファを参照している場合の参照カウント。
+	 */
+	private final transient AtomicInteger refCnt;
+
 	// ==============================================================================================
 	// コンストラクタ
 	// ==============================================================================================
@@ -100,6 +126,54 @@ public final class Block extends Message {
 		this.offset = offset;
 		this.length = length;
 		this.eof = eof;
+		this.buffer = null;
+		this.deallocator = null;
+		this.refCnt = null;
+	}
+
+	// ==============================================================================================
+	// コンストラクタ
+	// ==============================================================================================
+	/**
+	 * 受信バッファを複写せずに参照する Block メッセージを構築します。
+	 */
+	private Block(short pipeId, byte loss, ByteBuffer buffer, Runnable deallocator){
+		super(pipeId);
+		if(buffer == null || deallocator == null){
+			throw new NullPointerException("buffer or deallocator is null");
+		}
+		if(buffer.remaining() > MaxPayloadSize){
+			throw new IllegalArgumentException("too long payload: " + buffer.remaining() + ", max=" + MaxPayloadSize);
+		}
+		if(loss < 0){
+			throw new IllegalArgumentException("invalid loss-rate: " + loss);
+		}
+		this.loss = loss;
+		this.payload = Empty;
+		this.offset = 0;
+		this.length = buffer.remaining();
+		this.eof = false;
+		this.buffer = buffer.slice();
+		this.deallocator = deallocator;
+		this.refCnt = new AtomicInteger(1);
+	}
+
+	// ==============================================================================================
+	// コンストラクタ
+	// ==============================================================================================
+	/**
+	 * 指定されたブロックのペイロードと参照カウントを共有し、損失率だけが異なる Block メッセージを構築します。
+	 */
+	private Block(Block block, byte loss){
+		super(block.pipeId);
+		this.loss = loss;
+		this.payload = block.payload;
+		this.offset = block.offset;
+		this.length = block.length;
+		this.eof = block.eof;
+		this.buffer = block.buffer;
+		this.deallocator = block.deallocator;
+		this.refCnt = block.refCnt;
 	}
 
 	// ==============================================================================================
@@ -130,9 +204,107 @@ public final class Block extends Message {
 	 * オフセットの指定により初期状態のポジションが 0 でない可能性があります。
 	 */
 	public ByteBuffer toByteBuffer(){
+		if(buffer != null){
+			ensureAccessible();
+			return buffer.duplicate();
+		}
 		return ByteBuffer.wrap(payload, offset, length);
 	}
 
+	// ==============================================================================================
+	// バイト配列の参照
+	// ==============================================================================================
+	/**
+	 * このブロックのペイロードが {@link #payload} のバイト配列で表されているかを参照します。false の場合
+	 * ペイロードは受信バッファを参照しており {@link #release()} による解放が必要です。
+	 */
+	public boolean hasArray(){
+		return buffer == null;
+	}
+
+	// ==============================================================================================
+	// 参照カウント
+	// ==============================================================================================
+	/**
+	 * このブロックの参照カウントを参照します。受信バッファを参照していないブロックは常に 1 を返します。
+	 */
+	public int refCnt(){
+		return refCnt == null? 1: refCnt.get();
+	}
+
+	// ==============================================================================================
+	// 参照カウントの増加
+	// ==============================================================================================
+	/**
+	 * このブロックの参照カウントを 1 増やします。受信バッファを参照していないブロックでは何も行いません。
+	 * @return このブロック
+	 * @throws IllegalStateException 既に解放されている場合
+	 */
+	public Block retain(){
+		if(refCnt != null){
+			int cnt;
+			do {
+				cnt = refCnt.get();
+				if(cnt <= 0){
+					throw new IllegalStateException("block already released: " + pipeId);
+				}
+			} while(! refCnt.compareAndSet(cnt, cnt + 1));
+		}
+		return this;
+	}
+
+	// ==============================================================================================
+	// 参照カウントの減少
+	// ==============================================================================================
+	/**
+	 * このブロックの参照カウントを 1 減らし、0 になった場合は受信バッファを解放します。受信バッファを参照して
+	 * いないブロックでは何も行いません。
+	 * @return この呼び出しで受信バッファを解放した場合 true
+	 * @throws IllegalStateException 既に解放されている場合
+	 */
+	public boolean release(){
+		if(refCnt == null){
+			return false;
+		}
+		int cnt = refCnt.decrementAndGet();
+		if(cnt < 0){
+			refCnt.incrementAndGet();
+			throw new IllegalStateException("block already released: " + pipeId);
+		}
+		if(cnt == 0){
+			deallocator.run();
+			return true;
+		}
+		return false;
+	}
+
+	// ==============================================================================================
+	// 消失判定
+	// ==============================================================================================
+	/**
+	 * 損失率 {@link #loss} に従ってこのブロックを消失させるかを判定します。損失率 0 のブロックは常に false、
+	 * 127 のブロックは常に true となります。
+	 * @return このブロックを消失させる場合 true
+	 */
+	public boolean shouldDrop(){
+		return loss > 0 && ThreadLocalRandom.current().nextInt(127) < loss;
+	}
+
+	/**
+	 * 消失判定を生き残ったブロックとして損失率を 0 に再設定したブロックを参照します。ペイロードと参照カウントは
+	 * このブロックと共有するため、呼び出し側はこのブロックの代わりに返値を解放します。
+	 * @return 損失率 0 のブロック (このブロックの損失率が 0 の場合はこのブロック)
+	 */
+	public Block survive(){
+		return loss == 0? this: new Block(this, (byte)0);
+	}
+
+	private void ensureAccessible(){
+		if(refCnt != null && refCnt.get() <= 0){
+			throw new IllegalStateException("block already released: " + pipeId);
+		}
+	}
+
 	// ==============================================================================================
 	// 文字列の参照
 	// ==============================================================================================
@@ -150,6 +322,9 @@ public final class Block extends Message {
 	 * このブロックのペイロードを指定された文字セットでエンコードされた文字列として参照します。
 	 */
 	public String getString(Charset charset){
+		if(buffer != null){
+			return charset.decode(toByteBuffer()).toString();
+		}
 		return new String(payload, offset, length, charset);
 	}
 
@@ -164,12 +339,16 @@ public final class Block extends Message {
 		if(eof){
 			return "Block(EOF)";
 		}
+		if(buffer != null && refCnt.get() <= 0){
+			return "Block(" + pipeId + ",released," + loss + ")";
+		}
+		ByteBuffer b = toByteBuffer();
 		StringBuilder buffer = new StringBuilder(length * 3);
 		for(int i=0; i<length; i++){
 			if(i != 0){
 				buffer.append(",");
 			}
-			buffer.append(String.format("%02X", payload[offset + i]));
+			buffer.append(String.format("%02X", b.get(b.position() + i)));
 		}
 		return "Block(" + pipeId + ",[" + buffer + "]," + loss + ")";
 	}
@@ -184,6 +363,19 @@ public final class Block extends Message {
 		return new Block(pipeId, (byte)0, Empty, 0, 0, true);
 	}
 
+	// ==============================================================================================
+	// 受信バッファを参照するブロックの構築
+	// ==============================================================================================
+	/**
+	 * 受信バッファを複写せずに参照する Block メッセージを構築します。構築時の参照カウントは 1 です。
+	 *
+	 * @param buffer ペイロードとして参照する範囲 (position から limit まで)
+	 * @param deallocator 参照カウントが 0 になった時に受信バッファを解放する処理
+	 */
+	public static Block retained(short pipeId, byte loss, ByteBuffer buffer, Runnable deallocator){
+		return new Block(pipeId, loss, buffer, deallocator);
+	}
+
 	// ==============================================================================================
 	// 空ペイロード
 	// ==============================================================================================
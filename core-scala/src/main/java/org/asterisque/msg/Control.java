@@ -6,6 +6,10 @@
 package org.asterisque.msg;
 
 import org.asterisque.Debug;
+import org.asterisque.ProtocolViolationException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 // ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
 // Control
@@ -30,6 +34,24 @@ public final class Control extends Message {
 	 */
 	public static final byte Close = 'C';
 
+	/**
+	 * セッション再開のための累積 ack を表す制御コード。data はセッションが開始してから受信した Control 以外の
+	 * メッセージ数を表す 8 バイトのビッグエンディアン整数。
+	 * @see org.asterisque.msg.SyncConfig#Resume
+	 */
+	public static final byte Ack = 'A';
+
+	/**
+	 * 死活監視のための ping を表す制御コード。data は送信側の単調増加時刻 (ナノ秒) を表す 8 バイトのビッグエンディ
+	 * アン整数で、受信側は同じ data を持つ {@link #Pong} で応答しなければならない。
+	 */
+	public static final byte Ping = 'P';
+
+	/**
+	 * {@link #Ping} に対する応答を表す制御コード。data は受信した Ping の data をそのまま返す。
+	 */
+	public static final byte Pong = 'p';
+
 	private static final byte[] Empty = new byte[0];
 
 	// ==============================================================================================
@@ -75,6 +97,62 @@ public final class Control extends Message {
 		this.data = Empty;
 	}
 
+	// ==============================================================================================
+	// 累積 ack
+	// ==============================================================================================
+	/**
+	 * 指定された受信メッセージ数を通知する {@link #Ack} メッセージを構築します。
+	 */
+	public static Control ack(long count){
+		return new Control(Ack, toBytes(count));
+	}
+
+	/**
+	 * この {@link #Ack} メッセージが通知している受信メッセージ数を参照します。
+	 * @throws ProtocolViolationException Ack メッセージではない場合
+	 */
+	public long ackCount() throws ProtocolViolationException {
+		return toLong(Ack);
+	}
+
+	// ==============================================================================================
+	// ping
+	// ==============================================================================================
+	/**
+	 * 指定された送信時刻を持つ {@link #Ping} メッセージを構築します。
+	 */
+	public static Control ping(long timestamp){
+		return new Control(Ping, toBytes(timestamp));
+	}
+
+	/**
+	 * この {@link #Ping} メッセージに対する {@link #Pong} メッセージを構築します。
+	 * @throws ProtocolViolationException Ping メッセージではない場合
+	 */
+	public Control pong() throws ProtocolViolationException {
+		toLong(Ping);
+		return new Control(Pong, data);
+	}
+
+	/**
+	 * この {@link #Pong} メッセージが応答している Ping の送信時刻を参照します。
+	 * @throws ProtocolViolationException Pong メッセージではない場合
+	 */
+	public long pingTimestamp() throws ProtocolViolationException {
+		return toLong(Pong);
+	}
+
+	private long toLong(byte expected) throws ProtocolViolationException {
+		if(code != expected || data.length != Long.BYTES){
+			throw new ProtocolViolationException("invalid control: " + this);
+		}
+		return ByteBuffer.wrap(data).order(ByteOrder.BIG_ENDIAN).getLong();
+	}
+
+	private static byte[] toBytes(long value){
+		return ByteBuffer.allocate(Long.BYTES).order(ByteOrder.BIG_ENDIAN).putLong(value).array();
+	}
+
 	// ==============================================================================================
 	// インスタンスの文字列化
 	// ==============================================================================================
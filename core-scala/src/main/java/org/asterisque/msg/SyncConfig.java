@@ -31,6 +31,42 @@ public final class SyncConfig {
 	 */
 	public static final int DataLength = Short.BYTES + Long.BYTES * 2 + Long.BYTES * 2 + Long.BYTES + Integer.BYTES + Integer.BYTES;
 
+	/**
+	 * {@link #capabilities} を含めた Control の data の長さ。capabilities を持たない旧形式の SyncConfig は
+	 * {@link #DataLength} の長さとなり、capabilities = 0 として扱われる。
+	 */
+	public static final int ExtendedDataLength = DataLength + Integer.BYTES;
+
+	/**
+	 * 各メッセージの先頭に長さを付加したフレーム形式で Wire 上を転送する機能を表す {@link #capabilities} のビット。
+	 */
+	public static final int Framing = 1;
+
+	/**
+	 * Wire の切断後に同じセッション ID で再接続し、受信確認 ({@link Control#Ack}) されていないメッセージを
+	 * 再送してセッションを再開する機能を表す {@link #capabilities} のビット。
+	 */
+	public static final int Resume = 2;
+
+	/**
+	 * {@link #Framing} 形式の Wire 上で複数のメッセージを 1 つのコンテナフレームにまとめて転送する機能を表す
+	 * {@link #capabilities} のビット。{@link #Framing} と共に合意された場合にのみ有効となる。
+	 */
+	public static final int Container = 4;
+
+	/**
+	 * {@link #Framing} 形式の Wire 上で大きなメッセージを Deflate で圧縮して転送する機能を表す
+	 * {@link #capabilities} のビット。{@link #Framing} と共に合意された場合にのみ有効となる。
+	 */
+	public static final int Compression = 8;
+
+	/**
+	 * 無通信時にサーバが {@link Control#Ping} を送信し、クライアントが {@link Control#Pong} で応答する死活監視と、
+	 * 受信の途絶によるセッションタイムアウトを表す {@link #capabilities} のビット。Ping を解釈しないピアとの
+	 * セッションでは死活監視を行わない。
+	 */
+	public static final int KeepAlive = 16;
+
 	/**
 	 * プロトコルのバージョンを表す 2 バイト整数値。上位バイトから [major][minor] の順を持つ。
 	 * @see org.asterisque.Asterisque.Protocol#Signature
@@ -43,7 +79,8 @@ public final class SyncConfig {
 	public final UUID nodeId;
 
 	/**
-	 * セッション ID 同期。接続後のクライアント Sync に対するサーバ応答でのみ有効な値を持つ。それ以外の場合は
+	 * セッション ID 同期。接続後のクライアント Sync に対するサーバ応答と、{@link #Resume} を合意したセッション
+	 * の再開を要求するクライアント Sync でのみ有効な値を持つ。それ以外の場合は
 	 * {@link org.asterisque.Asterisque#Zero} を送らなければならず、受け取った側は無視しなければならない。
 	 */
 	public final UUID sessionId;
@@ -63,13 +100,20 @@ public final class SyncConfig {
 	 */
 	public final int sessionTimeout;
 
+	/**
+	 * 端点がサポートするオプション機能のビットフラグ ({@link #Framing} など)。クライアントは自身が利用可能な機能
+	 * を送信し、サーバはクライアントの値と自身の値の論理積を応答する。応答に含まれる機能がそのセッションで使用
+	 * される。
+	 */
+	public final int capabilities;
+
 	// ============================================================================================
 	// コンストラクタ
 	// ============================================================================================
 	/**
 	 *
 	 */
-	public SyncConfig(short version, UUID nodeId, UUID sessionId, long utcTime, int ping, int sessionTimeout) {
+	public SyncConfig(short version, UUID nodeId, UUID sessionId, long utcTime, int ping, int sessionTimeout, int capabilities) {
 		this.version = version;
 		this.nodeId = nodeId;
 		this.sessionId = sessionId;
@@ -77,6 +121,27 @@ public final class SyncConfig {
 		// TODO ping, sessionTimeout の入力値チェックとテストケース作成
 		this.ping = ping;
 		this.sessionTimeout = sessionTimeout;
+		this.capabilities = capabilities;
+	}
+
+	// ============================================================================================
+	// コンストラクタ
+	// ============================================================================================
+	/**
+	 * オプション機能を持たない SyncConfig を構築します。
+	 */
+	public SyncConfig(short version, UUID nodeId, UUID sessionId, long utcTime, int ping, int sessionTimeout) {
+		this(version, nodeId, sessionId, utcTime, ping, sessionTimeout, 0);
+	}
+
+	// ============================================================================================
+	// コンストラクタ
+	// ============================================================================================
+	/**
+	 * 現在のバージョンを使用して構築します。
+	 */
+	public SyncConfig(UUID nodeId, UUID sessionId, long utcTime, int ping, int sessionTimeout, int capabilities) {
+		this(CurrentVersion, nodeId, sessionId, utcTime, ping, sessionTimeout, capabilities);
 	}
 
 	// ============================================================================================
@@ -97,7 +162,7 @@ public final class SyncConfig {
 	 */
 	public Control toControl(){
 		// SyncConfig は Codec 実装に依存しない
-		ByteBuffer buffer = ByteBuffer.allocate(DataLength);
+		ByteBuffer buffer = ByteBuffer.allocate(ExtendedDataLength);
 		buffer.order(ByteOrder.BIG_ENDIAN)
 			.putShort(version)
 			.putLong(nodeId.getMostSignificantBits())
@@ -106,11 +171,22 @@ public final class SyncConfig {
 			.putLong(sessionId.getLeastSignificantBits())
 			.putLong(utcTime)
 			.putInt(ping)
-			.putInt(sessionTimeout);
+			.putInt(sessionTimeout)
+			.putInt(capabilities);
 		assert(buffer.capacity() == buffer.limit());
 		return new Control(Control.SyncConfig, buffer.array());
 	}
 
+	// ============================================================================================
+	// 機能の判定
+	// ============================================================================================
+	/**
+	 * 指定された機能ビットがこの SyncConfig の {@link #capabilities} に含まれているかを判定します。
+	 */
+	public boolean supports(int capability){
+		return (capabilities & capability) == capability;
+	}
+
 	// ==========================================================================================
 	// ヘッダの参照
 	// ==========================================================================================
@@ -135,7 +211,8 @@ public final class SyncConfig {
 		long utcTime = buffer.getLong();
 		int ping = buffer.getInt();
 		int sessionTimeout = buffer.getInt();
-		return new SyncConfig(version, nodeId, sessionId, utcTime, ping, sessionTimeout);
+		int capabilities = buffer.remaining() >= Integer.BYTES? buffer.getInt(): 0;
+		return new SyncConfig(version, nodeId, sessionId, utcTime, ping, sessionTimeout, capabilities);
 	}
 
 }
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.netty;
+
+import org.asterisque.Options;
+import org.asterisque.codec.Codec;
+import org.asterisque.codec.CodecException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// Compression
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * 直列化したメッセージを Deflate で圧縮・伸長するクラスです。
+ *
+ * {@link #threshold} バイト以上のメッセージを圧縮し、圧縮によって 1/8 以上小さくならない (既に圧縮されたデータ
+ * など圧縮効果の小さい) メッセージは圧縮せずにそのまま送信します。圧縮したメッセージは次の圧縮フレームとして
+ * 送信されます。空のコンテナは存在しないため、コンテナ長 0 のコンテナヘッダで圧縮フレームを識別します。
+ * <pre>
+ * [0x0000][0x0000][圧縮後の長さ:2][Deflate (zlib) 形式のメッセージ]
+ * </pre>
+ * 事前共有の辞書を設定した場合は辞書を使用して圧縮します。zlib 形式のヘッダには辞書のチェックサムが含まれる
+ * ため、ピアと異なる辞書を使用している場合は伸長時に {@link CodecException} となります。
+ *
+ * Deflater と Inflater は最初に使用した時点で生成し、エンコーダーまたはデコーダーがパイプラインから削除された
+ * 時点で {@link #close()} によって解放します。インスタンスはチャネルのイベントループ上で使用します。
+ *
+ * @author Takami Torao
+ */
+final class Compression {
+
+	/**
+	 * 圧縮フレームのヘッダ (コンテナ長 0 のコンテナヘッダと圧縮後の長さ) のバイト長。
+	 */
+	public static final int HeaderSize = Framing.ContainerHeaderSize + Short.BYTES;
+
+	/**
+	 * 圧縮後のサイズが元のサイズからこのシフト量で割った分以上小さくならない場合は圧縮効果がないと判断します。
+	 */
+	private static final int MinSavingShift = 3;
+
+	/**
+	 * 圧縮の対象とする直列化したメッセージの最小バイト数。
+	 */
+	public final int threshold;
+
+	/** Deflate の圧縮レベル */
+	private final int level;
+
+	/** 事前共有の辞書 */
+	private final Optional<byte[]> dictionary;
+
+	/** 圧縮と伸長の統計の通知先 */
+	private final Listener listener;
+
+	private Deflater deflater = null;
+	private Inflater inflater = null;
+
+	/** 直接バッファや受信バッファから複写した入力 */
+	private byte[] input = null;
+
+	/** 圧縮または伸長の出力 */
+	private byte[] output = null;
+
+	// ==============================================================================================
+	// コンストラクタ
+	// ==============================================================================================
+	/**
+	 * @param level Deflate の圧縮レベル (1: 最速 - 9: 最高圧縮)
+	 * @param threshold 圧縮の対象とする直列化したメッセージの最小バイト数
+	 * @param dictionary 事前共有の辞書
+	 * @param listener 圧縮と伸長の統計の通知先
+	 */
+	public Compression(int level, int threshold, Optional<byte[]> dictionary, Listener listener){
+		if(level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION){
+			throw new IllegalArgumentException("invalid compression level: " + level);
+		}
+		this.level = level;
+		this.threshold = Math.max(1, threshold);
+		this.dictionary = dictionary;
+		this.listener = listener;
+	}
+
+	/**
+	 * 指定されたオプション設定の圧縮レベル、閾値、辞書を使用するインスタンスを構築します。
+	 */
+	public Compression(Options options, Listener listener){
+		this(options.get(Options.KEY_COMPRESSION_LEVEL).get(), options.get(Options.KEY_COMPRESSION_THRESHOLD).get(),
+			options.get(Options.KEY_COMPRESSION_DICTIONARY), listener);
+	}
+
+	/**
+	 * オプション設定のデフォルト値を使用し、統計を通知しないインスタンスを構築します。
+	 */
+	public Compression(){
+		this(new Options(), Listener.Ignore);
+	}
+
+	// ==============================================================================================
+	// 圧縮
+	// ==============================================================================================
+	/**
+	 * 指定された直列化済みのメッセージを圧縮フレームに変換します。圧縮効果がない場合は null を返します。
+	 * {@code b} は圧縮の成否に関わらず解放されません。
+	 *
+	 * @param b 直列化したメッセージ (フレームヘッダを含まない)
+	 * @param alloc 圧縮フレームのバッファを確保するアロケータ
+	 * @return 圧縮フレーム、または null
+	 */
+	public ByteBuf deflate(ByteBuf b, ByteBufAllocator alloc){
+		long t0 = System.nanoTime();
+		int original = b.readableBytes();
+		int length = deflate(b, original - (original >>> MinSavingShift));
+		ByteBuf frame = null;
+		if(length >= 0){
+			frame = alloc.ioBuffer(HeaderSize + length);
+			frame.writeShort(0);
+			frame.writeShort(0);
+			frame.writeShort(length);
+			frame.writeBytes(output, 0, length);
+		}
+		listener.compressed(original, length >= 0? length + HeaderSize: original, System.nanoTime() - t0);
+		return frame;
+	}
+
+	/**
+	 * 指定されたバッファの内容を {@link #output} へ圧縮します。
+	 *
+	 * @param limit 圧縮後の長さの上限
+	 * @return 圧縮後の長さ、上限に達した場合は負の値
+	 */
+	private int deflate(ByteBuf b, int limit){
+		if(deflater == null){
+			deflater = new Deflater(level);
+		}
+		deflater.reset();
+		dictionary.ifPresent(deflater::setDictionary);
+		byte[] output = output();
+		int length = 0;
+		for(ByteBuffer buffer: b.nioBuffers()){
+			int remaining = buffer.remaining();
+			if(buffer.hasArray()){
+				deflater.setInput(buffer.array(), buffer.arrayOffset() + buffer.position(), remaining);
+			} else {
+				byte[] input = input();
+				buffer.get(input, 0, remaining);
+				deflater.setInput(input, 0, remaining);
+			}
+			while(! deflater.needsInput()){
+				if(length >= limit){
+					return -1;
+				}
+				length += deflater.deflate(output, length, limit - length);
+			}
+		}
+		deflater.finish();
+		while(! deflater.finished()){
+			if(length >= limit){
+				return -1;
+			}
+			length += deflater.deflate(output, length, limit - length);
+		}
+		return length;
+	}
+
+	// ==============================================================================================
+	// 伸長
+	// ==============================================================================================
+	/**
+	 * 受信バッファ上の {@code index} から始まる {@code length} バイトの圧縮データを伸長します。返値のバッファは
+	 * このインスタンスの作業領域を参照しているため、次の伸長までにデコードを完了しなければなりません。
+	 *
+	 * @return 伸長した直列化済みのメッセージ
+	 * @throws CodecException 圧縮データが壊れている、辞書が一致しない、または伸長後のサイズが大きすぎる場合
+	 */
+	public ByteBuffer inflate(ByteBuf b, int index, int length) throws CodecException {
+		long t0 = System.nanoTime();
+		if(inflater == null){
+			inflater = new Inflater();
+		}
+		byte[] input = input();
+		byte[] output = output();
+		b.getBytes(index, input, 0, length);
+		inflater.reset();
+		inflater.setInput(input, 0, length);
+		int size = 0;
+		try {
+			while(! inflater.finished()){
+				if(size >= Codec.MaxMessageSize){
+					throw new CodecException(String.format("compressed message too large: > %d", Codec.MaxMessageSize));
+				}
+				int inflated = inflater.inflate(output, size, Codec.MaxMessageSize - size);
+				if(inflated == 0){
+					if(inflater.needsDictionary()){
+						if(! dictionary.isPresent()){
+							throw new CodecException("compressed with dictionary but no dictionary configured");
+						}
+						inflater.setDictionary(dictionary.get());
+					} else if(inflater.needsInput()){
+						throw new CodecException(String.format("compressed frame truncated: %d bytes", length));
+					}
+				}
+				size += inflated;
+			}
+		} catch(DataFormatException ex){
+			throw new CodecException("broken compressed frame", ex);
+		} catch(IllegalArgumentException ex){
+			throw new CodecException("compression dictionary mismatch", ex);
+		}
+		listener.decompressed(size, HeaderSize + length, System.nanoTime() - t0);
+		return ByteBuffer.wrap(output, 0, size);
+	}
+
+	// ==============================================================================================
+	// 解放
+	// ==============================================================================================
+	/**
+	 * Deflater と Inflater のネイティブリソースを解放します。解放後に使用した場合は再び生成します。
+	 */
+	public void close(){
+		if(deflater != null){
+			deflater.end();
+			deflater = null;
+		}
+		if(inflater != null){
+			inflater.end();
+			inflater = null;
+		}
+		input = null;
+		output = null;
+	}
+
+	private byte[] input(){
+		if(input == null){
+			input = new byte[Math.max(Codec.MaxMessageSize, Framing.MaxFrameLength)];
+		}
+		return input;
+	}
+
+	private byte[] output(){
+		if(output == null){
+			output = new byte[Codec.MaxMessageSize];
+		}
+		return output;
+	}
+
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	// Listener
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	/**
+	 * 圧縮と伸長の統計の通知先です。
+	 */
+	public interface Listener {
+
+		/** 統計を通知しない処理 */
+		Listener Ignore = new Listener(){
+			public void compressed(int original, int compressed, long nanos){ }
+			public void decompressed(int original, int compressed, long nanos){ }
+		};
+
+		/**
+		 * メッセージの圧縮を試みた時に呼び出されます。
+		 *
+		 * @param original 直列化したメッセージのバイト数
+		 * @param compressed 圧縮フレームのバイト数 (圧縮効果がなく非圧縮で送信する場合は original と同じ)
+		 * @param nanos 圧縮に要した時間 (ナノ秒)
+		 */
+		void compressed(int original, int compressed, long nanos);
+
+		/**
+		 * 圧縮フレームを伸長した時に呼び出されます。
+		 *
+		 * @param original 伸長したメッセージのバイト数
+		 * @param compressed 圧縮フレームのバイト数
+		 * @param nanos 伸長に要した時間 (ナノ秒)
+		 */
+		void decompressed(int original, int compressed, long nanos);
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.netty;
+
+import org.asterisque.msg.Control;
+import org.asterisque.msg.Message;
+import org.asterisque.msg.SyncConfig;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// Framing
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * 1 つのチャネル上でメッセージをフレーム形式で送受信するかの状態を保持するクラスです。
+ *
+ * フレーム形式では各メッセージの前に 2 バイト (符号なし, ビッグエンディアン) のメッセージ長が付加されます。
+ * {@link org.asterisque.msg.SyncConfig} の交換は常に非フレーム形式で行われ、双方が
+ * {@link org.asterisque.msg.SyncConfig#Framing} をサポートしている場合にのみそれ以降のメッセージがフレーム
+ * 形式となります。
+ * <ul>
+ *   <li>サーバはクライアントの SyncConfig を受信した直後から受信をフレーム形式に切り替え、応答の SyncConfig
+ *   を送信した直後から送信をフレーム形式に切り替えます。</li>
+ *   <li>クライアントはサーバの SyncConfig 応答を受信した直後から送受信をフレーム形式に切り替えます。</li>
+ * </ul>
+ * 切り替え前のクライアントが非フレーム形式のメッセージを送出しないよう、{@link org.asterisque.Session} は状態
+ * 同期が完了するまで Control 以外のメッセージの送信を保留します。
+ *
+ * 双方が {@link org.asterisque.msg.SyncConfig#Container} もサポートしている場合、送信側は小さなメッセージを
+ * コンテナフレームにまとめることができます。コンテナフレームはメッセージ長 0 のフレームヘッダに続く 2 バイト
+ * のコンテナ長と、可変長 (1 または 2 バイト) のメッセージ長を付加したメッセージの並びで構成されます。
+ * <pre>
+ * [0x0000][コンテナ長:2][長さ:1-2][メッセージ][長さ:1-2][メッセージ]...
+ * </pre>
+ * 長さ 0 のメッセージは存在しないため受信側はフレームヘッダだけでコンテナを判別でき、コンテナの受信に合意の
+ * 状態は必要ありません。可変長のメッセージ長は下位 7 ビットから順に格納し、最上位ビットで後続バイトの有無
+ * を表します。
+ *
+ * 同様に双方が {@link org.asterisque.msg.SyncConfig#Compression} をサポートしている場合、送信側は大きな
+ * メッセージを圧縮フレーム ({@link Compression}) として送信することができます。
+ * 状態の参照と変更はチャネルのイベントループ上で行われます。
+ *
+ * @author Takami Torao
+ */
+final class Framing {
+
+	/**
+	 * フレームヘッダ (メッセージ長) のバイト長。
+	 */
+	public static final int HeaderSize = Short.BYTES;
+
+	/**
+	 * フレームが格納できるメッセージの最大長。
+	 */
+	public static final int MaxFrameLength = 0xFFFF;
+
+	/**
+	 * コンテナフレームのヘッダ (メッセージ長 0 のフレームヘッダとコンテナ長) のバイト長。
+	 */
+	public static final int ContainerHeaderSize = HeaderSize + Short.BYTES;
+
+	/**
+	 * コンテナに格納するメッセージの長さの上限 (この値未満のメッセージを格納します)。これ以上の長さのメッセージ
+	 * はペイロードをコピーせずに送信するため単独のフレームとなります。
+	 */
+	public static final int ContainerThreshold = MessageOutputStream.ZeroCopyThreshold;
+
+	private final boolean isServer;
+	private final boolean local;
+
+	/** 受信メッセージがフレーム形式であるか */
+	private volatile boolean inbound = false;
+
+	/** 送信メッセージをフレーム形式にするか */
+	private volatile boolean outbound = false;
+
+	/** 送信メッセージをコンテナフレームにまとめるか */
+	private volatile boolean container = false;
+
+	/** 大きな送信メッセージを圧縮するか */
+	private volatile boolean compression = false;
+
+	/**
+	 * @param isServer このチャネルがサーバ側の場合 true
+	 * @param local ローカルのオプション設定でフレーム形式が有効な場合 true
+	 */
+	public Framing(boolean isServer, boolean local){
+		this.isServer = isServer;
+		this.local = local;
+	}
+
+	/** @return 受信メッセージがフレーム形式の場合 true */
+	public boolean inbound(){ return inbound; }
+
+	/** @return 送信メッセージがフレーム形式の場合 true */
+	public boolean outbound(){ return outbound; }
+
+	/** @return 送信メッセージをコンテナフレームにまとめる場合 true */
+	public boolean container(){ return container; }
+
+	/** @return 大きな送信メッセージを圧縮する場合 true */
+	public boolean compression(){ return compression; }
+
+	// ==============================================================================================
+	// メッセージの受信
+	// ==============================================================================================
+	/**
+	 * デコーダーがメッセージを復元した直後に呼び出されます。
+	 */
+	public void received(Message msg){
+		if(isSyncConfig(msg)){
+			SyncConfig config = SyncConfig.parse((Control)msg);
+			if(isServer){
+				inbound = local && config.supports(SyncConfig.Framing);
+			} else {
+				inbound = config.supports(SyncConfig.Framing);
+				outbound = inbound;
+				container = outbound && config.supports(SyncConfig.Container);
+				compression = outbound && config.supports(SyncConfig.Compression);
+			}
+		}
+	}
+
+	// ==============================================================================================
+	// メッセージの送信
+	// ==============================================================================================
+	/**
+	 * エンコーダーがメッセージを出力した直後に呼び出されます。
+	 */
+	public void sent(Message msg){
+		if(isServer && isSyncConfig(msg)){
+			SyncConfig config = SyncConfig.parse((Control)msg);
+			outbound = config.supports(SyncConfig.Framing);
+			container = outbound && config.supports(SyncConfig.Container);
+			compression = outbound && config.supports(SyncConfig.Compression);
+		}
+	}
+
+	private static boolean isSyncConfig(Message msg){
+		return msg instanceof Control && ((Control)msg).code == Control.SyncConfig;
+	}
+
+}
@@ -5,6 +5,7 @@
 */
 package org.asterisque.netty;
 
+import org.asterisque.msg.Block;
 import org.asterisque.msg.Message;
 import org.asterisque.codec.Codec;
 import org.asterisque.codec.CodecException;
@@ -15,6 +16,7 @@ import io.netty.handler.codec.ByteToMessageDecoder;
 import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.ObjIntConsumer;
 
 // ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
 // MessageDecoder
@@ -22,19 +24,184 @@ import java.util.Optional;
 /**
  * Netty のデコーダーです。
  *
+ * フレーム形式が有効な場合はフレーム全体を受信するまでデコードを行わず、蓄積されたバッファに含まれる完全な
+ * フレームを 1 回の呼び出しですべてデコードします。コンテナフレームは全体を受信した後に、格納されている
+ * メッセージを受信バッファ上で直接 (コピーせずに) 順にデコードします。圧縮フレームは伸長した作業領域から
+ * デコードするため、Block のペイロードは受信バッファの保持が有効であっても複写されます。
+ *
+ * 受信バッファの保持が有効な場合、コーデックがサポートしていれば Block のペイロードは受信した {@link ByteBuf}
+ * を複写せずに参照する retained slice となります。このような Block はメッセージの利用側が
+ * {@link org.asterisque.msg.Block#release()} した時点で解放されます。
+ *
  * @author Takami Torao
  */
 class MessageDecoder extends ByteToMessageDecoder {
 	public final Codec codec;
-	public MessageDecoder(Codec codec){
+	private final Framing framing;
+
+	/** Block のペイロードを受信バッファの retained slice として参照するか */
+	private final boolean retainPayload;
+
+	/** 復元したメッセージとバイト数の通知先 */
+	private final ObjIntConsumer<Message> onDecoded;
+
+	/** 圧縮フレームの伸長 */
+	private final Compression compression;
+
+	public MessageDecoder(Codec codec, Framing framing){
+		this(codec, framing, false);
+	}
+
+	/**
+	 * @param retainPayload Block のペイロードを受信バッファの retained slice として参照する場合 true
+	 */
+	public MessageDecoder(Codec codec, Framing framing, boolean retainPayload){
+		this(codec, framing, new Compression(), retainPayload, (msg, bytes) -> { });
+	}
+
+	/**
+	 * @param retainPayload Block のペイロードを受信バッファの retained slice として参照する場合 true
+	 * @param onDecoded メッセージを復元するごとにフレームヘッダを含むバイト数で呼び出される処理
+	 */
+	public MessageDecoder(Codec codec, Framing framing, Compression compression, boolean retainPayload, ObjIntConsumer<Message> onDecoded){
 		this.codec = codec;
+		this.framing = framing;
+		this.compression = compression;
+		this.retainPayload = retainPayload;
+		this.onDecoded = onDecoded;
 	}
 	public void decode(ChannelHandlerContext ctx, ByteBuf b, List<Object> out) throws CodecException {
-		ByteBuffer buffer = b.nioBuffer();
+		if(framing.inbound()){
+			decodeFrames(b, out);
+		} else {
+			ByteBuffer buffer = b.nioBuffer();
+			Optional<Message> msg = decode(b, b.readerIndex(), buffer);
+			if(msg.isPresent()){
+				b.skipBytes(buffer.position());
+				onDecoded.accept(msg.get(), buffer.position());
+				out.add(msg.get());
+				framing.received(msg.get());
+			}
+		}
+	}
+
+	/**
+	 * 指定されたバッファから完全に受信しているフレームをすべてデコードします。
+	 */
+	private void decodeFrames(ByteBuf b, List<Object> out) throws CodecException {
+		while(b.readableBytes() >= Framing.HeaderSize){
+			int length = b.getUnsignedShort(b.readerIndex());
+			if(length == 0){
+				if(b.readableBytes() < Framing.ContainerHeaderSize){
+					break;
+				}
+				int size = b.getUnsignedShort(b.readerIndex() + Framing.HeaderSize);
+				if(size == 0){
+					if(! decodeCompressed(b, out)){
+						break;
+					}
+					continue;
+				}
+				if(b.readableBytes() < Framing.ContainerHeaderSize + size){
+					break;
+				}
+				decodeContainer(b, b.readerIndex() + Framing.ContainerHeaderSize, size, out);
+				b.skipBytes(Framing.ContainerHeaderSize + size);
+				continue;
+			}
+			if(b.readableBytes() < Framing.HeaderSize + length){
+				break;
+			}
+			Message msg = decodeFrame(b, b.readerIndex() + Framing.HeaderSize, length);
+			b.skipBytes(Framing.HeaderSize + length);
+			onDecoded.accept(msg, Framing.HeaderSize + length);
+			out.add(msg);
+			framing.received(msg);
+		}
+	}
+
+	/**
+	 * 受信バッファ上の {@code index} から始まる {@code size} バイトのコンテナに格納されているメッセージをすべて
+	 * デコードします。
+	 */
+	private void decodeContainer(ByteBuf b, int index, int size, List<Object> out) throws CodecException {
+		int end = index + size;
+		int header = Framing.ContainerHeaderSize;
+		while(index < end){
+			int begin = index;
+			int length = b.getUnsignedByte(index ++);
+			if((length & 0x80) != 0){
+				if(index >= end){
+					throw new CodecException(String.format("container broken: message length truncated at %d", index));
+				}
+				length = (length & 0x7F) | (b.getUnsignedByte(index ++) << 7);
+			}
+			if(length == 0 || index + length > end){
+				throw new CodecException(String.format("container broken: %d bytes message, %d bytes remaining", length, end - index));
+			}
+			Message msg = decodeFrame(b, index, length);
+			index += length;
+			onDecoded.accept(msg, header + index - begin);
+			header = 0;
+			out.add(msg);
+			framing.received(msg);
+		}
+	}
+
+	/**
+	 * 受信バッファの先頭にある圧縮フレームを伸長してデコードします。
+	 *
+	 * @return 圧縮フレーム全体を受信していない場合 false
+	 */
+	private boolean decodeCompressed(ByteBuf b, List<Object> out) throws CodecException {
+		if(b.readableBytes() < Compression.HeaderSize){
+			return false;
+		}
+		int length = b.getUnsignedShort(b.readerIndex() + Framing.ContainerHeaderSize);
+		if(b.readableBytes() < Compression.HeaderSize + length){
+			return false;
+		}
+		ByteBuffer buffer = compression.inflate(b, b.readerIndex() + Compression.HeaderSize, length);
 		Optional<Message> msg = codec.decode(buffer);
-		if(msg.isPresent()){
-			b.skipBytes(buffer.position());
-			out.add(msg.get());
+		if(! msg.isPresent() || buffer.hasRemaining()){
+			throw new CodecException(String.format("compressed message length mismatch: %d bytes remaining", buffer.remaining()));
+		}
+		b.skipBytes(Compression.HeaderSize + length);
+		onDecoded.accept(msg.get(), Compression.HeaderSize + length);
+		out.add(msg.get());
+		framing.received(msg.get());
+		return true;
+	}
+
+	@Override
+	protected void handlerRemoved0(ChannelHandlerContext ctx){
+		compression.close();
+	}
+
+	/**
+	 * 受信バッファ上の {@code index} から始まる {@code length} バイトにちょうど格納されているメッセージを
+	 * デコードします。
+	 */
+	private Message decodeFrame(ByteBuf b, int index, int length) throws CodecException {
+		ByteBuffer frame = b.nioBuffer(index, length);
+		Optional<Message> msg = decode(b, index, frame);
+		if(! msg.isPresent() || frame.hasRemaining()){
+			msg.filter(m -> m instanceof Block).ifPresent(m -> ((Block)m).release());
+			throw new CodecException(String.format("frame length mismatch: %d bytes frame, %d bytes remaining", length, frame.remaining()));
+		}
+		return msg.get();
+	}
+
+	/**
+	 * 指定された受信バッファ上の {@code index} から始まる {@code buffer} をデコードします。
+	 */
+	private Optional<Message> decode(ByteBuf b, int index, ByteBuffer buffer) throws CodecException {
+		if(! retainPayload){
+			return codec.decode(buffer);
 		}
+		return codec.decode(buffer, Optional.of((pipeId, loss, view) -> {
+			ByteBuf payload = b.retainedSlice(index + view.position(), view.remaining());
+			return Block.retained(pipeId, loss, payload.nioBuffer(), payload::release);
+		}));
 	}
 }
@@ -8,23 +8,359 @@ package org.asterisque.netty;
 import org.asterisque.msg.Message;
 import org.asterisque.codec.Codec;
 import org.asterisque.codec.CodecException;
+import org.asterisque.codec.Codec.Marshal;
+import org.asterisque.codec.SizeEstimator;
+import org.asterisque.msg.Control;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.EncoderException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.ObjIntConsumer;
 
 // ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
 // MessageEncoder
 // ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
 /**
+ * Netty のエンコーダーです。
+ *
+ * コーデックが {@link org.asterisque.codec.Codec#newMarshal(java.io.OutputStream)} をサポートしている場合、
+ * メッセージは中間バッファを経由せずにチャネルのアロケータ (通常はプール) から取得したバッファへ直接直列化
+ * されます。{@link org.asterisque.msg.Block} のペイロードのような大きなバイナリはコピーせずにラップした
+ * ままバッファに連結されます。サポートしていないコーデックでは {@link Codec#encode(Message)} の結果を
+ * ラップして出力します。
+ *
+ * 出力ストリームと直列化処理はエンコーダー (チャネル) ごとに再利用し、出力バッファはこれまでのメッセージ
+ * サイズから見積もった初期サイズで確保します。
+ *
+ * {@link Framing#container()} が有効な場合、{@link Framing#ContainerThreshold} 未満の Open, Close, Block
+ * はコンテナフレームへ直接直列化されてフラッシュまで保持され、フラッシュ時 (またはコンテナが満杯になった時点)
+ * に 1 つのバッファとして出力されます。{@link NettyWire} は送信キューで待機しているメッセージをまとめて書き込んでから 1 度だけ
+ * フラッシュするため、同時に送信待ちとなったメッセージが 1 つのコンテナにまとまります。Control と大きなメッセージ
+ * は順序を保つため先にコンテナを出力してから単独のフレームとして出力します。
+ *
+ * {@link Framing#compression()} が有効な場合、{@link Compression#threshold} 以上の Open, Close, Block は
+ * 圧縮を試み、圧縮効果があれば圧縮フレームとして出力します。
+ *
  * @author Takami Torao
  */
-class MessageEncoder extends MessageToByteEncoder<Message> {
+class MessageEncoder extends ChannelOutboundHandlerAdapter {
 	public final Codec codec;
-	public MessageEncoder(Codec codec){
+	private final Framing framing;
+
+	/** メッセージごとに再利用する出力ストリーム */
+	private final MessageOutputStream os = new MessageOutputStream();
+
+	/** {@link #os} に書き込む直列化処理 */
+	private final Optional<Marshal> marshal;
+
+	/** 出力バッファの初期サイズを決定するためのメッセージサイズの見積もり */
+	private final SizeEstimator estimator = new SizeEstimator();
+
+	/** 直列化したメッセージとバイト数の通知先 */
+	private final ObjIntConsumer<Message> onEncoded;
+
+	/** 大きなメッセージの圧縮 */
+	private final Compression compression;
+
+	/** フラッシュ待ちのコンテナフレーム (コンテナに追加したメッセージがない場合は null) */
+	private ByteBuf container = null;
+
+	/** コンテナに追加したメッセージの書き込み結果の通知先 (void promise を除く) */
+	private final List<ChannelPromise> promises = new ArrayList<>();
+
+	public MessageEncoder(Codec codec, Framing framing){
+		this(codec, framing, new Compression(), (msg, bytes) -> { });
+	}
+
+	/**
+	 * @param onEncoded メッセージを直列化するごとにフレームヘッダを含むバイト数で呼び出される処理。コンテナに
+	 *                  格納したメッセージはメッセージ長を含むバイト数となり、コンテナのヘッダはコンテナの最初の
+	 *                  メッセージに含めます
+	 */
+	public MessageEncoder(Codec codec, Framing framing, Compression compression, ObjIntConsumer<Message> onEncoded){
 		this.codec = codec;
+		this.framing = framing;
+		this.compression = compression;
+		this.marshal = codec.newMarshal(os);
+		this.onEncoded = onEncoded;
 	}
-	public void encode(ChannelHandlerContext ctx, Message msg, ByteBuf b) throws CodecException {
-		b.writeBytes(codec.encode(msg));
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object obj, ChannelPromise promise){
+		if(! (obj instanceof Message)){
+			ctx.write(obj, promise);
+			return;
+		}
+		Message msg = (Message)obj;
+		try {
+			if((framing.container() || framing.compression()) && ! (msg instanceof Control)){
+				ByteBuf b;
+				if(framing.container() && marshal.isPresent()){
+					// 圧縮の対象とならない小さなメッセージはコンテナに直接直列化する
+					int limit = framing.compression()? Math.min(compression.threshold, Framing.ContainerThreshold): Framing.ContainerThreshold;
+					b = append(ctx, msg, limit, promise);
+					if(b == null){
+						return;
+					}
+				} else {
+					b = encode(ctx, msg, false);
+				}
+				if(framing.compression() && b.readableBytes() >= compression.threshold){
+					ByteBuf compressed = compression.deflate(b, ctx.alloc());
+					if(compressed != null){
+						b.release();
+						writeContainer(ctx);
+						onEncoded.accept(msg, compressed.readableBytes());
+						ctx.write(compressed, promise);
+						return;
+					}
+				}
+				if(framing.container() && b.readableBytes() < Framing.ContainerThreshold){
+					contain(ctx, msg, b, promise);
+					return;
+				}
+				writeContainer(ctx);
+				int length = b.readableBytes();
+				try {
+					checkFrameLength(true, length, msg);
+				} catch(CodecException ex){
+					b.release();
+					throw ex;
+				}
+				b = Unpooled.wrappedBuffer(ctx.alloc().ioBuffer(Framing.HeaderSize).writeShort(length), b);
+				onEncoded.accept(msg, b.readableBytes());
+				ctx.write(b, promise);
+			} else {
+				writeContainer(ctx);
+				ByteBuf b = encode(ctx, msg, framing.outbound());
+				onEncoded.accept(msg, b.readableBytes());
+				ctx.write(b, promise);
+				framing.sent(msg);
+			}
+		} catch(CodecException ex){
+			promise.setFailure(new EncoderException(ex));
+		}
+	}
+
+	@Override
+	public void flush(ChannelHandlerContext ctx){
+		writeContainer(ctx);
+		ctx.flush();
+	}
+
+	@Override
+	public void close(ChannelHandlerContext ctx, ChannelPromise promise){
+		discardContainer();
+		ctx.close(promise);
 	}
-}
 
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx){
+		discardContainer();
+		compression.close();
+	}
+
+	/**
+	 * 指定されたメッセージを直列化したバッファを参照します。
+	 *
+	 * @param framed フレームヘッダを付加する場合 true
+	 */
+	private ByteBuf encode(ChannelHandlerContext ctx, Message msg, boolean framed) throws CodecException {
+		ByteBuf b;
+		if(marshal.isPresent()){
+			os.reset(ctx.alloc(), estimator.estimate());
+			try {
+				if(framed){
+					os.write(0);
+					os.write(0);
+				}
+				codec.encode(msg, marshal.get());
+				int length = os.size() - (framed? Framing.HeaderSize: 0);
+				if(length > Codec.MaxMessageSize){
+					throw new CodecException(String.format("message binary too large: %d > %d: %s", length, Codec.MaxMessageSize, msg));
+				}
+				checkFrameLength(framed, length, msg);
+				estimator.update(os.bufferedSize());
+				b = os.toByteBuf();
+				if(framed){
+					b.setShort(0, length);
+				}
+			} catch(Throwable ex){
+				os.release();
+				throw ex;
+			}
+		} else {
+			ByteBuffer buffer = codec.encode(msg);
+			checkFrameLength(framed, buffer.remaining(), msg);
+			b = framed?
+				Unpooled.wrappedBuffer(Unpooled.copyShort(buffer.remaining()), Unpooled.wrappedBuffer(buffer)):
+				Unpooled.wrappedBuffer(buffer);
+		}
+		return b;
+	}
+
+	// ==============================================================================================
+	// コンテナフレーム
+	// ==============================================================================================
+	/**
+	 * 指定されたメッセージをコンテナフレームの末尾へ直接直列化します。メッセージ長の可変長プレフィクスは 2 バイト
+	 * 分を予約しておき、直列化した長さが確定してから書き込みます。直列化したメッセージが {@code limit} バイトに
+	 * 達した場合はコンテナから取り除いて単独のバッファとして返します。
+	 *
+	 * @param limit コンテナに追加するメッセージの長さの上限 (この値未満)
+	 * @return コンテナに追加しなかったメッセージのバッファ、追加した場合は null
+	 */
+	private ByteBuf append(ChannelHandlerContext ctx, Message msg, int limit, ChannelPromise promise) throws CodecException {
+		if(container != null && container.readableBytes() - Framing.ContainerHeaderSize + 2 + limit - 1 > Framing.MaxFrameLength){
+			writeContainer(ctx);
+		}
+		int header = 0;
+		if(container == null){
+			container = ctx.alloc().ioBuffer();
+			container.writeShort(0);
+			container.writeShort(0);
+			header = Framing.ContainerHeaderSize;
+		}
+		int start = container.writerIndex();
+		container.writeShort(0);
+		os.append(ctx.alloc(), container, limit, estimator.estimate());
+		ByteBuf b;
+		try {
+			codec.encode(msg, marshal.get());
+			b = os.toByteBuf();
+		} catch(Throwable ex){
+			os.release();
+			rewindContainer(start);
+			throw ex;
+		}
+		if(b != null){
+			rewindContainer(start);
+			if(os.size() > Codec.MaxMessageSize){
+				b.release();
+				throw new CodecException(String.format("message binary too large: %d > %d: %s", os.size(), Codec.MaxMessageSize, msg));
+			}
+			estimator.update(os.bufferedSize());
+			return b;
+		}
+		int length = container.writerIndex() - start - 2;
+		int prefix;
+		if(length < 0x80){
+			// 1 バイトのプレフィクスで足りるため予約した 2 バイト目を詰める
+			for(int i = 0; i < length; i ++){
+				container.setByte(start + 1 + i, container.getByte(start + 2 + i));
+			}
+			container.writerIndex(container.writerIndex() - 1);
+			container.setByte(start, length);
+			prefix = 1;
+		} else {
+			container.setByte(start, 0x80 | (length & 0x7F));
+			container.setByte(start + 1, length >>> 7);
+			prefix = 2;
+		}
+		if(! promise.isVoid()){
+			promises.add(promise);
+		}
+		onEncoded.accept(msg, header + prefix + length);
+		return null;
+	}
+
+	/**
+	 * 直列化したメッセージをコンテナフレームに追加します。追加によってコンテナが最大長を超える場合は先に現在の
+	 * コンテナを出力します。{@code b} はコンテナに複写した後に解放されます。圧縮効果のなかったメッセージや
+	 * 直列化処理をサポートしていないコーデックのメッセージが対象です。
+	 */
+	private void contain(ChannelHandlerContext ctx, Message msg, ByteBuf b, ChannelPromise promise){
+		int length = b.readableBytes();
+		int prefix = length < 0x80? 1: 2;
+		if(container != null && container.readableBytes() - Framing.ContainerHeaderSize + prefix + length > Framing.MaxFrameLength){
+			writeContainer(ctx);
+		}
+		int header = 0;
+		if(container == null){
+			container = ctx.alloc().ioBuffer();
+			container.writeShort(0);
+			container.writeShort(0);
+			header = Framing.ContainerHeaderSize;
+		}
+		if(prefix == 1){
+			container.writeByte(length);
+		} else {
+			container.writeByte(0x80 | (length & 0x7F));
+			container.writeByte(length >>> 7);
+		}
+		container.writeBytes(b);
+		b.release();
+		if(! promise.isVoid()){
+			promises.add(promise);
+		}
+		onEncoded.accept(msg, header + prefix + length);
+	}
+
+	/**
+	 * コンテナフレームの書き込み位置を指定された位置に戻します。コンテナが空になった場合は破棄します
+	 * (長さ 0 のコンテナは圧縮フレームと区別できないため出力してはいけません)。
+	 */
+	private void rewindContainer(int index){
+		container.writerIndex(index);
+		if(container.readableBytes() == Framing.ContainerHeaderSize){
+			container.release();
+			container = null;
+		}
+	}
+
+	/**
+	 * フラッシュ待ちのコンテナフレームを出力します。
+	 */
+	private void writeContainer(ChannelHandlerContext ctx){
+		if(container == null){
+			return;
+		}
+		ByteBuf b = container;
+		container = null;
+		b.setShort(Framing.HeaderSize, b.readableBytes() - Framing.ContainerHeaderSize);
+		if(promises.isEmpty()){
+			ctx.write(b, ctx.voidPromise());
+		} else {
+			ChannelPromise[] waiting = promises.toArray(new ChannelPromise[promises.size()]);
+			promises.clear();
+			ctx.write(b).addListener((ChannelFuture future) -> {
+				for(ChannelPromise promise: waiting){
+					if(future.isSuccess()){
+						promise.trySuccess();
+					} else {
+						promise.tryFailure(future.cause());
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * 出力前にチャネルがクローズされたコンテナフレームを破棄します。
+	 */
+	private void discardContainer(){
+		if(container != null){
+			container.release();
+			container = null;
+		}
+		if(! promises.isEmpty()){
+			EncoderException ex = new EncoderException("channel closed before container flushed");
+			promises.forEach(promise -> promise.tryFailure(ex));
+			promises.clear();
+		}
+	}
+
+	private static void checkFrameLength(boolean framed, int length, Message msg) throws CodecException {
+		if(framed && length > Framing.MaxFrameLength){
+			throw new CodecException(String.format("message too large for frame: %d > %d: %s", length, Framing.MaxFrameLength, msg));
+		}
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.OutputStream;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// MessageOutputStream
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * 1 メッセージ分の直列化結果をチャネルのアロケータから取得したバッファへ直接書き込むための出力ストリームです。
+ *
+ * {@link #ZeroCopyThreshold} バイト以上のバイト配列の書き込みはコピーを行わずにラップしたバッファとして連結
+ * します。このため書き込んだバイト配列は {@link #toByteBuf()} で得られたバッファが送信されるまで変更しては
+ * いけません ({@link org.asterisque.msg.Block} のペイロードはキューイングされた時点でこの条件を満たします)。
+ *
+ * このストリームは {@link #reset(io.netty.buffer.ByteBufAllocator, int)} によって次のメッセージのために
+ * 再利用できます。{@link #append(io.netty.buffer.ByteBufAllocator, io.netty.buffer.ByteBuf, int, int)} で
+ * 開始した場合は既存のバッファ (コンテナフレーム) の末尾へ直接書き込み、書き込んだバイト数が上限に達した時点で
+ * それまでの内容を新しいバッファへ移して単独のメッセージとして書き込みを続けます。
+ *
+ * @author Takami Torao
+ */
+final class MessageOutputStream extends OutputStream {
+
+	/**
+	 * コピーせずにラップして連結するバイト配列の最小長。
+	 */
+	public static final int ZeroCopyThreshold = 1024;
+
+	private ByteBufAllocator alloc = null;
+
+	/** 現在書き込み中のバッファ */
+	private ByteBuf current = null;
+
+	/** ラップしたバイト配列を含む場合の連結バッファ */
+	private CompositeByteBuf composite = null;
+
+	/** 書き込み済みのバイト数 */
+	private int size = 0;
+
+	/** 書き込み済みのうちラップして連結したバイト数 */
+	private int wrapped = 0;
+
+	/** 末尾へ直接書き込んでいるバッファ (単独のバッファへ書き込んでいる場合は null) */
+	private ByteBuf target = null;
+
+	/** {@link #target} 上でこのメッセージの書き込みを開始した位置 */
+	private int start = 0;
+
+	/** {@link #target} へ書き込むことのできるバイト数の上限 (この値未満) */
+	private int limit = 0;
+
+	/** {@link #target} から移す時に確保するバッファのサイズ */
+	private int initialCapacity = 0;
+
+	public MessageOutputStream(){ }
+
+	/**
+	 * 新しいメッセージの書き込みを開始します。以前のメッセージのバッファは {@link #toByteBuf()} または
+	 * {@link #release()} によって手放されている必要があります。
+	 * @param alloc バッファのアロケータ
+	 * @param initialCapacity 最初に確保するバッファのサイズ
+	 */
+	public void reset(ByteBufAllocator alloc, int initialCapacity){
+		assert(current == null && composite == null);
+		this.alloc = alloc;
+		this.current = alloc.ioBuffer(initialCapacity);
+		this.size = 0;
+		this.wrapped = 0;
+	}
+
+	/**
+	 * 指定されたバッファの末尾へ直接書き込む新しいメッセージの書き込みを開始します。書き込んだバイト数が
+	 * {@code limit} に達する場合、それまでの内容を {@code initialCapacity} で確保したバッファへ移して
+	 * {@code target} の書き込み位置を開始時点に戻します。
+	 * @param alloc 移す場合のバッファのアロケータ
+	 * @param target 書き込み先のバッファ
+	 * @param limit {@code target} へ書き込むことのできるバイト数の上限 (この値未満)
+	 * @param initialCapacity 移す場合に確保するバッファのサイズ
+	 */
+	public void append(ByteBufAllocator alloc, ByteBuf target, int limit, int initialCapacity){
+		assert(current == null && composite == null);
+		this.alloc = alloc;
+		this.current = target;
+		this.target = target;
+		this.start = target.writerIndex();
+		this.limit = Math.min(limit, ZeroCopyThreshold);
+		this.initialCapacity = initialCapacity;
+		this.size = 0;
+		this.wrapped = 0;
+	}
+
+	/** @return これまでに書き込まれたバイト数 */
+	public int size(){
+		return size;
+	}
+
+	/** @return これまでに書き込まれたバイトのうちアロケータから確保したバッファに複写したバイト数 */
+	public int bufferedSize(){
+		return size - wrapped;
+	}
+
+	public void write(int b){
+		if(target != null && size + 1 >= limit){
+			detach();
+		}
+		current.writeByte(b);
+		size ++;
+	}
+
+	public void write(byte[] b, int offset, int length){
+		if(target != null && size + length >= limit){
+			detach();
+		}
+		if(length >= ZeroCopyThreshold){
+			if(composite == null){
+				composite = alloc.compositeBuffer(Integer.MAX_VALUE);
+			}
+			composite.addComponent(true, current);
+			composite.addComponent(true, Unpooled.wrappedBuffer(b, offset, length));
+			current = alloc.ioBuffer();
+			wrapped += length;
+		} else {
+			current.writeBytes(b, offset, length);
+		}
+		size += length;
+	}
+
+	/**
+	 * {@link #target} へ書き込んだ内容を新しいバッファへ移し、以降の書き込みをそのバッファに対して行います。
+	 */
+	private void detach(){
+		current = alloc.ioBuffer(Math.max(initialCapacity, size));
+		current.writeBytes(target, start, size);
+		target.writerIndex(start);
+		target = null;
+	}
+
+	/**
+	 * 書き込まれた内容をバッファとして参照します。返値のバッファの所有権は呼び出し側に移り、このストリームは
+	 * 次の {@link #reset(io.netty.buffer.ByteBufAllocator, int)} まで使用できません。
+	 * {@link #append(io.netty.buffer.ByteBufAllocator, io.netty.buffer.ByteBuf, int, int)} で開始した
+	 * 書き込みが書き込み先のバッファに収まった場合は null を返します。
+	 */
+	public ByteBuf toByteBuf(){
+		if(target != null){
+			target = null;
+			current = null;
+			return null;
+		}
+		ByteBuf b;
+		if(composite == null){
+			b = current;
+		} else {
+			composite.addComponent(true, current);
+			b = composite;
+		}
+		current = null;
+		composite = null;
+		return b;
+	}
+
+	/**
+	 * 書き込み途中でエラーが発生した場合にバッファを解放します。書き込み先のバッファの末尾へ書き込んでいた
+	 * 場合は書き込み位置を開始時点に戻します。
+	 */
+	public void release(){
+		if(target != null){
+			target.writerIndex(start);
+			target = null;
+			current = null;
+		}
+		if(current != null){
+			current.release();
+			current = null;
+		}
+		if(composite != null){
+			composite.release();
+			composite = null;
+		}
+	}
+}
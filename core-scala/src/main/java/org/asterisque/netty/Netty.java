@@ -11,9 +11,7 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.EventLoopGroup;
 import io.netty.handler.ssl.SslHandler;
 import org.asterisque.*;
 import org.slf4j.Logger;
@@ -23,8 +21,9 @@ import javax.net.ssl.SSLEngine;
 import java.net.SocketAddress;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 // ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
@@ -38,7 +37,11 @@ import java.util.function.Consumer;
 public class Netty implements Bridge {
 	private static final Logger logger = LoggerFactory.getLogger(Netty.class);
 
-	private final AtomicReference<NioEventLoopGroup> worker = new AtomicReference<>();
+	/**
+	 * トランスポートごとのワーカー。イベントループとチャネルは同じトランスポートである必要があるため
+	 * 接続ごとに選択されたトランスポートのワーカーを使用する。
+	 */
+	private final ConcurrentMap<Transport, EventLoopGroup> workers = new ConcurrentHashMap<>();
 	private final AtomicBoolean closing = new AtomicBoolean(false);
 
 	// ==============================================================================================
@@ -53,21 +56,16 @@ public class Netty implements Bridge {
 	// ワーカー
 	// ==============================================================================================
 	/**
-	 *
+	 * 指定されたトランスポートのワーカーを参照します。
 	 */
-	private NioEventLoopGroup worker(){
+	private EventLoopGroup worker(Transport transport){
 		if(closing.get()){
 			throw new IllegalStateException("netty bridge already closed");
 		}
-		if(worker.get() == null){
-			NioEventLoopGroup w = new NioEventLoopGroup();
-			if(! worker.compareAndSet(null, w)){
-				w.shutdownGracefully();
-			} else {
-				logger.debug("worker NioEventLoop created");
-			}
-		}
-		return worker.get();
+		return workers.computeIfAbsent(transport, t -> {
+			logger.debug("worker " + t + " EventLoop created");
+			return t.newEventLoopGroup();
+		});
 	}
 
 	// ==============================================================================================
@@ -79,6 +77,7 @@ public class Netty implements Bridge {
 	 * @return Wire の Future
 	 */
 	public CompletableFuture<Wire> newWire(Node node, SocketAddress address, Options options) {
+		Transport transport = Transport.select(options);
 		Bootstrap client = new Bootstrap();
 		CompletableFuture<Wire> future = new CompletableFuture<>();
 
@@ -88,11 +87,11 @@ public class Netty implements Bridge {
 		});
 
 		client
-			.group(worker())
-			.channel(NioSocketChannel.class)
+			.group(worker(transport))
 			.remoteAddress(address)
 			.option(ChannelOption.TCP_NODELAY, java.lang.Boolean.TRUE)
 			.handler(factory);
+		transport.client(client, options);
 
 		client.connect(address).addListener(f -> {
 			if(f.isSuccess()) {
@@ -114,7 +113,8 @@ public class Netty implements Bridge {
 	 * @return Server の Future
 	 */
 	public CompletableFuture<Server> newServer(Node node, SocketAddress address, Options options, Consumer<Wire> onAccept) {
-		NioEventLoopGroup master = new NioEventLoopGroup();		// サーバソケットごとに生成、消滅
+		Transport transport = Transport.select(options);
+		EventLoopGroup master = transport.newEventLoopGroup();		// サーバソケットごとに生成、消滅
 		ServerBootstrap server = new ServerBootstrap();
 		CompletableFuture<Server> future = new CompletableFuture<>();
 
@@ -124,12 +124,12 @@ public class Netty implements Bridge {
 		});
 
 		server
-			.group(master, worker())
-			.channel(NioServerSocketChannel.class)
+			.group(master, worker(transport))
 			.localAddress(address)
 			.option(ChannelOption.SO_BACKLOG, options.get(Options.KEY_SERVER_BACKLOG).get())
 			.childOption(ChannelOption.TCP_NODELAY, Boolean.TRUE)
 			.childHandler(factory);
+		transport.server(server, options);
 
 		server.bind().addListener(f -> {
 			if(f.isSuccess()){
@@ -158,10 +158,8 @@ public class Netty implements Bridge {
 	public void close(){
 		logger.trace("close()");
 		if(closing.compareAndSet(false, true)){
-			NioEventLoopGroup w = worker.getAndSet(null);
-			if(w != null){
-				w.shutdownGracefully();
-			}
+			workers.values().forEach(EventLoopGroup::shutdownGracefully);
+			workers.clear();
 		}
 	}
 
@@ -215,10 +213,11 @@ public class Netty implements Bridge {
 				sslHandler = Optional.empty();
 			}
 
-			pipeline.addLast("io.asterisque.frame.encoder", new MessageEncoder(options.get(Options.KEY_CODEC).get()));
-			pipeline.addLast("io.asterisque.frame.decoder", new MessageDecoder(options.get(Options.KEY_CODEC).get()));
-			pipeline.addLast("io.asterisque.service",
-				new WireConnect(node, ch.localAddress(), ch.remoteAddress(), isServer, sslHandler, onWireCreate, options));
+			Framing framing = new Framing(isServer, options.get(Options.KEY_FRAMING).get());
+			WireConnect connect = new WireConnect(node, ch.localAddress(), ch.remoteAddress(), isServer, sslHandler, onWireCreate, options);
+			pipeline.addLast("io.asterisque.frame.encoder", new MessageEncoder(options.get(Options.KEY_CODEC).get(), framing, new Compression(options, connect), connect::sent));
+			pipeline.addLast("io.asterisque.frame.decoder", new MessageDecoder(options.get(Options.KEY_CODEC).get(), framing, new Compression(options, connect), options.get(Options.KEY_RETAIN_PAYLOAD).get(), connect::received));
+			pipeline.addLast("io.asterisque.service", connect);
 		}
 	}
 
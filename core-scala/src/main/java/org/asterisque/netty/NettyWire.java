@@ -5,9 +5,8 @@
 */
 package org.asterisque.netty;
 
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.util.concurrent.Future;
-import io.netty.util.concurrent.GenericFutureListener;
 import org.asterisque.Asterisque;
 import org.asterisque.Debug;
 import org.asterisque.Node;
@@ -42,24 +41,29 @@ class NettyWire implements Wire {
 	private final ChannelHandlerContext context;
 	private final String sym;
 	private final AtomicBoolean closing = new AtomicBoolean(false);
-	private boolean writable = false;
 
-	private Optional<Plug> plug = Optional.empty();
+	/** 1 回の書き込み処理で送信キューから取り出すメッセージ数の上限 */
+	private final int batchMessages;
+
+	/** 1 回の書き込み処理で書き込むバイト数の上限 */
+	private final int batchBytes;
+
 	/**
-	 * メッセージの送信が完了した時に次のメッセージを取り出して送信する Future リスナです。送信に失敗した場合は Wire
-	 * をクローズします。
+	 * エンコーダーが直列化したバイト数の累計。コンテナフレームはフラッシュまで送信バッファに積まれないため、
+	 * 書き込み処理のバイト数はチャネルの送信バッファではなくこの値で計上します。イベントループ上でのみ参照・
+	 * 変更されます。
 	 */
-	private final GenericFutureListener<Future<Void>> writeComplete = future -> {
-		if(future.isSuccess()){
-			if(logger.isTraceEnabled()){
-				logger.trace(id() + ": post and flush success, polling next message");
-			}
-			writeNext();
-		} else {
-			logger.error(id() + ": message write failure, closing wire: " + this, future.cause());
-			close();
-		}
-	};
+	private long encoded = 0;
+
+	/** 書き込み処理がイベントループに投入済みで未実行の場合 true */
+	private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+
+	private volatile Optional<Plug> plug = Optional.empty();
+
+	/**
+	 * イベントループ上で送信キューのメッセージをまとめて書き込む処理。
+	 */
+	private final Runnable drain = this::drain;
 
 	// ==============================================================================================
 	// コンストラクタ
@@ -70,10 +74,12 @@ class NettyWire implements Wire {
 	 * @param tls SSL セッションの Future
 	 * @param server この Wire 端点がサーバ側の場合 true
 	 * @param context チャネルコンテキスト
+	 * @param batchMessages 1 回の書き込み処理でフラッシュ前に取り出すメッセージ数の上限
+	 * @param batchBytes 1 回の書き込み処理でフラッシュ前に書き込むバイト数の上限
 	 */
 	public NettyWire(Node node, SocketAddress local, SocketAddress remote,
 									 boolean server, CompletableFuture<Optional<SSLSession>> tls,
-									 ChannelHandlerContext context){
+									 ChannelHandlerContext context, int batchMessages, int batchBytes){
 		this.node = node;
 		this.local = local;
 		this.remote = remote;
@@ -81,6 +87,8 @@ class NettyWire implements Wire {
 		this.tls = tls;
 		this.context = context;
 		this.sym = server? "S": "C";
+		this.batchMessages = Math.max(1, batchMessages);
+		this.batchBytes = Math.max(1, batchBytes);
 
 		// Channel のクローズと連動してこの Wire もクローズするように設定
 		context.channel().closeFuture().addListener(future -> close());
@@ -140,8 +148,10 @@ class NettyWire implements Wire {
 	 */
 	public void setWritable(boolean writable){
 		logger.trace(id() + ": setWritable(" + writable + ")");
-		this.writable = writable;
-		writeNext();
+		// 送信キューが空になった通知は produce() が null を返すことで検知するため使用しない
+		if(writable){
+			writeNext();
+		}
 	}
 
 	// ==============================================================================================
@@ -201,22 +211,75 @@ class NettyWire implements Wire {
 		return sym + ":" + Debug.toString(context.channel().remoteAddress());
 	}
 
+	// ==============================================================================================
+	// チャネルの書き込み可能通知
+	// ==============================================================================================
+	/**
+	 * チャネルの送信バッファが low watermark を下回り再び書き込み可能になった時に呼び出されます。
+	 */
+	void onChannelWritable(){
+		writeNext();
+	}
+
 	// ==============================================================================================
 	// メッセージの送信
 	// ==============================================================================================
 	/**
-	 * 次のメッセージを取り出して下層の channel に出力します。
+	 * 送信キューのメッセージを書き込む処理をイベントループに投入します。既に投入済みで未実行の場合は何も
+	 * 行いません。
 	 */
 	private void writeNext(){
-		if(writable && ! closing.get()){
-			plug.ifPresent(p -> {
-				Message msg = p.produce();
-				if(logger.isTraceEnabled()) {
-					logger.trace(id() + ": send(" + msg + ")");
-				}
-				// 出力完了の通知を受けたら次のメッセージを送信する処理を実行
-				context.channel().writeAndFlush(msg).addListener(writeComplete);
-			});
+		if(! closing.get() && plug.isPresent() && writeScheduled.compareAndSet(false, true)){
+			context.channel().eventLoop().execute(drain);
+		}
+	}
+
+	// ==============================================================================================
+	// メッセージの送信
+	// ==============================================================================================
+	/**
+	 * イベントループ上で送信キューからメッセージを取り出して下層の channel に書き込みます。メッセージ数または
+	 * 直列化したバイト数が上限に達するか、送信キューが空になるか、channel の送信バッファが high watermark を
+	 * 超えるまで書き込みを行い、最後に 1 度だけフラッシュします。
+	 *
+	 * 送信キューの空状態の通知は順序が前後する可能性があるため、{@link Plug#produce()} が null を返すまでを
+	 * 送信キューが空でない状態とみなします。
+	 */
+	private void drain(){
+		writeScheduled.set(false);
+		Optional<Plug> plug = this.plug;
+		if(closing.get() || ! plug.isPresent()){
+			return;
+		}
+		Channel ch = context.channel();
+		int messages = 0;
+		long bytes = 0;
+		boolean empty = false;
+		while(ch.isWritable() && messages < batchMessages && bytes < batchBytes){
+			Message msg = plug.get().produce();
+			if(msg == null){
+				empty = true;
+				break;
+			}
+			if(logger.isTraceEnabled()) {
+				logger.trace(id() + ": send(" + msg + ")");
+			}
+			// 書き込み時にエンコーダーが直列化したバイト数を計上する
+			long before = encoded;
+			ch.write(msg, ch.voidPromise());
+			bytes += encoded - before;
+			messages ++;
+		}
+		if(messages > 0){
+			if(logger.isTraceEnabled()) {
+				logger.trace(id() + ": flush " + messages + " messages, " + bytes + " bytes");
+			}
+			ch.flush();
+		}
+		// 上限に達した場合は受信処理を妨げないようイベントループに再投入する (high watermark を超えた場合は
+		// channelWritabilityChanged で再開する)
+		if(! empty && ch.isWritable()){
+			writeNext();
 		}
 	}
 
@@ -233,6 +296,47 @@ class NettyWire implements Wire {
 		plug.ifPresent(p -> p.consume(msg));
 	}
 
+	/**
+	 * エンコーダーがメッセージを直列化した時に呼び出されます。
+	 */
+	void sent(Message msg, int bytes){
+		encoded += bytes;
+		Optional<Plug> plug = this.plug;
+		if(plug.isPresent()){
+			plug.get().sent(msg, bytes);
+		}
+	}
+
+	/**
+	 * デコーダーがメッセージを復元した時に呼び出されます。
+	 */
+	void received(Message msg, int bytes){
+		Optional<Plug> plug = this.plug;
+		if(plug.isPresent()){
+			plug.get().received(msg, bytes);
+		}
+	}
+
+	/**
+	 * エンコーダーがメッセージの圧縮を試みた時に呼び出されます。
+	 */
+	void compressed(int original, int compressed, long nanos){
+		Optional<Plug> plug = this.plug;
+		if(plug.isPresent()){
+			plug.get().compressed(original, compressed, nanos);
+		}
+	}
+
+	/**
+	 * デコーダーが圧縮フレームを伸長した時に呼び出されます。
+	 */
+	void decompressed(int original, int compressed, long nanos){
+		Optional<Plug> plug = this.plug;
+		if(plug.isPresent()){
+			plug.get().decompressed(original, compressed, nanos);
+		}
+	}
+
 	public String id() {
 		return plug.map(Plug::id).orElse(Asterisque.logPrefix(server));
 	}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.asterisque.Debug;
+import org.asterisque.Options;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// Transport
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * Netty ブリッジが使用するネットワークトランスポートです。イベントループとチャネルの実装は同じトランスポートの
+ * ものを組み合わせる必要があります。
+ *
+ * @author Takami Torao
+ */
+enum Transport {
+
+	/**
+	 * JDK の NIO を使用するトランスポート。全てのプラットフォームで使用できます。
+	 */
+	NIO {
+		public EventLoopGroup newEventLoopGroup(){ return new NioEventLoopGroup(); }
+		public void client(Bootstrap client, Options options){
+			client.channel(NioSocketChannel.class);
+		}
+		public void server(ServerBootstrap server, Options options){
+			server.channel(NioServerSocketChannel.class);
+		}
+	},
+
+	/**
+	 * Linux のネイティブ epoll (エッジトリガ) を使用するトランスポート。TCP_QUICKACK を有効にし、オプションの
+	 * 指定により SO_REUSEPORT を使用します。
+	 */
+	EPOLL {
+		public EventLoopGroup newEventLoopGroup(){ return new EpollEventLoopGroup(); }
+		public void client(Bootstrap client, Options options){
+			client.channel(EpollSocketChannel.class)
+				.option(EpollChannelOption.TCP_QUICKACK, Boolean.TRUE);
+		}
+		public void server(ServerBootstrap server, Options options){
+			server.channel(EpollServerSocketChannel.class)
+				.option(EpollChannelOption.SO_REUSEPORT, options.get(Options.KEY_SERVER_REUSE_PORT).get())
+				.childOption(EpollChannelOption.TCP_QUICKACK, Boolean.TRUE);
+		}
+	};
+
+	private static final Logger logger = LoggerFactory.getLogger(Transport.class);
+
+	/**
+	 * このトランスポートのイベントループを構築します。
+	 */
+	public abstract EventLoopGroup newEventLoopGroup();
+
+	/**
+	 * クライアントの Bootstrap にこのトランスポートのチャネルとオプションを設定します。
+	 */
+	public abstract void client(Bootstrap client, Options options);
+
+	/**
+	 * サーバの Bootstrap にこのトランスポートのチャネルとオプションを設定します。
+	 */
+	public abstract void server(ServerBootstrap server, Options options);
+
+	// ==============================================================================================
+	// トランスポートの選択
+	// ==============================================================================================
+	/**
+	 * 指定されたオプションの {@link org.asterisque.Options#KEY_TRANSPORT} に従ってトランスポートを選択します。
+	 * epoll が指定されていても実行環境で利用できない場合は NIO を返します。
+	 */
+	public static Transport select(Options options){
+		String name = options.get(Options.KEY_TRANSPORT).get().trim().toLowerCase();
+		switch(name){
+			case "epoll":
+				if(Epoll.isAvailable()){
+					return EPOLL;
+				}
+				logger.warn("epoll transport is not available, fallback to nio: " + Epoll.unavailabilityCause());
+				return NIO;
+			case "nio":
+				return NIO;
+			default:
+				logger.warn(Options.KEY_TRANSPORT + ": unsupported transport, using nio: " + Debug.toString(name));
+				return NIO;
+		}
+	}
+}
@@ -30,7 +30,7 @@ import java.util.function.Consumer;
 /**
  * @author Takami Torao
  */
-class WireConnect extends SimpleChannelInboundHandler<Message> {
+class WireConnect extends SimpleChannelInboundHandler<Message> implements Compression.Listener {
 	private static Logger logger = LoggerFactory.getLogger(WireConnect.class);
 
 	/**
@@ -111,7 +111,8 @@ class WireConnect extends SimpleChannelInboundHandler<Message> {
 		}
 
 		// Wire 構築
-		NettyWire w = new NettyWire(node, local, remote, isServer, future, ctx);
+		NettyWire w = new NettyWire(node, local, remote, isServer, future, ctx,
+			options.get(Options.KEY_WRITE_BATCH_MESSAGES).get(), options.get(Options.KEY_WRITE_BATCH_BYTES).get());
 		wire = Optional.of(w);
 
 		super.channelActive(ctx);
@@ -153,6 +154,67 @@ class WireConnect extends SimpleChannelInboundHandler<Message> {
 		// super.channelRead0(ctx, msg) スーパークラスは未実装
 	}
 
+	// ==============================================================================================
+	// 直列化サイズの通知
+	// ==============================================================================================
+	/**
+	 * エンコーダーがメッセージを直列化した時に呼び出されます。
+	 */
+	void sent(Message msg, int bytes){
+		Optional<NettyWire> wire = this.wire;
+		if(wire.isPresent()){
+			wire.get().sent(msg, bytes);
+		}
+	}
+
+	/**
+	 * デコーダーがメッセージを復元した時に呼び出されます。
+	 */
+	void received(Message msg, int bytes){
+		Optional<NettyWire> wire = this.wire;
+		if(wire.isPresent()){
+			wire.get().received(msg, bytes);
+		}
+	}
+
+	/**
+	 * エンコーダーがメッセージの圧縮を試みた時に呼び出されます。
+	 */
+	@Override
+	public void compressed(int original, int compressed, long nanos){
+		Optional<NettyWire> wire = this.wire;
+		if(wire.isPresent()){
+			wire.get().compressed(original, compressed, nanos);
+		}
+	}
+
+	/**
+	 * デコーダーが圧縮フレームを伸長した時に呼び出されます。
+	 */
+	@Override
+	public void decompressed(int original, int compressed, long nanos){
+		Optional<NettyWire> wire = this.wire;
+		if(wire.isPresent()){
+			wire.get().decompressed(original, compressed, nanos);
+		}
+	}
+
+	// ==============================================================================================
+	// 書き込み可能状態の変化
+	// ==============================================================================================
+	/**
+	 * チャネルの送信バッファが high watermark を超えた、または low watermark を下回った時に呼び出されます。
+	 * @param ctx コンテキスト
+	 */
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+		trace("channelWritabilityChanged(" + ctx.channel().isWritable() + ")");
+		if(ctx.channel().isWritable()){
+			wire.ifPresent(NettyWire::onChannelWritable);
+		}
+		super.channelWritabilityChanged(ctx);
+	}
+
 	// ==============================================================================================
 	// 例外の発生
 	// ==============================================================================================
@@ -5,7 +5,10 @@
 */
 package org.asterisque.util;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 // ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
 // CircuitBreaker
@@ -17,10 +20,29 @@ import java.util.concurrent.atomic.AtomicInteger;
  * {@link #broken()} を行います。負荷値が {@link #softLimit} を下回った場合は {@link #overload(boolean)
  * overload(false)} 通知を行います。
  *
+ * 負荷値の増減から到着レートと排出レート、および待ち時間 (sojourn time) を指数移動平均 (EWMA) で算出します。
+ * 統計は {@link #TickInterval} 以上の間隔で {@link #increment()}、{@link #decrement()} を呼び出したスレッドに
+ * よって更新されます。待ち時間は現在の負荷値を排出レートで割った値 (Little の法則) と、先頭の要素が排出を
+ * 待っている時間のうち大きい方で見積もります。
+ *
+ * {@link #sojournTarget} を指定した場合、負荷値が {@link #softLimit} に達した場合に加えて見積もった待ち時間が
+ * {@link #sojournTarget} に達した場合にも回復可能な高負荷として通知し、両方の条件を下回った時点で解除します。
+ * 排出の遅いキューは少ない負荷値でも高負荷となるため、{@link #softLimit} を大きめに設定することで速やかに
+ * 排出される小さな要素の集中によって停止することを避けられます。
+ *
  * @author Takami Torao
  */
 public abstract class CircuitBreaker {
-	// 将来的には時間統計で現在の負荷状態を算出してメトリクスに使用したい。
+
+	/**
+	 * 統計を更新する最小間隔 (ナノ秒)。
+	 */
+	public static final long TickInterval = TimeUnit.MILLISECONDS.toNanos(100);
+
+	/**
+	 * 指数移動平均の時定数 (ナノ秒)。この時間の経過で過去の値の重みが 1/e となります。
+	 */
+	public static final long Tau = TimeUnit.SECONDS.toNanos(1);
 
 	/**
 	 * このサーキットブレーカーの回復可能な通知閾値。カウントがこの数に達するとサブクラスの {@link #overload(boolean)
@@ -34,6 +56,11 @@ public abstract class CircuitBreaker {
 	 */
 	public final int hardLimit;
 
+	/**
+	 * 回復可能な高負荷と判断する待ち時間の閾値 (ナノ秒)。0 の場合は負荷値のみで判断します。
+	 */
+	public final long sojournTarget;
+
 	/**
 	 * このサーキットブレーカーの現在の負荷値。
 	 */
@@ -55,6 +82,31 @@ public abstract class CircuitBreaker {
 	 */
 	private volatile boolean broken = false;
 
+	/**
+	 * {@link #sojournTarget} が指定されている場合の回復可能な高負荷状態。
+	 */
+	private volatile boolean overloaded = false;
+
+	/** 排出された要素の累計 */
+	private final LongAdder drains = new LongAdder();
+
+	/** 最後に統計を更新した時刻、または統計の計測を開始していない場合は {@link Long#MIN_VALUE} */
+	private final AtomicLong lastTick = new AtomicLong(Long.MIN_VALUE);
+
+	/** 前回の統計更新時点での到着数と排出数の累計 */
+	private volatile long lastArrivals = 0;
+	private volatile long lastDrains = 0;
+
+	/** 最後に要素が排出された、または空の状態から要素が到着した時刻 */
+	private volatile long headSince = 0;
+
+	/** 到着レートと排出レート (1 秒あたりの要素数) の指数移動平均 */
+	private volatile double arrivalRate = 0;
+	private volatile double drainRate = 0;
+
+	/** 待ち時間 (ナノ秒) の指数移動平均 */
+	private volatile double sojourn = 0;
+
 	// ==============================================================================================
 	// コンストラクタ
 	// ==============================================================================================
@@ -65,6 +117,18 @@ public abstract class CircuitBreaker {
 	 * @param hardLimit ハードリミット
 	 */
 	protected CircuitBreaker(int softLimit, int hardLimit){
+		this(softLimit, hardLimit, 0);
+	}
+
+	/**
+	 * 指定された {@link #softLimit}、{@link #hardLimit}、{@link #sojournTarget} のサーキットブレーカーを
+	 * 構築します。
+	 *
+	 * @param softLimit ソフトリミット
+	 * @param hardLimit ハードリミット
+	 * @param sojournTarget 待ち時間の閾値 (ナノ秒)、負荷値のみで判断する場合は 0
+	 */
+	protected CircuitBreaker(int softLimit, int hardLimit, long sojournTarget){
 		if(softLimit <= 0){
 			throw new IllegalArgumentException(String.format("soft limit should be positive: %d", softLimit));
 		}
@@ -75,8 +139,12 @@ public abstract class CircuitBreaker {
 			throw new IllegalArgumentException(
 				String.format("soft limit %s exceeds hard limit %d", softLimit, hardLimit));
 		}
+		if(sojournTarget < 0){
+			throw new IllegalArgumentException(String.format("sojourn target should not be negative: %d", sojournTarget));
+		}
 		this.softLimit = softLimit;
 		this.hardLimit = hardLimit;
+		this.sojournTarget = sojournTarget;
 	}
 
 	// ==============================================================================================
@@ -99,16 +167,53 @@ public abstract class CircuitBreaker {
 		return overload.get();
 	}
 
+	// ==============================================================================================
+	// 統計値の参照
+	// ==============================================================================================
+	/**
+	 * 1 秒あたりの到着数の指数移動平均を参照します。
+	 */
+	public double arrivalRate(){
+		return arrivalRate;
+	}
+
+	/**
+	 * 1 秒あたりの排出数の指数移動平均を参照します。
+	 */
+	public double drainRate(){
+		return drainRate;
+	}
+
+	/**
+	 * 待ち時間 (ナノ秒) の見積もりの指数移動平均を参照します。
+	 */
+	public double sojourn(){
+		return sojourn;
+	}
+
 	// ==============================================================================================
 	// 加算
 	// ==============================================================================================
 	/**
 	 * 負荷値を加算します。カウント値が {@link #softLimit} に達した場合 {@link #overload(boolean)} overload(true)}
 	 * が呼び出されます。同様に {@link #hardLimit} に達した場合は {@link #broken()} が呼び出されます。
+	 * {@link #sojournTarget} が指定されている場合は見積もった待ち時間が閾値に達した場合も overload(true) が
+	 * 呼び出されます。
 	 */
 	public void increment(){
 		int current = load.incrementAndGet();
-		if(current >= softLimit) {
+		long now = now();
+		if(current == 1){
+			headSince = now;
+		}
+		tick(now);
+		if(sojournTarget > 0){
+			if(current == hardLimit){
+				broken = true;
+				broken();
+			}
+			evaluate(current, now);
+		} else if(current >= softLimit) {
 			if(current == softLimit) {
 				if(overloadSwitch.incrementAndGet() == 1) {
 					overload.incrementAndGet();
@@ -127,16 +232,97 @@ public abstract class CircuitBreaker {
 	/**
 	 * カウント値を加算します。カウント値が soft limit に達した場合 {@link #overload(boolean)} overload(true)}
 	 * が呼び出されます。同様に hard limit に達した場合は {@link #broken()} が呼び出されます。
+	 * {@link #sojournTarget} が指定されている場合は負荷値と待ち時間の両方が閾値を下回った時点で overload(false)
+	 * が呼び出されます。
 	 */
 	public void decrement(){
 		int current = load.getAndDecrement();
-		if(current == softLimit){
+		long now = now();
+		drains.increment();
+		headSince = now;
+		tick(now);
+		if(sojournTarget > 0){
+			evaluate(current - 1, now);
+		} else if(current == softLimit){
 			if(overloadSwitch.decrementAndGet() == 0){
 				overload(false);
 			}
 		}
 	}
 
+	// ==============================================================================================
+	// 統計の更新
+	// ==============================================================================================
+	/**
+	 * 前回の更新から {@link #TickInterval} 以上経過していれば統計を更新します。複数のスレッドが同時に呼び出した
+	 * 場合は 1 つのスレッドのみが更新を行います。
+	 */
+	private void tick(long now){
+		long last = lastTick.get();
+		if(last == Long.MIN_VALUE){
+			lastTick.compareAndSet(last, now);
+			return;
+		}
+		long elapsed = now - last;
+		if(elapsed < TickInterval || ! lastTick.compareAndSet(last, now)){
+			return;
+		}
+		int current = load.get();
+		long d = drains.sum();
+		long a = d + current;
+		double alpha = 1.0 - Math.exp(- (double)elapsed / Tau);
+		double seconds = elapsed / 1e9;
+		arrivalRate += alpha * ((a - lastArrivals) / seconds - arrivalRate);
+		drainRate += alpha * ((d - lastDrains) / seconds - drainRate);
+		sojourn += alpha * (estimate(current, now) - sojourn);
+		lastArrivals = a;
+		lastDrains = d;
+	}
+
+	/**
+	 * 指定された負荷値での待ち時間 (ナノ秒) を見積もります。
+	 */
+	private double estimate(int current, long now){
+		if(current <= 0){
+			return 0;
+		}
+		double wait = drainRate > 0? current / drainRate * 1e9: 0;
+		return Math.max(wait, now - headSince);
+	}
+
+	/**
+	 * {@link #sojournTarget} が指定されている場合に現在の負荷値と待ち時間から高負荷状態を判定し、状態が変化して
+	 * いれば通知します。通知の順序が逆転しないよう状態の変更と通知は排他的に行います。
+	 */
+	private void evaluate(int current, long now){
+		if(isOverloaded(current, now) != overloaded){
+			synchronized(this){
+				boolean over = isOverloaded(load.get(), now());
+				if(over != overloaded){
+					overloaded = over;
+					if(over){
+						overload.incrementAndGet();
+					}
+					overload(over);
+				}
+			}
+		}
+	}
+
+	private boolean isOverloaded(int current, long now){
+		return current >= softLimit || estimate(current, now) >= sojournTarget;
+	}
+
+	// ==============================================================================================
+	// 現在時刻
+	// ==============================================================================================
+	/**
+	 * 統計に使用する現在時刻 (ナノ秒) を参照します。
+	 */
+	protected long now(){
+		return System.nanoTime();
+	}
+
 	// ==============================================================================================
 	// 回復可能な高負荷
 	// ==============================================================================================
@@ -154,6 +340,17 @@ public abstract class CircuitBreaker {
 	 */
 	protected abstract void broken();
 
+	// ==============================================================================================
+	// 高負荷状態の参照
+	// ==============================================================================================
+	/**
+	 * このサーキットブレーカーが回復可能な高負荷状態 ({@link #overload(boolean) overload(true)} の通知から
+	 * overload(false) の通知まで) にあるかを返します。
+	 */
+	public boolean isOverloaded(){
+		return sojournTarget > 0? overloaded: overloadSwitch.get() > 0;
+	}
+
 	// ==============================================================================================
 	// 回復不可能な高負荷
 	// ==============================================================================================
@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// TimingWheel
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * 大量のタイムアウトを少ないコストで管理するためのハッシュ化タイミングホイールです。
+ *
+ * 時間を {@link #tick} 単位の目盛りに分割し、期限の目盛りをホイールのサイズで割った剰余のバケットにタイム
+ * アウトを登録します。ホイールを一周するより先の期限は残り周回数を保持します。登録と取り消しはタイムアウトを
+ * ロックフリーのキューへ追加するだけの O(1) であり、ワーカースレッドが目盛りごとにキューの内容をバケットへ
+ * 反映して現在の目盛りのバケットだけを走査します。このため数十万のタイムアウトが登録されていても 1 目盛りの
+ * 処理はそのバケットの要素数に比例するだけです。
+ *
+ * 期限の精度は {@link #tick} であり、処理は期限から最大で 1 目盛り遅れて実行されます。ping やセッション
+ * タイムアウトのように厳密な時刻を必要としない処理に使用してください。期限に達した処理はワーカースレッドで
+ * 実行されるため、短時間で終了しなければなりません。
+ *
+ * ワーカースレッドは最初のタイムアウトが登録された時点で開始し、{@link #close()} で終了します。
+ *
+ * @author Takami Torao
+ */
+public final class TimingWheel implements AutoCloseable {
+	private static final Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+	/** 1 目盛りで反映する登録の最大数。大量の登録によって期限の処理が遅れることを防ぐ */
+	private static final int MaxTransfer = 100000;
+
+	private static final int Init = 0;
+	private static final int Started = 1;
+	private static final int Shutdown = 2;
+
+	/**
+	 * 1 目盛りの時間 (ナノ秒)。
+	 */
+	public final long tick;
+
+	/** タイムアウトを期限の目盛りごとに保持するバケット。サイズは 2 のべき乗 */
+	private final Bucket[] wheel;
+
+	/** 目盛りからバケットのインデックスを算出するためのマスク */
+	private final int mask;
+
+	/** 期限を算出する基準時刻 ({@link System#nanoTime()}) */
+	private final long startTime;
+
+	/** 登録されたがまだバケットへ反映していないタイムアウト */
+	private final Queue<Timeout> arrivals = new ConcurrentLinkedQueue<>();
+
+	/** 取り消されたがまだバケットから削除していないタイムアウト */
+	private final Queue<Timeout> cancellations = new ConcurrentLinkedQueue<>();
+
+	/** 期限に達していない (実行も取り消しもされていない) タイムアウトの数 */
+	private final AtomicInteger pending = new AtomicInteger(0);
+
+	private final AtomicInteger state = new AtomicInteger(Init);
+
+	private final Thread worker;
+
+	// ==============================================================================================
+	// コンストラクタ
+	// ==============================================================================================
+	/**
+	 * @param factory ワーカースレッドを生成するファクトリ (デーモンスレッドとして使用します)
+	 * @param tick 1 目盛りの時間
+	 * @param unit 目盛りの時間の単位
+	 * @param size ホイールのバケット数 (2 のべき乗に切り上げます)
+	 */
+	public TimingWheel(ThreadFactory factory, long tick, TimeUnit unit, int size){
+		if(tick <= 0){
+			throw new IllegalArgumentException("invalid tick duration: " + tick);
+		}
+		if(size <= 0 || size > (1 << 30)){
+			throw new IllegalArgumentException("invalid wheel size: " + size);
+		}
+		int buckets = Integer.highestOneBit(size);
+		if(buckets < size){
+			buckets <<= 1;
+		}
+		this.tick = unit.toNanos(tick);
+		this.wheel = new Bucket[buckets];
+		for(int i = 0; i < wheel.length; i ++){
+			wheel[i] = new Bucket();
+		}
+		this.mask = wheel.length - 1;
+		this.startTime = System.nanoTime();
+		this.worker = factory.newThread(this::run);
+		this.worker.setDaemon(true);
+	}
+
+	// ==============================================================================================
+	// タイムアウトの登録
+	// ==============================================================================================
+	/**
+	 * 指定された処理を遅延時間の経過後に実行するよう登録します。
+	 *
+	 * @param task 実行する処理 (短時間で終了しなければならない)
+	 * @param delay 遅延時間
+	 * @param unit 遅延時間の単位
+	 * @return 登録したタイムアウト
+	 * @throws RejectedExecutionException タイミングホイールがクローズされている場合
+	 */
+	public Timeout schedule(Runnable task, long delay, TimeUnit unit) throws RejectedExecutionException {
+		if(state.get() == Init && state.compareAndSet(Init, Started)){
+			worker.start();
+		}
+		if(state.get() == Shutdown){
+			throw new RejectedExecutionException("timing wheel closed");
+		}
+		// 極端に長い遅延はオーバーフローしないよう丸める
+		long deadline = System.nanoTime() - startTime + Math.min(Math.max(0, unit.toNanos(delay)), Long.MAX_VALUE / 4);
+		Timeout timeout = new Timeout(this, task, deadline);
+		pending.incrementAndGet();
+		arrivals.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * @return 期限に達していない (実行も取り消しもされていない) タイムアウトの数
+	 */
+	public int size(){
+		return pending.get();
+	}
+
+	// ==============================================================================================
+	// クローズ
+	// ==============================================================================================
+	/**
+	 * ワーカースレッドを終了します。期限に達していないタイムアウトは実行されずに破棄されます。このメソッドは
+	 * 期限に達した処理の中から呼び出すこともできます。
+	 */
+	@Override
+	public void close(){
+		if(state.getAndSet(Shutdown) == Started){
+			LockSupport.unpark(worker);
+		}
+	}
+
+	// ==============================================================================================
+	// ワーカースレッド
+	// ==============================================================================================
+	/**
+	 * 目盛りごとに登録と取り消しをバケットへ反映し、現在の目盛りのバケットで期限に達したタイムアウトを実行
+	 * します。
+	 */
+	private void run(){
+		// 開始までに経過した目盛りは空であるため現在の目盛りから開始する
+		long current = (System.nanoTime() - startTime) / tick;
+		while(state.get() == Started){
+			long deadline = (current + 1) * tick;
+			long sleep = deadline - (System.nanoTime() - startTime);
+			if(sleep > 0){
+				LockSupport.parkNanos(this, sleep);
+				continue;
+			}
+			removeCancelled();
+			transfer(current);
+			wheel[(int)(current & mask)].expire(deadline);
+			current ++;
+		}
+		arrivals.clear();
+		cancellations.clear();
+		logger.debug("timing wheel stopped with " + pending.get() + " pending timeouts");
+	}
+
+	/**
+	 * 取り消されたタイムアウトをバケットから削除します。
+	 */
+	private void removeCancelled(){
+		Timeout timeout;
+		while((timeout = cancellations.poll()) != null){
+			if(timeout.bucket != null){
+				timeout.bucket.remove(timeout);
+			}
+		}
+	}
+
+	/**
+	 * 登録されたタイムアウトを期限の目盛りのバケットへ反映します。既に期限を過ぎているタイムアウトは現在の
+	 * 目盛りで実行します。
+	 */
+	private void transfer(long current){
+		for(int i = 0; i < MaxTransfer; i ++){
+			Timeout timeout = arrivals.poll();
+			if(timeout == null){
+				break;
+			}
+			if(timeout.state != Timeout.Pending){
+				continue;
+			}
+			long ticks = Math.max(timeout.deadline / tick, current);
+			timeout.remainingRounds = (ticks - current) / wheel.length;
+			wheel[(int)(ticks & mask)].add(timeout);
+		}
+	}
+
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	// Timeout
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	/**
+	 * タイミングホイールに登録された処理です。
+	 */
+	public static final class Timeout {
+		private static final int Pending = 0;
+		private static final int Cancelled = 1;
+		private static final int Expired = 2;
+
+		private static final AtomicIntegerFieldUpdater<Timeout> State =
+			AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+		private final TimingWheel timer;
+		private final Runnable task;
+
+		/** 期限 (タイミングホイールの基準時刻からのナノ秒) */
+		private final long deadline;
+
+		private volatile int state = Pending;
+
+		// 以下はワーカースレッドのみが参照する
+		private long remainingRounds;
+		private Bucket bucket;
+		private Timeout prev;
+		private Timeout next;
+
+		private Timeout(TimingWheel timer, Runnable task, long deadline){
+			this.timer = timer;
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * このタイムアウトを取り消します。既に実行された場合は何も行いません。
+		 *
+		 * @return 取り消しによって処理の実行が回避された場合 true
+		 */
+		public boolean cancel(){
+			if(! State.compareAndSet(this, Pending, Cancelled)){
+				return false;
+			}
+			timer.pending.decrementAndGet();
+			timer.cancellations.add(this);
+			return true;
+		}
+
+		/**
+		 * @return このタイムアウトが取り消されている場合 true
+		 */
+		public boolean isCancelled(){
+			return state == Cancelled;
+		}
+
+		/**
+		 * @return このタイムアウトの期限に達し処理が実行された場合 true
+		 */
+		public boolean isExpired(){
+			return state == Expired;
+		}
+
+		private void expire(){
+			if(! State.compareAndSet(this, Pending, Expired)){
+				return;
+			}
+			timer.pending.decrementAndGet();
+			try {
+				task.run();
+			} catch(Throwable ex){
+				logger.warn("unexpected exception in timer task: " + task, ex);
+			}
+		}
+	}
+
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	// Bucket
+	// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+	/**
+	 * 同じ目盛りに割り当てられたタイムアウトの双方向リストです。ワーカースレッドのみが操作します。
+	 */
+	private static final class Bucket {
+		private Timeout head;
+		private Timeout tail;
+
+		public void add(Timeout timeout){
+			timeout.bucket = this;
+			if(head == null){
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		public Timeout remove(Timeout timeout){
+			Timeout next = timeout.next;
+			if(timeout.prev != null){
+				timeout.prev.next = next;
+			}
+			if(timeout.next != null){
+				timeout.next.prev = timeout.prev;
+			}
+			if(timeout == head){
+				head = next;
+			}
+			if(timeout == tail){
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+			return next;
+		}
+
+		/**
+		 * 残り周回数のないタイムアウトを実行し、それ以外の周回数を減らします。
+		 *
+		 * @param deadline 現在の目盛りの終了時刻
+		 */
+		public void expire(long deadline){
+			Timeout timeout = head;
+			while(timeout != null){
+				if(timeout.remainingRounds <= 0){
+					Timeout next = remove(timeout);
+					if(timeout.deadline <= deadline){
+						timeout.expire();
+					} else {
+						// 転送時の計算により発生しないはずの状態
+						logger.warn("timeout " + timeout.deadline + " placed in wrong bucket: " + deadline);
+					}
+					timeout = next;
+				} else if(timeout.isCancelled()){
+					timeout = remove(timeout);
+				} else {
+					timeout.remainingRounds --;
+					timeout = timeout.next;
+				}
+			}
+		}
+	}
+}
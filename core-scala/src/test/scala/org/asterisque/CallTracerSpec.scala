@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque
+
+import org.asterisque.metrics.CallPhase
+import org.asterisque.msg.{Close, Open}
+import org.specs2.Specification
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// CallTracerSpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class CallTracerSpec extends Specification { def is = s2"""
+CallTracer should:
+record caller phases from open to return. $e0
+record callee phases from dispatch to reply. $e1
+ignore messages of the other side of pipe space. $e2
+be disabled by default. $e3
+record total latency only for completed calls. $e4
+discard pending replies when session closed. $e5
+"""
+	import CallTracerSpec._
+	import SessionFixture._
+
+	def e0 = withTracer(false){ (node, session, pipes, tracer) =>
+		val pipe = pipes.create(Priority.Normal, 10.toShort)
+		tracer.departed(new Open(pipe.id, 10.toShort, Array[AnyRef]()))
+		Thread.sleep(5)
+		val received = tracer.received(pipe)
+		tracer.returned(pipe, received)
+		val remote = node.metrics.latency(10, CallPhase.Remote)
+		(node.metrics.latency(10, CallPhase.Departure).getCount === 1) and (remote.getCount === 1) and
+			(remote.getMax must be_>=(5000000L)) and (node.metrics.latency(10, CallPhase.Return).getCount === 1) and
+			(node.metrics.latency(10, CallPhase.Dispatch).getCount === 0)
+	}
+
+	def e1 = withTracer(false){ (node, session, pipes, tracer) =>
+		val open = new Open(Pipe.UniqueMask, 20.toShort, Array[AnyRef]())
+		val pipe = pipes.create(open).get()
+		tracer.started(pipe)
+		Thread.sleep(5)
+		tracer.finished(pipe)
+		pipes.destroy(pipe.id, true)
+		tracer.departed(new Close(pipe.id, "ok"))
+		tracer.departed(new Close(pipe.id, "ok"))
+		(node.metrics.latency(20, CallPhase.Dispatch).getCount === 1) and
+			(node.metrics.latency(20, CallPhase.Function).getMax must be_>=(5000000L)) and
+			(node.metrics.latency(20, CallPhase.Reply).getCount === 1) and
+			(node.metrics.latency(20).getCount === 0)
+	}
+
+	def e2 = withTracer(true){ (node, session, pipes, tracer) =>
+		val peer = pipes.create(new Open(1, 30.toShort, Array[AnyRef]())).get()
+		tracer.departed(new Open(peer.id, 30.toShort, Array[AnyRef]()))
+		tracer.returned(peer, tracer.received(peer))
+		val local = pipes.create(Priority.Normal, 30.toShort)
+		tracer.finished(local)
+		tracer.departed(new Close(local.id, "ok"))
+		CallPhase.values().filter(_ != CallPhase.Total).map{ p => node.metrics.latency(30, p).getCount === 0 }.reduceLeft{ _ and _ }
+	}
+
+	def e3 = withTracer(false){ (node, session, _, _) =>
+		session.tracer must beNull
+	}
+
+	def e4 = withTracer(false){ (node, session, pipes, _) =>
+		val completed = pipes.create(Priority.Normal, 40.toShort)
+		val aborted = pipes.create(Priority.Normal, 40.toShort)
+		pipes.create(Priority.Normal, 40.toShort)
+		pipes.destroy(completed.id, true)
+		pipes.destroy(aborted.id, false)
+		pipes.close(false)
+		(node.metrics.latency(40).getCount === 1) and (pipes.size() === 0)
+	}
+
+	def e5 = withSession("tracer", false, new Options().set(Options.KEY_TRACE_CALLS, java.lang.Boolean.TRUE)){ (node, session) =>
+		val pipe = new PipeSpace(session).create(new Open(Pipe.UniqueMask, 50.toShort, Array[AnyRef]())).get()
+		session.tracer.finished(pipe)
+		session.close(false)
+		session.tracer.departed(new Close(pipe.id, "ok"))
+		node.metrics.latency(50, CallPhase.Reply).getCount === 0
+	}
+}
+
+object CallTracerSpec {
+	def withTracer[T](isServer:Boolean)(f:(Node, Session, PipeSpace, CallTracer) => T):T = {
+		SessionFixture.withSession("tracer", isServer){ (node, session) =>
+			val pipes = new PipeSpace(session)
+			f(node, session, pipes, new CallTracer(node.metrics, pipes, isServer))
+		}
+	}
+}
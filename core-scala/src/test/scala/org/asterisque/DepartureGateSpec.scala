@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque
+
+import java.net.SocketAddress
+import java.util.Optional
+import java.util.concurrent.{CountDownLatch, Executors, TimeUnit}
+import javax.net.ssl.SSLSession
+
+import org.asterisque.msg.{Block, Message, Open}
+import org.asterisque.util.CircuitBreaker
+import org.specs2.Specification
+
+import scala.collection.JavaConversions._
+import scala.collection.mutable
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// DepartureGateSpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class DepartureGateSpec extends Specification { def is = s2"""
+DepartureGate should:
+ship higher priority first and keep FIFO within same priority. $e0
+return null when empty. $e1
+notify writable on empty/non-empty transition. $e2
+keep circuit breaker load exact. $e3
+keep FIFO per producer under contention. $e4
+forward batch of opens in order with one writable notification. $e5
+drop lossy blocks by loss-rate only while overloaded and reset survivors to loss 0. $e6
+"""
+
+	def e0 = {
+		val gate = new DepartureGate(breaker())
+		gate.forward(Priority.Normal, Block.eof(1))
+		gate.forward(Priority.Min, Block.eof(2))
+		gate.forward(Priority.Max, Block.eof(3))
+		gate.forward(Priority.Normal, Block.eof(4))
+		gate.forward(Priority.Max, Block.eof(5))
+		gate.forward(Priority.Min, Block.eof(6))
+		val shipped = Iterator.continually(gate.ship()).takeWhile(_ != null).map{ _.pipeId.toInt }.toList
+		shipped === List(3, 5, 1, 4, 2, 6)
+	}
+
+	def e1 = {
+		val gate = new DepartureGate(breaker())
+		val r0 = gate.ship() must beNull
+		gate.forward(Priority.Normal, Block.eof(1))
+		gate.ship()
+		r0 and (gate.ship() must beNull) and (gate.size() === 0)
+	}
+
+	def e2 = {
+		val gate = new DepartureGate(breaker())
+		val wire = new TestWire()
+		gate.wire(Optional.of(wire))
+		gate.forward(Priority.Normal, Block.eof(1))
+		gate.forward(Priority.Max, Block.eof(2))
+		gate.ship()
+		gate.ship()
+		gate.forward(Priority.Normal, Block.eof(3))
+		wire.writable.toList === List(false, true, false, true)
+	}
+
+	def e3 = {
+		val b = breaker()
+		val gate = new DepartureGate(b)
+		(1 to 10).foreach{ i => gate.forward(Priority.Normal, Block.eof(i.toShort)) }
+		val r0 = b.load() === 10
+		(1 to 4).foreach{ _ => gate.ship() }
+		val r1 = b.load() === 6
+		while(gate.ship() != null){ }
+		r0 and r1 and (b.load() === 0)
+	}
+
+	def e4 = {
+		val b = breaker()
+		val gate = new DepartureGate(b)
+		val producers = 4
+		val count = 10000
+		val exec = Executors.newFixedThreadPool(producers)
+		val start = new CountDownLatch(1)
+		(0 until producers).foreach{ p =>
+			exec.execute(new Runnable {
+				def run():Unit = {
+					start.await()
+					(0 until count).foreach{ i => gate.forward((p % 2).toByte, new Block((p + 1).toShort, 0.toByte, intToBytes(i), 0, 4)) }
+				}
+			})
+		}
+		start.countDown()
+		val last = mutable.Map[Int, Int]()
+		var ordered = true
+		var shipped = 0
+		val deadline = System.currentTimeMillis() + 30 * 1000
+		while(shipped < producers * count && System.currentTimeMillis() < deadline){
+			val msg = gate.ship()
+			if(msg != null){
+				val block = msg.asInstanceOf[Block]
+				val seq = bytesToInt(block.payload)
+				ordered &&= last.getOrElse(block.pipeId.toInt, -1) < seq
+				last.put(block.pipeId.toInt, seq)
+				shipped += 1
+			}
+		}
+		exec.shutdown()
+		exec.awaitTermination(10, TimeUnit.SECONDS)
+		(shipped === producers * count) and (ordered must beTrue) and (b.load() === 0) and (gate.ship() must beNull)
+	}
+
+	def e5 = {
+		val b = breaker()
+		val gate = new DepartureGate(b)
+		val wire = new TestWire()
+		gate.wire(Optional.of(wire))
+		val opens = (1 to 5).map{ i => new Open(i.toShort, (if(i == 3) Priority.Max else Priority.Normal), 10.toShort, Array[AnyRef]()) }
+		gate.forward(opens)
+		val r0 = (wire.writable.toList === List(false, true)) and (b.load() === 5) and (gate.size() === 5)
+		val shipped = Iterator.continually(gate.ship()).takeWhile(_ != null).map{ _.pipeId.toInt }.toList
+		r0 and (shipped === List(3, 1, 2, 4, 5)) and (b.load() === 0)
+	}
+
+	def e6 = {
+		val b = new CircuitBreaker(4, Int.MaxValue) {
+			override def overload(overload:Boolean):Unit = None
+			override def broken():Unit = None
+		}
+		val dropped = mutable.Buffer[Block]()
+		val gate = new DepartureGate(b, new java.util.function.Consumer[Block] { def accept(block:Block):Unit = dropped.append(block) })
+		def lossy(i:Int, loss:Int) = new Block(i.toShort, loss.toByte, new Array[Byte](1), 0, 1)
+		(1 to 3).foreach{ i => gate.forward(Priority.Normal, lossy(i, 127)) }
+		val r0 = (gate.size() === 3) and (dropped.isEmpty must beTrue) and (b.isOverloaded must beFalse)
+		gate.forward(Priority.Normal, Block.eof(4))
+		(5 to 104).foreach{ i => gate.forward(Priority.Normal, lossy(i, 127)) }
+		(105 to 204).foreach{ i => gate.forward(Priority.Normal, lossy(i, 0)) }
+		(205 to 1204).foreach{ i => gate.forward(Priority.Normal, lossy(i, 64)) }
+		val shipped = Iterator.continually(gate.ship()).takeWhile(_ != null).collect{ case block:Block => block }.toList
+		val half = shipped.count{ _.pipeId >= 205 }
+		r0 and (b.isOverloaded must beFalse) and (shipped.take(3).map{ _.loss.toInt } === List(127, 127, 127)) and
+			(shipped.exists{ block => block.pipeId >= 5 && block.pipeId <= 104 } must beFalse) and
+			(shipped.count{ block => block.pipeId >= 105 && block.pipeId <= 204 } === 100) and
+			(half must beBetween(350, 650)) and (shipped.drop(3).forall{ _.loss == 0 } must beTrue) and
+			(dropped.size === 100 + (1000 - half)) and (b.load() === 0)
+	}
+
+	def breaker() = new CircuitBreaker(Int.MaxValue - 1, Int.MaxValue) {
+		override def overload(overload:Boolean):Unit = None
+		override def broken():Unit = None
+	}
+
+	def intToBytes(i:Int):Array[Byte] = Array((i >> 24).toByte, (i >> 16).toByte, (i >> 8).toByte, i.toByte)
+	def bytesToInt(b:Array[Byte]):Int = ((b(0) & 0xFF) << 24) | ((b(1) & 0xFF) << 16) | ((b(2) & 0xFF) << 8) | (b(3) & 0xFF)
+
+	class TestWire extends Wire {
+		val writable = mutable.Buffer[Boolean]()
+		override def node():Node = null
+		override def local():SocketAddress = null
+		override def remote():SocketAddress = null
+		override def isServer:Boolean = false
+		override def setPlug(plug:Optional[Wire.Plug]):Unit = None
+		override def setWritable(w:Boolean):Unit = writable.append(w)
+		override def setReadable(readable:Boolean):Unit = None
+		override def getSSLSession:Optional[SSLSession] = Optional.empty()
+		override def close():Unit = None
+	}
+}
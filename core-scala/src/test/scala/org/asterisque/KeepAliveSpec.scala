@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque
+
+import java.net.InetSocketAddress
+import java.util.UUID
+import java.util.concurrent.atomic.AtomicReference
+import java.util.concurrent.{Executors, TimeUnit}
+import java.util.function.Consumer
+
+import org.asterisque.cluster.Repository
+import org.specs2.Specification
+import org.specs2.time.NoTimeConversions
+
+import scala.concurrent.duration._
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// KeepAliveSpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class KeepAliveSpec extends Specification with NoTimeConversions { def is = s2"""
+Session should:
+measure round trip time by ping on idle session. $e0
+disconnect when no message arrives within session timeout. $e1
+neither ping nor time out when peer doesn't support keep-alive. $e2
+"""
+	import SessionResumeSpec._
+
+	def e0 = withKeepAlive{ (bridge, server, client) =>
+		val r0 = client.getRoundTripTime === 0L
+		(server.get().getRoundTripTime must be_>(0L).eventually(30, 100.millis)) and r0 and
+			(server.get().closed() must beFalse) and (client.closed() must beFalse) and (bridge.wires.size() === 1)
+	}
+
+	def e1 = withKeepAlive{ (bridge, server, client) =>
+		// クライアントからの送信だけを失わせるとサーバ側がタイムアウトで切断し、再接続しないクライアントはクローズする
+		bridge.wires.peek().blackhole = true
+		val r0 = client.closed() must beFalse
+		r0 and (client.closed() must beTrue.eventually(50, 100.millis)) and (server.get().getTimeout === 0)
+	}
+
+	def e2 = withKeepAlive(false){ (bridge, server, client) =>
+		bridge.wires.peek().blackhole = true
+		Thread.sleep(3500)
+		(server.get().getRoundTripTime === 0L) and (server.get().closed() must beFalse) and
+			(client.closed() must beFalse) and (bridge.wires.size() === 1)
+	}
+
+	private[this] def withKeepAlive[T](f:(MemoryBridge, AtomicReference[Session], Session) => T):T = withKeepAlive(true)(f)
+
+	private[this] def withKeepAlive[T](keepAlive:Boolean)(f:(MemoryBridge, AtomicReference[Session], Session) => T):T = {
+		val bridge = new MemoryBridge()
+		val address = new InetSocketAddress("localhost", 0)
+		val accepted = new AtomicReference[Session]()
+		val server = new Node(UUID.randomUUID(), "server", Executors.newCachedThreadPool(), new Service(){ }, Repository.OnMemory)
+		val client = new Node(UUID.randomUUID(), "client", Executors.newCachedThreadPool(), new Service(){ }, Repository.OnMemory)
+		try {
+			server.listen(address, new Options()
+				.set(Options.KEY_BRIDGE, bridge)
+				.set(Options.KEY_MIN_PING, 1)
+				.set(Options.KEY_MIN_SESSION_TIMEOUT, 2),
+				new Consumer[Session]{ def accept(s:Session):Unit = accepted.set(s) }).get(3, TimeUnit.SECONDS)
+			val session = client.connect(address, new Options()
+				.set(Options.KEY_BRIDGE, bridge)
+				.set(Options.KEY_PING_REQUEST, 1)
+				.set(Options.KEY_SESSION_TIMEOUT_REQUEST, 2)
+				.set(Options.KEY_KEEP_ALIVE, keepAlive)
+				.set(Options.KEY_RECONNECT_POLICY, ReconnectPolicy.None)).get(3, TimeUnit.SECONDS)
+			f(bridge, accepted, session)
+		} finally {
+			client.shutdown()
+			server.shutdown()
+		}
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque
+
+import java.util.concurrent.{ExecutionException, TimeUnit}
+
+import org.specs2.Specification
+
+import scala.collection.JavaConversions._
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// OpenAllSpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class OpenAllSpec extends Specification { def is = s2"""
+Session.openAll should:
+call all functions and return results in call order. $e0
+fail all calls when pipe-ids are not enough. $e1
+"""
+	import SessionResumeSpec._
+
+	def e0 = withNodes(4096){ (bridge, service, session) =>
+		service.release.countDown()
+		val calls = (0 until 200).map{ i => new Call(10.toShort, Array[AnyRef](s"foo$i")) }
+		val futures = session.openAll(calls)
+		(futures.size === 200) and
+			(futures.zipWithIndex.map{ case (f, i) => f.get(5, TimeUnit.SECONDS) === s"foo$i" }.reduceLeft{ _ and _ }) and
+			(service.calls.get() === 200)
+	}
+
+	def e1 = withNodes(4096){ (bridge, service, session) =>
+		val calls = (0 until PipeIdAllocator.Capacity).map{ i => new Call(10.toShort, Array[AnyRef](s"foo$i")) }
+		val futures = session.openAll(calls)
+		(futures.forall{ _.isCompletedExceptionally } must beTrue) and
+			(futures.head.get() must throwA[ExecutionException]) and (service.calls.get() === 0)
+	}
+}
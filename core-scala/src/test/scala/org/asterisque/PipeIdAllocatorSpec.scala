@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque
+
+import java.util.concurrent.{Callable, Executors, TimeUnit}
+
+import org.specs2.Specification
+
+import scala.collection.JavaConversions._
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// PipeIdAllocatorSpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class PipeIdAllocatorSpec extends Specification { def is = s2"""
+PipeIdAllocator should:
+allocate every id once and fail when exhausted. $e0
+never allocate reserved id 0. $e1
+not reuse released id until space wraps around. $e2
+track in-use and high-water counts. $e3
+allocate unique ids concurrently. $e4
+allocate ids in bulk or none of them. $e5
+"""
+
+	def e0 = {
+		val ids = new PipeIdAllocator(false)
+		val allocated = (0 until PipeIdAllocator.Capacity).map{ _ => ids.allocate() }
+		(allocated.toSet.size === PipeIdAllocator.Capacity) and (ids.allocate() === -1) and
+			(ids.release(100) must beTrue) and (ids.allocate() === 100) and (ids.allocate() === -1)
+	}
+
+	def e1 = {
+		val ids = new PipeIdAllocator(true)
+		val allocated = Iterator.continually(ids.allocate()).takeWhile(_ >= 0).toList
+		(allocated.size === PipeIdAllocator.Capacity - 1) and (allocated must not contain 0) and (ids.capacity() === PipeIdAllocator.Capacity - 1)
+	}
+
+	def e2 = {
+		val ids = new PipeIdAllocator(true)
+		val a = ids.allocate()
+		ids.release(a)
+		(a === 1) and (ids.allocate() === 2) and (ids.release(5) must beFalse)
+	}
+
+	def e3 = {
+		val ids = new PipeIdAllocator(false)
+		val allocated = (0 until 10).map{ _ => ids.allocate() }
+		allocated.take(7).foreach{ id => ids.release(id) }
+		ids.allocate()
+		(ids.inUse() === 4) and (ids.highWater() === 10)
+	}
+
+	def e4 = {
+		val ids = new PipeIdAllocator(false)
+		val exec = Executors.newFixedThreadPool(4)
+		val tasks = (0 until 4).map{ _ => new Callable[Seq[Int]] {
+			def call():Seq[Int] = (0 until PipeIdAllocator.Capacity / 4).map{ _ => ids.allocate() }
+		}}
+		val allocated = exec.invokeAll(tasks).flatMap{ _.get() }
+		exec.shutdown()
+		exec.awaitTermination(10, TimeUnit.SECONDS)
+		(allocated.toSet.size === PipeIdAllocator.Capacity) and (allocated must not contain -1) and (ids.inUse() === PipeIdAllocator.Capacity)
+	}
+
+	def e5 = {
+		val ids = new PipeIdAllocator(true)
+		val first = ids.allocate(100)
+		val single = ids.allocate()
+		val r0 = (first.toList === (1 to 100).toList) and (single === 101) and (ids.inUse() === 101)
+		val rest = ids.allocate(ids.capacity() - 101)
+		r0 and (rest.length === ids.capacity() - 101) and ((first ++ rest :+ single).toSet.size === ids.capacity()) and
+			(ids.release(50) must beTrue) and (ids.allocate(2) must beNull) and (ids.inUse() === ids.capacity() - 1) and
+			(ids.allocate(1).toList === List(50)) and (ids.highWater() === ids.capacity())
+	}
+}
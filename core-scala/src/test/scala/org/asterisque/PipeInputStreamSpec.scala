@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque
+
+import java.nio.ByteBuffer
+import java.util.concurrent.atomic.AtomicInteger
+
+import org.asterisque.msg.Block
+import org.asterisque.util.CircuitBreaker
+import org.specs2.Specification
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// PipeInputStreamSpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class PipeInputStreamSpec extends Specification { def is = s2"""
+PipeInputStream should:
+release retained block after all payload read. $e0
+release queued blocks on close. $e1
+"""
+
+	def e0 = {
+		val released = new AtomicInteger()
+		val in = new PipeInputStream(breaker(), Integer.MAX_VALUE, "test")
+		val block = retained(released, "hello")
+		in.accept(block)
+		block.release()     // メッセージソースによる解放
+		in.accept(Block.eof(1))
+		val buffer = new Array[Byte](5)
+		val len = in.read(buffer)
+		val r0 = (len === 5) and (new String(buffer) === "hello") and (released.get() === 0)
+		r0 and (in.read() === -1) and (released.get() === 1)
+	}
+
+	def e1 = {
+		val released = new AtomicInteger()
+		val in = new PipeInputStream(breaker(), Integer.MAX_VALUE, "test")
+		val blocks = (0 until 3).map{ i => retained(released, "block" + i) }
+		blocks.foreach{ b => in.accept(b); b.release() }
+		in.read()
+		val r0 = released.get() === 0
+		in.close()
+		r0 and (released.get() === 3)
+	}
+
+	def breaker() = new CircuitBreaker(100, 1000) {
+		override def overload(overload:Boolean):Unit = None
+		override def broken():Unit = None
+	}
+
+	def retained(counter:AtomicInteger, text:String):Block =
+		Block.retained(1, 0.toByte, ByteBuffer.wrap(text.getBytes), new Runnable { def run():Unit = counter.incrementAndGet() })
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque
+
+import org.specs2.Specification
+
+import scala.collection.mutable
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// PipeTableSpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class PipeTableSpec extends Specification { def is = s2"""
+PipeTable should:
+register, refer and remove pipe by id. $e0
+refuse duplicate pipe id. $e1
+handle whole 16-bit id space including negative ids. $e2
+visit and clear all pipes. $e3
+"""
+	import PipeTableSpec._
+	import SessionFixture._
+
+	def e0 = withSession("pipe"){ (_, session) =>
+		val table = new PipeTable()
+		val pipe = newPipe(session, 1)
+		val r0 = (table.get(1) must beNull) and table.putIfAbsent(1, pipe) and (table.get(1) must be(pipe))
+		val r1 = table.size() === 1
+		r0 and r1 and (table.remove(1) must be(pipe)) and (table.get(1) must beNull) and (table.size() === 0) and (table.remove(1) must beNull)
+	}
+
+	def e1 = withSession("pipe"){ (_, session) =>
+		val table = new PipeTable()
+		val p1 = newPipe(session, 5)
+		table.putIfAbsent(5, p1)
+		(table.putIfAbsent(5, newPipe(session, 5)) must beFalse) and (table.get(5) must be(p1)) and (table.size() === 1)
+	}
+
+	def e2 = withSession("pipe"){ (_, session) =>
+		val table = new PipeTable()
+		val ids = Seq[Short](1, 255, 256, 0x7FFF, Pipe.UniqueMask, (Pipe.UniqueMask | 1).toShort, -1)
+		ids.foreach{ id => table.putIfAbsent(id, newPipe(session, id)) }
+		ids.map{ id => table.get(id).id === id }.reduceLeft{ _ and _ } and (table.get(2) must beNull) and (table.size() === ids.size)
+	}
+
+	def e3 = withSession("pipe"){ (_, session) =>
+		val table = new PipeTable()
+		(1 to 600).foreach{ i => table.putIfAbsent(i.toShort, newPipe(session, i.toShort)) }
+		val visited = mutable.Buffer[Int]()
+		table.forEach(new java.util.function.Consumer[Pipe] { def accept(p:Pipe):Unit = visited.append(p.id) })
+		val r0 = visited.sorted.toList === (1 to 600).toList
+		table.clear()
+		r0 and (table.size() === 0) and (table.get(300) must beNull)
+	}
+}
+
+object PipeTableSpec {
+	def newPipe(session:Session, id:Short):Pipe = new Pipe(id, Priority.Normal, 0.toShort, session)
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque
+
+import java.io.IOException
+import java.net.{InetSocketAddress, SocketAddress}
+import java.util.UUID
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{CompletableFuture, ExecutionException, Executors, TimeUnit}
+import java.util.function.Consumer
+
+import org.asterisque.cluster.Repository
+import org.specs2.Specification
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// ReconnectPolicySpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class ReconnectPolicySpec extends Specification { def is = s2"""
+ReconnectPolicy should:
+back off exponentially with full jitter up to the cap. $e0
+give up after max attempts. $e1
+reject invalid parameters. $e2
+be built from options. $e3
+Node should:
+limit concurrent connects. $e4
+Session should:
+retry failed connects by policy and fail after giving up. $e5
+"""
+
+	def e0 = {
+		val policy = new ReconnectPolicy.Backoff(100, 1000, Integer.MAX_VALUE)
+		val delays = (1 to 8).map{ attempt => attempt -> (0 until 1000).map{ _ => policy.delay(attempt) } }
+		delays.map{ case (attempt, d) =>
+			val ceiling = math.min(1000L, 100L << (attempt - 1))
+			(d.min must be_>=(0L)) and (d.max must be_<=(ceiling)) and (d.max must be_>(ceiling / 2))
+		}.reduceLeft{ _ and _ } and (policy.delay(Integer.MAX_VALUE - 1) must be_<=(1000L))
+	}
+
+	def e1 = {
+		val policy = new ReconnectPolicy.Backoff(0, 0, 3)
+		(policy.delay(3) === 0L) and (policy.delay(4) must be_<(0L)) and (ReconnectPolicy.None.delay(1) must be_<(0L))
+	}
+
+	def e2 = {
+		(new ReconnectPolicy.Backoff(-1, 0, 1) must throwA[IllegalArgumentException]) and
+			(new ReconnectPolicy.Backoff(100, 10, 1) must throwA[IllegalArgumentException]) and
+			(new ReconnectPolicy.Backoff(0, 0, -1) must throwA[IllegalArgumentException])
+	}
+
+	def e3 = {
+		val options = new Options()
+		options.set(Options.KEY_RECONNECT_MAX_DELAY, 500)
+		options.set(Options.KEY_RECONNECT_MAX_ATTEMPTS, 5)
+		val backoff = ReconnectPolicy.of(options).asInstanceOf[ReconnectPolicy.Backoff]
+		options.set(Options.KEY_RECONNECT_POLICY, ReconnectPolicy.None)
+		(backoff.baseDelay === 100L) and (backoff.maxDelay === 500L) and (backoff.maxAttempts === 5) and
+			(ReconnectPolicy.of(options) must be(ReconnectPolicy.None))
+	}
+
+	def e4 = {
+		val node = new Node(UUID.randomUUID(), "budget", Executors.newCachedThreadPool(), new Service(){ }, Repository.OnMemory)
+		val r0 = (node.beginConnect(2) must beTrue) and (node.beginConnect(2) must beTrue) and (node.beginConnect(2) must beFalse)
+		node.endConnect()
+		val r1 = (node.connecting() === 1) and (node.beginConnect(2) must beTrue)
+		node.shutdown()
+		r0 and r1
+	}
+
+	def e5 = {
+		val node = new Node(UUID.randomUUID(), "retry", Executors.newCachedThreadPool(), new Service(){ }, Repository.OnMemory)
+		val calls = new AtomicInteger(0)
+		val bridge = new Bridge {
+			override def newWire(local:Node, address:SocketAddress, options:Options):CompletableFuture[Wire] = {
+				calls.incrementAndGet()
+				val future = new CompletableFuture[Wire]()
+				future.completeExceptionally(new IOException("connection refused"))
+				future
+			}
+			override def newServer(local:Node, address:SocketAddress, options:Options, onAccept:Consumer[Wire]):CompletableFuture[Bridge.Server] = ???
+			override def close():Unit = None
+		}
+		val options = new Options()
+		options.set(Options.KEY_BRIDGE, bridge)
+		options.set(Options.KEY_RECONNECT_POLICY, new ReconnectPolicy.Backoff(1, 5, 3))
+		val future = node.connect(new InetSocketAddress("localhost", 0), options)
+		val result = future.get(10, TimeUnit.SECONDS) must throwA[ExecutionException]
+		node.shutdown()
+		result and (calls.get() === 4) and (node.connecting() === 0)
+	}
+}
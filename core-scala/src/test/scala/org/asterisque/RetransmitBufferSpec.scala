@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque
+
+import java.nio.ByteBuffer
+
+import org.asterisque.msg.{Block, Close, Message, Open}
+import org.specs2.Specification
+
+import scala.collection.JavaConversions._
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// RetransmitBufferSpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class RetransmitBufferSpec extends Specification { def is = s2"""
+RetransmitBuffer should:
+remove messages acknowledged by peer. $e0
+replay messages sent after the peer received count. $e1
+refuse replay when required messages are overwritten. $e2
+reject ack for unsent messages. $e3
+hold and release retained blocks. $e4
+"""
+
+	def e0 = {
+		val buffer = new RetransmitBuffer(8)
+		(1 to 5).foreach{ i => buffer.record(open(i)) }
+		val r0 = buffer.size() === 5
+		buffer.ack(3)
+		val r1 = buffer.size() === 2
+		buffer.ack(2)
+		r0 and r1 and (buffer.size() === 2) and (buffer.sent() === 5L)
+	}
+
+	def e1 = {
+		val buffer = new RetransmitBuffer(8)
+		val messages = (1 to 5).map{ i => open(i) }
+		messages.foreach{ m => buffer.record(m) }
+		buffer.ack(1)
+		(buffer.replay(2).get().toList === messages.drop(2).toList) and (buffer.replay(5).get().isEmpty must beTrue) and
+			(buffer.replay(6).isPresent must beFalse)
+	}
+
+	def e2 = {
+		val buffer = new RetransmitBuffer(4)
+		val messages = (1 to 6).map{ i => open(i) }
+		messages.foreach{ m => buffer.record(m) }
+		(buffer.size() === 4) and (buffer.replay(1).isPresent must beFalse) and
+			(buffer.replay(2).get().toList === messages.drop(2).toList)
+	}
+
+	def e3 = {
+		val buffer = new RetransmitBuffer(4)
+		buffer.record(new Close(1.toShort, "ok"))
+		buffer.ack(2) must throwA[ProtocolViolationException]
+	}
+
+	def e4 = {
+		var released = 0
+		val block = Block.retained(1, 0, ByteBuffer.allocate(4), new Runnable { def run():Unit = released += 1 })
+		val buffer = new RetransmitBuffer(4)
+		buffer.record(block)
+		block.release()
+		val r0 = (released === 0) and (block.refCnt() === 1)
+		buffer.ack(1)
+		r0 and (released === 1)
+	}
+
+	private[this] def open(i:Int):Message = new Open(i.toShort, 10.toShort, Array[AnyRef]())
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque
+
+import java.util.concurrent.{CompletableFuture, ExecutionException, TimeUnit}
+
+import org.specs2.Specification
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// ServiceSpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class ServiceSpec extends Specification { def is = s2"""
+Service should:
+call exported method with converted parameters. $e0
+convert null to zero value for primitive parameter. $e1
+fail with invalid parameter length. $e2
+propagate exception thrown by exported method. $e3
+"""
+
+	def e0 = {
+		val service = new ServiceSpec.Calc()
+		val f = service.function(10).apply(Array[AnyRef](Integer.valueOf(1), "2", java.lang.Short.valueOf(3.toShort)))
+		f.get(1, TimeUnit.SECONDS) === "6"
+	}
+
+	def e1 = {
+		val service = new ServiceSpec.Calc()
+		val f = service.function(10).apply(Array[AnyRef](null, null, null))
+		f.get(1, TimeUnit.SECONDS) === "0"
+	}
+
+	def e2 = {
+		val service = new ServiceSpec.Calc()
+		val f = service.function(10).apply(Array[AnyRef](Integer.valueOf(1)))
+		f.get(1, TimeUnit.SECONDS) must throwA[ExecutionException]
+	}
+
+	def e3 = {
+		val service = new ServiceSpec.Calc()
+		val f = service.function(20).apply(Array[AnyRef]("boom"))
+		f.get(1, TimeUnit.SECONDS) must throwA[ExecutionException](message = "boom")
+	}
+}
+
+object ServiceSpec {
+	trait CalcInterface {
+		@Export(10)
+		def sum(a:Long, b:Int, c:java.lang.Integer):CompletableFuture[String]
+		@Export(20)
+		def fail(msg:String):CompletableFuture[String]
+	}
+	class Calc extends Service with CalcInterface {
+		def sum(a:Long, b:Int, c:java.lang.Integer):CompletableFuture[String] =
+			CompletableFuture.completedFuture(String.valueOf(a + b + (if(c == null) 0 else c.intValue())))
+		def fail(msg:String):CompletableFuture[String] = throw new IllegalStateException(msg)
+	}
+}
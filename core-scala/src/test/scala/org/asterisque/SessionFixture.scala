@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque
+
+import java.util.{Optional, UUID}
+import java.util.concurrent.{CompletableFuture, Executors}
+import java.util.function.{BiConsumer, Supplier}
+
+import org.asterisque.cluster.Repository
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// SessionFixture
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * Wire に接続しないセッションを使用するテストのための Node と Session を用意します。Node とそのスレッド
+ * プールはテストの終了時にシャットダウンされます。
+ *
+ * @author Takami Torao
+ */
+object SessionFixture {
+
+	/** Wire を提供しないセッションの接続処理 */
+	val NoWire = new Supplier[Optional[CompletableFuture[Wire]]] { def get() = Optional.empty() }
+
+	/** セッション ID の通知を無視する処理 */
+	val IgnoreSessionId = new BiConsumer[Session,UUID] { def accept(s:Session, id:UUID):Unit = None }
+
+	/**
+	 * 新しい Node で指定された処理を実行し、終了後に Node をシャットダウンします。
+	 */
+	def withNode[T](name:String)(f:(Node) => T):T = {
+		val node = new Node(UUID.randomUUID(), name, Executors.newCachedThreadPool(), new Service(){ }, Repository.OnMemory)
+		try {
+			f(node)
+		} finally {
+			node.shutdown()
+		}
+	}
+
+	/**
+	 * 新しい Node 上の Wire に接続しないセッションで指定された処理を実行し、終了後にセッションをクローズして
+	 * Node をシャットダウンします。
+	 */
+	def withSession[T](name:String, isServer:Boolean = false, options:Options = new Options())(f:(Node, Session) => T):T = withNode(name){ node =>
+		val session = newSession(node, isServer, options)
+		try {
+			f(node, session)
+		} finally {
+			session.close(false)
+		}
+	}
+
+	/**
+	 * 指定された Node 上に Wire に接続しないセッションを構築します。
+	 */
+	def newSession(node:Node, isServer:Boolean, options:Options):Session
+		= new Session(node, isServer, new Service(){ }, options, NoWire, IgnoreSessionId)
+}
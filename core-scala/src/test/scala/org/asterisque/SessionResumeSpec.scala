@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque
+
+import java.lang.reflect.{InvocationHandler, Method, Proxy}
+import java.net.{InetSocketAddress, SocketAddress}
+import java.security.Principal
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{CompletableFuture, ConcurrentLinkedQueue, CountDownLatch, ExecutionException, Executors, TimeUnit}
+import java.util.function.Consumer
+import java.util.{Optional, UUID}
+import javax.net.ssl.SSLSession
+import javax.security.auth.x500.X500Principal
+
+import org.asterisque.cluster.Repository
+import org.asterisque.msg.Message
+import org.specs2.Specification
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// SessionResumeSpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class SessionResumeSpec extends Specification { def is = s2"""
+Session should:
+keep in-flight call over reconnect without re-executing function. $e0
+retransmit messages lost on broken wire. $e1
+close session when lost messages overflowed retransmit buffer. $e2
+refuse resumption from wire authenticated as another principal. $e3
+"""
+	import SessionResumeSpec._
+
+	def e0 = withNodes(4096){ (bridge, service, session) =>
+		val future = session.open(Priority.Normal, 10.toShort, Array[AnyRef]("foo"))
+		service.invoked.await(3, TimeUnit.SECONDS)
+		bridge.wires.peek().close()
+		service.release.countDown()
+		(future.get(5, TimeUnit.SECONDS) === "foo") and (service.calls.get() === 1) and
+			(bridge.wires.size() === 2) and (session.closed() must beFalse)
+	}
+
+	def e1 = withNodes(4096){ (bridge, service, session) =>
+		service.release.countDown()
+		val wire = bridge.wires.peek()
+		wire.blackhole = true
+		val futures = (0 until 10).map{ i => session.open(Priority.Normal, 10.toShort, Array[AnyRef](s"foo$i")) }
+		Thread.sleep(100)
+		val r0 = (service.calls.get() === 0) and (futures.forall(! _.isDone) must beTrue)
+		wire.close()
+		r0 and (futures.zipWithIndex.map{ case (f, i) => f.get(5, TimeUnit.SECONDS) === s"foo$i" }.reduceLeft{ _ and _ }) and
+			(service.calls.get() === 10)
+	}
+
+	def e2 = withNodes(2){ (bridge, service, session) =>
+		val wire = bridge.wires.peek()
+		wire.blackhole = true
+		val futures = (0 until 4).map{ i => session.open(Priority.Normal, 10.toShort, Array[AnyRef](s"foo$i")) }
+		Thread.sleep(100)
+		wire.close()
+		(futures.head.get(5, TimeUnit.SECONDS) must throwA[ExecutionException]) and (session.closed() must beTrue.eventually) and
+			(service.calls.get() === 0)
+	}
+
+	def e3 = withNodes(4096){ (bridge, service, session) =>
+		val future = session.open(Priority.Normal, 10.toShort, Array[AnyRef]("foo"))
+		service.invoked.await(3, TimeUnit.SECONDS)
+		bridge.principal = new X500Principal("CN=mallory")
+		bridge.wires.peek().close()
+		service.release.countDown()
+		(future.get(5, TimeUnit.SECONDS) must throwA[ExecutionException]) and (session.closed() must beTrue.eventually) and
+			(service.calls.get() === 1)
+	}
+}
+
+object SessionResumeSpec {
+
+	def withNodes[T](buffer:Int)(f:(MemoryBridge, SlowService, Session) => T):T = {
+		val bridge = new MemoryBridge()
+		val service = new SlowService()
+		val address = new InetSocketAddress("localhost", 0)
+		def options() = new Options()
+			.set(Options.KEY_BRIDGE, bridge)
+			.set(Options.KEY_RESUME, true)
+			.set(Options.KEY_RESUME_BUFFER, buffer)
+			.set(Options.KEY_RECONNECT_POLICY, new ReconnectPolicy.Backoff(1, 10, 10))
+		val server = new Node(UUID.randomUUID(), "server", Executors.newCachedThreadPool(), service, Repository.OnMemory)
+		val client = new Node(UUID.randomUUID(), "client", Executors.newCachedThreadPool(), new Service(){ }, Repository.OnMemory)
+		try {
+			server.listen(address, options(), new Consumer[Session]{ def accept(s:Session):Unit = None }).get(3, TimeUnit.SECONDS)
+			val session = client.connect(address, options()).get(3, TimeUnit.SECONDS)
+			f(bridge, service, session)
+		} finally {
+			client.shutdown()
+			server.shutdown()
+		}
+	}
+
+	trait Slow {
+		@Export(10)
+		def slow(text:String):CompletableFuture[String]
+	}
+
+	class SlowService extends Service with Slow {
+		val calls = new AtomicInteger(0)
+		val invoked = new CountDownLatch(1)
+		val release = new CountDownLatch(1)
+		def slow(text:String):CompletableFuture[String] = CompletableFuture.supplyAsync(new java.util.function.Supplier[String] {
+			def get():String = {
+				calls.incrementAndGet()
+				invoked.countDown()
+				release.await()
+				text
+			}
+		})
+	}
+
+	/**
+	 * 同一プロセス内で Wire の対を接続するブリッジ。principal を設定するとそれ以降に接続したサーバ側の Wire
+	 * はそのプリンシパルで認証された SSL セッションを持つ。
+	 */
+	class MemoryBridge extends Bridge {
+		@volatile private[this] var onAccept:Consumer[Wire] = null
+		@volatile var principal:Principal = null
+		/** クライアント側の Wire (接続順) */
+		val wires = new ConcurrentLinkedQueue[MemoryWire]()
+		override def newWire(local:Node, address:SocketAddress, options:Options):CompletableFuture[Wire] = {
+			val client = new MemoryWire(local, false)
+			val server = new MemoryWire(null, true)
+			server.ssl = Option(principal).map(sslSession)
+			client.peer = server
+			server.peer = client
+			wires.add(client)
+			onAccept.accept(server)
+			CompletableFuture.completedFuture(client)
+		}
+		override def newServer(local:Node, address:SocketAddress, options:Options, onAccept:Consumer[Wire]):CompletableFuture[Bridge.Server] = {
+			this.onAccept = onAccept
+			CompletableFuture.completedFuture(new Bridge.Server(local, address, options){ override def close():Unit = None })
+		}
+		override def close():Unit = None
+	}
+
+	/**
+	 * 指定されたプリンシパルでピアが認証された SSL セッション。
+	 */
+	def sslSession(principal:Principal):SSLSession = Proxy.newProxyInstance(getClass.getClassLoader,
+		Array[Class[_]](classOf[SSLSession]), new InvocationHandler {
+			def invoke(proxy:AnyRef, method:Method, args:Array[AnyRef]):AnyRef = method.getName match {
+				case "getPeerPrincipal" => principal
+				case "toString" => s"SSLSession($principal)"
+				case "hashCode" => Integer.valueOf(System.identityHashCode(proxy))
+				case "equals" => java.lang.Boolean.valueOf(proxy eq args(0))
+				case name => throw new UnsupportedOperationException(name)
+			}
+		}).asInstanceOf[SSLSession]
+
+	/**
+	 * 送受信をそれぞれ単一のスレッドで行う Wire。blackhole を設定すると送信したメッセージはピアに到達せず失わ
+	 * れる。
+	 */
+	class MemoryWire(val node:Node, val isServer:Boolean) extends Wire {
+		@volatile var peer:MemoryWire = null
+		@volatile var blackhole = false
+		@volatile var ssl:Option[SSLSession] = None
+		@volatile private[this] var plug:Optional[Wire.Plug] = Optional.empty()
+		@volatile private[this] var closed = false
+		private[this] val exec = Executors.newSingleThreadExecutor()
+		override def local():SocketAddress = null
+		override def remote():SocketAddress = null
+		override def setPlug(plug:Optional[Wire.Plug]):Unit = {
+			this.plug = plug
+			if(plug.isPresent){
+				setWritable(true)
+			}
+		}
+		override def setWritable(writable:Boolean):Unit = if(writable) execute{
+			val p = plug
+			if(p.isPresent){
+				Iterator.continually(p.get().produce()).takeWhile(_ != null).foreach{ msg =>
+					if(! closed && ! blackhole){
+						peer.receive(msg)
+					}
+				}
+			}
+		}
+		override def setReadable(readable:Boolean):Unit = None
+		override def getSSLSession:Optional[SSLSession] = ssl.map{ s => Optional.of(s) }.getOrElse(Optional.empty())
+		override def close():Unit = if(! closed){
+			closed = true
+			plug.ifPresent(new Consumer[Wire.Plug]{ def accept(p:Wire.Plug):Unit = p.onClose(MemoryWire.this) })
+			peer.close()
+			exec.shutdown()
+		}
+		def receive(msg:Message):Unit = execute{
+			val p = plug
+			if(! closed && p.isPresent){
+				p.get().consume(msg)
+			}
+		}
+		private[this] def execute(f: => Unit):Unit = if(! closed){
+			exec.execute(new Runnable { def run():Unit = f })
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque
+
+import java.util.concurrent.CompletableFuture
+
+import org.specs2.Specification
+
+import scala.collection.mutable
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// StubGeneratorSpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class StubGeneratorSpec extends Specification { def is = s2"""
+StubGenerator should:
+generate stub that opens pipe with exported function and priority. $e0
+box primitive parameters. $e1
+implement methods inherited from super interface. $e2
+cache stub class per interface. $e3
+reject method without @Export annotation. $e4
+"""
+	import StubGeneratorSpec._
+	import SessionFixture._
+
+	def e0 = withNode("stub"){ node =>
+		val session = new RecordingSession(node)
+		val stub = session.bind(classOf[Remote])
+		stub.hello("world")
+		stub.urgent()
+		val r0 = stub.getClass.getName must startWith(classOf[Remote].getName + "$$Stub")
+		r0 and (session.calls.toList === List((Priority.Normal, 10, List("world")), (Priority.Max, 20, Nil)))
+	}
+
+	def e1 = withNode("stub"){ node =>
+		val session = new RecordingSession(node)
+		session.bind(classOf[Primitives]).call(true, 1.toByte, 'c', 2.toShort, 3, 4L, 5.0f, 6.0, "s")
+		session.calls.head._3 === List[Any](true, 1.toByte, 'c', 2.toShort, 3, 4L, 5.0f, 6.0, "s")
+	}
+
+	def e2 = withNode("stub"){ node =>
+		val session = new RecordingSession(node)
+		val stub = session.bind(classOf[Extended])
+		stub.hello("a")
+		stub.bye(1)
+		session.calls.map{ _._2 }.toList === List(10, 30)
+	}
+
+	def e3 = withNode("stub"){ node =>
+		val s1 = new RecordingSession(node)
+		val s2 = new RecordingSession(node)
+		(s1.bind(classOf[Remote]).getClass eq s2.bind(classOf[Remote]).getClass) must beTrue
+	}
+
+	def e4 = withNode("stub"){ node =>
+		new RecordingSession(node).bind(classOf[Invalid]) must throwA[IllegalArgumentException]
+	}
+}
+
+object StubGeneratorSpec {
+	trait Remote {
+		@Export(10)
+		def hello(name:String):CompletableFuture[AnyRef]
+		@Export(value = 20, priority = Priority.Max)
+		def urgent():CompletableFuture[AnyRef]
+	}
+	trait Primitives {
+		@Export(10)
+		def call(z:Boolean, b:Byte, c:Char, s:Short, i:Int, l:Long, f:Float, d:Double, o:String):CompletableFuture[AnyRef]
+	}
+	trait Extended extends Remote {
+		@Export(30)
+		def bye(code:Int):CompletableFuture[AnyRef]
+	}
+	trait Invalid {
+		def hello(name:String):CompletableFuture[AnyRef]
+	}
+
+	class RecordingSession(node:Node) extends Session(node, false, new Service(){ }, new Options(),
+		SessionFixture.NoWire, SessionFixture.IgnoreSessionId) {
+		val calls = mutable.Buffer[(Byte, Int, List[Any])]()
+		override def open(priority:Byte, function:Short, params:Array[AnyRef]):CompletableFuture[AnyRef] = {
+			calls.append((priority, function.toInt, params.toList))
+			CompletableFuture.completedFuture(null)
+		}
+	}
+}
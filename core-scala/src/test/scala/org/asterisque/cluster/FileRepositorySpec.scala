@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.cluster
+
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.{Files, Path, StandardOpenOption}
+import java.util.concurrent.TimeUnit
+import java.util.{Optional, UUID}
+
+import org.asterisque.Asterisque
+import org.asterisque.util.TimingWheel
+import org.specs2.Specification
+import org.specs2.time.NoTimeConversions
+
+import scala.collection.JavaConversions._
+import scala.concurrent.duration._
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// FileRepositorySpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class FileRepositorySpec extends Specification with NoTimeConversions { def is = s2"""
+FileRepository should:
+load and delete stored data. $e0
+recover stored and deleted data after reopen. $e1
+discard broken records on recovery. $e2
+compact segments after data expired. $e3
+wait for disk sync on group commit. $e4
+refuse to open directory in use. $e5
+"""
+
+	def e0 = withDir{ dir =>
+		withRepository(dir){ repository =>
+			val id = repository.nextUUID()
+			repository.store(Optional.empty(), id, Array[Byte](1, 2, 3), 60 * 1000)
+			(repository.loadAndDelete(Optional.empty(), id).get().toList === List[Byte](1, 2, 3)) and
+				(repository.loadAndDelete(Optional.empty(), id).isPresent must beFalse) and (repository.size() === 0)
+		}
+	}
+
+	def e1 = withDir{ dir =>
+		val ids = (0 until 100).map{ _ => UUID.randomUUID() }
+		withRepository(dir){ repository =>
+			ids.zipWithIndex.foreach{ case (id, i) => repository.store(Optional.empty(), id, Array[Byte](i.toByte), 60 * 1000) }
+			// 上書き、削除、有効期限切れ
+			repository.store(Optional.empty(), ids(0), Array[Byte](-1), 60 * 1000)
+			repository.loadAndDelete(Optional.empty(), ids(1))
+			repository.store(Optional.empty(), ids(2), Array[Byte](2), 100)
+		}
+		Thread.sleep(200)
+		withRepository(dir){ repository =>
+			(repository.size() === 98) and
+				(repository.loadAndDelete(Optional.empty(), ids(0)).get().toList === List[Byte](-1)) and
+				(repository.loadAndDelete(Optional.empty(), ids(1)).isPresent must beFalse) and
+				(repository.loadAndDelete(Optional.empty(), ids(2)).isPresent must beFalse) and
+				(repository.loadAndDelete(Optional.empty(), ids(99)).get().toList === List[Byte](99))
+		}
+	}
+
+	def e2 = withDir{ dir =>
+		val ids = (0 until 3).map{ _ => UUID.randomUUID() }
+		withRepository(dir){ repository =>
+			ids.foreach{ id => repository.store(Optional.empty(), id, new Array[Byte](10), 60 * 1000) }
+		}
+		// 最後のレコードのデータを破壊 (書き込み途中のクラッシュ)
+		val file = Files.list(dir).iterator().filter{ _.toString.endsWith(".log") }.next()
+		val ch = FileChannel.open(file, StandardOpenOption.WRITE)
+		ch.write(ByteBuffer.wrap(Array[Byte](1, 2, 3)), 2 * (8 + 25 + 10) + 8 + 25)
+		ch.close()
+		withRepository(dir){ repository =>
+			val r0 = (repository.size() === 2) and (repository.loadAndDelete(Optional.empty(), ids(2)).isPresent must beFalse)
+			// 破棄した位置から書き込みを継続できる
+			repository.store(Optional.empty(), ids(2), Array[Byte](7), 60 * 1000)
+			r0
+		} and withRepository(dir){ repository =>
+			(repository.size() === 3) and (repository.loadAndDelete(Optional.empty(), ids(2)).get().toList === List[Byte](7))
+		}
+	}
+
+	def e3 = withDir{ dir =>
+		withRepository(dir, 4096){ repository =>
+			val keep = UUID.randomUUID()
+			repository.store(Optional.empty(), keep, Array[Byte](42), 60 * 1000)
+			(0 until 200).foreach{ _ => repository.store(Optional.empty(), UUID.randomUUID(), new Array[Byte](100), 100) }
+			val r0 = repository.segments() must be_>(4)
+			r0 and (repository.segments() must be_==(1).eventually(50, 100.millis)) and (repository.size() === 1) and
+				(repository.loadAndDelete(Optional.empty(), keep).get().toList === List[Byte](42))
+		}
+	}
+
+	def e4 = withDir{ dir =>
+		val timer = newTimer()
+		val repository = new FileRepository(dir, timer, 64 * 1024, 10000, true)
+		try {
+			val start = System.nanoTime()
+			repository.store(Optional.empty(), UUID.randomUUID(), Array[Byte](1), 60 * 1000)
+			// 同期の間隔を待たずに同期して完了する
+			TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) must be_<(5000L)
+		} finally {
+			repository.close()
+			timer.close()
+		}
+	}
+
+	def e5 = withDir{ dir =>
+		withRepository(dir){ _ =>
+			new FileRepository(dir, newTimer()) must throwA[IOException]
+		}
+	}
+
+	private[this] def newTimer() = new TimingWheel(Asterisque.newThreadFactory("file-repository-spec"), 10, TimeUnit.MILLISECONDS, 64)
+
+	private[this] def withRepository[T](dir:Path, segmentSize:Int = 64 * 1024)(f:FileRepository => T):T = {
+		val timer = newTimer()
+		val repository = new FileRepository(dir, timer, segmentSize, 100, false)
+		try {
+			f(repository)
+		} finally {
+			repository.close()
+			timer.close()
+		}
+	}
+
+	private[this] def withDir[T](f:Path => T):T = {
+		val dir = Files.createTempDirectory("asterisque-repository")
+		try {
+			f(dir)
+		} finally {
+			Files.list(dir).iterator().foreach{ p => Files.delete(p) }
+			Files.delete(dir)
+		}
+	}
+}
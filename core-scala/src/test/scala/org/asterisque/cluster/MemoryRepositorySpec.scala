@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.cluster
+
+import java.util.concurrent.{Callable, Executors, TimeUnit}
+import java.util.function.Function
+import java.util.{Optional, UUID}
+
+import org.asterisque.util.TimingWheel
+import org.asterisque.{Asterisque, Node, Service}
+import org.specs2.Specification
+import org.specs2.time.NoTimeConversions
+
+import scala.concurrent.duration._
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// MemoryRepositorySpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class MemoryRepositorySpec extends Specification with NoTimeConversions { def is = s2"""
+MemoryRepository should:
+load and delete stored data. $e0
+remove expired data by node timer. $e1
+keep overwritten data until its own expiration. $e2
+store and load concurrently from many threads. $e3
+"""
+
+	def e0 = {
+		val repository = Repository.OnMemory
+		val id = repository.nextUUID()
+		repository.store(Optional.empty(), id, Array[Byte](1, 2, 3), 60 * 1000)
+		(repository.loadAndDelete(Optional.empty(), id).get().toList === List[Byte](1, 2, 3)) and
+			(repository.loadAndDelete(Optional.empty(), id).isPresent must beFalse)
+	}
+
+	def e1 = {
+		val node = new Node(UUID.randomUUID(), "repository", Executors.newCachedThreadPool(), new Service(){ },
+			new Function[TimingWheel, Repository] { def apply(timer:TimingWheel):Repository = Repository.onMemory(timer) })
+		try {
+			val repository = node.repository.asInstanceOf[MemoryRepository]
+			repository.store(Optional.empty(), UUID.randomUUID(), Array[Byte](1), 200)
+			repository.store(Optional.empty(), UUID.randomUUID(), Array[Byte](2), 60 * 1000)
+			val r0 = (repository.size() === 2) and (node.timer.size() === 2)
+			r0 and (repository.size() must be_==(1).eventually(20, 50.millis)) and (node.timer.size() === 1)
+		} finally {
+			node.shutdown()
+		}
+	}
+
+	def e2 = withRepository{ repository =>
+		val id = UUID.randomUUID()
+		repository.store(Optional.empty(), id, Array[Byte](1), 100)
+		repository.store(Optional.empty(), id, Array[Byte](2), 60 * 1000)
+		Thread.sleep(300)
+		(repository.size() === 1) and (repository.loadAndDelete(Optional.empty(), id).get().toList === List[Byte](2))
+	}
+
+	def e3 = withRepository{ repository =>
+		val threads = Executors.newFixedThreadPool(8)
+		try {
+			val futures = (0 until 8).map{ _ =>
+				threads.submit(new Callable[Boolean] {
+					def call():Boolean = (0 until 10000).forall{ i =>
+						val id = UUID.randomUUID()
+						repository.store(Optional.empty(), id, Array[Byte](i.toByte), 60 * 1000)
+						val loaded = repository.loadAndDelete(Optional.empty(), id)
+						loaded.isPresent && loaded.get()(0) == i.toByte
+					}
+				})
+			}
+			(futures.forall{ _.get(30, TimeUnit.SECONDS) } must beTrue) and (repository.size() === 0)
+		} finally {
+			threads.shutdown()
+		}
+	}
+
+	private[this] def withRepository[T](f:MemoryRepository => T):T = {
+		val timer = new TimingWheel(Asterisque.newThreadFactory("repository-spec"), 10, TimeUnit.MILLISECONDS, 64)
+		try {
+			f(new MemoryRepository(timer))
+		} finally {
+			timer.close()
+		}
+	}
+}
@@ -5,6 +5,7 @@
 */
 package org.asterisque.codec
 
+import java.io.ByteArrayOutputStream
 import java.util.UUID
 
 import org.asterisque.Tuple
@@ -24,6 +25,9 @@ abstract class CodecSpec extends Specification { def is = s2"""
 ${codec.getClass.getSimpleName} should:
 encode and decode variable messages. $encode01
 encode and decode supported data-types. $supportedDataTypes
+write the same binary through stream marshal. $streamMarshal
+return independent buffer for each encoding. $independentBuffer
+copy encoded binary out of reused marshal buffer. $reuseMarshal
 """
 
 	org.asterisque.init()
@@ -31,51 +35,89 @@ encode and decode supported data-types. $supportedDataTypes
 	def codec:Codec
 
 	def encode01 = {
-		Seq[Message](
-			new Open(1.toShort, 0.toShort, Array[AnyRef]()),
-			new Open(1.toShort, 1.toShort, Array[AnyRef](null)),
-			new Open(1.toShort, 2.toShort, Array[AnyRef](java.lang.Boolean.TRUE)),
-			new Open(1.toShort, 3.toShort, Array[AnyRef](java.lang.Boolean.FALSE)),
-			new Open(1.toShort, 4.toShort, Array[AnyRef](java.lang.Byte.valueOf(0x7F.toByte))),
-			new Open(1.toShort, 5.toShort, Array[AnyRef](java.lang.Short.valueOf(0x7FFF.toShort))),
-			new Open(1.toShort, 6.toShort, Array[AnyRef](Integer.valueOf(0x7FFFFFFF))),
-			new Open(1.toShort, 7.toShort, Array[AnyRef](java.lang.Long.valueOf(0x7FFFFFFFFFFFFFFFl))),
-			new Open(1.toShort, 8.toShort, Array[AnyRef](java.lang.Float.valueOf(0.1.toFloat))),
-			new Open(1.toShort, 9.toShort, Array[AnyRef](java.lang.Double.valueOf(0.01))),
-			new Open(1.toShort, 10.toShort, Array[AnyRef]("")),
-			new Open(1.toShort, 11.toShort, Array[AnyRef]("ABC")),
-			new Open(1.toShort, 12.toShort, Array[AnyRef](Array())),
-			new Open(1.toShort, 13.toShort, Array[AnyRef](Array(true, false))),
-			new Open(1.toShort, 14.toShort, Array[AnyRef](Array(1.toShort, 2.toShort, 3.toShort))),
-			new Open(1.toShort, 14.toShort, Array[AnyRef](Array(1, 2, 3))),
-			new Open(1.toShort, 14.toShort, Array[AnyRef](Array(1.toLong, 2.toLong, 3.toLong))),
-			new Open(1.toShort, 14.toShort, Array[AnyRef](Array(1.toFloat, 2.toFloat))),
-			new Open(1.toShort, 14.toShort, Array[AnyRef](Array(1.toDouble, 2.toDouble))),
-			new Open(1.toShort, 14.toShort, Array[AnyRef](Array('A', 'B', 'C'))),
-			new Open(1.toShort, 15.toShort, Array[AnyRef](Array(false, -1, "xyz"))),
-			new Open(1.toShort, 16.toShort, Array[AnyRef](java.lang.Boolean.TRUE, java.lang.Boolean.FALSE, Integer.valueOf(100), "hoge")),
-			new Open(1.toShort, 17.toShort, Array[AnyRef](Map("A"->100,true->200,300->'X'), Seq("A",'b',100,false), Array("A",'b',300,true))),
-
-			new Close(2.toShort, null.asInstanceOf[Object]),
-			new Close(2.toShort, -100),
-			new Close(2.toShort, "hoge"),
-			new Close(2.toShort, Array()),
-			new Close(2.toShort, Array(true, true)),
-			new Close(2.toShort, Array(1, 2, 3)),
-			new Close(2.toShort, Array(false, -1, "xyz")),
-			new Close(2.toShort, ()),
-			new Close(2.toShort, new Abort(0, "")),
-			new Close(2.toShort, new Abort(1, "AAAAAAAAAAAAAAAAA")),
-			Close.unexpectedError(103.toShort, ""),
-			Close.unexpectedError(104.toShort, "foo"),
-
-			new Block(1, Array[Byte](), 0, 0),
-			Block.eof(1),
-			new Block(1, Array[Byte](0, 1, 2, 3), 0, 4),
-			new Block(2, (0 to 0xFF).map{_.toByte}.toArray, 5, 100)
-		).map{ msg => equals(msg, codec.decode(codec.encode(msg)).get) }.reduceLeft{ _ and _ }
+		messages.map{ msg => equals(msg, codec.decode(codec.encode(msg)).get) }.reduceLeft{ _ and _ }
 	}
 
+	def streamMarshal = {
+		val out = new ByteArrayOutputStream()
+		val m = codec.newMarshal(out)
+		if(m.isPresent){
+			messages.map{ msg =>
+				out.reset()
+				codec.encode(msg, m.get())
+				val expected = codec.encode(msg)
+				val bytes = new Array[Byte](expected.remaining())
+				expected.get(bytes)
+				java.util.Arrays.equals(out.toByteArray, bytes) must beTrue
+			}.reduceLeft{ _ and _ }
+		} else True
+	}
+
+	def independentBuffer = {
+		val b1 = codec.encode(new Open(1.toShort, 0.toShort, Array[AnyRef]("foo")))
+		val b2 = codec.encode(new Open(2.toShort, 0.toShort, Array[AnyRef]("bar", "baz")))
+		(codec.decode(b1).get.pipeId === 1.toShort) and (codec.decode(b2).get.pipeId === 2.toShort)
+	}
+
+	def reuseMarshal = {
+		val out = new ByteArrayOutputStream()
+		val sm = codec.newMarshal(out)
+		if(sm.isPresent){
+			messages.map{ msg =>
+				out.reset()
+				codec.encode(msg, sm.get())
+				val b = codec.encode(msg)
+				codec.encode(new Open(99.toShort, 0.toShort, Array[AnyRef]("overwrite")))
+				(b === java.nio.ByteBuffer.wrap(out.toByteArray)) and (b.capacity() === b.remaining())
+			}.reduceLeft{ _ and _ }
+		} else True
+	}
+
+	def messages = Seq[Message](
+		new Open(1.toShort, 0.toShort, Array[AnyRef]()),
+		new Open(1.toShort, 1.toShort, Array[AnyRef](null)),
+		new Open(1.toShort, 2.toShort, Array[AnyRef](java.lang.Boolean.TRUE)),
+		new Open(1.toShort, 3.toShort, Array[AnyRef](java.lang.Boolean.FALSE)),
+		new Open(1.toShort, 4.toShort, Array[AnyRef](java.lang.Byte.valueOf(0x7F.toByte))),
+		new Open(1.toShort, 5.toShort, Array[AnyRef](java.lang.Short.valueOf(0x7FFF.toShort))),
+		new Open(1.toShort, 6.toShort, Array[AnyRef](Integer.valueOf(0x7FFFFFFF))),
+		new Open(1.toShort, 7.toShort, Array[AnyRef](java.lang.Long.valueOf(0x7FFFFFFFFFFFFFFFl))),
+		new Open(1.toShort, 8.toShort, Array[AnyRef](java.lang.Float.valueOf(0.1.toFloat))),
+		new Open(1.toShort, 9.toShort, Array[AnyRef](java.lang.Double.valueOf(0.01))),
+		new Open(1.toShort, 10.toShort, Array[AnyRef]("")),
+		new Open(1.toShort, 11.toShort, Array[AnyRef]("ABC")),
+		new Open(1.toShort, 12.toShort, Array[AnyRef](Array())),
+		new Open(1.toShort, 13.toShort, Array[AnyRef](Array(true, false))),
+		new Open(1.toShort, 14.toShort, Array[AnyRef](Array(1.toShort, 2.toShort, 3.toShort))),
+		new Open(1.toShort, 14.toShort, Array[AnyRef](Array(1, 2, 3))),
+		new Open(1.toShort, 14.toShort, Array[AnyRef](Array(1.toLong, 2.toLong, 3.toLong))),
+		new Open(1.toShort, 14.toShort, Array[AnyRef](Array(1.toFloat, 2.toFloat))),
+		new Open(1.toShort, 14.toShort, Array[AnyRef](Array(1.toDouble, 2.toDouble))),
+		new Open(1.toShort, 14.toShort, Array[AnyRef](Array('A', 'B', 'C'))),
+		new Open(1.toShort, 15.toShort, Array[AnyRef](Array(false, -1, "xyz"))),
+		new Open(1.toShort, 16.toShort, Array[AnyRef](java.lang.Boolean.TRUE, java.lang.Boolean.FALSE, Integer.valueOf(100), "hoge")),
+		new Open(1.toShort, 17.toShort, Array[AnyRef](Map("A"->100,true->200,300->'X'), Seq("A",'b',100,false), Array("A",'b',300,true))),
+
+		new Close(2.toShort, null.asInstanceOf[Object]),
+		new Close(2.toShort, -100),
+		new Close(2.toShort, "hoge"),
+		new Close(2.toShort, Array()),
+		new Close(2.toShort, Array(true, true)),
+		new Close(2.toShort, Array(1, 2, 3)),
+		new Close(2.toShort, Array(false, -1, "xyz")),
+		new Close(2.toShort, ()),
+		new Close(2.toShort, new Abort(0, "")),
+		new Close(2.toShort, new Abort(1, "AAAAAAAAAAAAAAAAA")),
+		Close.unexpectedError(103.toShort, ""),
+		Close.unexpectedError(104.toShort, "foo"),
+
+		new Block(1, Array[Byte](), 0, 0),
+		Block.eof(1),
+		new Block(1, Array[Byte](0, 1, 2, 3), 0, 4),
+		new Block(2, (0 to 0xFF).map{_.toByte}.toArray, 5, 100),
+		new Block(3, (0 until 4000).map{_.toByte}.toArray, 10, 3000)
+	)
+
 	def supportedDataTypes = {
 		codec.decode(codec.encode(new Close(1.toShort, ())))
 		val types:Seq[AnyRef] = Seq(
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.codec
+
+import org.specs2.Specification
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// SizeEstimatorSpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class SizeEstimatorSpec extends Specification { def is = s2"""
+SizeEstimator should:
+estimate minimum size initially. $e0
+follow moving average with power of two. $e1
+not exceed max size. $e2
+"""
+
+	def e0 = new SizeEstimator().estimate() === SizeEstimator.MinSize
+
+	def e1 = {
+		val e = new SizeEstimator()
+		(0 until 100).foreach{ _ => e.update(1000) }
+		val large = e.estimate()
+		(0 until 100).foreach{ _ => e.update(10) }
+		(large === 2048) and (e.estimate() === SizeEstimator.MinSize)
+	}
+
+	def e2 = {
+		val e = new SizeEstimator()
+		(0 until 100).foreach{ _ => e.update(Integer.MAX_VALUE) }
+		e.estimate() === SizeEstimator.MaxSize
+	}
+}
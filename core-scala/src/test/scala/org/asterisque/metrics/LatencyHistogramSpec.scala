@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.metrics
+
+import org.specs2.Specification
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// LatencyHistogramSpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class LatencyHistogramSpec extends Specification { def is = s2"""
+LatencyHistogram should:
+report zero before any value recorded. $e0
+record count, mean and max. $e1
+approximate percentiles by log-linear bucket bounded by max. $e2
+treat negative and extreme values safely. $e3
+keep relative error of bucket bounds within 1/SubBuckets. $e4
+"""
+
+	def e0 = {
+		val h = new LatencyHistogram()
+		(h.getCount === 0) and (h.getMean === 0) and (h.getMax === 0) and (h.get99thPercentile === 0)
+	}
+
+	def e1 = {
+		val h = new LatencyHistogram()
+		Seq(100L, 200L, 300L).foreach(h.record)
+		(h.getCount === 3) and (h.getMean === 200) and (h.getMax === 300)
+	}
+
+	def e2 = {
+		val h = new LatencyHistogram()
+		(1 to 90).foreach{ _ => h.record(1000) }
+		(1 to 10).foreach{ _ => h.record(1000000) }
+		(h.get50thPercentile === 1007) and (h.get90thPercentile === 1007) and
+			(h.get99thPercentile === 1000000) and (h.percentile(1.0) === 1000000)
+	}
+
+	def e3 = {
+		val h = new LatencyHistogram()
+		h.record(-5)
+		h.record(Long.MaxValue)
+		(h.getCount === 2) and (h.percentile(0.5) === 0) and (h.getMax === Long.MaxValue) and (h.percentile(1.0) === Long.MaxValue)
+	}
+
+	def e4 = {
+		val random = new scala.util.Random(0)
+		val values = (0 to 63).map(_.toLong) ++ (1 to 10000).map{ _ => math.abs(random.nextLong()) >>> random.nextInt(63) }
+		values.map{ v =>
+			val upper = LatencyHistogram.upperBound(LatencyHistogram.index(v))
+			(upper must be_>=(v)) and ((upper - v).toDouble must be_<=(math.max(0.0, v.toDouble / LatencyHistogram.SubBuckets)))
+		}.reduceLeft{ _ and _ } and (LatencyHistogram.index(63) === 63) and (LatencyHistogram.index(64) === 64)
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.metrics
+
+import java.lang.management.ManagementFactory
+import java.util.UUID
+import java.util.function.{IntSupplier, LongSupplier}
+import javax.management.ObjectName
+
+import org.asterisque.msg.{Block, Close, Control, Open}
+import org.asterisque.util.CircuitBreaker
+import org.specs2.Specification
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// NodeMetricsSpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class NodeMetricsSpec extends Specification { def is = s2"""
+NodeMetrics should:
+count session messages and bytes per message type. $e0
+aggregate live and closed sessions. $e1
+publish node, session and function mbeans. $e2
+keep separate histogram for each call phase. $e4
+unregister all mbeans on close. $e3
+"""
+	import NodeMetricsSpec._
+
+	def e0 = {
+		val m = newSessionMetrics(3)
+		m.outbound(new Open(1, 0, Array[AnyRef]()))
+		m.outbound(new Open(1, 0, Array[AnyRef]()), 20)
+		m.inbound(new Close(1.toShort, "x"))
+		m.inbound(Block.eof(1), 8)
+		m.inbound(new Control(Control.Close))
+		(m.getMessagesOut.get("Open") === 1) and (m.getBytesOut.get("Open") === 20) and
+			(m.getMessagesIn.get("Close") === 1) and (m.getBytesIn.get("Block") === 8) and
+			(m.getMessagesIn.get("Control") === 1) and (m.getQueueDepth === 3)
+	}
+
+	def e1 = {
+		val node = new NodeMetrics(UUID.randomUUID(), "e1")
+		val (s1, s2) = (UUID.randomUUID(), UUID.randomUUID())
+		val (m1, m2) = (newSessionMetrics(1), newSessionMetrics(2))
+		m1.outbound(Block.eof(1))
+		m2.outbound(Block.eof(1))
+		node.attach(s1, m1)
+		node.attach(s2, m2)
+		node.attach(s2, m2)
+		val r0 = (node.getSessions === 2) and (node.getQueueDepth === 3) and (node.getMessagesOut.get("Block") === 2)
+		node.detach(s1)
+		node.detach(s1)
+		val r1 = (node.getSessions === 1) and (node.getQueueDepth === 2) and (node.getMessagesOut.get("Block") === 2)
+		node.close()
+		r0 and r1
+	}
+
+	def e2 = {
+		val id = UUID.randomUUID()
+		val node = new NodeMetrics(id, "e2 node")
+		val session = UUID.randomUUID()
+		node.attach(session, newSessionMetrics(5))
+		node.latency(10).record(1000)
+		val nodeName = new ObjectName(s"org.asterisque:type=Node,name=${ObjectName.quote("e2 node")},id=$id")
+		val sessionName = new ObjectName(s"org.asterisque:type=Session,node=$id,session=$session")
+		val functionName = new ObjectName(s"org.asterisque:type=Function,node=$id,function=10,phase=Total")
+		val r = (server.getAttribute(nodeName, "Sessions") === 1) and
+			(server.getAttribute(sessionName, "QueueDepth") === 5) and
+			(server.getAttribute(functionName, "Count") === 1L) and
+			(node.latency(10) must be(node.latency(10)))
+		node.close()
+		r
+	}
+
+	def e3 = {
+		val id = UUID.randomUUID()
+		val node = new NodeMetrics(id, "e3")
+		node.attach(UUID.randomUUID(), newSessionMetrics(0))
+		node.latency(-1).record(1)
+		def registered = server.queryNames(new ObjectName(s"org.asterisque:node=$id,*"), null).size() +
+			server.queryNames(new ObjectName(s"org.asterisque:type=Node,id=$id,*"), null).size()
+		val before = registered
+		node.close()
+		(before === 3) and (registered === 0)
+	}
+
+	def e4 = {
+		val node = new NodeMetrics(UUID.randomUUID(), "e4")
+		node.latency(10, CallPhase.Remote).record(100)
+		val r = (node.latency(10, CallPhase.Remote).getCount === 1) and (node.latency(10).getCount === 0) and
+			(node.latency(11, CallPhase.Remote).getCount === 0) and (node.latency(10, CallPhase.Reply).getCount === 0)
+		node.close()
+		r
+	}
+}
+
+object NodeMetricsSpec {
+	val server = ManagementFactory.getPlatformMBeanServer
+	def newBreaker():CircuitBreaker = new CircuitBreaker(1, 2) {
+		override protected def overload(overload:Boolean):Unit = None
+		override protected def broken():Unit = None
+	}
+	def newSessionMetrics(depth:Int):SessionMetrics = {
+		val gauge = new IntSupplier { def getAsInt = depth }
+		new SessionMetrics(gauge, newBreaker(), newBreaker(), gauge, gauge, new LongSupplier { def getAsLong:Long = 0 })
+	}
+}
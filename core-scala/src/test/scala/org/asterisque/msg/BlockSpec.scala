@@ -24,6 +24,7 @@ throw exception for illegal arguments in constructor. $e0
 be eof of block of Block.eof(). ${(Block.eof(1).eof must beTrue) and (Block.eof(1).length == 0) and (Block.eof(1).loss === 0)}
 return byte-array that contains same as constructor specified. $e1
 return text as string. $e2
+judge drop by loss-rate and reset survivor to loss 0 sharing payload. $e3
 """
 
 	def e0 = {
@@ -55,4 +56,17 @@ return text as string. $e2
 		text === t
 	}
 
+	def e3 = {
+		val payload = Array[Byte](1, 2, 3)
+		val lossy = new Block(1, 127.toByte, payload, 0, 3)
+		val survivor = lossy.survive()
+		var released = 0
+		val retained = Block.retained(1, 64.toByte, java.nio.ByteBuffer.wrap(payload), new Runnable { def run():Unit = released += 1 })
+		val retainedSurvivor = retained.survive()
+		retainedSurvivor.release()
+		(new Block(1, payload, 0, 3).shouldDrop() must beFalse) and (lossy.shouldDrop() must beTrue) and
+			(survivor.loss === 0) and (survivor.payload must be(payload)) and (survivor.survive() must be(survivor)) and
+			(retainedSurvivor.loss === 0) and (released === 1) and (retained.refCnt() === 0)
+	}
+
 }
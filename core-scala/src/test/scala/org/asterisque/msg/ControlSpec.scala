@@ -7,6 +7,7 @@ package org.asterisque.msg
 
 import java.lang.reflect.Modifier
 
+import org.asterisque.ProtocolViolationException
 import org.specs2.Specification
 
 // ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
@@ -20,6 +21,8 @@ Control should:
 declare as final class. ${Modifier.isFinal(classOf[Control].getModifiers) must beTrue}
 have properties these are specified in constructor. $e0
 throw NullPointerException if data is null. ${new Control(Control.Close, null) must throwA[NullPointerException]}
+carry cumulative ack count. $e1
+echo ping timestamp in pong. $e2
 """
 
 	def e0 = {
@@ -28,4 +31,17 @@ throw NullPointerException if data is null. ${new Control(Control.Close, null) m
 		(c1.code === Control.SyncConfig) and (c1.data.length === 0) and (c2.code === Control.Close) and (c2.data.length === 256)
 	}
 
+	def e1 = {
+		val ack = Control.ack(0x123456789AL)
+		(ack.code === Control.Ack) and (ack.ackCount() === 0x123456789AL) and
+			(new Control(Control.Close).ackCount() must throwA[ProtocolViolationException])
+	}
+
+	def e2 = {
+		val ping = Control.ping(0x123456789AL)
+		val pong = ping.pong()
+		(ping.code === Control.Ping) and (pong.code === Control.Pong) and (pong.pingTimestamp() === 0x123456789AL) and
+			(ping.pingTimestamp() must throwA[ProtocolViolationException]) and (pong.pong() must throwA[ProtocolViolationException])
+	}
+
 }
@@ -25,6 +25,7 @@ be declared as final class. ${Modifier.isFinal(classOf[SyncConfig].getModifiers)
 restore all properties from control data. $e0
 throw exception if signature is not sync-config. $e1
 throw exception if data too short. $e2
+restore capabilities and treat legacy data as no capabilities. $e3
 """
 
 	def e0 = {
@@ -48,4 +49,13 @@ throw exception if data too short. $e2
 	def e2 = {
 		SyncConfig.parse(new Control(Control.SyncConfig, new Array[Byte](10))) must throwA[ProtocolViolationException]
 	}
+
+	def e3 = {
+		val sc1 = new SyncConfig(UUID.randomUUID(), UUID.randomUUID(), 0L, 10, 20, SyncConfig.Framing)
+		val sc2 = SyncConfig.parse(sc1.toControl)
+		val legacy = java.util.Arrays.copyOf(sc1.toControl.data, SyncConfig.DataLength)
+		val sc3 = SyncConfig.parse(new Control(Control.SyncConfig, legacy))
+		(sc2.capabilities === SyncConfig.Framing) and (sc2.supports(SyncConfig.Framing) must beTrue) and
+			(sc3.capabilities === 0) and (sc3.supports(SyncConfig.Framing) must beFalse)
+	}
 }
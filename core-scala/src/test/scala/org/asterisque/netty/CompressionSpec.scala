@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.netty
+
+import java.nio.charset.StandardCharsets
+import java.util.{Optional, UUID}
+import java.util.concurrent.atomic.AtomicLong
+import java.util.function.ObjIntConsumer
+
+import io.netty.buffer.ByteBuf
+import io.netty.channel.embedded.EmbeddedChannel
+import io.netty.handler.codec.DecoderException
+import org.asterisque.codec.SimpleCodec
+import org.asterisque.msg._
+import org.specs2.Specification
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// CompressionSpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class CompressionSpec extends Specification { def is = s2"""
+Compression should:
+be enabled only if both framing and compression are agreed. $e0
+compress large block and open params and restore them. $e1
+send incompressible or small message without compression. $e2
+compress with shared dictionary and reject mismatched dictionary. $e3
+accept only compression level 1 to 9. $e4
+"""
+
+	val json = (0 until 200).map{ i => s"""{"id":$i,"level":"INFO","message":"request completed"}""" }.mkString("\n")
+		.getBytes(StandardCharsets.UTF_8)
+
+	def e0 = {
+		val server = new Framing(true, true)
+		server.received(sync(SyncConfig.Framing | SyncConfig.Compression))
+		server.sent(sync(SyncConfig.Framing | SyncConfig.Compression))
+		(server.compression() must beTrue) and (framed(SyncConfig.Compression).compression() must beFalse) and
+			(framed(SyncConfig.Framing).compression() must beFalse)
+	}
+
+	def e1 = {
+		val stats = new Stats()
+		val framing = framed(SyncConfig.Framing | SyncConfig.Compression)
+		val sent = Seq[Message](
+			new Block(1, json, 0, json.length),
+			new Open(2.toShort, 10.toShort, Array[AnyRef](new String(json, StandardCharsets.UTF_8)))
+		)
+		val binaries = sent.map{ msg => encode(framing, new Compression(1, 256, Optional.empty(), stats), msg) }
+		val compressed = binaries.map{ _.readableBytes() }
+		val headers = binaries.map{ b => (b.getUnsignedShort(0), b.getUnsignedShort(2)) }
+		val received = decode(framing, new Compression(1, 256, Optional.empty(), stats), binaries)
+		(headers.forall{ _ == (0, 0) } must beTrue) and
+			(compressed.forall{ _ < json.length / 4 } must beTrue) and
+			(received.head.asInstanceOf[Block].toByteBuffer === java.nio.ByteBuffer.wrap(json)) and
+			(received(1).asInstanceOf[Open].params.head === new String(json, StandardCharsets.UTF_8)) and
+			(stats.count.get() === 2) and (stats.inflations.get() === 2) and (stats.skips.get() === 0) and
+			(stats.bytes.get() === compressed.sum.toLong)
+	}
+
+	def e2 = {
+		val stats = new Stats()
+		val framing = framed(SyncConfig.Framing | SyncConfig.Compression)
+		val random = new Array[Byte](2000)
+		new java.util.Random(0).nextBytes(random)
+		val sent = Seq[Message](new Block(1, random, 0, random.length), new Block(2, json, 0, 100))
+		val binaries = sent.map{ msg => encode(framing, new Compression(1, 256, Optional.empty(), stats), msg) }
+		val headers = binaries.map{ _.getUnsignedShort(0) }
+		val received = decode(framing, new Compression(), binaries)
+		(headers.forall{ _ != 0 } must beTrue) and (stats.count.get() === 0) and
+			(stats.skips.get() === 1) and (received.map{ _.asInstanceOf[Block].length } === Seq(2000, 100))
+	}
+
+	def e3 = {
+		val framing = framed(SyncConfig.Framing | SyncConfig.Compression)
+		val dictionary = Optional.of(json.take(1024))
+		val msg = new Block(1, json, 0, 600)
+		val plain = encode(framing, new Compression(1, 256, Optional.empty(), Compression.Listener.Ignore), msg)
+		val withDict = encode(framing, new Compression(1, 256, dictionary, Compression.Listener.Ignore), msg)
+		val r0 = withDict.readableBytes() must be_<(plain.readableBytes())
+		val received = decode(framing, new Compression(1, 256, dictionary, Compression.Listener.Ignore), Seq(withDict.retainedSlice()))
+		val ch = new EmbeddedChannel(new MessageDecoder(SimpleCodec.getInstance(), framing,
+			new Compression(1, 256, Optional.of("other".getBytes), Compression.Listener.Ignore), false, new ObjIntConsumer[Message]{
+				def accept(msg:Message, bytes:Int):Unit = None
+			}))
+		r0 and (received.head.asInstanceOf[Block].length === 600) and
+			(ch.writeInbound(withDict) must throwA[DecoderException])
+	}
+
+	def sync(caps:Int) = new SyncConfig(UUID.randomUUID(), UUID.randomUUID(), 0L, 10, 20, caps).toControl
+
+	def framed(caps:Int):Framing = {
+		val framing = new Framing(false, true)
+		framing.received(sync(caps))
+		framing
+	}
+
+	def e4 = {
+		def compression(level:Int) = new Compression(level, 256, Optional.empty(), Compression.Listener.Ignore)
+		(compression(0) must throwA[IllegalArgumentException]) and (compression(10) must throwA[IllegalArgumentException]) and
+			(compression(1) must not beNull) and (compression(9) must not beNull)
+	}
+
+	def encode(framing:Framing, compression:Compression, msg:Message):ByteBuf = {
+		val ch = new EmbeddedChannel(new MessageEncoder(SimpleCodec.getInstance(), framing, compression, new ObjIntConsumer[Message]{
+			def accept(msg:Message, bytes:Int):Unit = None
+		}))
+		ch.writeOutbound(msg)
+		ch.readOutbound[ByteBuf]()
+	}
+
+	def decode(framing:Framing, compression:Compression, binaries:Seq[ByteBuf]):List[Message] = {
+		val ch = new EmbeddedChannel(new MessageDecoder(SimpleCodec.getInstance(), framing, compression, false, new ObjIntConsumer[Message]{
+			def accept(msg:Message, bytes:Int):Unit = None
+		}))
+		binaries.foreach{ b => ch.writeInbound(b) }
+		Iterator.continually(ch.readInbound[Message]()).takeWhile(_ != null).toList
+	}
+
+	class Stats extends Compression.Listener {
+		val count = new AtomicLong()
+		val bytes = new AtomicLong()
+		val skips = new AtomicLong()
+		val inflations = new AtomicLong()
+		def compressed(original:Int, compressed:Int, nanos:Long):Unit = {
+			if(compressed < original){
+				count.incrementAndGet()
+			} else {
+				skips.incrementAndGet()
+			}
+			bytes.addAndGet(compressed)
+		}
+		def decompressed(original:Int, compressed:Int, nanos:Long):Unit = inflations.incrementAndGet()
+	}
+}
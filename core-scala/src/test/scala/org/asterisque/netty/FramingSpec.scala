@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.netty
+
+import java.nio.ByteBuffer
+import java.util.UUID
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.ObjIntConsumer
+
+import io.netty.buffer.{ByteBuf, Unpooled}
+import io.netty.channel.embedded.EmbeddedChannel
+import org.asterisque.codec.{Codec, SimpleCodec}
+import org.asterisque.msg._
+import org.specs2.Specification
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// FramingSpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class FramingSpec extends Specification { def is = s2"""
+Framing should:
+switch to framed format after sync-config exchange. $e0
+stay unframed if peer doesn't support framing. $e1
+decode split frame only once after whole frame arrived. $e2
+decode all complete frames in cumulated buffer. $e3
+enable container only if both framing and container are agreed. $e4
+pack messages written before flush into one container frame. $e5
+keep message order around control and large messages in container mode. $e6
+move message reaching container threshold out of container frame. $e7
+"""
+
+	def sync(caps:Int) = new SyncConfig(UUID.randomUUID(), UUID.randomUUID(), 0L, 10, 20, caps).toControl
+
+	def e0 = {
+		val server = new Framing(true, true)
+		val client = new Framing(false, true)
+		client.sent(sync(SyncConfig.Framing))
+		val c0 = (client.inbound() must beFalse) and (client.outbound() must beFalse)
+		server.received(sync(SyncConfig.Framing))
+		val s0 = (server.inbound() must beTrue) and (server.outbound() must beFalse)
+		server.sent(sync(SyncConfig.Framing))
+		client.received(sync(SyncConfig.Framing))
+		c0 and s0 and (server.outbound() must beTrue) and (client.inbound() must beTrue) and (client.outbound() must beTrue)
+	}
+
+	def e1 = {
+		val server = new Framing(true, true)
+		server.received(sync(0))
+		server.sent(sync(0))
+		val local = new Framing(true, false)
+		local.received(sync(SyncConfig.Framing))
+		(server.inbound() must beFalse) and (server.outbound() must beFalse) and (local.inbound() must beFalse)
+	}
+
+	def e2 = {
+		val counter = new AtomicInteger()
+		val framing = framed()
+		val ch = new EmbeddedChannel(new MessageDecoder(counting(counter), framing))
+		val binary = encode(framing, new Block(1, (0 until 1000).map{ _.toByte }.toArray, 0, 1000))
+		ch.writeInbound(binary.readRetainedSlice(1))
+		ch.writeInbound(binary.readRetainedSlice(500))
+		val r0 = (ch.readInbound[Message]() must beNull) and (counter.get() === 0)
+		ch.writeInbound(binary)
+		val msg = ch.readInbound[Block]()
+		r0 and (msg.length === 1000) and (counter.get() === 1)
+	}
+
+	def e3 = {
+		val counter = new AtomicInteger()
+		val framing = framed()
+		val ch = new EmbeddedChannel(new MessageDecoder(counting(counter), framing))
+		val buffer = Unpooled.buffer()
+		(1 to 10).foreach{ i => buffer.writeBytes(encode(framing, new Open(i.toShort, 0.toShort, Array[AnyRef]()))) }
+		val last = encode(framing, Block.eof(11))
+		buffer.writeBytes(last.readSlice(2))
+		ch.writeInbound(buffer)
+		val msgs = Iterator.continually(ch.readInbound[Message]()).takeWhile(_ != null).toList
+		(msgs.size === 10) and (msgs.map{ _.pipeId.toInt } === (1 to 10).toList) and (counter.get() === 10)
+	}
+
+	def e4 = {
+		val server = new Framing(true, true)
+		server.received(sync(SyncConfig.Framing | SyncConfig.Container))
+		server.sent(sync(SyncConfig.Framing | SyncConfig.Container))
+		val client = new Framing(false, true)
+		client.received(sync(SyncConfig.Container))
+		(server.container() must beTrue) and (client.container() must beFalse) and (framed().container() must beFalse)
+	}
+
+	def e5 = {
+		val framing = framed(SyncConfig.Framing | SyncConfig.Container)
+		val sizes = new java.util.concurrent.ConcurrentLinkedQueue[Integer]()
+		val encoder = new EmbeddedChannel(new MessageEncoder(SimpleCodec.getInstance(), framing, new Compression(), new ObjIntConsumer[Message] {
+			def accept(msg:Message, bytes:Int):Unit = sizes.add(bytes)
+		}))
+		val sent = (1 to 100).map{ i => new Open(i.toShort, 10.toShort, Array[AnyRef](s"foo$i")) } ++
+			(1 to 100).map{ i => new Block(i.toShort, Array.fill[Byte](i)(i.toByte), 0, i) } ++
+			(1 to 100).map{ i => new Close(i.toShort, s"bar$i") }
+		sent.foreach{ msg => encoder.write(msg) }
+		val r0 = encoder.readOutbound[ByteBuf]() must beNull
+		encoder.flush()
+		val binary = encoder.readOutbound[ByteBuf]()
+		val r1 = (encoder.readOutbound[ByteBuf]() must beNull) and (binary.getUnsignedShort(0) === 0) and
+			(binary.getUnsignedShort(2) === binary.readableBytes() - 4) and
+			(sizes.toArray.map{ _.asInstanceOf[Integer].intValue() }.sum === binary.readableBytes())
+		val counter = new AtomicInteger()
+		val decoder = new EmbeddedChannel(new MessageDecoder(counting(counter), framing, true))
+		decoder.writeInbound(binary)
+		val received = Iterator.continually(decoder.readInbound[Message]()).takeWhile(_ != null).toList
+		val blocks = received.collect{ case b:Block => b }
+		val r2 = (received.size === sent.size) and (received.map{ _.pipeId.toInt } === sent.map{ _.pipeId.toInt }.toList) and
+			(received.map{ _.getClass } === sent.map{ _.getClass }.toList) and
+			(blocks.forall{ b => b.length == b.pipeId && b.toByteBuffer().get(0) == b.pipeId.toByte } must beTrue)
+		blocks.foreach{ _.release() }
+		r0 and r1 and r2
+	}
+
+	def e6 = {
+		val framing = framed(SyncConfig.Framing | SyncConfig.Container)
+		val encoder = new EmbeddedChannel(new MessageEncoder(SimpleCodec.getInstance(), framing))
+		val sent = Seq[Message](
+			new Open(1.toShort, 10.toShort, Array[AnyRef]()),
+			new Control(Control.Close),
+			new Open(2.toShort, 10.toShort, Array[AnyRef]()),
+			new Block(3, new Array[Byte](5000), 0, 5000),
+			Block.eof(4)
+		)
+		sent.foreach{ msg => encoder.write(msg) }
+		encoder.flush()
+		val binaries = Iterator.continually(encoder.readOutbound[ByteBuf]()).takeWhile(_ != null).toList
+		val decoder = new EmbeddedChannel(new MessageDecoder(SimpleCodec.getInstance(), framing))
+		binaries.foreach{ b => decoder.writeInbound(b) }
+		val received = Iterator.continually(decoder.readInbound[Message]()).takeWhile(_ != null).toList
+		(binaries.size === 5) and (received.map{ _.getClass } === sent.map{ _.getClass }.toList) and
+			(received.map{ _.pipeId.toInt } === sent.map{ _.pipeId.toInt }.toList)
+	}
+
+	def e7 = {
+		val framing = framed(SyncConfig.Framing | SyncConfig.Container)
+		val sizes = new java.util.concurrent.ConcurrentLinkedQueue[Integer]()
+		val encoder = new EmbeddedChannel(new MessageEncoder(SimpleCodec.getInstance(), framing, new Compression(), new ObjIntConsumer[Message] {
+			def accept(msg:Message, bytes:Int):Unit = sizes.add(bytes)
+		}))
+		val sent = Seq[Message](
+			new Open(1.toShort, 10.toShort, Array[AnyRef]("foo")),
+			new Block(2, Array.fill[Byte](900)(2), 0, 900),
+			new Block(3, Array.fill[Byte](1020)(3), 0, 1020),
+			new Close(4.toShort, "bar")
+		)
+		sent.foreach{ msg => encoder.write(msg) }
+		encoder.flush()
+		val binaries = Iterator.continually(encoder.readOutbound[ByteBuf]()).takeWhile(_ != null).toList
+		val r0 = (binaries.size === 3) and (binaries.map{ _.getUnsignedShort(0) == 0 } === List(true, false, true)) and
+			(binaries.map{ _.readableBytes() }.sum === sizes.toArray.map{ _.asInstanceOf[Integer].intValue() }.sum)
+		val decoder = new EmbeddedChannel(new MessageDecoder(SimpleCodec.getInstance(), framing))
+		binaries.foreach{ b => decoder.writeInbound(b) }
+		val received = Iterator.continually(decoder.readInbound[Message]()).takeWhile(_ != null).toList
+		val blocks = received.collect{ case b:Block => b }
+		r0 and (received.map{ _.pipeId.toInt } === sent.map{ _.pipeId.toInt }.toList) and
+			(blocks.map{ _.length } === List(900, 1020)) and
+			(blocks.forall{ b => b.toByteBuffer().get(b.length - 1) == b.pipeId.toByte } must beTrue)
+	}
+
+	def framed():Framing = framed(SyncConfig.Framing)
+
+	def framed(caps:Int):Framing = {
+		val framing = new Framing(false, true)
+		framing.received(sync(caps))
+		framing
+	}
+
+	def encode(framing:Framing, msg:Message):ByteBuf = {
+		val ch = new EmbeddedChannel(new MessageEncoder(SimpleCodec.getInstance(), framing))
+		ch.writeOutbound(msg)
+		ch.readOutbound[ByteBuf]()
+	}
+
+	def counting(counter:AtomicInteger):Codec = new Codec {
+		override def decode(buffer:ByteBuffer) = {
+			counter.incrementAndGet()
+			SimpleCodec.getInstance().decode(buffer)
+		}
+		override def newMarshal() = SimpleCodec.getInstance().newMarshal()
+		override def newUnmarshal(buffer:ByteBuffer) = SimpleCodec.getInstance().newUnmarshal(buffer)
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.netty
+
+import java.util.UUID
+
+import io.netty.buffer.{ByteBuf, CompositeByteBuf}
+import io.netty.channel.embedded.EmbeddedChannel
+import org.asterisque.codec.{Codec, JavaCodec, MessagePackCodec, SimpleCodec}
+import org.asterisque.msg._
+import org.specs2.Specification
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// MessageEncoderSpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class MessageEncoderSpec extends Specification { def is = s2"""
+MessageEncoder should:
+write the same binary as codec for each codec. $e0
+wrap large block payload without copy. $e1
+prepend frame length when framing is enabled. $e2
+"""
+
+	val messages = Seq[Message](
+		new Open(1.toShort, 2.toShort, Array[AnyRef]("hoge", Integer.valueOf(100))),
+		new Close(1.toShort, "foo"),
+		new Block(1, Array[Byte](0, 1, 2, 3), 0, 4),
+		new Block(1, (0 until 4000).map{ _.toByte }.toArray, 100, 3000),
+		Block.eof(1),
+		new Control(Control.Close)
+	)
+
+	def e0 = Seq(new JavaCodec(), SimpleCodec.getInstance(), MessagePackCodec.getInstance()).flatMap{ codec =>
+		messages.map{ msg =>
+			val b = encode(codec, new Framing(false, true), msg)
+			val actual = bytes(b)
+			b.release()
+			java.util.Arrays.equals(actual, expected(codec, msg)) must beTrue
+		}
+	}.reduceLeft{ _ and _ }
+
+	def e1 = {
+		val payload = (0 until 4000).map{ _.toByte }.toArray
+		val b = encode(SimpleCodec.getInstance(), new Framing(false, true), new Block(1, payload, 100, 3000))
+		val composite = b.asInstanceOf[CompositeByteBuf]
+		val wrapped = (0 until composite.numComponents()).map{ composite.component }.exists{ c =>
+			c.hasArray && (c.array() eq payload)
+		}
+		b.release()
+		(b must beAnInstanceOf[CompositeByteBuf]) and (wrapped must beTrue)
+	}
+
+	def e2 = {
+		val framing = new Framing(false, true)
+		framing.received(new SyncConfig(UUID.randomUUID(), UUID.randomUUID(), 0L, 10, 20, SyncConfig.Framing).toControl)
+		messages.map{ msg =>
+			val b = encode(SimpleCodec.getInstance(), framing, msg)
+			val expect = expected(SimpleCodec.getInstance(), msg)
+			val length = b.readUnsignedShort()
+			val actual = bytes(b)
+			b.release()
+			(length === expect.length) and (java.util.Arrays.equals(actual, expect) must beTrue)
+		}.reduceLeft{ _ and _ }
+	}
+
+	def encode(codec:Codec, framing:Framing, msg:Message):ByteBuf = {
+		val ch = new EmbeddedChannel(new MessageEncoder(codec, framing))
+		ch.writeOutbound(msg)
+		ch.readOutbound[ByteBuf]()
+	}
+
+	def expected(codec:Codec, msg:Message):Array[Byte] = {
+		val buffer = codec.encode(msg)
+		val b = new Array[Byte](buffer.remaining())
+		buffer.get(b)
+		b
+	}
+
+	def bytes(b:ByteBuf):Array[Byte] = {
+		val a = new Array[Byte](b.readableBytes())
+		b.readBytes(a)
+		a
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.netty
+
+import java.util.{Optional, UUID}
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.ObjIntConsumer
+import javax.net.ssl.SSLSession
+
+import io.netty.buffer.ByteBuf
+import io.netty.channel.{ChannelHandlerContext, ChannelOutboundHandlerAdapter}
+import io.netty.channel.embedded.EmbeddedChannel
+import org.asterisque.Wire
+import org.asterisque.codec.SimpleCodec
+import org.asterisque.msg._
+import org.specs2.Specification
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// NettyWireSpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class NettyWireSpec extends Specification { def is = s2"""
+NettyWire should:
+write queued messages in batches and flush once per batch. $e0
+split batch when channel exceeds high watermark. $e1
+write until plug produces null even if writable turned off out of order. $e2
+split batch by encoded bytes even if messages are held in container frame. $e3
+"""
+
+	def e0 = {
+		val env = new Env(4, Int.MaxValue)
+		(1 to 10).foreach{ i => env.queue.add(Block.eof(i.toShort)) }
+		env.wire.setWritable(true)
+		env.ch.runPendingTasks()
+		val written = Iterator.continually(env.ch.readOutbound[Message]()).takeWhile(_ != null).toList
+		(written.map{ _.pipeId.toInt } === (1 to 10).toList) and (env.flushes.get() === 3) and (env.queue.isEmpty must beTrue)
+	}
+
+	def e1 = {
+		val env = new Env(Int.MaxValue, Int.MaxValue)
+		env.ch.config().setWriteBufferWaterMark(new io.netty.channel.WriteBufferWaterMark(8, 16))
+		(1 to 10).foreach{ i => env.queue.add(new Block(i.toShort, new Array[Byte](10), 0, 10)) }
+		env.wire.setWritable(true)
+		env.ch.runPendingTasks()
+		val written = Iterator.continually(env.ch.readOutbound[Message]()).takeWhile(_ != null).toList
+		(written.size === 10) and (env.flushes.get() must beGreaterThan(1))
+	}
+
+	def e2 = {
+		val env = new Env(Int.MaxValue, Int.MaxValue)
+		(1 to 5).foreach{ i => env.queue.add(Block.eof(i.toShort)) }
+		env.wire.setWritable(true)
+		env.wire.setWritable(false)
+		env.ch.runPendingTasks()
+		val written = Iterator.continually(env.ch.readOutbound[Message]()).takeWhile(_ != null).toList
+		(written.map{ _.pipeId.toInt } === (1 to 5).toList) and (env.queue.isEmpty must beTrue)
+	}
+
+	def e3 = {
+		val framing = new Framing(false, true)
+		framing.received(new SyncConfig(UUID.randomUUID(), UUID.randomUUID(), 0L, 10, 20, SyncConfig.Framing | SyncConfig.Container).toControl)
+		val env = new Env(Int.MaxValue, 100, Some(framing))
+		(1 to 10).foreach{ i => env.queue.add(new Block(i.toShort, new Array[Byte](40), 0, 40)) }
+		env.wire.setWritable(true)
+		env.ch.runPendingTasks()
+		val written = Iterator.continually(env.ch.readOutbound[ByteBuf]()).takeWhile(_ != null).toList
+		(written.size === env.flushes.get()) and (env.flushes.get() === 4) and (env.queue.isEmpty must beTrue)
+	}
+
+	class Env(batchMessages:Int, batchBytes:Int, framing:Option[Framing] = None) {
+		val flushes = new AtomicInteger()
+		val queue = new java.util.concurrent.ConcurrentLinkedQueue[Message]()
+		var ctx:ChannelHandlerContext = _
+		val ch = new EmbeddedChannel(new ChannelOutboundHandlerAdapter {
+			override def handlerAdded(c:ChannelHandlerContext):Unit = ctx = c
+			override def flush(c:ChannelHandlerContext):Unit = {
+				flushes.incrementAndGet()
+				super.flush(c)
+			}
+		})
+		framing.foreach{ f =>
+			ch.pipeline().addFirst(new MessageEncoder(SimpleCodec.getInstance(), f, new Compression(), new ObjIntConsumer[Message]{
+				def accept(msg:Message, bytes:Int):Unit = wire.sent(msg, bytes)
+			}))
+		}
+		val wire:NettyWire = new NettyWire(null, null, null, false,
+			CompletableFuture.completedFuture(Optional.empty[SSLSession]()), ctx, batchMessages, batchBytes)
+		wire.setPlug(Optional.of(new Wire.Plug {
+			override def produce():Message = {
+				val msg = queue.poll()
+				if(queue.isEmpty){
+					wire.setWritable(false)
+				}
+				msg
+			}
+			override def consume(msg:Message):Unit = None
+			override def onClose(wire:Wire):Unit = None
+			override def id():String = "test"
+		}))
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.netty
+
+import java.util.UUID
+
+import io.netty.buffer.{ByteBuf, Unpooled}
+import io.netty.channel.embedded.EmbeddedChannel
+import org.asterisque.codec.{Codec, MessagePackCodec, SimpleCodec}
+import org.asterisque.msg._
+import org.specs2.Specification
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// RetainedPayloadSpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class RetainedPayloadSpec extends Specification { def is = s2"""
+MessageDecoder with retained payload should:
+refer block payload as slice of received buffer until released. $e0
+refer block payload in framed format. $e1
+fallback to copied payload if codec doesn't support binary view. $e2
+"""
+
+	val payload = (0 until 3000).map{ _.toByte }.toArray
+
+	def e0 = {
+		val ch = new EmbeddedChannel(new MessageDecoder(SimpleCodec.getInstance(), new Framing(false, true), true))
+		val in = binary(SimpleCodec.getInstance(), new Block(1, payload, 0, payload.length), framed = false)
+		ch.writeInbound(in)
+		val block = ch.readInbound[Block]()
+		val r0 = (block.hasArray must beFalse) and (in.refCnt() === 1) and (bytes(block) === payload.toSeq) and
+			(block.getString(java.nio.charset.StandardCharsets.ISO_8859_1).length === payload.length)
+		block.retain()
+		block.release()
+		val r1 = in.refCnt() === 1
+		block.release()
+		r0 and r1 and (in.refCnt() === 0) and (block.release() must throwA[IllegalStateException]) and
+			(block.toByteBuffer() must throwA[IllegalStateException])
+	}
+
+	def e1 = {
+		val framing = new Framing(false, true)
+		framing.received(new SyncConfig(UUID.randomUUID(), UUID.randomUUID(), 0L, 10, 20, SyncConfig.Framing).toControl)
+		val ch = new EmbeddedChannel(new MessageDecoder(SimpleCodec.getInstance(), framing, true))
+		val in = binary(SimpleCodec.getInstance(), new Block(1, payload, 100, 2000), framed = true)
+		ch.writeInbound(in)
+		val block = ch.readInbound[Block]()
+		val r0 = (block.hasArray must beFalse) and (bytes(block) === payload.slice(100, 2100).toSeq)
+		block.release()
+		r0 and (in.refCnt() === 0)
+	}
+
+	def e2 = {
+		val ch = new EmbeddedChannel(new MessageDecoder(MessagePackCodec.getInstance(), new Framing(false, true), true))
+		val in = binary(MessagePackCodec.getInstance(), new Block(1, payload, 0, payload.length), framed = false)
+		ch.writeInbound(in)
+		val block = ch.readInbound[Block]()
+		(block.hasArray must beTrue) and (bytes(block) === payload.toSeq) and (in.refCnt() === 0)
+	}
+
+	def binary(codec:Codec, msg:Message, framed:Boolean):ByteBuf = {
+		val b = codec.encode(msg)
+		val buf = Unpooled.directBuffer()
+		if(framed){
+			buf.writeShort(b.remaining())
+		}
+		buf.writeBytes(b)
+		buf
+	}
+
+	def bytes(block:Block):Seq[Byte] = {
+		val b = block.toByteBuffer()
+		val a = new Array[Byte](b.remaining())
+		b.get(a)
+		a.toSeq
+	}
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.netty
+
+import io.netty.channel.epoll.Epoll
+import org.asterisque.Options
+import org.specs2.Specification
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// TransportSpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class TransportSpec extends Specification { def is = s2"""
+Transport should:
+use nio by default. $e0
+use epoll if available, otherwise fallback to nio. $e1
+fallback to nio for unsupported transport name. $e2
+"""
+
+	def e0 = Transport.select(new Options()) === Transport.NIO
+
+	def e1 = {
+		val expected = if(Epoll.isAvailable) Transport.EPOLL else Transport.NIO
+		Transport.select(new Options().set(Options.KEY_TRANSPORT, "EPOLL")) === expected
+	}
+
+	def e2 = Transport.select(new Options().set(Options.KEY_TRANSPORT, "kqueue")) === Transport.NIO
+}
@@ -5,7 +5,7 @@
 */
 package org.asterisque.util
 
-import java.util.concurrent.Executors
+import java.util.concurrent.{Executors, TimeUnit}
 
 import org.specs2.Specification
 
@@ -21,6 +21,10 @@ class CircuitBreakerSpec extends Specification { def is = s2"""
 CircuitBreaker should:
 notify at soft-limit and hard-limit. $e0
 be able to call in multi-threads. $e1
+track arrival and drain rates with EWMA. $e2
+not overload on burst drained quickly when sojourn target specified. $e3
+overload on slow drain below soft-limit when sojourn target specified. $e4
+still overload on soft-limit when sojourn target specified. $e5
 """
 
 	def e0 = {
@@ -61,4 +65,57 @@ be able to call in multi-threads. $e1
 		(breaker.isBroken must beFalse) and (breaker.load() === 0)
 	}
 
+	def e2 = {
+		val breaker = new ClockBreaker(1000, 2000, 0)
+		(0 until 3000).foreach{ _ =>
+			breaker.advance(1)
+			breaker.increment()
+			breaker.decrement()
+		}
+		(breaker.arrivalRate must beCloseTo(1000.0, 100.0)) and (breaker.drainRate must beCloseTo(1000.0, 100.0)) and
+			(breaker.sojourn must beLessThan(TimeUnit.MILLISECONDS.toNanos(2).toDouble))
+	}
+
+	def e3 = {
+		val breaker = new ClockBreaker(100, 200, TimeUnit.MILLISECONDS.toNanos(50))
+		breaker.warmUp()
+		(0 until 20).foreach{ _ => breaker.increment() }
+		(breaker.transitions === Nil) and (breaker.load() === 20)
+	}
+
+	def e4 = {
+		val breaker = new ClockBreaker(100, 200, TimeUnit.MILLISECONDS.toNanos(50))
+		breaker.warmUp()
+		(0 until 20).foreach{ _ => breaker.increment() }
+		breaker.advance(60)
+		breaker.increment()
+		val r0 = (breaker.transitions === List(true)) and (breaker.overloadCount() === 1)
+		breaker.advance(1)
+		(0 until 21).foreach{ _ => breaker.decrement() }
+		r0 and (breaker.transitions === List(true, false)) and (breaker.load() === 0)
+	}
+
+	def e5 = {
+		val breaker = new ClockBreaker(2, 4, TimeUnit.SECONDS.toNanos(10))
+		breaker.increment()
+		val r0 = breaker.transitions === Nil
+		breaker.increment()
+		val r1 = breaker.transitions === List(true)
+		breaker.decrement()
+		r0 and r1 and (breaker.transitions === List(true, false))
+	}
+
+	/**
+	 * 時刻を任意に進めることのできるサーキットブレーカー。
+	 */
+	class ClockBreaker(soft:Int, hard:Int, target:Long) extends CircuitBreaker(soft, hard, target) {
+		@volatile private[this] var time = 0L
+		@volatile var transitions = List[Boolean]()
+		def advance(millis:Long):Unit = time += TimeUnit.MILLISECONDS.toNanos(millis)
+		/** 1 ミリ秒ごとに 1 件到着して排出される状態を 3 秒間続ける */
+		def warmUp():Unit = (0 until 3000).foreach{ _ => advance(1); increment(); decrement() }
+		override protected def now():Long = time
+		override protected def overload(overload:Boolean):Unit = transitions = transitions :+ overload
+		override protected def broken():Unit = None
+	}
 }
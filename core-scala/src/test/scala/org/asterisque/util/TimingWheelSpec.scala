@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2014 koiroha.org.
+ * All sources and related resources are available under Apache License 2.0.
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+*/
+package org.asterisque.util
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{ConcurrentLinkedQueue, CountDownLatch, RejectedExecutionException, ThreadFactory, TimeUnit}
+
+import org.specs2.Specification
+import org.specs2.time.NoTimeConversions
+
+import scala.collection.JavaConversions._
+import scala.concurrent.duration._
+
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+// TimingWheelSpec
+// ++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+/**
+ * @author Takami Torao
+ */
+class TimingWheelSpec extends Specification with NoTimeConversions { def is = s2"""
+TimingWheel should:
+run tasks in deadline order after their delay. $e0
+run tasks beyond one rotation of the wheel. $e1
+not run cancelled tasks. $e2
+handle many timeouts. $e3
+reject schedule after close. $e4
+"""
+
+	def e0 = withWheel(8){ wheel =>
+		val order = new ConcurrentLinkedQueue[Int]()
+		val latch = new CountDownLatch(3)
+		val start = System.nanoTime()
+		Seq(60, 20, 40).foreach{ d =>
+			wheel.schedule(new Runnable { def run():Unit = { order.add(d); latch.countDown() } }, d, TimeUnit.MILLISECONDS)
+		}
+		val r0 = wheel.size() === 3
+		latch.await(3, TimeUnit.SECONDS)
+		val elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+		r0 and (order.toList === List(20, 40, 60)) and (elapsed must be_>=(60L)) and (wheel.size() === 0)
+	}
+
+	def e1 = withWheel(4){ wheel =>
+		// 4 バケット x 10ms で一周 40ms のホイールに 3 周以上先の期限を登録
+		val latch = new CountDownLatch(1)
+		val start = System.nanoTime()
+		val timeout = wheel.schedule(new Runnable { def run():Unit = latch.countDown() }, 130, TimeUnit.MILLISECONDS)
+		Thread.sleep(80)
+		val r0 = (latch.getCount === 1L) and (timeout.isExpired must beFalse)
+		latch.await(3, TimeUnit.SECONDS)
+		val elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+		r0 and (elapsed must be_>=(130L)) and (timeout.isExpired must beTrue)
+	}
+
+	def e2 = withWheel(8){ wheel =>
+		val count = new AtomicInteger(0)
+		val latch = new CountDownLatch(1)
+		val timeouts = (0 until 10).map{ _ =>
+			wheel.schedule(new Runnable { def run():Unit = count.incrementAndGet() }, 30, TimeUnit.MILLISECONDS)
+		}
+		wheel.schedule(new Runnable { def run():Unit = latch.countDown() }, 60, TimeUnit.MILLISECONDS)
+		val cancelled = timeouts.take(7).map{ _.cancel() }
+		val r0 = (cancelled.forall(identity) must beTrue) and (timeouts.head.cancel() must beFalse) and (wheel.size() === 4)
+		latch.await(3, TimeUnit.SECONDS)
+		r0 and (count.get() === 3) and (timeouts.head.isCancelled must beTrue) and (timeouts.last.cancel() must beFalse)
+	}
+
+	def e3 = withWheel(512){ wheel =>
+		val count = new AtomicInteger(0)
+		val n = 200000
+		val timeouts = (0 until n).map{ i =>
+			wheel.schedule(new Runnable { def run():Unit = count.incrementAndGet() }, 1000 + i % 200, TimeUnit.MILLISECONDS)
+		}
+		timeouts.zipWithIndex.filter{ _._2 % 2 == 0 }.foreach{ _._1.cancel() }
+		(count.get() must be_==(n / 2).eventually(40, 100.millis)) and (wheel.size() === 0)
+	}
+
+	def e4 = {
+		val wheel = new TimingWheel(factory, 10, TimeUnit.MILLISECONDS, 8)
+		wheel.close()
+		wheel.schedule(new Runnable { def run():Unit = None }, 10, TimeUnit.MILLISECONDS) must throwA[RejectedExecutionException]
+	}
+
+	private[this] val factory = new ThreadFactory {
+		def newThread(r:Runnable):Thread = new Thread(r, "timing-wheel-spec")
+	}
+
+	private[this] def withWheel[T](size:Int)(f:TimingWheel => T):T = {
+		val wheel = new TimingWheel(factory, 10, TimeUnit.MILLISECONDS, size)
+		try {
+			f(wheel)
+		} finally {
+			wheel.close()
+		}
+	}
+}